@@ -13,6 +13,10 @@
  * <code>ByteString</code> implements an immutable byte
  * sequence.
  *
+ * ByteStrings can be shared between workers freely. ByteArrays are not
+ * thread-safe; a ByteArray modified by more than one worker must be
+ * guarded, e.g. with <code>sync()</code>.
+ *
  * Both classes share a common base class <code>Binary</code>. The base class
  * can't be instantiated. It exists only to affirm that <code>ByteString</code>
  * and <code>ByteArray</code> instances of <code>Binary</code>.
@@ -387,7 +391,8 @@ Object.defineProperty(ByteArray.prototype, 'splice', {
  *        As a negative index, end indicates an offset from the end of the
  *        sequence.
  *        If end is omitted, slice extracts to the end of the sequence.
- * @returns {ByteArray} a new ByteArray
+ * @returns {ByteArray} a new ByteArray sharing the content of this one
+ *        until either of them is modified
  * @name ByteArray.prototype.slice
  * @function
  */
@@ -480,7 +485,8 @@ Object.defineProperty(ByteArray.prototype, 'splice', {
  * as the ByteArray constructor does. Any changes made on the ByteArray
  * instance will be applied to the original byte array.
  * @name ByteArray.wrap
- * @param {Binary} bytes a Java byte array or Binary instance
+ * @param {Binary} bytes a Java byte array, Binary instance or
+ *        <code>java.nio.ByteBuffer</code>
  * @returns {ByteArray} a ByteArray wrapping the argument
  * @function
  * @since 0.5
@@ -490,13 +496,41 @@ Object.defineProperty(ByteArray.prototype, 'splice', {
 
  /**
  * Unwraps the underlying Java <code>byte[]</code> from ByteArray. It can be
- * passed to a Java method that expects a byte array.
+ * passed to a Java method that expects a byte array. If the ByteArray is
+ * a slice, or stored outside the Java heap, a copy of its content is
+ * returned.
  * @name ByteArray.prototype.unwrap
  * @returns {byte[]} a native Java byte array
  * @function
  * @since 0.5
  */
 
+/**
+ * Create a ByteArray of the given length stored outside the Java heap.
+ * Direct ByteArrays can be passed to native I/O without copying.
+ * @name ByteArray.allocateDirect
+ * @param {Number} length the length of the ByteArray
+ * @returns {ByteArray} a new ByteArray filled with zeros
+ * @function
+ */
+
+/**
+ * True if this ByteArray is stored outside the Java heap.
+ * @name ByteArray.prototype.direct
+ * @type Boolean
+ */
+
+/**
+ * Returns a <code>java.nio.ByteBuffer</code> over the content of this
+ * ByteArray without copying it. Changes to the buffer are visible in the
+ * ByteArray until its length is changed. Slices and ByteStrings created
+ * from the ByteArray afterwards hold a copy of its content, so they are
+ * not affected by changes to the buffer.
+ * @name ByteArray.prototype.asByteBuffer
+ * @returns {java.nio.ByteBuffer} a byte buffer
+ * @function
+ */
+
 /**
  * Sets the byte at the given offset. <code>set(offset, value)</code> is
  * analogous to indexing with brackets <code>&#91;offset&#93;=value</code>.
@@ -524,12 +558,21 @@ Object.defineProperty(ByteArray.prototype, 'splice', {
  * Create a ByteString wrapper for a Java byte array without creating a new copy
  * as the ByteString constructor does.
  * @name ByteString.wrap
- * @param {Binary} bytes a Java byte array or Binary instance
+ * @param {Binary} bytes a Java byte array, Binary instance or
+ *        <code>java.nio.ByteBuffer</code>
  * @returns {ByteString} a ByteString wrapping the argument
  * @function
  * @since 0.5
  */
 
+/**
+ * Returns a read-only <code>java.nio.ByteBuffer</code> over the content
+ * of this ByteString without copying it.
+ * @name ByteString.prototype.asByteBuffer
+ * @returns {java.nio.ByteBuffer} a read-only byte buffer
+ * @function
+ */
+
 /**
  * Unwraps the underlying Java <code>byte[]</code> from ByteString. It can be
  * passed to a Java method that expects a byte array.
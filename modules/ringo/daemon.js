@@ -12,6 +12,9 @@
 const system = require('system');
 const log = require('ringo/logging').getLogger(module.id);
 
+// app is assigned in init(), so the module scope can't be sealed
+module.shared = false;
+
 let app;
 
 /**
@@ -1,6 +1,13 @@
 /**
  * @fileoverview A module for sending HTTP requests and receiving HTTP responses.
  *
+ * Requests are sent either synchronously using `request()` and its
+ * shortcuts, which block the calling thread until the response has been
+ * received, or asynchronously using `requestAsync()` or a `Client`, which
+ * return a promise and don't occupy a thread while waiting.
+ * `requestAll()` sends a batch of requests concurrently with bounded
+ * concurrency and an optional deadline.
+ *
  * @example const {request} = require('ringo/httpclient');
  * const exchange = request({
  *    method: 'GET',
@@ -17,7 +24,8 @@
 
 const {URL, HttpCookie, Proxy, InetSocketAddress} = java.net;
 const {InputStream, OutputStreamWriter, BufferedWriter,
-        ByteArrayOutputStream, PrintWriter} = java.io;
+        ByteArrayOutputStream, PrintWriter, FileOutputStream, IOException} = java.io;
+const {Channels} = java.nio.channels;
 const {GZIPInputStream, InflaterInputStream} = java.util.zip;
 const io = require("io");
 const {mimeType} = require("ringo/mime");
@@ -27,6 +35,9 @@ const objects = require("ringo/utils/objects");
 const base64 = require("ringo/base64");
 const {Buffer} = require("ringo/buffer");
 const {Random} = java.util;
+const {AsyncHttpClient, Exchange: JavaExchange, ResponseBody,
+        RequestBody, Batch} = org.ringojs.httpclient;
+const engine = require("ringo/engine").getRhinoEngine();
 const log = require("ringo/logging").getLogger(module.id);
 
 const VERSION = require("ringo/engine").version.join(".");
@@ -47,6 +58,8 @@ const prepareOptions = (options) => {
         "readTimeout": 30000,
         "connectTimeout": 60000,
         "binary": false,
+        "stream": false,
+        "pipeTo": null,
         "beforeSend": null
     };
     const opts = options ? objects.merge(options, defaultValues) : defaultValues;
@@ -116,6 +129,41 @@ const Cookie = function(httpCookie) {
     return this;
 };
 
+/**
+ * Returns true if the data is a generator or iterator producing the chunks
+ * of a request body.
+ * @param {Object} data The request data
+ * @returns {Boolean} True if the data is a chunk generator
+ */
+const isChunkGenerator = (data) => {
+    return data != null && typeof(data.next) === "function" &&
+            !(data instanceof io.Stream) && !(data instanceof io.TextStream);
+};
+
+/**
+ * Returns true if the request body is streamed instead of being sent
+ * with a known length.
+ * @param {Object} data The request data
+ * @returns {Boolean} True if the data is a stream or chunk generator
+ */
+const isStreamingData = (data) => {
+    return data instanceof InputStream || data instanceof io.Stream ||
+            isChunkGenerator(data);
+};
+
+/**
+ * Converts a chunk produced by a request body generator to binary.
+ * @param {String|Binary} chunk The chunk
+ * @param {String} charset The character set name used for strings
+ * @returns {Binary} The chunk as binary
+ */
+const getChunkBytes = (chunk, charset) => {
+    if (chunk instanceof binary.Binary) {
+        return chunk;
+    }
+    return binary.toByteArray(String(chunk), charset);
+};
+
 /**
  * Writes the data to the connection's output stream.
  * @param {Object} data The data
@@ -134,6 +182,12 @@ const writeData = (data, connection, charset, contentType) => {
             (new io.MemoryStream(data)).copy(outStream).close();
         } else if (data instanceof io.Stream) {
             data.copy(outStream).close();
+        } else if (isChunkGenerator(data)) {
+            for (let result = data.next(); !result.done; result = data.next()) {
+                if (result.value != null) {
+                    outStream.write(getChunkBytes(result.value, charset));
+                }
+            }
         } else {
             if (data instanceof io.TextStream) {
                 data = data.read();
@@ -175,9 +229,19 @@ const generateBoundary = () => {
  */
 const writeMultipartData = (data, connection, charset, boundary) => {
     connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-    let outStream, writer;
+    writeMultipart(data, new io.Stream(connection.getOutputStream()), charset, boundary);
+};
+
+/**
+ * Writes the multipart data to a stream and closes it.
+ * @param {Object} data An object containing the multipart data
+ * @param {Stream} outStream The stream to write to
+ * @param {String} charset The charset
+ * @param {String} boundary The multipart boundary
+ */
+const writeMultipart = (data, outStream, charset, boundary) => {
+    let writer;
     try {
-        outStream = new io.Stream(connection.getOutputStream());
         writer = new PrintWriter(new OutputStreamWriter(outStream, charset), true);
         Object.keys(data).forEach(key => {
             writer.append("--" + boundary).append(CRLF);
@@ -190,34 +254,86 @@ const writeMultipartData = (data, connection, charset, boundary) => {
     }
 };
 
+/**
+ * Checks that all parts of multipart form data are text or binary parts.
+ * @param {Object} data An object containing the multipart data
+ */
+const checkMultipartData = (data) => {
+    Object.keys(data).forEach(key => {
+        const part = data[key];
+        if (!(part instanceof TextPart) && !(part instanceof BinaryPart)) {
+            throw new Error("Multipart form data parts must be either TextPart or BinaryPart, but " + key + " isn't.");
+        }
+    });
+};
+
+/**
+ * Opens the response body, decoding gzip or deflate content encoding.
+ * @param {java.net.HttpURLConnection} connection The connection
+ * @returns {java.io.InputStream} The response body, or null if it's empty
+ */
+const openResponse = (connection) => {
+    const status = connection.getResponseCode();
+    let inStream = connection[(status >= 200 && status < 400) ?
+            "getInputStream" : "getErrorStream"]();
+    if (inStream === null) {
+        return null;
+    }
+    const encoding = connection.getContentEncoding();
+    if (encoding != null) {
+        if (encoding.equalsIgnoreCase("gzip")) {
+            inStream = new GZIPInputStream(inStream);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            inStream = new InflaterInputStream(inStream);
+        }
+    }
+    return inStream;
+};
+
 /**
  * Reads the response and returns it as ByteArray.
  * @param {java.net.HttpURLConnection} connection The connection
  * @returns {ByteArray} The response as ByteArray
  */
 const readResponse = (connection) => {
-    const status = connection.getResponseCode();
     let inStream;
     try {
-        inStream = connection[(status >= 200 && status < 400) ?
-                "getInputStream" : "getErrorStream"]();
+        inStream = openResponse(connection);
         // return null in case of responses with an empty body
         if (inStream === null) {
             return null;
         }
-        const encoding = connection.getContentEncoding();
-        if (encoding != null) {
-            if (encoding.equalsIgnoreCase("gzip")) {
-                inStream = new GZIPInputStream(inStream);
-            } else if (encoding.equalsIgnoreCase("deflate")) {
-                inStream = new InflaterInputStream(inStream);
+        const outStream = new ByteArrayOutputStream(8192);
+        (new io.Stream(inStream)).copy(outStream);
+        // wrap the buffer instead of copying it once more
+        return binary.ByteArray.wrap(outStream.toByteArray());
+    } finally {
+        inStream && inStream.close();
+    }
+};
+
+/**
+ * Writes the response body to a file through a file channel.
+ * @param {java.net.HttpURLConnection} connection The connection
+ * @param {String} path The path of the file
+ * @returns {Number} The number of bytes written
+ */
+const pipeResponse = (connection, path) => {
+    let inStream, channel;
+    let position = 0;
+    try {
+        inStream = openResponse(connection);
+        channel = new FileOutputStream(path).getChannel();
+        if (inStream !== null) {
+            const source = Channels.newChannel(inStream);
+            let count;
+            while ((count = channel.transferFrom(source, position, 1048576)) > 0) {
+                position += count;
             }
         }
-        inStream = new io.Stream(inStream);
-        const outStream = new ByteArrayOutputStream(8192);
-        inStream.copy(outStream);
-        return new binary.ByteArray(outStream.toByteArray());
+        return position;
     } finally {
+        channel && channel.close();
         inStream && inStream.close();
     }
 };
@@ -234,6 +350,7 @@ const Exchange = function(url, options) {
     let connection = null;
     let responseContent;
     let responseContentBytes;
+    let responseStream = null;
 
     Object.defineProperties(this, {
         /**
@@ -265,6 +382,17 @@ const Exchange = function(url, options) {
         "contentBytes": {
             "get": () => responseContentBytes,
             "enumerable": true
+        },
+        /**
+         * The response body as Stream if the request was sent with the
+         * `stream` option, null otherwise. Reading from the stream blocks
+         * until data is received, closing it releases the connection.
+         * @type Stream
+         * @name Exchange.prototype.stream
+         */
+        "stream": {
+            "get": () => responseStream,
+            "enumerable": true
         }
     });
 
@@ -320,23 +448,35 @@ const Exchange = function(url, options) {
 
         if (options.method === "POST" || options.method === "PUT") {
             connection.setDoOutput(true);
+            if (isStreamingData(reqData)) {
+                // don't let the connection buffer the body to compute its length
+                connection.setChunkedStreamingMode(8192);
+            }
             const charset = getMimeParameter(options.contentType, "charset") || "utf-8";
             if (options.method === "POST" && options.contentType === "multipart/form-data") {
                 // all parts must be instances of text or binary parts
-                Object.keys(reqData).forEach(key => {
-                    const part = reqData[key];
-                    if (!(part instanceof TextPart) && !(part instanceof BinaryPart)) {
-                        throw new Error("Multipart form data parts must be either TextPart or BinaryPart, but " + name + "isn't.");
-                    }
-                })
+                checkMultipartData(reqData);
                 writeMultipartData(reqData, connection, charset, generateBoundary());
             } else {
                 writeData(reqData, connection, charset, options.contentType);
             }
         }
-        responseContentBytes = readResponse(connection);
+        if (options.stream === true) {
+            const inStream = openResponse(connection);
+            responseContentBytes = null;
+            if (inStream !== null) {
+                responseStream = new io.Stream(inStream);
+            }
+        } else if (options.pipeTo) {
+            responseContentBytes = null;
+            pipeResponse(connection, String(options.pipeTo));
+        } else {
+            responseContentBytes = readResponse(connection);
+        }
     } finally {
-        connection && connection.disconnect();
+        if (connection && responseStream === null) {
+            connection.disconnect();
+        }
     }
 
     return this;
@@ -459,7 +599,9 @@ Object.defineProperties(Exchange.prototype, {
  *  - `url`: the request URL
  *  - `method`: request method such as GET or POST
  *  - `data`: request parameters as string or object for GET, DELETE, and similar methods. For POST or PUT requests,
- *     the body must be string, object, <code>Stream</code>, or <code>Binary</code>. For a multipart form POST requests,
+ *     the body must be string, object, <code>Stream</code>, <code>Binary</code>, or a generator producing
+ *     the body in chunks of strings or <code>Binary</code>. Streams and generators are sent with chunked
+ *     transfer encoding without buffering the body. For a multipart form POST requests,
  *     all parameter values must be instances of <a href="#TextPart"><code>TextPart</code></a> or
  *     <a href="#BinaryPart"><code>BinaryPart</code></a>.
  *  - `headers`: request headers
@@ -471,6 +613,10 @@ Object.defineProperties(Exchange.prototype, {
  *     will be treated as multipart form uploads.
  *  - `binary`: if true if content should be delivered as binary,
  *     else it will be decoded to string
+ *  - `stream`: if true, the response body is not read into memory, but
+ *     provided as <code>Stream</code> in the exchange's `stream` property
+ *  - `pipeTo`: the path of a file to write the response body to instead
+ *     of reading it into memory
  *  - `followRedirects`: whether HTTP redirects (response code 3xx) should be
  *     automatically followed; default: true
  *  - `readTimeout`: setting for read timeout in millis. 0 return implies that the option
@@ -504,6 +650,8 @@ const request = exports.request = (options) => {
         "connectTimeout": opts.connectTimeout,
         "readTimeout": opts.readTimeout,
         "binary": opts.binary,
+        "stream": opts.stream,
+        "pipeTo": opts.pipeTo,
         "proxy": opts.proxy,
         "beforeSend": opts.beforeSend
     });
@@ -565,6 +713,679 @@ exports.put = (url, data) => {
     return request(createOptions("PUT", url, data));
 };
 
+/**
+ * Returns a function that invokes its argument on the event loop of the
+ * worker calling this function, or directly if called on that worker.
+ * @returns {Function} the runner function
+ */
+const workerRunner = () => {
+    const worker = engine.getCurrentWorker(null);
+    return (fn) => {
+        const current = engine.getCurrentWorker(null);
+        if (worker === null || (current !== null && current.equals(worker))) {
+            fn();
+        } else {
+            worker.submit(exports, fn);
+        }
+    };
+};
+
+/**
+ * Returns the request body for the asynchronous engine as byte array.
+ * @param {String|Object|Stream|Binary} data The request data
+ * @param {String} charset The character set name
+ * @returns {ByteArray} The request body, or null if it's empty
+ */
+const getRequestBody = (data, charset) => {
+    if (data instanceof InputStream) {
+        data = new io.Stream(data);
+    }
+    if (data instanceof binary.Binary) {
+        return data;
+    } else if (data instanceof io.Stream) {
+        const outStream = new ByteArrayOutputStream(8192);
+        data.copy(outStream).close();
+        return binary.ByteArray.wrap(outStream.toByteArray());
+    } else if (data instanceof io.TextStream) {
+        data = data.read();
+    } else if (data instanceof Object) {
+        data = urlEncode(data);
+    }
+    if (typeof(data) === "string" && data.length > 0) {
+        return binary.toByteArray(data, charset);
+    }
+    return null;
+};
+
+/**
+ * Writes the chunks produced by a generator to a request body. The next
+ * chunk is only produced on the calling worker once the previous one has
+ * been written to the connection.
+ * @param {Object} generator The generator or iterator
+ * @param {org.ringojs.httpclient.RequestBody} writer The request body
+ * @param {String} charset The character set name used for strings
+ */
+const pumpRequestBody = (generator, writer, charset) => {
+    const run = workerRunner();
+    const pump = () => {
+        let bytes = null;
+        try {
+            while (bytes === null) {
+                const result = generator.next();
+                if (result.done) {
+                    writer.close();
+                    return;
+                }
+                if (result.value != null && result.value.length > 0) {
+                    bytes = getChunkBytes(result.value, charset);
+                }
+            }
+        } catch (e) {
+            writer.fail(new IOException("Error generating request body: " + e));
+            return;
+        }
+        writer.write(bytes, new RequestBody.Callback({
+            "written": () => run(pump),
+            // the failure is reported by the exchange
+            "failed": () => {}
+        }));
+    };
+    pump();
+};
+
+/**
+ * An asynchronous exchange, representing the response of a request sent with
+ * <a href="#requestAsync">requestAsync()</a> or a <a href="#Client">Client</a>.
+ * It provides the same properties as <a href="#Exchange">Exchange</a>, except
+ * for the `connection`.
+ *
+ * If the request was sent with the `stream` option, the exchange is
+ * resolved as soon as the response headers have been received. The body is
+ * then read either with the `stream` property, which blocks while waiting
+ * for data, or without blocking using the asynchronous iterator returned by
+ * <a href="#AsyncExchange.prototype.iterator">iterator()</a>.
+ * @name AsyncExchange
+ * @param {org.ringojs.httpclient.Exchange} exchange The Java exchange
+ * @returns {AsyncExchange} A newly constructed AsyncExchange instance
+ * @constructor
+ */
+const AsyncExchange = exports.AsyncExchange = function(exchange) {
+    let responseContent;
+    let responseContentBytes;
+    let responseStream;
+
+    Object.defineProperties(this, {
+        /**
+         * The Java exchange wrapped by this AsyncExchange instance.
+         * @type org.ringojs.httpclient.Exchange
+         * @name AsyncExchange.prototype.exchange
+         */
+        "exchange": {
+            "value": exchange,
+            "enumerable": true
+        },
+        /**
+         * The response body as String.
+         * @type String
+         * @name AsyncExchange.prototype.content
+         */
+        "content": {
+            "get": () => {
+                if (responseContent !== undefined) {
+                    return responseContent;
+                }
+                return responseContent = (!this.contentBytes) ?
+                        null : this.contentBytes.decodeToString(this.encoding);
+            },
+            "enumerable": true
+        },
+        /**
+         * The response body as ByteArray.
+         * @type ByteArray
+         * @name AsyncExchange.prototype.contentBytes
+         */
+        "contentBytes": {
+            "get": () => {
+                if (responseContentBytes === undefined) {
+                    const bytes = exchange.getContent();
+                    responseContentBytes = bytes === null ?
+                            null : binary.ByteArray.wrap(bytes);
+                }
+                return responseContentBytes;
+            },
+            "enumerable": true
+        },
+        /**
+         * The response body as Stream if the request was sent with the
+         * `stream` option, null otherwise. Reading from the stream blocks
+         * until data is received, closing it before the end aborts the
+         * exchange.
+         * @type Stream
+         * @name AsyncExchange.prototype.stream
+         */
+        "stream": {
+            "get": () => {
+                if (responseStream === undefined) {
+                    const body = exchange.getBody();
+                    responseStream = body === null ?
+                            null : new io.Stream(body.getInputStream());
+                }
+                return responseStream;
+            },
+            "enumerable": true
+        }
+    });
+
+    return this;
+};
+
+Object.defineProperties(AsyncExchange.prototype, {
+    /**
+     * The request URL.
+     * @type java.net.URL
+     * @name AsyncExchange.prototype.url
+     */
+    "url": {
+        "get": function() {
+            return new URL(this.exchange.getURL());
+        },
+        "enumerable": true
+    },
+    /**
+     * The response status code.
+     * @type Number
+     * @name AsyncExchange.prototype.status
+     */
+    "status": {
+        "get": function() {
+            return this.exchange.getStatus();
+        },
+        "enumerable": true
+    },
+    /**
+     * The response status message. HTTP/2 responses have no status message.
+     * @type String
+     * @name AsyncExchange.prototype.message
+     */
+    "message": {
+        "get": function() {
+            return this.exchange.getReason();
+        },
+        "enumerable": true
+    },
+    /**
+     * The HTTP version of the response, e.g. "HTTP/2.0".
+     * @type String
+     * @name AsyncExchange.prototype.version
+     */
+    "version": {
+        "get": function() {
+            return this.exchange.getVersion();
+        },
+        "enumerable": true
+    },
+    /**
+     * The response headers.
+     * @name AsyncExchange.prototype.headers
+     */
+    "headers": {
+        "get": function() {
+            return new ScriptableMap(this.exchange.getHeaders());
+        },
+        "enumerable": true
+    },
+    /**
+     * The cookies set by the server.
+     * @name AsyncExchange.prototype.cookies
+     */
+    "cookies": {
+        "get": function() {
+            const cookies = {};
+            const cookieHeaders = this.exchange.getHeaders().get("Set-Cookie");
+            if (cookieHeaders != null) {
+                cookieHeaders.forEach(header => {
+                    const list = new ScriptableList(HttpCookie.parse(header));
+                    list.forEach(httpCookie => {
+                        const cookie = new Cookie(httpCookie);
+                        cookies[cookie.name] = cookie;
+                    });
+                });
+            }
+            return cookies;
+        },
+        "enumerable": true
+    },
+    /**
+     * The response encoding.
+     * @type String
+     * @name AsyncExchange.prototype.encoding
+     */
+    "encoding": {
+        "get": function() {
+            return getMimeParameter(this.contentType, "charset") || "utf-8";
+        },
+        "enumerable": true
+    },
+    /**
+     * The response content type.
+     * @type String
+     * @name AsyncExchange.prototype.contentType
+     */
+    "contentType": {
+        "get": function() {
+            return this.exchange.getHeader("Content-Type");
+        },
+        "enumerable": true
+    },
+    /**
+     * The response content length, or -1 if unknown.
+     * @type Number
+     * @name AsyncExchange.prototype.contentLength
+     */
+    "contentLength": {
+        "get": function() {
+            const length = this.exchange.getHeader("Content-Length");
+            return length === null ? -1 : parseInt(length, 10);
+        },
+        "enumerable": true
+    }
+});
+
+/**
+ * Returns an asynchronous iterator over the chunks of a streamed response
+ * body. Each call to its `next()` method returns a promise resolved with
+ * the next chunk as ByteString, resolved on the calling worker. Data is
+ * only received from the server as fast as the chunks are consumed.
+ * @returns {Object} The asynchronous iterator
+ * @throws {Error} if the request was not sent with the `stream` option
+ */
+AsyncExchange.prototype.iterator = function() {
+    const body = this.exchange.getBody();
+    if (body === null) {
+        throw new Error("Exchange was not sent with the stream option");
+    }
+    const run = workerRunner();
+    const iterator = {
+        "next": () => new Promise((resolve, reject) => {
+            body.read(new ResponseBody.Callback({
+                "data": (bytes) => run(() => resolve({
+                    "value": binary.ByteString.wrap(bytes),
+                    "done": false
+                })),
+                "end": () => run(() => resolve({"value": undefined, "done": true})),
+                "error": (error) => run(() => reject(error))
+            }));
+        })
+    };
+    if (typeof Symbol.asyncIterator === "symbol") {
+        iterator[Symbol.asyncIterator] = () => iterator;
+    }
+    return iterator;
+};
+
+/**
+ * A non-blocking HTTP client. Each client keeps a pool of connections
+ * per host, reuses connections between requests and multiplexes requests
+ * over HTTP/2 connections to secure hosts supporting it. Requests
+ * exceeding the connection limit of a host are queued.
+ *
+ * The client's `request()` method returns a promise resolved with an
+ * <a href="#AsyncExchange">AsyncExchange</a>, or rejected if the request
+ * fails. Promise callbacks are invoked on the event loop of the worker
+ * that sent the request, so the worker is free to do other work while
+ * waiting for the response.
+ *
+ * The `options` object may contain the following properties:
+ *
+ *  - `http2`: whether to negotiate HTTP/2 for secure connections; default: true
+ *  - `maxConnectionsPerHost`: the maximum number of connections to a single
+ *     host; default: 64
+ *  - `maxQueuedPerHost`: the maximum number of requests waiting for a
+ *     connection to a single host; default: 1024
+ *  - `idleTimeout`: the time in millis idle connections are kept alive for
+ *     reuse; default: 30000 ms
+ *  - `connectTimeout`: the timeout in millis for establishing connections;
+ *     default: 60000 ms
+ *  - `followRedirects`: whether redirects are followed; default: true
+ *  - `proxy`: proxy-settings as string (<code>proxy-hostname:port</code>)
+ *     or object <code>{host: "proxy-hostname", port: 3128}</code>
+ *  - `maxContentLength`: the maximum size of response bodies in bytes;
+ *     default: 64 MB
+ *
+ * @param {Object} options Optional client options
+ * @returns {Client} A newly constructed and started Client instance
+ * @constructor
+ * @example const client = new Client({maxConnectionsPerHost: 16});
+ * client.request({url: "https://example.org/"}).then(exchange => {
+ *    console.log(exchange.status, exchange.version);
+ * });
+ */
+const Client = exports.Client = function(options) {
+    const opts = objects.merge(options || {}, {
+        "http2": true,
+        "maxConnectionsPerHost": AsyncHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST,
+        "maxQueuedPerHost": AsyncHttpClient.DEFAULT_MAX_QUEUED_PER_HOST,
+        "idleTimeout": AsyncHttpClient.DEFAULT_IDLE_TIMEOUT,
+        "connectTimeout": AsyncHttpClient.DEFAULT_CONNECT_TIMEOUT,
+        "followRedirects": true,
+        "proxy": null,
+        "maxContentLength": JavaExchange.DEFAULT_MAX_CONTENT_LENGTH
+    });
+    const client = new AsyncHttpClient(opts.http2 === true);
+    client.setMaxConnectionsPerHost(opts.maxConnectionsPerHost);
+    client.setMaxQueuedPerHost(opts.maxQueuedPerHost);
+    client.setIdleTimeout(opts.idleTimeout);
+    client.setConnectTimeout(opts.connectTimeout);
+    client.setFollowRedirects(opts.followRedirects === true);
+    client.setUserAgent("RingoJS HttpClient " + VERSION);
+    if (opts.proxy) {
+        let host, port;
+        if (typeof(opts.proxy) == "string") {
+            [host, port] = opts.proxy.split(":");
+        } else {
+            host = opts.proxy.host;
+            port = opts.proxy.port;
+        }
+        client.setProxy(host, parseInt(port, 10) || 3128);
+    }
+    client.start();
+    return defineClient(this, client, opts.maxContentLength);
+};
+
+/**
+ * Defines the properties of a Client instance.
+ * @param {Client} obj The Client instance
+ * @param {org.ringojs.httpclient.AsyncHttpClient} client The Java client
+ * @param {Number} maxContentLength The maximum size of response bodies
+ * @returns {Client} The Client instance
+ * @ignore
+ */
+const defineClient = (obj, client, maxContentLength) => {
+    return Object.defineProperties(obj, {
+        /**
+         * The Java client used by this Client instance.
+         * @type org.ringojs.httpclient.AsyncHttpClient
+         * @name Client.prototype.client
+         */
+        "client": {
+            "value": client
+        },
+        /**
+         * The maximum size of response bodies in bytes.
+         * @type Number
+         * @name Client.prototype.maxContentLength
+         */
+        "maxContentLength": {
+            "value": maxContentLength
+        }
+    });
+};
+
+/** @ignore */
+Client.prototype.toString = function() {
+    return "[Client]";
+};
+
+/**
+ * Creates the Java exchange for a request.
+ * @param {Object} options The request options, as accepted by
+ * <a href="#request">request()</a>
+ * @returns {org.ringojs.httpclient.Exchange} The exchange
+ * @ignore
+ */
+Client.prototype.newExchange = function(options) {
+    const opts = prepareOptions(options);
+    let url = opts.url;
+    let reqData = opts.data;
+    const hasBody = opts.method === "POST" || opts.method === "PUT";
+    if (!hasBody) {
+        reqData = urlEncode(reqData);
+        if (typeof(reqData) === "string" && reqData.length > 0) {
+            url += "?" + reqData;
+        }
+    }
+    const exchange = this.client.newExchange(String(url), opts.method);
+    exchange.followRedirects(opts.followRedirects === true);
+    exchange.idleTimeout(opts.readTimeout);
+    exchange.timeout(opts.timeout || 0);
+
+    // deal with username:password in url
+    const userInfo = new URL(url).getUserInfo();
+    if (userInfo) {
+        const [username, password] = userInfo.split(":");
+        opts.username = opts.username || username;
+        opts.password = opts.password || password;
+    }
+    if (typeof(opts.username) === "string" && typeof(opts.password) === "string") {
+        exchange.header("Authorization",
+                "Basic " + base64.encode(opts.username + ':' + opts.password));
+    }
+    Object.keys(opts.headers).forEach(key => {
+        if (!hasBody || key.toLowerCase() !== "content-type") {
+            exchange.header(key, opts.headers[key]);
+        }
+    });
+
+    if (hasBody) {
+        const charset = getMimeParameter(opts.contentType, "charset") || "utf-8";
+        if (opts.method === "POST" && opts.contentType === "multipart/form-data") {
+            checkMultipartData(reqData);
+            const boundary = generateBoundary();
+            const outStream = new ByteArrayOutputStream(8192);
+            writeMultipart(reqData, new io.Stream(outStream), charset, boundary);
+            exchange.body(outStream.toByteArray(), "multipart/form-data; boundary=" + boundary);
+        } else if (reqData instanceof InputStream || reqData instanceof io.Stream) {
+            exchange.body(reqData instanceof io.Stream ?
+                    reqData.inputStream : reqData, opts.contentType);
+        } else if (isChunkGenerator(reqData)) {
+            pumpRequestBody(reqData, exchange.bodyWriter(opts.contentType), charset);
+        } else {
+            const body = getRequestBody(reqData, charset);
+            exchange.body(body === null ? new binary.ByteArray(0) : body, opts.contentType);
+        }
+    }
+    if (typeof(opts.beforeSend) === "function") {
+        opts.beforeSend(exchange.getRequest());
+    }
+    return exchange;
+};
+
+/**
+ * Sends a request without blocking. Accepts the same options as
+ * <a href="#request">request()</a>, plus:
+ *
+ *  - `timeout`: the total timeout of the exchange in millis, 0 for none;
+ *     default: 0
+ *
+ * With the `stream` option the promise is resolved once the response
+ * headers have been received, and the body is read from the exchange's
+ * `stream` or <a href="#AsyncExchange.prototype.iterator">iterator()</a>.
+ * With `pipeTo` the body is written to the file with the given path, which
+ * is deleted if the request fails. Request bodies given as stream or
+ * generator are sent while they are produced, generators are advanced on
+ * the calling worker.
+ *
+ * The `connectTimeout` and `proxy` options are client options and
+ * ignored here. The `beforeSend` function is called with the Jetty
+ * request object.
+ *
+ * @param {Object} options The request options
+ * @returns {Promise} A promise resolved with the
+ * <a href="#AsyncExchange">AsyncExchange</a> once the response has been
+ * received completely, or rejected if the request failed
+ */
+Client.prototype.request = function(options) {
+    let exchange;
+    try {
+        exchange = this.newExchange(options);
+    } catch (e) {
+        return Promise.reject(e);
+    }
+    const maxContentLength = this.maxContentLength;
+    return new Promise((resolve, reject) => {
+        const run = workerRunner();
+        engine.enterAsyncTask();
+        try {
+            const listener = new JavaExchange.Listener({
+                "completed": () => run(() => {
+                    engine.exitAsyncTask();
+                    resolve(new AsyncExchange(exchange));
+                }),
+                "failed": (ex, error) => run(() => {
+                    engine.exitAsyncTask();
+                    reject(error);
+                })
+            });
+            if (options.stream === true) {
+                exchange.sendStreaming(listener);
+            } else if (options.pipeTo) {
+                exchange.sendToFile(String(options.pipeTo), listener);
+            } else {
+                exchange.send(maxContentLength, listener);
+            }
+        } catch (e) {
+            engine.exitAsyncTask();
+            throw e;
+        }
+    });
+};
+
+/**
+ * Stops the client, aborting all pending requests and closing all
+ * connections.
+ */
+Client.prototype.stop = function() {
+    this.client.stop();
+};
+
+/**
+ * Returns the client used by `requestAsync()` and `requestAll()`. All
+ * default clients share a single Java client with the default options,
+ * which is started on first use and stopped when the engine shuts down.
+ * @returns {Client} The default client
+ */
+const getDefaultClient = exports.getDefaultClient = () => {
+    module.singleton("defaultClientShutdownHook", () => {
+        engine.addShutdownHook(() => AsyncHttpClient.stopDefault(), true);
+        return true;
+    });
+    return defineClient(Object.create(Client.prototype),
+            AsyncHttpClient.getDefault(), JavaExchange.DEFAULT_MAX_CONTENT_LENGTH);
+};
+
+/**
+ * Sends a request without blocking the calling thread, using a shared
+ * default <a href="#Client">Client</a>. This is the asynchronous variant
+ * of <a href="#request">request()</a>, see
+ * <a href="#Client.prototype.request">Client.request()</a> for the
+ * supported options.
+ *
+ * @param {Object} options The request options
+ * @returns {Promise} A promise resolved with the
+ * <a href="#AsyncExchange">AsyncExchange</a>, or rejected if the request
+ * failed. Promise callbacks are invoked on the calling worker.
+ * @example const {requestAsync} = require("ringo/httpclient");
+ * Promise.all([
+ *    requestAsync({url: "https://example.org/users/1"}),
+ *    requestAsync({url: "https://example.org/users/1/orders"})
+ * ]).then(([user, orders]) => {
+ *    // both requests ran concurrently
+ * });
+ */
+exports.requestAsync = (options) => {
+    return getDefaultClient().request(options);
+};
+
+/**
+ * Sends a batch of requests concurrently without blocking the calling
+ * thread. At most `concurrency` requests are in flight at any time, the
+ * others are started as running requests complete.
+ *
+ * The returned promise is never rejected, it resolves to an array
+ * containing an object with either a `value` property holding the
+ * <a href="#AsyncExchange">AsyncExchange</a> or an `error` property for each
+ * request, in the order of the requests. Promise callbacks are invoked on
+ * the calling worker. The promise's `cancel()` method aborts the batch,
+ * failing all requests not completed yet.
+ *
+ * The `options` object may contain the following properties:
+ *
+ *  - `concurrency`: the maximum number of requests in flight; default: 8
+ *  - `timeout`: the deadline of the whole batch in millis, 0 for none.
+ *     Requests are started with a timeout no longer than the time
+ *     remaining, and once the deadline passes, running requests are
+ *     aborted and requests not yet started fail without being sent;
+ *     default: 0
+ *  - `client`: the <a href="#Client">Client</a> to use; default: the
+ *     client used by <a href="#requestAsync">requestAsync()</a>
+ *
+ * Response bodies are buffered, the `stream` and `pipeTo` options are
+ * ignored.
+ *
+ * @param {Array} requests The request options as accepted by
+ * <a href="#Client.prototype.request">Client.request()</a>, or URL strings
+ * @param {Object} options Optional batch options
+ * @returns {Promise} A promise resolved with the array of results
+ * @example const {requestAll} = require("ringo/httpclient");
+ * requestAll([
+ *    "https://example.org/users/1",
+ *    {url: "https://example.org/orders", data: {user: 1}}
+ * ], {concurrency: 4, timeout: 2000}).then(results => {
+ *    results.forEach(result => {
+ *       if (result.error) {
+ *          console.error("Request failed", result.error);
+ *       } else {
+ *          console.log(result.value.status, result.value.content);
+ *       }
+ *    });
+ * });
+ */
+exports.requestAll = (requests, options) => {
+    const opts = objects.merge(options || {}, {
+        "concurrency": 8,
+        "timeout": 0,
+        "client": null
+    });
+    const client = opts.client || getDefaultClient();
+    const results = new Array(requests.length);
+    const exchanges = [];
+    const indexes = [];
+    requests.forEach((request, index) => {
+        try {
+            exchanges.push(client.newExchange(typeof(request) === "string" ?
+                    {"url": request} : request));
+            indexes.push(index);
+        } catch (e) {
+            results[index] = {"error": e};
+        }
+    });
+    const batch = client.client.newBatch(exchanges);
+    const promise = new Promise((resolve) => {
+        const run = workerRunner();
+        engine.enterAsyncTask();
+        try {
+            batch.send(opts.concurrency, opts.timeout, client.maxContentLength,
+                    new Batch.Listener({
+                "completed": () => run(() => {
+                    engine.exitAsyncTask();
+                    indexes.forEach((index, i) => {
+                        const error = batch.getError(i);
+                        results[index] = (error === null) ?
+                                {"value": new AsyncExchange(batch.getExchange(i))} :
+                                {"error": error};
+                    });
+                    resolve(results);
+                })
+            }));
+        } catch (e) {
+            engine.exitAsyncTask();
+            throw e;
+        }
+    });
+    promise.cancel = (reason) => batch.cancel(reason || "Batch cancelled");
+    return promise;
+};
+
 /**
  * @name TextPart
  * @param {String|TextStream} data text data to write
@@ -63,6 +63,14 @@ HttpServerBuilder.prototype.configure = function(xmlPath) {
  * <li>sameSiteCookies: (String, default: null) Sets the SameSite flag of session cookies. Possible values: "lax" (default of modern Browsers), "strict" or "none"</li>
  * <li>statistics: (boolean, default: false) Enable request statistics</li>
  * <li>virtualHosts: (String|Array) Virtual host(s) under which this application should be reachable</li>
+ * <li>asyncTimeout: (Number, default: 30000) Time in milliseconds within which promises returned by the application have to be settled, 0 disables the timeout</li>
+ * <li>bufferInput: (boolean, default: false) Read request bodies without blocking before the application is invoked</li>
+ * <li>inputMemorySize: (Number, default: 65536) Number of bytes of a buffered request body kept in memory, larger bodies are stored in a temporary file</li>
+ * <li>maxInputSize: (Number, default: -1) Maximum size of buffered request bodies, larger requests are rejected with status 413. -1 means no limit</li>
+ * <li>gzip: (boolean, default: false) Compress response bodies with gzip if the client accepts it. Resources sent with <code>static()</code> are served from a fresh sibling file with <code>.gz</code> extension if one exists</li>
+ * <li>gzipMinSize: (Number, default: 1024) Minimum size of response bodies to compress</li>
+ * <li>staticCacheSize: (Number, default: 0) Total size in bytes of the in-memory cache for small resources sent with <code>static()</code>, 0 disables the cache</li>
+ * <li>staticCacheMaxFileSize: (Number, default: 65536) Maximum size of resources kept in the static cache</li>
  * <ul>
  * @returns {HttpServerBuilder}
  */
@@ -1,6 +1,6 @@
 const log = require("ringo/logging").getLogger(module.id);
 const Context = require("./context");
-const {JsgiServlet} = org.ringojs.jsgi;
+const {JsgiServlet, Compression, StaticCache} = org.ringojs.jsgi;
 const {JettyWebSocketServlet, JettyWebSocketCreator} = org.eclipse.jetty.websocket.server;
 const {JettyWebSocketServletContainerInitializer} = org.eclipse.jetty.websocket.server.config;
 const {EventSourceServlet} = org.eclipse.jetty.servlets;
@@ -28,9 +28,18 @@ ApplicationContext.prototype.constructor = ApplicationContext;
  * @param {String|Function} app The application to server. Can be defined either
  * as string specifying the application module to load, or as a function.
  * @param {org.ringojs.engine.RhinoEngine} engine Optional engine to pass to the JsgiServlet constructor
+ * @param {Object} options Optional servlet options: `asyncTimeout` (time
+ * in milliseconds within which promises returned by the application have to
+ * be settled), `bufferInput` (read request bodies without blocking before
+ * invoking the application), `inputMemorySize` (bytes of a buffered body
+ * kept in memory), `maxInputSize` (maximum size of buffered bodies), `gzip`
+ * (compress response bodies), `gzipMinSize` (minimum body size to compress),
+ * `staticCacheSize` (total size of the cache for small static resources) and
+ * `staticCacheMaxFileSize` (maximum size of cached static resources).
+ * A number is accepted as `asyncTimeout` for backwards compatibility.
  * @returns {org.eclipse.jetty.servlet.ServletHolder}
  */
-ApplicationContext.prototype.serve = function(app, engine) {
+ApplicationContext.prototype.serve = function(app, engine, options) {
     log.info("Adding JSGI application {} -> {}",
             this.contextHandler.getContextPath(), app);
     engine = engine || require("ringo/engine").getRhinoEngine();
@@ -45,6 +54,31 @@ ApplicationContext.prototype.serve = function(app, engine) {
         throw new Error("Application must be either a function or the path " +
                 "to a module exporting a function");
     }
+    if (typeof(options) === "number") {
+        options = {"asyncTimeout": options};
+    }
+    options || (options = {});
+    if (typeof(options.asyncTimeout) === "number") {
+        servlet.setAsyncTimeout(options.asyncTimeout);
+    }
+    if (options.bufferInput === true) {
+        servlet.setBufferInput(true);
+    }
+    if (typeof(options.inputMemorySize) === "number") {
+        servlet.setInputMemorySize(options.inputMemorySize);
+    }
+    if (typeof(options.maxInputSize) === "number") {
+        servlet.setMaxInputSize(options.maxInputSize);
+    }
+    if (options.gzip === true) {
+        servlet.setGzip(true, typeof(options.gzipMinSize) === "number" ?
+                options.gzipMinSize : Compression.DEFAULT_MIN_SIZE);
+    }
+    if (options.staticCacheSize > 0) {
+        servlet.setStaticCache(options.staticCacheSize,
+                typeof(options.staticCacheMaxFileSize) === "number" ?
+                        options.staticCacheMaxFileSize : StaticCache.DEFAULT_MAX_FILE_SIZE);
+    }
     return this.addServlet("/*", servlet, params);
 };
 
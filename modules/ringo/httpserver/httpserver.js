@@ -363,6 +363,16 @@ HttpServer.prototype.serveApplication = function(mountpoint, app, options) {
         throw new Error("Missing mountpoint argument");
     }
     options || (options = {});
+    const servletOptions = {
+        "asyncTimeout": options.asyncTimeout,
+        "bufferInput": options.bufferInput === true,
+        "inputMemorySize": options.inputMemorySize,
+        "maxInputSize": options.maxInputSize,
+        "gzip": options.gzip === true,
+        "gzipMinSize": options.gzipMinSize,
+        "staticCacheSize": options.staticCacheSize,
+        "staticCacheMaxFileSize": options.staticCacheMaxFileSize
+    };
     if (typeof(options.sameSiteCookies) === "string") {
         options.sameSiteCookies = options.sameSiteCookies.toUpperCase();
         const allowedValues = Array.from(HttpCookie.SameSite.values()).map(value => value.toString());
@@ -386,7 +396,7 @@ HttpServer.prototype.serveApplication = function(mountpoint, app, options) {
     };
     const parentContainer = this.getContextHandlerCollection();
     const context = new ApplicationContext(parentContainer, mountpoint, options);
-    context.serve(app);
+    context.serve(app, null, servletOptions);
     return this.addContext(context);
 };
 
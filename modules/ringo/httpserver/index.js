@@ -13,6 +13,9 @@ const HttpServerBuilder = require("./builder");
 const HttpServer = exports.HttpServer = require("./httpserver");
 const utils = require("./utils");
 
+// holds the server instance, don't share the module scope between workers
+module.shared = false;
+
 let httpServer = null;
 let options = null;
 
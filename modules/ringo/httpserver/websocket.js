@@ -1,6 +1,25 @@
 const {JavaEventEmitter} = require('ringo/events');
+const {Binary} = require('binary');
 const {WebSocketListener, WriteCallback} = org.eclipse.jetty.websocket.api;
 const {ByteBuffer} = java.nio;
+const JavaBroadcastGroup = org.ringojs.jsgi.BroadcastGroup;
+
+/**
+ * Returns a byte buffer over a range of a binary or byte array. If
+ * `snapshot` is true, the buffer of a ByteArray is a copy-on-write view,
+ * so changes made to the ByteArray after this returns are not sent.
+ * @ignore
+ */
+const toByteBuffer = (data, offset, length, snapshot) => {
+    offset = parseInt(offset, 10) || 0;
+    length = parseInt(length, 10) || data.length - offset;
+    if (data instanceof Binary) {
+        const source = (snapshot === true) ? data.toByteString() : data;
+        const buffer = source.asByteBuffer();
+        return buffer.position(offset).limit(offset + length);
+    }
+    return ByteBuffer.wrap(data, offset, length);
+};
 
 /**
  * Provides support for WebSocket connections in the HTTP server.
@@ -108,14 +127,14 @@ WebSocket.prototype.sendBinary = function(byteArray, offset, length) {
     if (!this.isOpen()) {
         throw new Error("Not connected");
     }
-    const buffer = ByteBuffer.wrap(byteArray, parseInt(offset, 10) || 0,
-        parseInt(length, 10) || byteArray.length);
+    const buffer = toByteBuffer(byteArray, offset, length);
     return this.session.getRemote().sendBytes(buffer);
 };
 
 /**
  * Send a byte array over the WebSocket. This method
- * does not wait until the message as been transmitted.
+ * does not wait until the message as been transmitted. Changes made to
+ * the byte array after this returns do not affect the message.
  * @param {ByteArray} byteArray The byte array to send
  * @param {Number} offset Optional offset (defaults to zero)
  * @param {Number} length Optional length (defaults to the
@@ -128,8 +147,7 @@ WebSocket.prototype.sendBinaryAsync = function(byteArray, offset, length) {
     if (!this.isOpen()) {
         throw new Error("Not connected");
     }
-    const buffer = ByteBuffer.wrap(byteArray, parseInt(offset, 10) || 0,
-            parseInt(length, 10) || byteArray.length);
+    const buffer = toByteBuffer(byteArray, offset, length, true);
     return new Promise((resolve, reject) => {
         this.session.getRemote().sendBytes(buffer, new WriteCallback({
             writeFailed: (error) => reject(error),
@@ -147,3 +165,159 @@ WebSocket.prototype.sendBinaryAsync = function(byteArray, offset, length) {
 WebSocket.prototype.isOpen = function() {
     return this.session !== null && this.session.isOpen();
 };
+
+/**
+ * A group of WebSocket connections that messages can be broadcast to.
+ * A message is encoded once and sent to all members of the group without
+ * blocking, with each connection sharing the same encoded frame payload.
+ *
+ * Connections that don't keep up with the broadcast messages are evicted:
+ * if more than `maxPending` bytes are still queued for a connection when
+ * a message is broadcast, it is removed from the group and closed with
+ * status 1008. Closed connections are removed on the next broadcast.
+ *
+ * @param {Object} options Optional options object with the following
+ * properties:
+ *
+ *  * **maxPending**: the maximum number of bytes queued for a connection
+ *    before it is evicted (defaults to 1 MB, -1 disables eviction)
+ *  * **batching**: if true, frames are collected until the group is
+ *    flushed, so a burst of messages takes fewer network writes
+ *
+ * @example
+ * const group = new WebSocket.BroadcastGroup({maxPending: 256 * 1024});
+ * app.addWebSocket("/chat", (socket) => {
+ *     group.add(socket);
+ *     socket.on("text", (message) => group.broadcast(message));
+ * });
+ * @name BroadcastGroup
+ * @constructor
+ */
+const BroadcastGroup = WebSocket.BroadcastGroup = function(options) {
+    options = options || {};
+    Object.defineProperty(this, "group", {
+        "value": new JavaBroadcastGroup(options.maxPending != null ?
+                options.maxPending : JavaBroadcastGroup.DEFAULT_MAX_PENDING)
+    });
+    this.group.setBatching(options.batching === true);
+    return this;
+};
+
+/** @ignore */
+BroadcastGroup.prototype.toString = function() {
+    return "[BroadcastGroup " + this.size + "]";
+};
+
+/**
+ * Add a WebSocket to the group.
+ * @param {WebSocket} socket The WebSocket
+ * @returns {Boolean} true if the socket was added, false if it is
+ * already a member or not open
+ * @name BroadcastGroup.instance.add
+ * @function
+ */
+BroadcastGroup.prototype.add = function(socket) {
+    return socket.isOpen() && this.group.add(socket.session);
+};
+
+/**
+ * Remove a WebSocket from the group.
+ * @param {WebSocket} socket The WebSocket
+ * @returns {Boolean} true if the socket was a member of the group
+ * @name BroadcastGroup.instance.remove
+ * @function
+ */
+BroadcastGroup.prototype.remove = function(socket) {
+    return socket.session !== null && this.group.remove(socket.session);
+};
+
+/**
+ * Check whether a WebSocket is a member of the group.
+ * @param {WebSocket} socket The WebSocket
+ * @returns {Boolean} true if the socket is a member
+ * @name BroadcastGroup.instance.contains
+ * @function
+ */
+BroadcastGroup.prototype.contains = function(socket) {
+    return socket.session !== null && this.group.contains(socket.session);
+};
+
+/**
+ * Send a message to all WebSockets of the group. Strings are sent as
+ * text messages, binaries as binary messages. This method does not wait
+ * until the message has been transmitted.
+ * @param {String|Binary} message The message
+ * @param {Number} offset Optional offset of a binary message (defaults to zero)
+ * @param {Number} length Optional length of a binary message (defaults to
+ * the length of the binary)
+ * @returns {Number} The number of WebSockets the message was sent to
+ * @name BroadcastGroup.instance.broadcast
+ * @function
+ */
+BroadcastGroup.prototype.broadcast = function(message, offset, length) {
+    if (typeof(message) === "string" || message instanceof String) {
+        return this.group.broadcast(String(message));
+    }
+    if (message instanceof Binary) {
+        // shared by all members without copying the content
+        return this.group.broadcast(toByteBuffer(message, offset, length, true));
+    }
+    offset = parseInt(offset, 10) || 0;
+    length = parseInt(length, 10) || message.length - offset;
+    return this.group.broadcast(message, offset, length);
+};
+
+/**
+ * Write the batched frames of all WebSockets of the group.
+ * @name BroadcastGroup.instance.flush
+ * @function
+ */
+BroadcastGroup.prototype.flush = function() {
+    this.group.flush();
+};
+
+/**
+ * Close all WebSockets of the group and remove them.
+ * @param {Number} statusCode Optional close status code (defaults to 1000)
+ * @param {String} reason Optional close reason
+ * @name BroadcastGroup.instance.close
+ * @function
+ */
+BroadcastGroup.prototype.close = function(statusCode, reason) {
+    this.group.close(statusCode || 1000, reason || null);
+};
+
+Object.defineProperties(BroadcastGroup.prototype, {
+    /**
+     * The number of WebSockets in the group.
+     * @type {Number}
+     * @name BroadcastGroup.instance.size
+     */
+    "size": {
+        "get": function() {
+            return this.group.size();
+        }
+    },
+    /**
+     * The send metrics of the group: `messages` (the number of broadcast
+     * messages), `frames` (the number of frames sent to WebSockets), `bytes`
+     * (the total payload size of sent frames), `failures` (the number of
+     * frames that could not be sent), `evictions` (the number of evicted
+     * WebSockets) and `pending` (the number of bytes currently queued).
+     * @type {Object}
+     * @name BroadcastGroup.instance.metrics
+     */
+    "metrics": {
+        "get": function() {
+            const group = this.group;
+            return {
+                "messages": group.getMessages(),
+                "frames": group.getFrames(),
+                "bytes": group.getBytes(),
+                "failures": group.getFailures(),
+                "evictions": group.getEvictions(),
+                "pending": group.getPending()
+            };
+        }
+    }
+});
@@ -2,18 +2,16 @@
  * @fileOverview Low-level JSGI adapter implementation.
  */
 
-const {Headers, getMimeParameter} = require('ringo/utils/http');
 const io = require('io');
 const binary = require('binary');
 const system = require('system');
-const {WriteListener, AsyncListener} = Packages.jakarta.servlet;
-const {ConcurrentLinkedQueue} = java.util.concurrent;
-const {EofException} = org.eclipse.jetty.io;
+const {AsyncListener} = Packages.jakarta.servlet;
 const {AtomicBoolean} = java.util.concurrent.atomic;
+const {JsgiServlet, JsgiRequest, ResponseWriter, AsyncResponseWriter, BufferedInput, AsyncInput} = org.ringojs.jsgi;
+const engine = require('ringo/engine').getRhinoEngine();
 
 const log = require('ringo/logging').getLogger(module.id);
 
-const FLUSH = new binary.ByteArray(0);
 
 /**
  * Handle a JSGI request.
@@ -47,7 +45,15 @@ const handleRequest = exports.handleRequest = (moduleId, functionObj, request) =
     if (!result) {
         throw new Error('No valid JSGI response: ' + result);
     }
+    // the servlet request is recycled once the response is complete, but
+    // the JSGI request may still be used afterwards, so copy the headers
+    if (typeof result.then === "function") {
+        JsgiRequest.detach(request);
+        commitAsync(request, result);
+        return;
+    }
     commitResponse(request, result);
+    JsgiRequest.detach(request);
 };
 
 /**
@@ -63,7 +69,10 @@ const initRequest = (request) => {
     Object.defineProperty(request, "input", {
         get: () => {
             if (!input) {
-                input = new io.Stream(request.env.servletRequest.getInputStream());
+                const servletRequest = request.env.servletRequest;
+                const buffered = servletRequest.getAttribute(BufferedInput.ATTRIBUTE);
+                input = new io.Stream(buffered instanceof BufferedInput ?
+                        buffered.getInputStream() : servletRequest.getInputStream());
             }
             return input;
         },
@@ -91,57 +100,239 @@ const initRequest = (request) => {
  */
 const commitResponse = (req, result) => {
     const request = req.env.servletRequest;
-    if (typeof request.isAsyncStarted === "function" && request.isAsyncStarted()) {
+    if (isAsyncClaimed(request)) {
         return;
     }
-    const response = req.env.servletResponse;
-    const {status, headers, body} = result;
-    if (!status || !headers || !body) {
-        // Check if this is an asynchronous response. If not throw an Error
-        throw new Error('No valid JSGI response: ' + result);
-    }
-    // Allow application/middleware to handle request via Servlet API
-    if (!response.isCommitted() && !Headers(headers).contains("X-JSGI-Skip-Response")) {
-        writeResponse(response, status, headers, body);
-    }
+    ResponseWriter.commit(request, req.env.servletResponse, result,
+            getServlet(req));
 };
 
-const writeResponse = (servletResponse, status, headers, body) => {
-    servletResponse.setStatus(status);
-    writeHeaders(servletResponse, headers);
-    const charset = getMimeParameter(headers.get("Content-Type"), "charset");
-    writeBody(servletResponse, body, charset);
+/**
+ * Returns the JsgiServlet handling the request.
+ * @param {Object} req the JSGI request
+ * @returns {org.ringojs.jsgi.JsgiServlet} the servlet, or null
+ */
+const getServlet = (req) => {
+    const servlet = req.env.servlet;
+    return servlet instanceof JsgiServlet ? servlet : null;
 };
 
-const writeHeaders = (servletResponse, headers) => {
-    Object.keys(headers).forEach(key => {
-        let values = headers[key];
-        if (typeof values === "string") {
-            values = values.split("\n");
+/**
+ * Commits the response once the promise returned by a JSGI application
+ * is settled. The request is switched to async mode, so neither a container
+ * thread nor the worker are blocked while the promise is pending. The
+ * response is committed on the worker's event loop, and a 503 response is
+ * sent if the promise isn't settled within the servlet's async timeout.
+ * The worker is returned to the pool while the promise is pending, but
+ * isn't evicted from it before the response has been committed.
+ * @param {Object} req the JSGI request argument
+ * @param {Object} promise the promise returned by the JSGI application
+ */
+const commitAsync = (req, promise) => {
+    const servletRequest = req.env.servletRequest;
+    const servletResponse = req.env.servletResponse;
+    const worker = engine.getCurrentWorker(null);
+    const asyncContext = startAsync(servletRequest);
+    // set once the response is committed, failed or timed out
+    const done = new AtomicBoolean(false);
+    // set once the commit has been scheduled, or the request has ended
+    // without it. Whoever sets it releases the worker for eviction.
+    const settled = new AtomicBoolean(false);
+    const finish = () => {
+        if (worker !== null) {
+            worker.exitAsyncTask();
         }
-        if (Array.isArray(values)) {
-            values.forEach((value) => servletResponse.addHeader(key, value));
+    };
+    if (worker !== null) {
+        worker.enterAsyncTask();
+    }
+    const servlet = req.env.servlet;
+    asyncContext.setTimeout(servlet instanceof JsgiServlet ?
+            Math.max(servlet.getAsyncTimeout(), 0) : 30000);
+    asyncContext.addListener(new AsyncListener({
+        "onComplete": (event) => {},
+        "onError": (event) => {
+            done.set(true);
+            if (settled.compareAndSet(false, true)) {
+                finish();
+            }
+        },
+        "onStartAsync": (event) => {},
+        "onTimeout": (event) => {
+            if (done.compareAndSet(false, true)) {
+                log.error("JSGI app didn't settle its promise in time for",
+                        servletRequest.getRequestURI());
+                try {
+                    if (!servletResponse.isCommitted()) {
+                        servletResponse.sendError(503);
+                    }
+                } finally {
+                    asyncContext.complete();
+                }
+            }
+            if (settled.compareAndSet(false, true)) {
+                finish();
+            }
         }
-    });
+    }));
+    const commit = (value, isError) => {
+        if (!done.compareAndSet(false, true)) {
+            // timed out or failed in the meantime
+            finish();
+            return;
+        }
+        try {
+            if (isError) {
+                log.error("Error in async JSGI app", value);
+                if (!servletResponse.isCommitted()) {
+                    servletResponse.sendError(500);
+                }
+            } else if (!value) {
+                throw new Error('No valid JSGI response: ' + value);
+            } else {
+                ResponseWriter.commit(servletRequest, servletResponse, value,
+                        getServlet(req));
+            }
+        } catch (error) {
+            log.error("Error committing async JSGI response", error);
+            if (!servletResponse.isCommitted()) {
+                servletResponse.sendError(500);
+            }
+        } finally {
+            asyncContext.complete();
+            finish();
+        }
+    };
+    const settle = (value, isError) => {
+        if (!settled.compareAndSet(false, true)) {
+            // timed out or failed in the meantime, the worker may be gone
+            return;
+        }
+        const current = engine.getCurrentWorker(null);
+        if (worker === null || (current !== null && current.equals(worker))) {
+            commit(value, isError);
+        } else {
+            // promise was settled outside the worker, e.g. by a Java thread
+            worker.submit(exports, commit, value, isError === true);
+        }
+    };
+    promise.then((value) => settle(value, false), (error) => settle(error, true));
 };
 
-const writeBody = (response, body, charset) => {
-    if (body && typeof body.forEach === "function") {
-        const output = response.getOutputStream();
-        const writer = (part) => {
-            if (!(part instanceof binary.Binary)) {
-                part = binary.toByteString(part, charset);
-            }
-            output.write(part);
-        };
-        body.forEach(writer);
-        if (typeof body.close === "function") {
-            body.close(writer);
+/**
+ * Returns true if the application started async processing for the request.
+ * Requests dispatched to a virtual thread by the JsgiServlet are already
+ * in async mode, but only count as async once the application claimed the
+ * async context.
+ * @param {jakarta.servlet.http.HttpServletRequest} servletRequest the servlet request
+ * @returns {Boolean} true if the application handles the response asynchronously
+ */
+const isAsyncClaimed = (servletRequest) => {
+    return typeof servletRequest.isAsyncStarted === "function"
+            && servletRequest.isAsyncStarted()
+            && servletRequest.getAttribute(JsgiServlet.ASYNC_DISPATCH) == null;
+};
+
+/**
+ * Starts async processing for the request, or claims the async context
+ * if the request has been dispatched to a virtual thread. Returns the
+ * current async context if the application already claimed it.
+ * @param {jakarta.servlet.http.HttpServletRequest} servletRequest the servlet request
+ * @returns {jakarta.servlet.AsyncContext} the async context
+ */
+const startAsync = (servletRequest) => {
+    if (servletRequest.getAttribute(JsgiServlet.ASYNC_DISPATCH) != null) {
+        servletRequest.removeAttribute(JsgiServlet.ASYNC_DISPATCH);
+        return servletRequest.getAsyncContext();
+    } else if (isAsyncClaimed(servletRequest)) {
+        // already claimed by the application, e.g. to read the request body
+        return servletRequest.getAsyncContext();
+    }
+    return servletRequest.startAsync();
+};
+
+/**
+ * Returns a function that invokes its argument on the worker of the calling
+ * thread. Used to settle promises from callbacks invoked by container threads.
+ * @returns {Function} the runner function
+ */
+const workerRunner = () => {
+    const worker = engine.getCurrentWorker(null);
+    return (fn) => {
+        const current = engine.getCurrentWorker(null);
+        if (worker === null || (current !== null && current.equals(worker))) {
+            fn();
+        } else {
+            worker.submit(exports, fn);
         }
+    };
+};
+
+/**
+ * Returns an async iterator over the request body. Each call to the
+ * iterator's `next()` method returns a promise resolved with the next chunk
+ * of the body as `ByteString`, so the body can be consumed without
+ * blocking a thread while waiting for the client. Promises are resolved on
+ * the worker handling the request.
+ *
+ * If the request body has already been buffered by the JsgiServlet (see
+ * its `buffer-input` init parameter) the chunks are read from the buffer.
+ * Otherwise the request is switched to async mode, so the application must
+ * return a promise that is settled once it has consumed the body.
+ *
+ * @param {Object} request the JSGI request object
+ * @param {Number} chunkSize the maximum size of chunks, defaults to 8192
+ * @returns {Object} an async iterator
+ * @example const {inputIterator} = require("ringo/jsgi/connector");
+ *
+ * const app = (request) => {
+ *     const iterator = inputIterator(request);
+ *     let length = 0;
+ *     const consume = () => iterator.next().then((result) => {
+ *         if (result.done) {
+ *             return response.text("Received " + length + " bytes");
+ *         }
+ *         length += result.value.length;
+ *         return consume();
+ *     });
+ *     return consume();
+ * };
+ */
+exports.inputIterator = (request, chunkSize) => {
+    chunkSize = chunkSize > 0 ? chunkSize : 8192;
+    const servletRequest = request.env.servletRequest;
+    let next;
+    if (servletRequest.getAttribute(BufferedInput.ATTRIBUTE) instanceof BufferedInput) {
+        next = () => {
+            const bytes = request.input.read(chunkSize);
+            return Promise.resolve(bytes.length > 0 ?
+                    {value: bytes, done: false} :
+                    {value: undefined, done: true});
+        };
     } else {
-        throw new Error("Response body doesn't implement forEach: " + body);
+        const run = workerRunner();
+        let asyncInput = null;
+        next = () => new Promise((resolve, reject) => {
+            if (asyncInput === null) {
+                startAsync(servletRequest);
+                asyncInput = AsyncInput.start(servletRequest, chunkSize);
+            }
+            asyncInput.read(new AsyncInput.Callback({
+                data: (bytes) => run(() => resolve({
+                    value: binary.ByteString.wrap(bytes),
+                    done: false
+                })),
+                end: () => run(() => resolve({value: undefined, done: true})),
+                error: (error) => run(() => reject(error))
+            }));
+        });
     }
-}
+    const iterator = {next: next};
+    if (typeof Symbol.asyncIterator === "symbol") {
+        iterator[Symbol.asyncIterator] = () => iterator;
+    }
+    return iterator;
+};
 
 /**
  * Creates a streaming asynchronous response. The returned response object can be used
@@ -158,16 +349,28 @@ const writeBody = (response, body, charset) => {
  * @param {Number} timeout time in milliseconds in which the async operation has to be completed;
  *                 otherwise the request is aborted by the Servlet container.
  *                 A negative value lets the async operation never time out. Defaults to 30 seconds.
+ * @param {Object} options optional object with the properties <code>highWatermark</code>
+ *                 (number of queued bytes above which <code>isWritable()</code> returns false,
+ *                 defaults to 64 KB) and <code>lowWatermark</code> (number of queued bytes
+ *                 below which <code>drain()</code> promises are resolved, defaults to a quarter
+ *                 of the high watermark)
  * @returns {Object} <code>AsyncResponse</code> object with helpers to control the response's <code>WriteListener</code>. Contains the following methods:
  *                   <dl>
  *                       <dt><code>start(status, headers)</code>
  *                       <dd>sends the status code and HTTP headers object, must be called before any write
  *                       <dt><code>write(data, encoding)</code>
  *                       <dd>adds the given data (instance of <code>String</code> or <code>Binary</code>) to output queue to be written back to the client
+ *                       <dt><code>isWritable()</code>
+ *                       <dd>returns false if more data than the high watermark is queued
+ *                       <dt><code>drain()</code>
+ *                       <dd>returns a promise resolved once the queued data fell below the low watermark,
+ *                       or rejected if the client disconnected
  *                       <dt><code>flush()</code>
  *                       <dd>forces any queued data to be written out
  *                       <dt><code>close()</code>
  *                       <dd>completes the async response and closes the write listener
+ *                       <dt><code>writer</code>
+ *                       <dd>the underlying <code>org.ringojs.jsgi.AsyncResponseWriter</code>
  *                   </dl>
  *
  * @see <a href="http://download.oracle.com/otndocs/jcp/servlet-3.0-fr-oth-JSpec/">Servlet 3.0 specification - &lt;async-supported&gt;</a>
@@ -185,130 +388,67 @@ const writeBody = (response, body, charset) => {
  * });
  *
  * return response;
+ * @example // a producer respecting backpressure
+ * const produce = () => {
+ *   while (response.isWritable() && hasMoreData()) {
+ *     response.write(nextChunk());
+ *   }
+ *   if (hasMoreData()) {
+ *     response.drain().then(produce, () => cleanUp());
+ *   } else {
+ *     response.close();
+ *   }
+ * };
  */
-exports.AsyncResponse = function(request, timeout) {
+exports.AsyncResponse = function(request, timeout, options) {
     if (!request || !request.env) {
         throw new Error("Invalid request argument: " + request);
     }
     const {servletRequest, servletResponse} = request.env;
-    const asyncContext = servletRequest.startAsync();
+    // the response may complete before the application returns
+    JsgiRequest.detach(request);
+    const asyncContext = startAsync(servletRequest);
     if (timeout != null && isFinite(timeout)) {
         asyncContext.setTimeout(timeout);
     }
-    asyncContext.addListener(new AsyncListener({
-        "onComplete": function(event) {
-            log.debug("AsyncListener.onComplete", event);
-        },
-        "onError": function(event) {
-            log.debug("AsyncListener.onError", event);
-        },
-        "onStartAsync": function(event) {
-            log.debug("AsyncListener.onStartAsync", event);
-        },
-        "onTimeout": function(event) {
-            log.debug("AsyncListener.onTimeout", event);
-            event.getAsyncContext().complete();
-        }
-    }));
-
-    const out = servletResponse.getOutputStream();
-    const writeListener = new WriteListenerImpl(asyncContext);
-    out.setWriteListener(writeListener);
+    options || (options = {});
+    const highWatermark = options.highWatermark > 0 ? options.highWatermark : 65536;
+    const lowWatermark = options.lowWatermark >= 0 ?
+            options.lowWatermark : Math.floor(highWatermark / 4);
+    const writer = AsyncResponseWriter.start(asyncContext, highWatermark, lowWatermark);
+    const run = workerRunner();
     return {
         "start": function(status, headers) {
             servletResponse.setStatus(status);
-            writeHeaders(servletResponse, headers || {});
+            ResponseWriter.writeHeaders(servletResponse, headers || {});
             return this;
         },
         "write": function(data, encoding) {
-            if (asyncContext.getHttpChannelState().isResponseCompleted()) {
-                throw new Error("AsyncResponse already closed");
-            }
-            if (!(data instanceof binary.Binary)) {
-                data = binary.toByteArray(String(data), encoding);
+            if (data instanceof binary.Binary) {
+                writer.write(data);
+            } else {
+                writer.write(String(data), encoding || null);
             }
-            writeListener.queue.add(data);
-            writeListener.onWritePossible();
             return this;
         },
+        "isWritable": function() {
+            return writer.isWritable();
+        },
+        "drain": function() {
+            return new Promise((resolve, reject) => {
+                writer.onDrain(new AsyncResponseWriter.Listener({
+                    "drained": () => run(() => resolve()),
+                    "failed": (error) => run(() => reject(error))
+                }));
+            });
+        },
         "flush": function() {
-            this.write(FLUSH);
+            writer.flush();
+            return this;
         },
         "close": function() {
-            if (asyncContext.getHttpChannelState().isResponseCompleted()) {
-                throw new Error("AsyncResponse already closed");
-            }
-            return writeListener.close();
-        }
+            writer.close();
+        },
+        "writer": writer
     };
-}
-
-/**
- * Creates a new WriteListener instance
- * @param {jakarta.servlet.AsyncContext} asyncContext The async context of the request
- * @param {jakarta.servlet.ServletOutputStream} outStream The output stream to write to
- * @returns {jakarta.servlet.WriteListener}
- * @constructor
- */
-const WriteListenerImpl = function(asyncContext) {
-    this.isReady = new AtomicBoolean(true);
-    this.isFinished = false;
-    this.queue = new ConcurrentLinkedQueue();
-    this.asyncContext = asyncContext;
-    return new WriteListener(this);
-};
-
-/**
- * Called by the servlet container or directly. Polls all byte buffers from
- * the internal queue and writes them to the response's output stream.
- */
-WriteListenerImpl.prototype.onWritePossible = function() {
-    const outStream = this.asyncContext.getResponse().getOutputStream();
-    if (this.isReady.compareAndSet(true, false)) {
-        // Note: .isReady() schedules a call for onWritePossible
-        // if it returns false
-        while (outStream.isReady() && !this.queue.isEmpty()) {
-            let data = this.queue.poll();
-            if (data === FLUSH) {
-                outStream.flush();
-            } else {
-                outStream.write(data, 0, data.length);
-            }
-            if (!outStream.isReady()) {
-                this.isReady.set(true);
-                return;
-            }
-        }
-        // at this point the queue is empty: mark this listener as ready
-        // and close the response if we're finished
-        this.isReady.set(true);
-        if (this.isFinished === true &&
-                !this.asyncContext.getHttpChannelState().isResponseCompleted()) {
-            this.asyncContext.complete();
-        }
-    }
-};
-
-/**
- * Called on every write listener error
- * @param {java.lang.Throwable} error The error
- */
-WriteListenerImpl.prototype.onError = function(error) {
-    if (!(error instanceof EofException)) {
-        log.error("WriteListener.onError", error);
-    }
-    try {
-        this.asyncContext.complete();
-    } catch (e) {
-        // ignore, what else could we do?
-    }
-};
-
-/**
- * Marks this write listener as finished and calls onWritePossible().
- * This will finish the queue and then complete the async context.
- */
-WriteListenerImpl.prototype.close = function() {
-    this.isFinished = true;
-    this.onWritePossible();
 };
@@ -5,6 +5,7 @@
 const {AsyncResponse} = require('ringo/jsgi/connector');
 const objects = require('ringo/utils/objects');
 const binary = require('binary');
+const JavaEventSourceHub = org.ringojs.jsgi.EventSourceHub;
 
 const CRLF = binary.toByteArray('\r\n', 'utf-8');
 const EVENT_FIELD = binary.toByteArray('event: ', 'utf-8');
@@ -152,6 +153,135 @@ exports.EventSource = function(request) {
    return this;
 };
 
+/**
+ * An EventSourceHub distributes events to many event stream connections.
+ * Clients subscribe to a named topic, and each event published to the
+ * topic is serialized once and queued to all of its subscribers from Java,
+ * without blocking the publishing worker.
+ *
+ * Heartbeats for all connections are sent by a single shared timer, and
+ * only to connections that haven't received an event within the heartbeat
+ * interval. Each topic retains its most recent events, so clients
+ * reconnecting with a `Last-Event-ID` header receive the events they
+ * missed. Event ids are assigned by the hub and increase per topic.
+ * Topics without connections are removed once their newest event is
+ * older than the retention time.
+ *
+ * @example
+ *
+ *    const hub = new EventSourceHub({heartbeat: 30});
+ *
+ *    exports.app = (request) => {
+ *       return hub.connect(request, "prices");
+ *    };
+ *
+ *    hub.publish("prices", {"symbol": "ACME", "price": 42}, "price");
+ *
+ * @param {Object} options Optional options object with the following
+ * properties:
+ *
+ *    * **heartbeat**: the heartbeat interval in seconds (default: 15,
+ *      0 disables heartbeats)
+ *    * **history**: the number of events retained per topic for replay
+ *      (default: 100)
+ *    * **maxPending**: the maximum number of bytes queued for a connection
+ *      before it is closed (default: 1 MB, -1 disables the limit)
+ *    * **retention**: the time in seconds a topic without connections and
+ *      its events are retained after its last event (default: 300)
+ * @see #EventSource
+ */
+exports.EventSourceHub = function(options) {
+   options = options || {};
+   const heartbeat = options.heartbeat != null && !isNaN(options.heartbeat) ?
+         options.heartbeat * 1000 : JavaEventSourceHub.DEFAULT_HEARTBEAT;
+   const retention = options.retention != null && !isNaN(options.retention) ?
+         options.retention * 1000 : JavaEventSourceHub.DEFAULT_RETENTION;
+   const hub = new JavaEventSourceHub(heartbeat,
+         options.history != null ? options.history : JavaEventSourceHub.DEFAULT_HISTORY_SIZE,
+         options.maxPending != null ? options.maxPending : JavaEventSourceHub.DEFAULT_MAX_PENDING,
+         retention);
+
+   /**
+    * Start an event stream response for the request and subscribe it to
+    * a topic. If the request has a `Last-Event-ID` header, the retained
+    * events following that event are sent first.
+    * @param {JSGIRequest} request The request
+    * @param {String} topic The topic name
+    * @param {Object} headers Additional headers (optional)
+    * @returns {AsyncResponse} The async response to return from the JSGI app
+    */
+   this.connect = function(request, topic, headers) {
+      const response = new AsyncResponse(request, 0);
+      response.start(200, objects.merge(headers || {}, {
+         'Content-Type': 'text/event-stream; charset=utf-8',
+         'Cache-Control': 'no-cache'
+      }));
+      response.flush();
+      hub.subscribe(String(topic), response.writer,
+            request.headers['last-event-id'] || null);
+      return response;
+   };
+
+   /**
+    * Publish an event to all connections subscribed to a topic. Data that
+    * is not a string is serialized as JSON.
+    * @param {String} topic The topic name
+    * @param {String|Object} data The event data
+    * @param {String} name The event name (optional)
+    * @returns {Number} The id of the event
+    */
+   this.publish = function(topic, data, name) {
+      if (typeof(data) !== 'string') {
+         data = JSON.stringify(data);
+      }
+      return hub.publish(String(topic), name != null ? String(name) : null, data);
+   };
+
+   /**
+    * Returns the number of connections subscribed to a topic, or to
+    * any topic if no topic name is passed.
+    * @param {String} topic The topic name (optional)
+    * @returns {Number} The number of connections
+    */
+   this.subscriberCount = function(topic) {
+      return topic != null ?
+            hub.getSubscriberCount(String(topic)) : hub.getSubscriberCount();
+   };
+
+   /**
+    * Stop sending heartbeats and close all connections.
+    */
+   this.close = function() {
+      hub.close();
+   };
+
+   /**
+    * The metrics of the hub: `topics` (the number of topics), `events`
+    * (the number of published events), `deliveries` (the number of events
+    * sent to connections), `bytes` (the total size of sent events),
+    * `replayed` (the number of events replayed to reconnecting clients),
+    * `heartbeats` and `evictions` (the number of connections closed for
+    * not keeping up).
+    * @name metrics
+    * @type {Object}
+    */
+   Object.defineProperty(this, 'metrics', {
+      get: function() {
+         return {
+            'topics': hub.getTopicCount(),
+            'events': hub.getEvents(),
+            'deliveries': hub.getDeliveries(),
+            'bytes': hub.getBytes(),
+            'replayed': hub.getReplayed(),
+            'heartbeats': hub.getHeartbeats(),
+            'evictions': hub.getEvictions()
+         };
+      }
+   });
+
+   return this;
+};
+
 /**
  * Static helper to check whether request accepts eventstream.
  *
@@ -9,6 +9,7 @@ const {mimeType} = require("ringo/mime");
 const io = require("io");
 const binary = require("binary");
 const {AsyncResponse} = require("./connector");
+const {RangeWriter} = org.ringojs.jsgi;
 
 const HYPHEN  = new binary.ByteString("-", "ASCII");
 const CRLF = new binary.ByteString("\r\n", "ASCII");
@@ -574,7 +575,11 @@ Object.defineProperty(JsgiResponse.prototype, "notModified", {
 });
 
 /**
- * A response representing a static resource.
+ * A response representing a static resource. The body is sent by the
+ * connector directly from the file, or from a memory-mapped buffer for
+ * large files, unless a middleware replaces it. The connector adds ETag and
+ * Last-Modified headers derived from the body's `digest()` and answers
+ * conditional requests for unchanged resources with status 304.
  * @param {String|Resource} resource the resource to serve
  * @param {String} contentType optional MIME type. If not defined,
  *         the MIME type is detected from the file name extension.
@@ -593,6 +598,8 @@ exports.static = function (resource, contentType) {
             "content-type": contentType || mimeType(resource.name)
         },
         body: {
+            // lets the connector send the resource without going through forEach
+            resource: resource,
             digest: function() {
                 return resource.lastModified().toString(36)
                     + resource.length.toString(36);
@@ -612,6 +619,9 @@ exports.static = function (resource, contentType) {
 /**
  * An async response representing a resource as a single or multiple part response.
  * Multiple or overlapping byte ranges are coalesced into a canonical response range.
+ * Ranges of files and resources are sent from Java as memory-mapped slices
+ * or by transferring them from the file channel, without occupying the worker
+ * while the body is written. Other streams are copied through JavaScript.
  *
  * @param {Object} request a JSGI request object
  * @param {String|Resource|Stream} representation path of a file as string, a resource, or a readable <a href="../../../io/">io.Stream</a>
@@ -635,7 +645,8 @@ exports.range = function (request, representation, size, contentType, timeout, m
         return new JsgiResponse().setStatus(400).text("Method not allowed.");
     }
 
-    let stream;
+    let resource = null;
+    let stream = null;
     if (typeof representation == "string") {
         let localPath = fs.absolute(representation);
         if (!fs.exists(localPath) || !fs.isReadable(localPath)) {
@@ -650,26 +661,25 @@ exports.range = function (request, representation, size, contentType, timeout, m
             }
         }
 
-        stream = fs.openRaw(localPath, "r");
+        resource = new org.ringojs.repository.FileResource(localPath);
     } else if (representation instanceof org.ringojs.repository.Resource) {
-        stream = new io.Stream(representation.getInputStream());
+        resource = representation;
         if (size == null && representation.getLength != null) {
             size = representation.getLength();
         }
     } else if (representation instanceof io.Stream) {
         stream = representation;
+        if (!stream.readable()) {
+            throw new Error("Stream must be readable!");
+        }
     } else {
         throw new Error("Invalid representation! Must be a path to a file, a resource, or a stream.");
     }
 
-    if (!stream.readable()) {
-        throw new Error("Stream must be readable!");
-    }
-
     const BOUNDARY = new binary.ByteString("sjognir_doro_" +
         java.lang.System.identityHashCode(this).toString(36) +
         java.lang.System.identityHashCode(request).toString(36) +
-        java.lang.System.identityHashCode(stream).toString(36) +
+        java.lang.System.identityHashCode(representation).toString(36) +
         (java.lang.System.currentTimeMillis() % 100000).toString(36) +
         (Math.random().toFixed(10).slice(2)), "ASCII");
 
@@ -713,6 +723,26 @@ exports.range = function (request, representation, size, contentType, timeout, m
         servletResponse.setContentLengthLong(ranges[0][1] - ranges[0][0] + 1);
     }
 
+    const skipResponse = {
+        status: -1,
+        headers: {
+            "x-jsgi-skip-response": "true"
+        },
+        body: {}
+    };
+
+    // files and mapped zip entries are sent by the RangeWriter without
+    // copying the content through JavaScript
+    if (resource !== null && RangeWriter.send(request.env.servletRequest,
+            servletResponse, resource, ranges.reduce((flat, range) => flat.concat(range), []),
+            size != null ? size : -1,
+            contentType, BOUNDARY.decodeToString("ASCII"))) {
+        return skipResponse;
+    }
+    if (stream === null) {
+        stream = new io.Stream(resource.getInputStream());
+    }
+
     const outStream = servletResponse.getOutputStream();
     const responseBufferSize = Math.max(request.env.servletResponse.getBufferSize() - 70, 8192);
 
@@ -778,11 +808,5 @@ exports.range = function (request, representation, size, contentType, timeout, m
         // no problem, remote client closed connection ...
     }
 
-    return {
-        status: -1,
-        headers: {
-            "x-jsgi-skip-response": "true"
-        },
-        body: {}
-    };
+    return skipResponse;
 };
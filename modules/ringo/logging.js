@@ -28,8 +28,9 @@
 const strings = require('ringo/utils/strings');
 const {EventEmitter} = require('ringo/events');
 
-// Use singleton to share flag across workers to avoid unwanted reconfiguration
-let configured = module.singleton("configured");
+// Use singleton to share flag across workers to avoid unwanted reconfiguration.
+// The flag is held in an object so the module scope can be shared by all workers
+const state = {configured: module.singleton("configured")};
 
 const isVerbose = require('ringo/engine').getRhinoEngine().getConfig().isVerbose();
 
@@ -175,7 +176,7 @@ const setConfig = exports.setConfig = function(resource) {
     const logContext = org.apache.logging.log4j.LogManager.getContext(false);
     logContext.setConfigLocation(new java.net.URI(resource.url));
     logContext.updateLoggers();
-    configured = module.singleton("configured", () => true);
+    state.configured = module.singleton("configured", () => true);
 };
 
 /**
@@ -275,7 +276,7 @@ const JdkLogger = function(name) {
  */
 const Log4jLogger = function(name) {
 
-    if (!configured) {
+    if (!state.configured) {
         setConfig(getResource('config/log4j2.properties'));
     }
     const log = org.apache.logging.log4j.LogManager.getLogger(name);
@@ -310,7 +311,7 @@ const Log4jLogger = function(name) {
  */
 const Slf4jLogger = function(name) {
 
-    if (!configured && typeof org.apache.logging.log4j.LogManager.getContext === "function") {
+    if (!state.configured && typeof org.apache.logging.log4j.LogManager.getContext === "function") {
         setConfig(getResource('config/log4j2.properties'));
     }
     const log = org.slf4j.LoggerFactory.getLogger(name);
@@ -6,7 +6,9 @@
  */
 
 const {System} = java.lang;
-let stdin, stdout, stderr;
+// the lazily created streams, held in an object so the module scope
+// can be shared by all workers
+const streams = {};
 
 /**
  * A [TextStream](../io/#TextStream) to read from stdin.
@@ -14,14 +16,14 @@ let stdin, stdout, stderr;
  */
 Object.defineProperty(exports, "stdin", {
     get: () => {
-        if (!stdin) {
+        if (!streams.stdin) {
             const {Stream, TextStream} = require('io');
-            stdin = new TextStream(new Stream(System['in']));
+            streams.stdin = new TextStream(new Stream(System['in']));
         }
-        return stdin;
+        return streams.stdin;
     },
     set: (value) => {
-        stdin = value;
+        streams.stdin = value;
     },
     configurable: true,
     enumerable: true
@@ -33,14 +35,14 @@ Object.defineProperty(exports, "stdin", {
  */
 Object.defineProperty(exports, "stdout", {
     get: () => {
-        if (!stdout) {
+        if (!streams.stdout) {
             const {Stream, TextStream} = require('io');
-            stdout = new TextStream(new Stream(System.out));
+            streams.stdout = new TextStream(new Stream(System.out));
         }
-        return stdout;
+        return streams.stdout;
     },
     set: (value) => {
-        stdout = value;
+        streams.stdout = value;
     },
     configurable: true,
     enumerable: true
@@ -52,14 +54,14 @@ Object.defineProperty(exports, "stdout", {
  */
 Object.defineProperty(exports, "stderr", {
     get: () => {
-        if (!stderr) {
+        if (!streams.stderr) {
             const {Stream, TextStream} = require('io');
-            stderr = new TextStream(new Stream(System.err));
+            streams.stderr = new TextStream(new Stream(System.err));
         }
-        return stderr;
+        return streams.stderr;
     },
     set: (value) => {
-        stderr = value;
+        streams.stderr = value;
     },
     configurable: true,
     enumerable: true
@@ -0,0 +1,120 @@
+package org.ringojs.benchmark;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.ringojs.wrappers.Binary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures searching, splitting and copying 1 MB binaries, the operations
+ * used to parse multipart uploads. The content is random text with a line
+ * break every 1 KB and a multipart boundary near the end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryBenchmark {
+
+    static final int SIZE = 1024 * 1024;
+    static final String BOUNDARY = "\r\n--ringo-boundary-7d93b2a1e5";
+
+    @Param({"ByteString", "ByteArray"})
+    public String type;
+
+    Context cx;
+    Binary binary;
+    Binary boundary;
+    Binary crlf;
+    Integer newline;
+
+    @Setup
+    public void setup() throws Exception {
+        cx = Context.enter();
+        Scriptable scope = cx.initStandardObjects();
+        ScriptableObject.defineClass(scope, Binary.class);
+        byte[] bytes = new byte[SIZE];
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(26));
+        }
+        for (int i = 1022; i < SIZE; i += 1024) {
+            bytes[i] = '\r';
+            bytes[i + 1] = '\n';
+        }
+        byte[] b = BOUNDARY.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(b, 0, bytes, SIZE - 512, b.length);
+        binary = wrap(scope, type, bytes);
+        boundary = wrap(scope, "ByteString", b);
+        crlf = wrap(scope, "ByteString", new byte[] {'\r', '\n'});
+        newline = Integer.valueOf('\n');
+    }
+
+    @TearDown
+    public void tearDown() {
+        Context.exit();
+    }
+
+    private static Binary wrap(Scriptable scope, String type, byte[] bytes) {
+        Scriptable ctor = (Scriptable) ScriptableObject.getProperty(scope, type);
+        Function wrap = (Function) ScriptableObject.getProperty(ctor, "wrap");
+        Context cx = Context.getCurrentContext();
+        return (Binary) wrap.call(cx, scope, ctor,
+                new Object[] {Context.javaToJS(bytes, scope)});
+    }
+
+    @Benchmark
+    public int indexOfBoundary() {
+        return binary.indexOf(boundary, Undefined.instance, Undefined.instance);
+    }
+
+    @Benchmark
+    public int lastIndexOfBoundary() {
+        return binary.lastIndexOf(boundary, 0, SIZE - 1024);
+    }
+
+    @Benchmark
+    public int indexOfByte() {
+        int count = 0;
+        int index = 0;
+        // indexOf clamps the start index, so stop at the end explicitly
+        while (index < SIZE
+                && (index = binary.indexOf(newline, index, Undefined.instance)) > -1) {
+            count += 1;
+            index += 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long splitLines() {
+        return ((NativeArray) binary.split(crlf, Undefined.instance)).getLength();
+    }
+
+    @Benchmark
+    public Object sliceAndConcat() {
+        Object slice = binary.slice(SIZE / 4, SIZE / 2);
+        return Binary.concat(cx, binary, new Object[] {slice}, null);
+    }
+}
@@ -0,0 +1,101 @@
+package org.ringojs.benchmark;
+
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.repository.FileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of requiring already loaded modules with reloading
+ * enabled. The module graph consists of 500 modules, each requiring up to
+ * three others, with many modules shared between several dependents.
+ * Each invocation requires all modules once, like a request handler
+ * touching a large application would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ModuleRequireBenchmark {
+
+    static final int MODULES = 500;
+
+    @Param({"true", "false"})
+    public boolean watchFiles;
+
+    Path directory;
+    RhinoEngine engine;
+    RingoWorker worker;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty("ringo.watchfiles", String.valueOf(watchFiles));
+        directory = Files.createTempDirectory("ringo-modules");
+        for (int i = 0; i < MODULES; i++) {
+            try (Writer writer = Files.newBufferedWriter(
+                    directory.resolve("m" + i + ".js"), StandardCharsets.UTF_8)) {
+                for (int dep : new int[] {2 * i + 1, 2 * i + 2, 3 * i + 1}) {
+                    if (dep < MODULES) {
+                        writer.write("require('./m" + dep + "');\n");
+                    }
+                }
+                writer.write("exports.value = " + i + ";\n");
+            }
+        }
+        try (Writer writer = Files.newBufferedWriter(
+                directory.resolve("main.js"), StandardCharsets.UTF_8)) {
+            writer.write("exports.requireAll = function() {\n"
+                    + "    for (let i = 0; i < " + MODULES + "; i++) {\n"
+                    + "        require('./m' + i);\n"
+                    + "    }\n"
+                    + "};\n");
+        }
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home),
+                new String[] {directory.toString()}, new String[] {"modules"});
+        config.setReloading(true);
+        engine = new RhinoEngine(config, null);
+        worker = engine.getWorker();
+        // load all modules once
+        worker.invoke("main", "requireAll");
+    }
+
+    @Benchmark
+    public Object requireAll() throws Exception {
+        return worker.invoke("main", "requireAll");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        worker.release();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+}
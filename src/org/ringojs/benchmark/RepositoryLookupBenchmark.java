@@ -0,0 +1,85 @@
+package org.ringojs.benchmark;
+
+import org.ringojs.repository.FileRepository;
+import org.ringojs.repository.Repository;
+import org.ringojs.repository.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures concurrent resource lookups on a shared module repository, as
+ * done by all workers resolving modules and static resources. Setting
+ * <code>locked</code> to true serializes lookups on the root repository
+ * the way <code>AbstractRepository.getResource()</code> used to, which
+ * allows comparing contention with and without the lock in a single run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class RepositoryLookupBenchmark {
+
+    static final String[] PATHS = {
+        "ringo/utils/http.js",
+        "ringo/utils/strings.js",
+        "ringo/jsgi/connector.js",
+        "ringo/jsgi/response.js",
+        "ringo/httpserver/index.js",
+        "ringo/logging.js",
+        "io.js",
+        "fs.js"
+    };
+
+    @Param({"false", "true"})
+    public boolean locked;
+
+    Repository repository;
+
+    @Setup
+    public void setup() throws Exception {
+        String home = System.getProperty("ringo.home", ".");
+        repository = new FileRepository(new File(home, "modules"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleThread(Blackhole blackhole) throws Exception {
+        lookup(blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void eightThreads(Blackhole blackhole) throws Exception {
+        lookup(blackhole);
+    }
+
+    private void lookup(Blackhole blackhole) throws Exception {
+        for (String path : PATHS) {
+            Resource resource;
+            if (locked) {
+                synchronized (repository) {
+                    resource = repository.getResource(path);
+                }
+            } else {
+                resource = repository.getResource(path);
+            }
+            blackhole.consume(resource);
+        }
+    }
+}
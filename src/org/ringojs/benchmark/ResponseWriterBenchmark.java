@@ -0,0 +1,166 @@
+package org.ringojs.benchmark;
+
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.repository.FileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares committing a JSGI response with the Java ResponseWriter to the
+ * JavaScript implementation previously used by the JSGI connector. The
+ * servlet response is a stub that discards all output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ResponseWriterBenchmark {
+
+    static final String MODULE =
+            "const {Headers, getMimeParameter} = require('ringo/utils/http');\n"
+            + "const binary = require('binary');\n"
+            + "const {ResponseWriter} = org.ringojs.jsgi;\n"
+            + "const text = 'Hello W\u00f6rld! '.repeat(40);\n"
+            + "const bytes = binary.toByteString(text);\n"
+            + "const bodies = {\n"
+            + "    strings: () => [text, text, text, text],\n"
+            + "    binary: () => [bytes, bytes, bytes, bytes],\n"
+            + "    forEach: () => ({forEach: (fn) => [text, text, text, text].forEach(fn)})\n"
+            + "};\n"
+            + "const result = (type) => ({\n"
+            + "    status: 200,\n"
+            + "    headers: {\n"
+            + "        'Content-Type': 'text/html; charset=utf-8',\n"
+            + "        'Cache-Control': 'no-cache',\n"
+            + "        'Set-Cookie': 'a=1\\nb=2'\n"
+            + "    },\n"
+            + "    body: bodies[type]()\n"
+            + "});\n"
+            // the JavaScript implementation replaced by ResponseWriter
+            + "exports.script = (response, type) => {\n"
+            + "    const {status, headers, body} = result(type);\n"
+            + "    if (!response.isCommitted() && !Headers(headers).contains('X-JSGI-Skip-Response')) {\n"
+            + "        response.setStatus(status);\n"
+            + "        Object.keys(headers).forEach(key => {\n"
+            + "            let values = headers[key];\n"
+            + "            if (typeof values === 'string') {\n"
+            + "                values = values.split('\\n');\n"
+            + "            }\n"
+            + "            if (Array.isArray(values)) {\n"
+            + "                values.forEach((value) => response.addHeader(key, value));\n"
+            + "            }\n"
+            + "        });\n"
+            + "        const charset = getMimeParameter(headers.get('Content-Type'), 'charset');\n"
+            + "        const output = response.getOutputStream();\n"
+            + "        body.forEach((part) => {\n"
+            + "            if (!(part instanceof binary.Binary)) {\n"
+            + "                part = binary.toByteString(part, charset);\n"
+            + "            }\n"
+            + "            output.write(part);\n"
+            + "        });\n"
+            + "    }\n"
+            + "};\n"
+            + "exports.java = (response, type) => {\n"
+            + "    ResponseWriter.commit(null, response, result(type));\n"
+            + "};\n";
+
+    @Param({"strings", "binary", "forEach"})
+    public String body;
+
+    Path directory;
+    RhinoEngine engine;
+    RingoWorker worker;
+    HttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("ringo-response");
+        try (Writer writer = Files.newBufferedWriter(
+                directory.resolve("commit.js"), StandardCharsets.UTF_8)) {
+            writer.write(MODULE);
+        }
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home),
+                new String[] {directory.toString()}, new String[] {"modules"});
+        engine = new RhinoEngine(config, null);
+        worker = engine.getWorker();
+        response = createResponse();
+    }
+
+    @Benchmark
+    public Object script() throws Exception {
+        return worker.invoke("commit", "script", response, body);
+    }
+
+    @Benchmark
+    public Object java() throws Exception {
+        return worker.invoke("commit", "java", response, body);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        worker.release();
+        Files.delete(directory.resolve("commit.js"));
+        Files.delete(directory);
+    }
+
+    static HttpServletResponse createResponse() {
+        final ServletOutputStream output = new ServletOutputStream() {
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener writeListener) {}
+
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                ResponseWriterBenchmark.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return output;
+                        case "isCommitted":
+                        case "containsHeader":
+                            return Boolean.FALSE;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "HttpServletResponse";
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,78 @@
+package org.ringojs.benchmark;
+
+import org.mozilla.javascript.Function;
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.repository.FileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of workers running on platform threads with
+ * workers running on virtual threads. Each batch submits a function that
+ * blocks for a few milliseconds, simulating a slow upstream call, to the
+ * given number of concurrent workers and waits for all of them to finish.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WorkerThreadsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"100", "2000"})
+    public int concurrency;
+
+    RhinoEngine engine;
+    Function function;
+
+    @Setup
+    public void setup() throws Exception {
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home));
+        config.setReloading(false);
+        config.setVirtualThreads(virtualThreads);
+        engine = new RhinoEngine(config, null);
+        function = (Function) engine.evaluateExpression(
+                "(function() { java.lang.Thread.sleep(5); })");
+    }
+
+    @Benchmark
+    public void blockingCalls() throws Exception {
+        List<RingoWorker> workers = new ArrayList<>(concurrency);
+        List<Future<Object>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            RingoWorker worker = engine.getWorker();
+            workers.add(worker);
+            futures.add(worker.submit(engine.getScope(), function));
+        }
+        for (Future<Object> future : futures) {
+            future.get();
+        }
+        // shut down event loops so each batch pays for thread creation,
+        // like a traffic spike hitting cold workers would
+        for (RingoWorker worker : workers) {
+            worker.shutdown();
+            worker.release();
+        }
+    }
+}
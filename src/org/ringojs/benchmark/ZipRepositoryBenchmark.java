@@ -0,0 +1,105 @@
+package org.ringojs.benchmark;
+
+import org.ringojs.repository.Resource;
+import org.ringojs.repository.ZipRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures listing and reading the resources of a zip repository with
+ * 50 directories of 20 modules each. The <code>stored</code> parameter
+ * selects whether entries are stored uncompressed, which allows reading
+ * them from memory-mapped buffers, or deflated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ZipRepositoryBenchmark {
+
+    @Param({"true", "false"})
+    public boolean stored;
+
+    File file;
+    ZipRepository repository;
+    Resource[] resources;
+    byte[] buffer = new byte[8192];
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("ringo-modules", ".jar");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("exports.value").append(i).append(" = ").append(i).append(";\n");
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int d = 0; d < 50; d++) {
+                out.putNextEntry(new ZipEntry("lib" + d + "/"));
+                out.closeEntry();
+                for (int m = 0; m < 20; m++) {
+                    ZipEntry entry = new ZipEntry("lib" + d + "/m" + m + ".js");
+                    if (stored) {
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(bytes.length);
+                        entry.setCompressedSize(bytes.length);
+                        entry.setCrc(crc.getValue());
+                    }
+                    out.putNextEntry(entry);
+                    out.write(bytes);
+                    out.closeEntry();
+                }
+            }
+        }
+        repository = new ZipRepository(file);
+        resources = repository.getResources(true);
+    }
+
+    @Benchmark
+    public void listResources(Blackhole blackhole) throws IOException {
+        blackhole.consume(repository.getResources(true));
+    }
+
+    @Benchmark
+    public long readResources() throws IOException {
+        long total = 0;
+        for (Resource resource : resources) {
+            try (InputStream in = resource.getInputStream()) {
+                for (int r = in.read(buffer); r > -1; r = in.read(buffer)) {
+                    total += r;
+                }
+            }
+        }
+        return total;
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+}
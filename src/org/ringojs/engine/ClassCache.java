@@ -0,0 +1,250 @@
+package org.ringojs.engine;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.SecurityController;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.ringojs.repository.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache for the Java classes generated by Rhino when compiling
+ * JavaScript modules. Cached classes are stored in a directory keyed by
+ * resource path and the compiler settings that affect the generated code,
+ * such as optimization level, language version, strict mode and debug
+ * information, and are only reused if the checksum
+ * and length of the resource still match the ones they were compiled from.
+ * This allows a restarted process to skip compilation of unchanged modules.
+ */
+public class ClassCache {
+
+    private final File directory;
+
+    private static final int MAGIC = 0x52494e47;  // "RING"
+    private static final int FORMAT_VERSION = 1;
+    private static final String IMPLEMENTATION_VERSION =
+            String.valueOf(Context.class.getPackage().getImplementationVersion());
+
+    private static final Logger log = Logger.getLogger(ClassCache.class.getName());
+
+    /**
+     * Create a class cache storing its files in the given directory.
+     * The directory is created if it does not exist.
+     * @param directory the cache directory
+     * @throws IOException if the directory does not exist and can't be created
+     */
+    public ClassCache(File directory) throws IOException {
+        this.directory = directory.getAbsoluteFile();
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Could not create class cache directory " + directory);
+        }
+    }
+
+    /**
+     * Get the directory this cache stores its files in.
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Load a compiled script for the given resource, either from the cache
+     * if an up-to-date entry exists, or by compiling the resource and storing
+     * the generated classes in the cache.
+     * @param cx the current context
+     * @param resource the script resource
+     * @param charset the charset to read the resource with
+     * @param securityDomain the security domain, or null
+     * @return the compiled script
+     * @throws IOException if the resource could not be read
+     */
+    public Script load(Context cx, Resource resource, String charset,
+                       Object securityDomain) throws IOException {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(cx);
+        File file = getCacheFile(resource, env);
+        long checksum = resource.getChecksum();
+        long length = resource.getLength();
+        Object[] classes = null;
+        if (file.isFile()) {
+            try {
+                classes = read(file, checksum, length);
+            } catch (IOException iox) {
+                log.log(Level.FINE, "Discarding unreadable class cache file " + file, iox);
+            }
+        }
+        if (classes == null) {
+            classes = compile(env, resource, charset, file);
+            try {
+                write(file, checksum, length, classes);
+            } catch (IOException iox) {
+                log.log(Level.WARNING, "Could not write class cache file " + file, iox);
+            }
+        } else if (log.isLoggable(Level.FINE)) {
+            log.fine("Loaded " + resource + " from class cache");
+        }
+        return define(classes, securityDomain);
+    }
+
+    /**
+     * Remove all files from the cache directory.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".classes") && !file.delete()) {
+                    log.warning("Could not delete class cache file " + file);
+                }
+            }
+        }
+    }
+
+    private Object[] compile(CompilerEnvirons env, Resource resource,
+                             String charset, File file) throws IOException {
+        ClassCompiler compiler = new ClassCompiler(env);
+        // read content first so the line number reflects shebang stripping
+        String source = resource.getContent(charset);
+        String name = file.getName();
+        String className = "org.ringojs.cache."
+                + name.substring(0, name.length() - ".classes".length());
+        return compiler.compileToClassFiles(source, resource.getRelativePath(),
+                resource.getLineNumber(), className);
+    }
+
+    private Script define(Object[] classes, Object securityDomain) {
+        GeneratedClassLoader loader =
+                SecurityController.createLoader(null, securityDomain);
+        Class<?> mainClass = null;
+        for (int i = 0; i < classes.length; i += 2) {
+            Class<?> clazz = loader.defineClass((String) classes[i],
+                    (byte[]) classes[i + 1]);
+            loader.linkClass(clazz);
+            if (i == 0) {
+                mainClass = clazz;
+            }
+        }
+        if (mainClass == null || !Script.class.isAssignableFrom(mainClass)) {
+            throw new ClassCastException("Module must be a Rhino script class");
+        }
+        try {
+            return (Script) mainClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private Object[] read(File file, long checksum, long length)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != FORMAT_VERSION
+                    || !IMPLEMENTATION_VERSION.equals(in.readUTF())
+                    || in.readLong() != checksum
+                    || in.readLong() != length) {
+                return null;
+            }
+            int count = in.readInt();
+            Object[] classes = new Object[count * 2];
+            for (int i = 0; i < classes.length; i += 2) {
+                classes[i] = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes[i + 1] = bytes;
+            }
+            return classes;
+        }
+    }
+
+    private void write(File file, long checksum, long length, Object[] classes)
+            throws IOException {
+        // write to a temporary file and move it in place so concurrent
+        // processes sharing the cache never see a partially written file
+        File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(IMPLEMENTATION_VERSION);
+                out.writeLong(checksum);
+                out.writeLong(length);
+                out.writeInt(classes.length / 2);
+                for (int i = 0; i < classes.length; i += 2) {
+                    byte[] bytes = (byte[]) classes[i + 1];
+                    out.writeUTF((String) classes[i]);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private File getCacheFile(Resource resource, CompilerEnvirons env) {
+        String key = resource.getPath()
+                + '\n' + env.getOptimizationLevel()
+                + '\n' + env.getLanguageVersion()
+                + '\n' + env.isStrictMode()
+                + '\n' + env.isGenerateDebugInfo()
+                + '\n' + env.isGeneratingSource()
+                + '\n' + env.isGenerateObserverCount()
+                + '\n' + env.isXmlAvailable()
+                + '\n' + env.isReservedKeywordAsIdentifier()
+                + '\n' + env.isAllowMemberExprAsFunctionName()
+                + '\n' + env.reportWarningAsError();
+        String name = sanitize(resource.getBaseName()) + '_' + digest(key);
+        return new File(directory, name + ".classes");
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder b = new StringBuilder(name.length() + 1);
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            b.append('_');
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            b.append(Character.isJavaIdentifierPart(c) && c < 128 ? c : '_');
+        }
+        return b.toString();
+    }
+
+    private static String digest(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder b = new StringBuilder(hash.length * 2);
+            for (byte h : hash) {
+                b.append(Character.forDigit((h >> 4) & 0xf, 16))
+                 .append(Character.forDigit(h & 0xf, 16));
+            }
+            return b.toString();
+        } catch (NoSuchAlgorithmException nsa) {
+            throw new RuntimeException(nsa);
+        }
+    }
+}
@@ -63,6 +63,11 @@ class JsModuleLoader extends ModuleLoader {
                 InputStream aStream = null;
                 InputStreamReader aReader = null;
                 try {
+                    // use persistent class cache for compiled scripts if enabled
+                    ClassCache classCache = engine.getClassCache();
+                    if (classCache != null && cx.getOptimizationLevel() > -1) {
+                        return classCache.load(cx, resource, charset, securityDomain);
+                    }
                     aStream = resource.getInputStream();
                     aReader = new InputStreamReader(aStream, charset);
                     return cx.compileReader(aReader,
@@ -29,7 +29,7 @@ public class ModuleScope extends ImporterTopLevel {
     private final Trackable source;
     private final Repository repository;
     private final String id;
-    private final RingoWorker worker;
+    private RingoWorker worker;
     private long checksum;
     private Scriptable exportsObject;
     private final Scriptable moduleObject;
@@ -68,10 +68,31 @@ public class ModuleScope extends ImporterTopLevel {
         return repository;
     }
 
+    /**
+     * Get the worker this module scope belongs to.
+     * @return the worker, or null if this is a shared module scope
+     */
     public RingoWorker getWorker() {
         return worker;
     }
 
+    /**
+     * Returns true if this module scope is shared by all workers.
+     * @return true if the module scope is shared
+     */
+    public boolean isShared() {
+        return worker == null && isSealed();
+    }
+
+    /**
+     * Detach this module scope from the worker that evaluated it and seal
+     * it so it can safely be used by all workers.
+     */
+    protected void share() {
+        worker = null;
+        sealObject();
+    }
+
     public void reset() {
         Scriptable exports = new ExportsObject();
         defineProperty("exports", exports,  DONTENUM);
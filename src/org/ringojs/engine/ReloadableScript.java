@@ -16,6 +16,8 @@
 
 package org.ringojs.engine;
 
+import org.ringojs.repository.ChangeListener;
+import org.ringojs.repository.FileResource;
 import org.ringojs.repository.Resource;
 import org.mozilla.javascript.*;
 import org.mozilla.javascript.tools.ToolErrorReporter;
@@ -29,6 +31,7 @@ import java.security.CodeSource;
 import java.security.CodeSigner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +49,15 @@ public class ReloadableScript {
     final ModuleLoader loader;
     // true if we should reload modified source files
     final boolean reloading;
+    // true if changes of the resource are reported by the file watcher
+    final boolean watched;
+    // set by the file watcher when the resource may have changed
+    volatile boolean changed = false;
+    // the listener registered with the resource if it is watched
+    private final ChangeListener listener = s -> {
+        changed = true;
+        generation.incrementAndGet();
+    };
     // the checksum of the underlying resource or repository when
     // the script was last compiled
     long checksum = -1;
@@ -56,10 +68,17 @@ public class ReloadableScript {
     // to recompile if the underlying resource or repository hasn't changed
     Exception exception = null;
     List<ScriptError> errors;
+    // the module scope shared by all workers, if the module is shareable
+    volatile ModuleScope sharedScope;
     // Set of direct module dependencies
     private final CopyOnWriteArraySet<ReloadableScript> dependencies = new CopyOnWriteArraySet<>();
+    // checksum including dependencies, valid as long as the generation matches
+    private volatile Checksum memoizedChecksum;
     // the static script cache
     static final ScriptCache cache = new ScriptCache();
+    // incremented whenever a watched resource changes or a dependency is added,
+    // invalidating all memoized checksums
+    static final AtomicLong generation = new AtomicLong();
 
     private static final Logger log = Logger.getLogger(ReloadableScript.class.getName());
 
@@ -76,6 +95,21 @@ public class ReloadableScript {
         this.loader = engine.getModuleLoader(source);
         reloading = engine.getConfig().isReloading();
         moduleName = source.getModuleName();
+        // scripts for missing resources are not cached, so don't watch them
+        watched = reloading && source instanceof FileResource
+                && ((FileResource) source).exists()
+                && ((FileResource) source).addChangeListener(listener);
+    }
+
+    /**
+     * Stop watching the script's resource for changes. This must be called
+     * when the script is discarded, as the resource keeps a reference to
+     * its change listeners.
+     */
+    public void discard() {
+        if (watched) {
+            ((FileResource) resource).removeChangeListener(listener);
+        }
     }
 
     /**
@@ -110,7 +144,7 @@ public class ReloadableScript {
         }
         // recompile if neither script or exception are available, or if source has been updated
         if ((script == null && exception == null)
-                || (reloading && checksum != resource.getChecksum())) {
+                || (reloading && isModified())) {
             if (!resource.exists()) {
                 throw new FileNotFoundException(resource + " not found or not readable");
             }
@@ -135,6 +169,20 @@ public class ReloadableScript {
         return script;
     }
 
+    /**
+     * Check whether the resource was modified since the script was compiled.
+     * If the resource is watched this is just a check of the changed flag.
+     * @return true if the resource was modified
+     * @throws IOException if the resource could not be checked
+     */
+    private boolean isModified() throws IOException {
+        if (watched && !changed && ((FileResource) resource).isWatched()) {
+            return false;
+        }
+        changed = false;
+        return checksum != resource.getChecksum();
+    }
+
     /**
      * Get a script from a single script file.
      * @param cx the current Context
@@ -204,6 +252,11 @@ public class ReloadableScript {
     protected Scriptable load(Scriptable prototype, Context cx,
                               Scriptable module, RingoWorker worker)
             throws JavaScriptException, IOException {
+        ModuleScope shared = getSharedScope();
+        if (shared != null) {
+            worker.registerModule(resource, shared);
+            return shared;
+        }
         if (module instanceof ModuleScope &&
                 ((ModuleScope)module).getChecksum() == getChecksum()) {
             // Module scope exists and is up to date
@@ -220,6 +273,13 @@ public class ReloadableScript {
         if (log.isLoggable(Level.FINE)) {
             log.fine("Loading module: " + moduleName);
         }
+        // another worker may have evaluated the shared module scope
+        // while we were waiting for the lock
+        ModuleScope shared = getSharedScope();
+        if (shared != null) {
+            worker.registerModule(resource, shared);
+            return shared;
+        }
         if (engine.getConfig().isVerbose()) {
             System.err.println("Loading module: " + moduleName);
         }
@@ -253,9 +313,57 @@ public class ReloadableScript {
         // Update exports in case module updated module.exports
         module.updateExports();
         module.setChecksum(getChecksum());
+        if (isShareable(module)) {
+            module.share();
+            sharedScope = module;
+        }
         return module;
     }
 
+    /**
+     * Get the module scope shared by all workers if it exists and is up to date.
+     * @return the shared module scope, or null
+     * @throws IOException source could not be checked because of an I/O error
+     */
+    private ModuleScope getSharedScope() throws IOException {
+        ModuleScope shared = sharedScope;
+        if (shared != null && reloading && shared.getChecksum() != getChecksum()) {
+            return null;
+        }
+        return shared;
+    }
+
+    /**
+     * Check whether a freshly evaluated module scope can be shared by all
+     * workers. If reloading is disabled modules are shared unless they opt
+     * out by setting <code>module.shared = false</code>, which is required
+     * for modules reassigning top level variables after they have been
+     * loaded, as the shared scope is sealed. Modules setting
+     * <code>module.shared = true</code> are shared even if reloading is
+     * enabled. A module is only shared if all modules it loaded are shared
+     * as well, otherwise it would keep the evaluating worker's copies of them.
+     * @param module the module scope
+     * @return true if the module scope should be shared
+     */
+    private boolean isShareable(ModuleScope module) {
+        Object shared = ScriptableObject.getProperty(module.getModuleObject(), "shared");
+        boolean optIn = Boolean.TRUE.equals(shared);
+        if (Boolean.FALSE.equals(shared) || (reloading && !optIn)) {
+            return false;
+        }
+        for (ReloadableScript script: dependencies) {
+            if (script.sharedScope == null) {
+                if (optIn) {
+                    log.warning("Not sharing module " + moduleName
+                            + " as its dependency " + script.moduleName
+                            + " is not shared");
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Get the checksum of the script. This includes the transitive sum of
      * loaded module checksums, as modules need to be re-evaluated
@@ -264,15 +372,42 @@ public class ReloadableScript {
      * @throws IOException source could not be checked because of an I/O error
      */
     protected long getChecksum() throws IOException {
+        long gen = generation.get();
+        Checksum memoized = memoizedChecksum;
+        if (memoized != null && memoized.generation == gen) {
+            return memoized.value;
+        }
         long cs = resource.getChecksum();
         Set<ReloadableScript> set = new HashSet<>();
         set.add(this);
         for (ReloadableScript script: dependencies) {
             cs += script.getNestedChecksum(set);
         }
+        // only memoize if no script in the dependency graph can change
+        // without the generation being incremented
+        boolean stable = true;
+        for (ReloadableScript script: set) {
+            if (!script.isStable()) {
+                stable = false;
+                break;
+            }
+        }
+        if (stable) {
+            memoizedChecksum = new Checksum(cs, gen);
+        }
         return cs;
     }
 
+    /**
+     * Returns true if changes to the script's resource are guaranteed to
+     * increment the generation counter, either because reloading is off
+     * or because the resource is watched.
+     * @return true if the resource checksum can be memoized
+     */
+    private boolean isStable() {
+        return !reloading || (watched && ((FileResource) resource).isWatched());
+    }
+
     /**
      * Get the recursive checksum of this script as a dependency. Since the checksum
      * field may not be up-to-date we directly get the checksum from the underlying
@@ -307,7 +442,9 @@ public class ReloadableScript {
      * @param script a script we depend on
      */
     protected void addDependency(ReloadableScript script) {
-        dependencies.add(script);
+        if (dependencies.add(script)) {
+            generation.incrementAndGet();
+        }
     }
 
     /**
@@ -368,6 +505,16 @@ public class ReloadableScript {
         }
     }
 
+    static class Checksum {
+        final long value;
+        final long generation;
+
+        Checksum(long value, long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+
     static class ScriptReference extends SoftReference<Object> {
         final Resource source;
         final long checksum;
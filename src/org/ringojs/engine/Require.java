@@ -156,6 +156,7 @@ public class Require extends BaseFunction {
                 }
                 paths.set(index, repo);
                 defineProperty("length", paths.size(), DONTENUM);
+                engine.clearResolvedModules();
             } else {
                 super.put(index, start, value);
             }
@@ -174,6 +175,7 @@ public class Require extends BaseFunction {
                 while (length < paths.size()) {
                     paths.remove(length);
                 }
+                engine.clearResolvedModules();
             }
             super.put(id, start, value);
         }
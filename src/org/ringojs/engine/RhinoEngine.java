@@ -23,6 +23,7 @@ import org.ringojs.tools.RingoDebugger;
 import org.ringojs.tools.launcher.RingoClassLoader;
 import org.ringojs.wrappers.*;
 import org.ringojs.util.StringUtils;
+import org.ringojs.util.VirtualThreads;
 import org.mozilla.javascript.tools.debugger.ScopeProvider;
 
 import java.io.*;
@@ -32,7 +33,6 @@ import java.net.MalformedURLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,17 +51,20 @@ public class RhinoEngine implements ScopeProvider {
     private final Map<Trackable, ReloadableScript> compiledScripts;
     private final Map<Trackable, ReloadableScript> interpretedScripts;
     private final Map<Singleton, Singleton> singletons;
+    private final Map<ModuleKey, ResolvedModule> resolvedModules;
+    private final Map<Resource, PackageDescriptor> packages;
     private final AppClassLoader loader = new AppClassLoader();
     private final WrapFactory wrapFactory;
     private Set<Class<Scriptable>> hostClasses;
     private ModuleLoader[] loaders;
+    private final ClassCache classCache;
     private List<Callback> shutdownHooks;
 
     private final RingoContextFactory contextFactory;
     private ModuleScope mainScope = null;
 
     private final RingoWorker mainWorker;
-    private final Deque<RingoWorker> workers;
+    private final WorkerPool workerPool;
     private final ThreadLocal<RingoWorker> currentWorker;
     private final AsyncTaskCounter asyncCounter = new AsyncTaskCounter();
 
@@ -81,15 +84,23 @@ public class RhinoEngine implements ScopeProvider {
     public RhinoEngine(RingoConfig config, Map<String, Object> globals)
             throws Exception {
         this.config = config;
-        workers = new LinkedBlockingDeque<>();
+        workerPool = new WorkerPool(this);
         currentWorker = new ThreadLocal<>();
         mainWorker = new RingoWorker(this);
         compiledScripts = new ConcurrentHashMap<>();
         interpretedScripts = new ConcurrentHashMap<>();
         singletons = new HashMap<>();
+        resolvedModules = new ConcurrentHashMap<>();
+        packages = new ConcurrentHashMap<>();
         contextFactory = new RingoContextFactory(this, config);
         repositories = config.getRepositories();
         wrapFactory = config.getWrapFactory();
+        File classCacheDir = config.getClassCacheDir();
+        classCache = classCacheDir == null ? null : new ClassCache(classCacheDir);
+        if (config.isVirtualThreads() && !VirtualThreads.isSupported()) {
+            log.warning("Virtual threads are not supported by this Java runtime, "
+                    + "using platform threads");
+        }
 
         loaders = new ModuleLoader[] {
             new JsModuleLoader(), new JsonModuleLoader(), new ClassModuleLoader()
@@ -144,6 +155,12 @@ public class RhinoEngine implements ScopeProvider {
         } finally {
             Context.exit();
         }
+        if (config.isJmxEnabled()) {
+            workerPool.register();
+        }
+        if (config.getMinWorkers() > 0) {
+            workerPool.prestart();
+        }
     }
 
     /**
@@ -198,7 +215,10 @@ public class RhinoEngine implements ScopeProvider {
             Map<Trackable,ReloadableScript> scripts = getScriptCache(cx);
             commandLineArgs = Arrays.asList(scriptArgs);
             ReloadableScript script = new ReloadableScript(resource, this);
-            scripts.put(resource, script);
+            ReloadableScript previous = scripts.put(resource, script);
+            if (previous != null) {
+                previous.discard();
+            }
             mainScope = new ModuleScope(resource.getModuleName(), resource,
                     globalScope, mainWorker);
             retval = mainWorker.evaluateScript(cx, script, mainScope);
@@ -266,6 +286,14 @@ public class RhinoEngine implements ScopeProvider {
         return previousWorker;
     }
 
+    /**
+     * Returns true if the current thread is running code in one of this
+     * engine's workers.
+     */
+    boolean isWorkerThread() {
+        return currentWorker.get() != null;
+    }
+
     /**
      * Get the worker associated with the current thread, or the given scope or function argument if provided.
      * An {@code IllegalStateException} is thrown if no worker could be found or if different workers are
@@ -283,7 +311,10 @@ public class RhinoEngine implements ScopeProvider {
         while (scriptable != null) {
             if (scriptable instanceof ModuleScope) {
                 RingoWorker scopeWorker = ((ModuleScope) scriptable).getWorker();
-                if (worker == null) {
+                // shared module scopes are not bound to any worker
+                if (scopeWorker == null) {
+                    break;
+                } else if (worker == null) {
                     worker = scopeWorker;
                 } else if (worker != scopeWorker) {
                     throw new IllegalStateException("Current thread worker differs from scope worker");
@@ -307,15 +338,15 @@ public class RhinoEngine implements ScopeProvider {
     }
 
     /**
-     * Get a new {@link RingoWorker}.
+     * Get a {@link RingoWorker} from the worker pool. If the pool is bounded
+     * and all workers are busy this waits for a worker to become available
+     * for up to the configured worker timeout.
      * @return a worker instance.
+     * @throws java.util.concurrent.RejectedExecutionException if no worker
+     * became available within the worker timeout
      */
     public RingoWorker getWorker() {
-        RingoWorker worker = workers.pollFirst();
-        if (worker == null) {
-            worker = new RingoWorker(this);
-        }
-        return worker;
+        return workerPool.acquire();
     }
 
     /**
@@ -323,12 +354,19 @@ public class RhinoEngine implements ScopeProvider {
      * @param worker the worker to be released
      */
     void returnWorker(RingoWorker worker) {
-        if (!workers.offerFirst(worker)) {
-            worker.shutdown();
-        }
+        workerPool.release(worker);
+    }
+
+    /**
+     * Get the engine's worker pool.
+     * @return the worker pool
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
     }
 
     synchronized void shutdown() {
+        workerPool.unregister();
         List<Callback> hooks = shutdownHooks;
         if (hooks != null) {
             for (Callback callback: hooks) {
@@ -343,6 +381,14 @@ public class RhinoEngine implements ScopeProvider {
             }
             shutdownHooks = null;
         }
+        for (ReloadableScript script : compiledScripts.values()) {
+            script.discard();
+        }
+        for (ReloadableScript script : interpretedScripts.values()) {
+            script.discard();
+        }
+        compiledScripts.clear();
+        interpretedScripts.clear();
     }
 
     /**
@@ -473,13 +519,7 @@ public class RhinoEngine implements ScopeProvider {
     public ReloadableScript getScript(String moduleName, Repository localPath)
             throws JavaScriptException, IOException {
         ReloadableScript script;
-        Resource source = findResource(moduleName, loaders, localPath);
-        if (!source.exists()) {
-            source = loadPackage(moduleName, localPath);
-            if (!source.exists()) {
-                source = findResource(moduleName, null, localPath);
-            }
-        }
+        Resource source = resolveModule(moduleName, localPath);
         Context cx = Context.getCurrentContext();
         Map<Trackable,ReloadableScript> scripts = getScriptCache(cx);
         if (scripts.containsKey(source)) {
@@ -487,12 +527,128 @@ public class RhinoEngine implements ScopeProvider {
         } else {
             script = new ReloadableScript(source, this);
             if (source.exists()) {
-                scripts.put(source, script);
+                // another thread may have created the script in the meantime
+                ReloadableScript existing = scripts.putIfAbsent(source, script);
+                if (existing != null) {
+                    script.discard();
+                    script = existing;
+                }
             }
         }
         return script;
     }
 
+    /**
+     * Resolve a module id to a resource, using the cache of previously
+     * resolved modules if possible. Only module ids that resolve to an
+     * existing resource are cached. With reloading enabled a module id is
+     * only cached if all directories it is resolved in are watched, and a
+     * cached resource is resolved again if the file watcher reported a
+     * created file or directory since it was resolved, as that may shadow
+     * it. Otherwise it is checked for existence unless it is watched and
+     * the file watcher didn't report any change since it was resolved.
+     * @param moduleName the module id
+     * @param localPath the path of the resource issuing this call
+     * @return the resource
+     * @throws IOException if an I/O error occurred
+     */
+    private Resource resolveModule(String moduleName, Repository localPath)
+            throws IOException {
+        // only relative module ids depend on the local path
+        boolean relative = moduleName.startsWith("./") || moduleName.startsWith("../");
+        ModuleKey key = new ModuleKey(moduleName, relative ? localPath : null);
+        ResolvedModule resolved = resolvedModules.get(key);
+        if (resolved != null && resolved.isValid(config.isReloading())) {
+            return resolved.resource;
+        }
+        long changeCount = FileWatcher.getChangeCount();
+        long createCount = FileWatcher.getCreateCount();
+        Resource source = findResource(moduleName, loaders, localPath);
+        if (!source.exists()) {
+            source = loadPackage(moduleName, localPath);
+            if (!source.exists()) {
+                source = findResource(moduleName, null, localPath);
+            }
+        }
+        List<FileRepository> directories = null;
+        if (source.exists()) {
+            directories = config.isReloading() ?
+                    getWatchedDirectories(moduleName, localPath, source) :
+                    Collections.<FileRepository>emptyList();
+        }
+        if (directories != null) {
+            resolvedModules.put(key, new ResolvedModule(source, directories,
+                    changeCount, createCount));
+        } else if (resolved != null) {
+            resolvedModules.remove(key);
+        }
+        return source;
+    }
+
+    /**
+     * Start watching the directories a file or directory shadowing the
+     * resolved resource could be created in: the directories along the
+     * module path in each module repository, and the resource's directory.
+     * @param moduleName the module id
+     * @param localPath the path of the resource issuing this call
+     * @param source the resolved resource
+     * @return the watched directories, or null if any of them can't be
+     * watched, e.g. because it isn't a file system directory
+     * @throws IOException if an I/O error occurred
+     */
+    private List<FileRepository> getWatchedDirectories(String moduleName,
+                                                       Repository localPath,
+                                                       Resource source)
+            throws IOException {
+        List<FileRepository> directories = new ArrayList<>();
+        if (!addWatched(directories, source.getParentRepository())) {
+            return null;
+        }
+        String path = moduleName;
+        if (localPath != null && (path.startsWith("./") || path.startsWith("../"))) {
+            path = localPath.getRelativePath() + path;
+        }
+        if (new File(path).isAbsolute()) {
+            return directories;
+        }
+        String[] elements = StringUtils.split(normalizePath(path), Repository.SEPARATOR);
+        for (Repository root : config.getRepositories()) {
+            Repository repository = root;
+            if (!addWatched(directories, repository)) {
+                return null;
+            }
+            for (String element : elements) {
+                repository = repository.getChildRepository(element);
+                // a missing directory is reported by its parent once created
+                if (repository == null || !repository.exists()) {
+                    break;
+                }
+                if (!addWatched(directories, repository)) {
+                    return null;
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static boolean addWatched(List<FileRepository> directories,
+                                      Repository repository) {
+        if (!(repository instanceof FileRepository)
+                || !((FileRepository) repository).watch()) {
+            return false;
+        }
+        directories.add((FileRepository) repository);
+        return true;
+    }
+
+    /**
+     * Clear the cache of resolved module ids. This must be called when
+     * the module search path or the list of module loaders changes.
+     */
+    public void clearResolvedModules() {
+        resolvedModules.clear();
+    }
+
     /**
      * Resolves a module id to a package resource. If module id consists of
      * just one term and resolves to a package directory, the main module of
@@ -529,31 +685,14 @@ public class RhinoEngine implements ScopeProvider {
 
             if (json != null && json.exists()) {
 
-                Scriptable obj = parseJsonResource(json);
+                PackageDescriptor descriptor = getPackageDescriptor(json, packageName);
                 Repository parent = json.getParentRepository();
                 String moduleId;
                 Resource res;
 
-                // Load JAR dependencies
-                Object jars = ScriptableObject.getProperty(obj, "jars");
-                if (jars instanceof Scriptable && ScriptRuntime.isArrayObject(jars)) {
-                    Object[] jarsToLoad = ScriptRuntime.getArrayElements((Scriptable) jars);
-                    for (Object jar : jarsToLoad) {
-                        Resource jarResource = parent.getResource(jar.toString());
-                        if (!jarResource.exists()) {
-                            log.warning("Skipping non-existing JAR resource in package.json descriptor for " +
-                                    packageName + ": " + jar.toString() + " - " + jarResource.getUrl());
-                        } else {
-                            log.config("Adding JAR resource from " + packageName +
-                                    " package.json descriptor to classpath: " + jarResource.getUrl());
-                            loader.addURL(jarResource.getUrl());
-                        }
-                    }
-                }
-
                 if (remainingName == null) {
                     // get the main module of this package
-                    moduleId = getStringProperty(obj, "main", null);
+                    moduleId = descriptor.main;
                     if (moduleId != null) {
                         // optimize for the common case where main module
                         // property links to the exact file name
@@ -562,12 +701,7 @@ public class RhinoEngine implements ScopeProvider {
                     }
                 } else {
                     // map remaining name to libs directory
-                    String lib = "lib";
-                    Object dirs = ScriptableObject.getProperty(obj, "directories");
-                    if (dirs instanceof Scriptable) {
-                        lib = getStringProperty((Scriptable)dirs, "lib", "lib");
-                    }
-                    moduleId = lib + "/" + remainingName;
+                    moduleId = descriptor.lib + "/" + remainingName;
                 }
 
                 if (moduleId != null) {
@@ -588,6 +722,53 @@ public class RhinoEngine implements ScopeProvider {
         return findResource(moduleName + "/index", loaders, localPath);
     }
 
+    /**
+     * Get the parsed descriptor of a package. Descriptors are cached, and the
+     * package's JAR dependencies are added to the classpath when the
+     * descriptor is parsed.
+     * @param json the package.json resource
+     * @param packageName the package name
+     * @return the package descriptor
+     * @throws IOException if an I/O error occurred
+     */
+    private PackageDescriptor getPackageDescriptor(Resource json, String packageName)
+            throws IOException {
+        PackageDescriptor descriptor = packages.get(json);
+        long checksum = json.getChecksum();
+        if (descriptor != null && descriptor.checksum == checksum) {
+            return descriptor;
+        }
+        Scriptable obj = parseJsonResource(json);
+        Repository parent = json.getParentRepository();
+
+        // Load JAR dependencies
+        Object jars = ScriptableObject.getProperty(obj, "jars");
+        if (jars instanceof Scriptable && ScriptRuntime.isArrayObject(jars)) {
+            Object[] jarsToLoad = ScriptRuntime.getArrayElements((Scriptable) jars);
+            for (Object jar : jarsToLoad) {
+                Resource jarResource = parent.getResource(jar.toString());
+                if (!jarResource.exists()) {
+                    log.warning("Skipping non-existing JAR resource in package.json descriptor for " +
+                            packageName + ": " + jar.toString() + " - " + jarResource.getUrl());
+                } else {
+                    log.config("Adding JAR resource from " + packageName +
+                            " package.json descriptor to classpath: " + jarResource.getUrl());
+                    loader.addURL(jarResource.getUrl());
+                }
+            }
+        }
+
+        String lib = "lib";
+        Object dirs = ScriptableObject.getProperty(obj, "directories");
+        if (dirs instanceof Scriptable) {
+            lib = getStringProperty((Scriptable)dirs, "lib", "lib");
+        }
+        descriptor = new PackageDescriptor(checksum,
+                getStringProperty(obj, "main", null), lib);
+        packages.put(json, descriptor);
+        return descriptor;
+    }
+
     private Scriptable parseJsonResource(Resource resource) throws IOException {
         JsonParser parser = new JsonParser(Context.getCurrentContext(), globalScope);
         try {
@@ -698,11 +879,21 @@ public class RhinoEngine implements ScopeProvider {
         asyncCounter.waitTillDone();
     }
 
-    protected void enterAsyncTask() {
+    /**
+     * Register a pending asynchronous task, such as a network request whose
+     * completion will be handled by one of this engine's workers. The engine
+     * doesn't consider its async tasks done before {@link #exitAsyncTask()}
+     * has been called for each call of this method.
+     */
+    public void enterAsyncTask() {
         asyncCounter.increase();
     }
 
-    protected void exitAsyncTask() {
+    /**
+     * Mark a pending asynchronous task registered with
+     * {@link #enterAsyncTask()} as done.
+     */
+    public void exitAsyncTask() {
         asyncCounter.decrease();
     }
 
@@ -725,8 +916,12 @@ public class RhinoEngine implements ScopeProvider {
                     throw new FileNotFoundException(
                             "Bootstrap script " + script + " not found");
                 }
-                mainWorker.evaluateScript(cx, new ReloadableScript(resource, this),
-                        globalScope);
+                ReloadableScript bootstrap = new ReloadableScript(resource, this);
+                try {
+                    mainWorker.evaluateScript(cx, bootstrap, globalScope);
+                } finally {
+                    bootstrap.discard();
+                }
             }
         }
     }
@@ -887,6 +1082,7 @@ public class RhinoEngine implements ScopeProvider {
             if (extension.equals(loaders[i].getExtension())) {
                 // replace existing loader
                 loaders[i] = new ScriptedModuleLoader(extension, function);
+                clearResolvedModules();
                 return;
             }
         }
@@ -894,6 +1090,7 @@ public class RhinoEngine implements ScopeProvider {
         System.arraycopy(loaders, 0, newLoaders, 0, length);
         newLoaders[length] = new ScriptedModuleLoader(extension, function);
         loaders = newLoaders;
+        clearResolvedModules();
     }
 
     public synchronized void removeModuleLoader(String extension) {
@@ -907,6 +1104,7 @@ public class RhinoEngine implements ScopeProvider {
                 if (i < length - 1)
                     System.arraycopy(loaders, i + 1, newLoaders, i, length - i - 1);
                 loaders = newLoaders;
+                clearResolvedModules();
                 return;
             }
         }
@@ -947,6 +1145,14 @@ public class RhinoEngine implements ScopeProvider {
         loader.addURL(path.getUrl());
     }
 
+    /**
+     * Get the persistent class cache for compiled modules.
+     * @return the class cache, or null if class caching is disabled
+     */
+    public ClassCache getClassCache() {
+        return classCache;
+    }
+
     public RingoContextFactory getContextFactory() {
         return contextFactory;
     }
@@ -1006,6 +1212,81 @@ public class RhinoEngine implements ScopeProvider {
         return wrapFactory;
     }
 
+    static final class ModuleKey {
+        final String moduleName;
+        final Repository localPath;
+
+        ModuleKey(String moduleName, Repository localPath) {
+            this.moduleName = moduleName;
+            this.localPath = localPath;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * moduleName.hashCode()
+                    + (localPath == null ? 0 : localPath.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ModuleKey)) {
+                return false;
+            }
+            ModuleKey key = (ModuleKey) obj;
+            return moduleName.equals(key.moduleName)
+                    && Objects.equals(localPath, key.localPath);
+        }
+    }
+
+    static final class ResolvedModule {
+        final Resource resource;
+        // the watched directories, referenced to keep them watched
+        final List<FileRepository> directories;
+        final long changeCount;
+        final long createCount;
+
+        ResolvedModule(Resource resource, List<FileRepository> directories,
+                       long changeCount, long createCount) {
+            this.resource = resource;
+            this.directories = directories;
+            this.changeCount = changeCount;
+            this.createCount = createCount;
+        }
+
+        boolean isValid(boolean reloading) throws IOException {
+            if (!reloading) {
+                return true;
+            }
+            // a created file or directory may shadow the resolved resource
+            if (createCount != FileWatcher.getCreateCount()) {
+                return false;
+            }
+            for (FileRepository directory : directories) {
+                if (!directory.isWatched()) {
+                    return false;
+                }
+            }
+            if (resource instanceof FileResource
+                    && ((FileResource) resource).isWatched()
+                    && changeCount == FileWatcher.getChangeCount()) {
+                return true;
+            }
+            return resource.exists();
+        }
+    }
+
+    static final class PackageDescriptor {
+        final long checksum;
+        final String main;
+        final String lib;
+
+        PackageDescriptor(long checksum, String main, String lib) {
+            this.checksum = checksum;
+            this.main = main;
+            this.lib = lib;
+        }
+    }
+
     static class AsyncTaskCounter {
 
         int count = 0;
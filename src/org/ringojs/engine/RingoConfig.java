@@ -60,6 +60,13 @@ public class RingoConfig {
     private boolean sealed = false;
     private boolean reloading = true;
     private String charset = "UTF-8";
+    private File classCacheDir = null;
+    private boolean virtualThreads = false;
+    private int minWorkers = 0;
+    private int maxWorkers = 0;
+    private long workerTimeout = 30000;
+    private long workerIdleTimeout = -1;
+    private boolean jmxEnabled = false;
 
     /**
      * Create a new Ringo configuration and sets up its module search path.
@@ -117,6 +124,34 @@ public class RingoConfig {
         if (parentProto != null) {
             parentProtoProperties = Integer.parseInt(parentProto) != 0;
         }
+        String classCache = System.getProperty("ringo.classcache");
+        if (classCache != null) {
+            classCacheDir = new File(classCache);
+        }
+        String virtual = System.getProperty("ringo.virtualthreads");
+        if (virtual != null) {
+            virtualThreads = Boolean.parseBoolean(virtual);
+        }
+        String minWorkerCount = System.getProperty("ringo.workers.min");
+        if (minWorkerCount != null) {
+            minWorkers = Integer.parseInt(minWorkerCount);
+        }
+        String maxWorkerCount = System.getProperty("ringo.workers.max");
+        if (maxWorkerCount != null) {
+            maxWorkers = Integer.parseInt(maxWorkerCount);
+        }
+        String timeout = System.getProperty("ringo.workers.timeout");
+        if (timeout != null) {
+            workerTimeout = Long.parseLong(timeout);
+        }
+        String idleTimeout = System.getProperty("ringo.workers.idletimeout");
+        if (idleTimeout != null) {
+            workerIdleTimeout = Long.parseLong(idleTimeout);
+        }
+        String jmx = System.getProperty("ringo.jmx");
+        if (jmx != null) {
+            jmxEnabled = Boolean.parseBoolean(jmx);
+        }
 
         if (userModules != null) {
             if (userModules.length > 0) {
@@ -536,6 +571,135 @@ public class RingoConfig {
         this.reloading = reloading;
     }
 
+    /**
+     * Get the directory used to persist classes generated for compiled
+     * modules across restarts.
+     * @return the class cache directory, or null if disabled
+     */
+    public File getClassCacheDir() {
+        return classCacheDir;
+    }
+
+    /**
+     * Set the directory used to persist classes generated for compiled
+     * modules across restarts. Classes are only cached if the optimization
+     * level is 0 or higher.
+     * @param classCacheDir the class cache directory, or null to disable
+     */
+    public void setClassCacheDir(File classCacheDir) {
+        this.classCacheDir = classCacheDir;
+    }
+
+    /**
+     * Returns true if worker event loops and servlet requests should run
+     * on virtual threads.
+     * @return true if virtual threads are enabled
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Enable or disable running worker event loops and servlet requests on
+     * virtual threads. Each worker still runs on a single thread at a time.
+     * If the Java runtime doesn't support virtual threads platform threads
+     * are used instead.
+     * @param virtualThreads true to enable virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Get the number of workers the worker pool keeps even when idle.
+     * @return the minimum worker pool size
+     */
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    /**
+     * Set the number of workers the worker pool keeps even when idle.
+     * These workers are created when the engine is started.
+     * @param minWorkers the minimum worker pool size
+     */
+    public void setMinWorkers(int minWorkers) {
+        this.minWorkers = minWorkers;
+    }
+
+    /**
+     * Get the maximum number of workers in use at the same time.
+     * @return the maximum worker pool size, or 0 if unbounded
+     */
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Set the maximum number of workers in use at the same time. A value
+     * of 0 or less means the worker pool is unbounded.
+     * @param maxWorkers the maximum worker pool size
+     */
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    /**
+     * Get the time in milliseconds to wait for a worker if the worker pool
+     * is exhausted.
+     * @return the worker timeout in milliseconds
+     */
+    public long getWorkerTimeout() {
+        return workerTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for a worker if the worker pool
+     * is exhausted before failing. A value of 0 fails immediately,
+     * a negative value waits indefinitely.
+     * @param workerTimeout the worker timeout in milliseconds
+     */
+    public void setWorkerTimeout(long workerTimeout) {
+        this.workerTimeout = workerTimeout;
+    }
+
+    /**
+     * Get the time in milliseconds after which idle workers exceeding the
+     * minimum pool size are evicted.
+     * @return the idle timeout in milliseconds, or -1 if disabled
+     */
+    public long getWorkerIdleTimeout() {
+        return workerIdleTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds after which idle workers exceeding the
+     * minimum pool size are shut down and removed from the pool. A negative
+     * value keeps idle workers forever.
+     * @param workerIdleTimeout the idle timeout in milliseconds
+     */
+    public void setWorkerIdleTimeout(long workerIdleTimeout) {
+        this.workerIdleTimeout = workerIdleTimeout;
+    }
+
+    /**
+     * Returns true if the engine should register its management beans
+     * with the platform MBean server.
+     * @return true if JMX is enabled
+     */
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Enable or disable registration of the engine's management beans
+     * with the platform MBean server.
+     * @param jmxEnabled true to enable JMX
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
     public List<String> getBootstrapScripts() {
         return bootstrapScripts;
     }
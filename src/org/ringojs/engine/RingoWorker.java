@@ -10,6 +10,7 @@ import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Wrapper;
 import org.ringojs.repository.Repository;
 import org.ringojs.repository.Resource;
+import org.ringojs.util.VirtualThreads;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -39,6 +40,13 @@ public final class RingoWorker {
     private Map<Resource, Scriptable> checkedModules;
     private boolean reload;
 
+    // pool state, managed by WorkerPool
+    volatile boolean leased;
+    volatile boolean permitted;
+    volatile long idleSince;
+    // tasks that will be submitted to this worker after it has been released
+    private final AtomicInteger asyncTasks = new AtomicInteger();
+
     private static final AtomicInteger workerId = new AtomicInteger(1);
     private final int id;
 
@@ -391,6 +399,33 @@ public final class RingoWorker {
         return eventloop == null ? 0 : eventloop.getQueue().size();
     }
 
+    /**
+     * Register a pending asynchronous task that will submit work to this
+     * worker once it completes, possibly after the worker has been released.
+     * The worker pool doesn't evict the worker before
+     * {@link #exitAsyncTask()} has been called for each call of this method.
+     */
+    public void enterAsyncTask() {
+        asyncTasks.incrementAndGet();
+    }
+
+    /**
+     * Mark a pending asynchronous task registered with
+     * {@link #enterAsyncTask()} as done.
+     */
+    public void exitAsyncTask() {
+        asyncTasks.decrementAndGet();
+    }
+
+    /**
+     * Returns true if asynchronous tasks registered with
+     * {@link #enterAsyncTask()} are pending.
+     * @return true if asynchronous tasks are pending
+     */
+    public boolean hasAsyncTasks() {
+        return asyncTasks.get() > 0;
+    }
+
     /**
      * Returns true if this worker is currently running.
      * @return true if worker is active
@@ -465,14 +500,16 @@ public final class RingoWorker {
     // init the worker's event loop
     private synchronized EventLoop getEventLoop() {
         if (eventloop == null) {
-            eventloop = new EventLoop(id);
+            eventloop = new EventLoop(id, engine.getConfig().isVirtualThreads());
         }
         return eventloop;
     }
 
     static class EventLoop extends ScheduledThreadPoolExecutor {
-        EventLoop(final int id) {
-            super(1, new ThreadFactory() {
+        EventLoop(final int id, boolean virtual) {
+            super(1, virtual ?
+                    VirtualThreads.newThreadFactory("ringo-worker-" + id + "-") :
+                    new ThreadFactory() {
                 public Thread newThread(Runnable runnable) {
                     Thread thread = new Thread(runnable, "ringo-worker-" + id);
                     thread.setDaemon(true);
@@ -0,0 +1,273 @@
+package org.ringojs.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The pool of {@link RingoWorker}s handed out by {@link RhinoEngine#getWorker()}.
+ *
+ * <p>Idle workers are kept in LIFO order so that the most recently used
+ * workers, which have the most modules loaded, are reused first. The pool
+ * can be limited to a maximum number of workers in use at the same time,
+ * in which case callers wait for a worker to be released for up to the
+ * configured timeout before a {@link RejectedExecutionException} is thrown.
+ * Idle workers exceeding the minimum pool size can be evicted after a
+ * configurable idle time.</p>
+ *
+ * <p>Nested acquisitions from a thread that is running code in one of the
+ * engine's workers, e.g. a request calling <code>engine.getWorker()</code>,
+ * do not wait for the bound. The calling worker holds a slot itself, so
+ * waiting there could exhaust the pool and deadlock; such workers are
+ * counted as busy but may exceed the maximum pool size.</p>
+ *
+ * <p>Note that workers that are never released, such as workers backing
+ * a <code>ringo/worker</code> Worker that is never terminated, count as busy
+ * for the lifetime of the pool.</p>
+ */
+public class WorkerPool implements WorkerPoolMXBean {
+
+    private final RhinoEngine engine;
+    private final LinkedBlockingDeque<RingoWorker> idle;
+    private final Semaphore permits;
+    private final int minSize;
+    private final int maxSize;
+    private final long timeout;
+    private final long idleTimeout;
+
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ObjectName objectName;
+
+    private static final AtomicInteger poolId = new AtomicInteger(1);
+    private static final Logger log = Logger.getLogger(WorkerPool.class.getName());
+
+    /**
+     * Create a worker pool for the given engine using the worker pool
+     * settings of the engine's configuration.
+     * @param engine the engine
+     */
+    public WorkerPool(RhinoEngine engine) {
+        RingoConfig config = engine.getConfig();
+        this.engine = engine;
+        this.idle = new LinkedBlockingDeque<>();
+        this.maxSize = Math.max(config.getMaxWorkers(), 0);
+        this.minSize = maxSize > 0 ?
+                Math.min(Math.max(config.getMinWorkers(), 0), maxSize) :
+                Math.max(config.getMinWorkers(), 0);
+        this.permits = maxSize > 0 ? new Semaphore(maxSize, true) : null;
+        this.timeout = config.getWorkerTimeout();
+        this.idleTimeout = config.getWorkerIdleTimeout();
+    }
+
+    /**
+     * Get an idle worker from the pool, or create a new one if no idle worker
+     * is available. If the pool is bounded and all workers are busy this
+     * waits for another worker to be released for up to the configured
+     * worker timeout, unless called from a thread running one of the
+     * engine's workers.
+     * @return a worker
+     * @throws RejectedExecutionException if no worker became available
+     * within the worker timeout
+     */
+    public RingoWorker acquire() {
+        boolean bounded = permits != null && !engine.isWorkerThread();
+        if (bounded && !permits.tryAcquire()) {
+            waiting.incrementAndGet();
+            try {
+                if (timeout < 0) {
+                    permits.acquire();
+                } else if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("Worker pool exhausted, all "
+                            + maxSize + " workers are busy");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Interrupted while waiting for worker");
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        RingoWorker worker = idle.pollFirst();
+        if (worker == null) {
+            worker = new RingoWorker(engine);
+            created.incrementAndGet();
+        }
+        synchronized (worker) {
+            worker.leased = true;
+            worker.permitted = bounded;
+        }
+        busy.incrementAndGet();
+        return worker;
+    }
+
+    /**
+     * Return a worker to the pool. Releasing a worker that has already been
+     * released or that doesn't belong to the pool has no effect.
+     * @param worker the worker
+     */
+    public void release(RingoWorker worker) {
+        long now = System.currentTimeMillis();
+        boolean permitted;
+        synchronized (worker) {
+            if (!worker.leased) {
+                return;
+            }
+            permitted = worker.permitted;
+            worker.leased = false;
+            worker.permitted = false;
+            worker.idleSince = now;
+        }
+        busy.decrementAndGet();
+        idle.offerFirst(worker);
+        if (permitted) {
+            permits.release();
+        }
+        if (idleTimeout >= 0) {
+            evictIdleWorkers(now, idleTimeout);
+        }
+    }
+
+    /**
+     * Make sure the pool contains at least its minimum number of workers,
+     * and load the given modules in each of them. This is used to warm up
+     * the pool at startup so the first requests don't each have to evaluate
+     * all modules of the application.
+     * @param modules the ids of the modules to load
+     * @throws Exception if loading a module failed
+     */
+    public void prestart(String... modules) throws Exception {
+        int count = Math.max(Math.max(minSize, idle.size()), 1);
+        if (maxSize > 0) {
+            count = Math.min(count, maxSize);
+        }
+        List<RingoWorker> list = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                list.add(acquire());
+            }
+            List<Future<Object>> futures = new ArrayList<>();
+            for (RingoWorker worker : list) {
+                for (String module : modules) {
+                    futures.add(worker.loadModuleInWorkerThread(module));
+                }
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            // release in reverse order to keep the deque's order stable
+            for (int i = list.size() - 1; i >= 0; i--) {
+                release(list.get(i));
+            }
+        }
+    }
+
+    public void evictIdleWorkers() {
+        evictIdleWorkers(System.currentTimeMillis(), 0);
+    }
+
+    private void evictIdleWorkers(long now, long maxIdle) {
+        // the least recently used workers are at the tail of the deque
+        RingoWorker worker;
+        while (idle.size() > minSize && (worker = idle.peekLast()) != null) {
+            if (now - worker.idleSince < maxIdle) {
+                break;
+            }
+            // don't kill workers with pending timeouts, intervals or
+            // async tasks that will submit work to them
+            if (worker.isActive() || worker.countScheduledTasks() > 0
+                    || worker.hasAsyncTasks()) {
+                break;
+            }
+            if (idle.removeLastOccurrence(worker)) {
+                worker.shutdown();
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Register this pool as a management bean with the platform MBean server.
+     */
+    synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(
+                    "org.ringojs:type=WorkerPool,name=engine-" + poolId.getAndIncrement());
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (Exception x) {
+            log.log(Level.WARNING, "Could not register worker pool MBean", x);
+        }
+    }
+
+    /**
+     * Unregister this pool from the platform MBean server if it was registered.
+     */
+    synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception x) {
+                log.log(Level.FINE, "Could not unregister worker pool MBean", x);
+            }
+            objectName = null;
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getBusyCount() {
+        return busy.get();
+    }
+
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public String toString() {
+        return "WorkerPool[idle=" + getIdleCount() + ", busy=" + getBusyCount()
+                + ", created=" + getCreatedCount() + ", evicted="
+                + getEvictedCount() + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package org.ringojs.engine;
+
+/**
+ * Management interface exposing the state of an engine's worker pool.
+ */
+public interface WorkerPoolMXBean {
+
+    /**
+     * @return the number of workers kept in the pool even when idle
+     */
+    int getMinSize();
+
+    /**
+     * @return the maximum number of workers in use at the same time,
+     * or 0 if the pool is unbounded
+     */
+    int getMaxSize();
+
+    /**
+     * @return the number of idle workers waiting in the pool
+     */
+    int getIdleCount();
+
+    /**
+     * @return the number of workers currently in use
+     */
+    int getBusyCount();
+
+    /**
+     * @return the number of threads waiting for a worker to become available
+     */
+    int getWaitingCount();
+
+    /**
+     * @return the total number of workers created by the pool
+     */
+    long getCreatedCount();
+
+    /**
+     * @return the total number of idle workers shut down and removed
+     * from the pool
+     */
+    long getEvictedCount();
+
+    /**
+     * @return the total number of requests for a worker that failed
+     * because the pool was exhausted
+     */
+    long getRejectedCount();
+
+    /**
+     * Shut down and remove all idle workers exceeding the minimum pool size.
+     */
+    void evictIdleWorkers();
+}
@@ -0,0 +1,254 @@
+package org.ringojs.httpclient;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.dynamic.HttpClientTransportDynamic;
+import org.eclipse.jetty.client.http.HttpClientConnectionFactory;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.ClientConnectionFactoryOverHTTP2;
+import org.eclipse.jetty.io.ClientConnector;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.ringojs.engine.RhinoEngine;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * A non-blocking HTTP client backing the asynchronous engine of the
+ * <code>ringo/httpclient</code> module. This is a thin wrapper around
+ * Jetty's <code>HttpClient</code>, which keeps a pool of connections per
+ * host, reuses idle connections and multiplexes requests over HTTP/2
+ * connections where the server supports it.
+ *
+ * <p>Secure connections negotiate HTTP/2 or HTTP/1.1 using ALPN, plain
+ * connections use HTTP/1.1 with keep-alive. The client's threads are
+ * daemon threads, so an idle client doesn't keep the JVM running. The
+ * client must be started before sending requests.</p>
+ *
+ * <p>{@link #getDefault()} returns a started client shared by all workers
+ * and engines, so they don't each start their own thread pool.</p>
+ */
+public class AsyncHttpClient {
+
+    /**
+     * The default maximum number of connections per host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+
+    /**
+     * The default maximum number of requests queued per host while all
+     * connections are busy.
+     */
+    public static final int DEFAULT_MAX_QUEUED_PER_HOST = 1024;
+
+    /**
+     * The default time in milliseconds after which idle connections are
+     * closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * The default timeout in milliseconds for establishing connections.
+     */
+    public static final long DEFAULT_CONNECT_TIMEOUT = 60000;
+
+    private static AsyncHttpClient defaultClient;
+
+    private final HttpClient client;
+    private final ClientConnector connector;
+
+    /**
+     * Create a new client.
+     * @param http2 true to negotiate HTTP/2 on secure connections
+     */
+    public AsyncHttpClient(boolean http2) {
+        connector = new ClientConnector();
+        connector.setSslContextFactory(new SslContextFactory.Client());
+        QueuedThreadPool executor = new QueuedThreadPool();
+        executor.setName("ringo-httpclient");
+        executor.setDaemon(true);
+        connector.setExecutor(executor);
+        connector.setScheduler(new ScheduledExecutorScheduler("ringo-httpclient-scheduler", true));
+        HttpClientTransport transport;
+        if (http2) {
+            transport = new HttpClientTransportDynamic(connector,
+                    HttpClientConnectionFactory.HTTP11,
+                    new ClientConnectionFactoryOverHTTP2.HTTP2(new HTTP2Client(connector)));
+        } else {
+            transport = new HttpClientTransportDynamic(connector,
+                    HttpClientConnectionFactory.HTTP11);
+        }
+        client = new HttpClient(transport);
+        client.setExecutor(executor);
+        client.setScheduler(connector.getScheduler());
+        client.setMaxConnectionsPerDestination(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        client.setMaxRequestsQueuedPerDestination(DEFAULT_MAX_QUEUED_PER_HOST);
+        setIdleTimeout(DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Get the default client, creating and starting it on first invocation
+     * or if it has been stopped. The default client uses the default
+     * settings, negotiates HTTP/2 and follows redirects.
+     * @return the default client
+     * @throws Exception if the client could not be started
+     */
+    public static synchronized AsyncHttpClient getDefault() throws Exception {
+        if (defaultClient == null || !defaultClient.isRunning()) {
+            AsyncHttpClient client = new AsyncHttpClient(true);
+            client.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT);
+            client.setFollowRedirects(true);
+            StringBuilder userAgent = new StringBuilder("RingoJS HttpClient ");
+            for (int i = 0; i < RhinoEngine.VERSION.size(); i++) {
+                if (i > 0) {
+                    userAgent.append('.');
+                }
+                userAgent.append(RhinoEngine.VERSION.get(i));
+            }
+            client.setUserAgent(userAgent.toString());
+            client.start();
+            defaultClient = client;
+        }
+        return defaultClient;
+    }
+
+    /**
+     * Stop the default client if it has been started. It is started again
+     * by the next invocation of {@link #getDefault()}.
+     * @throws Exception if the client could not be stopped
+     */
+    public static synchronized void stopDefault() throws Exception {
+        if (defaultClient != null) {
+            AsyncHttpClient client = defaultClient;
+            defaultClient = null;
+            client.stop();
+        }
+    }
+
+    /**
+     * Set the maximum number of connections opened to a single host.
+     * Requests exceeding this limit are queued until a connection becomes
+     * available. For HTTP/2 each connection carries many requests.
+     * @param max the maximum number of connections
+     */
+    public void setMaxConnectionsPerHost(int max) {
+        client.setMaxConnectionsPerDestination(max);
+    }
+
+    /**
+     * Set the maximum number of requests queued for a single host. Further
+     * requests fail immediately.
+     * @param max the maximum number of queued requests
+     */
+    public void setMaxQueuedPerHost(int max) {
+        client.setMaxRequestsQueuedPerDestination(max);
+    }
+
+    /**
+     * Set the time after which idle connections are closed. This is how
+     * long connections are kept alive for reuse between requests.
+     * @param timeout the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(long timeout) {
+        client.setIdleTimeout(timeout);
+        connector.setIdleTimeout(Duration.ofMillis(timeout));
+    }
+
+    /**
+     * Set the timeout for establishing connections.
+     * @param timeout the connect timeout in milliseconds
+     */
+    public void setConnectTimeout(long timeout) {
+        client.setConnectTimeout(timeout);
+        connector.setConnectTimeout(Duration.ofMillis(timeout));
+    }
+
+    /**
+     * Set whether redirects are followed by default.
+     * @param follow true to follow redirects
+     */
+    public void setFollowRedirects(boolean follow) {
+        client.setFollowRedirects(follow);
+    }
+
+    /**
+     * Send requests through an HTTP proxy.
+     * @param host the proxy host
+     * @param port the proxy port
+     */
+    public void setProxy(String host, int port) {
+        client.getProxyConfiguration().addProxy(new HttpProxy(host, port));
+    }
+
+    /**
+     * Set the User-Agent header sent with requests.
+     * @param userAgent the user agent
+     */
+    public void setUserAgent(String userAgent) {
+        client.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, userAgent));
+    }
+
+    /**
+     * Start the client.
+     * @throws Exception if the client could not be started
+     */
+    public void start() throws Exception {
+        client.start();
+    }
+
+    /**
+     * Stop the client, aborting all pending requests and closing all
+     * connections.
+     * @throws Exception if the client could not be stopped
+     */
+    public void stop() throws Exception {
+        client.stop();
+    }
+
+    /**
+     * Returns true if the client has been started and not stopped.
+     * @return true if running
+     */
+    public boolean isRunning() {
+        return client.isRunning();
+    }
+
+    /**
+     * Create a new exchange for a request. The exchange is sent by calling
+     * one of its send methods.
+     * @param url the request URL
+     * @param method the request method
+     * @return the exchange
+     */
+    public Exchange newExchange(String url, String method) {
+        return new Exchange(client.newRequest(URI.create(url)).method(method));
+    }
+
+    /**
+     * Create a batch of exchanges created by this client. The exchanges
+     * are sent concurrently by calling the batch's send method.
+     * @param exchanges the exchanges
+     * @return the batch
+     */
+    public Batch newBatch(Exchange[] exchanges) {
+        return new Batch(exchanges, client.getScheduler());
+    }
+
+    /**
+     * Get the underlying Jetty client.
+     * @return the Jetty client
+     */
+    public HttpClient getHttpClient() {
+        return client;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncHttpClient[" + client + "]";
+    }
+}
@@ -0,0 +1,242 @@
+package org.ringojs.httpclient;
+
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A batch of exchanges sent concurrently by an {@link AsyncHttpClient}.
+ * At most a given number of exchanges are in flight at any time, the
+ * others wait until a running exchange completes. The batch completes once
+ * every exchange has either completed or failed.
+ *
+ * <p>A batch may have a deadline. Each exchange is started with a timeout
+ * no longer than the time remaining until the deadline, and once the
+ * deadline passes, running exchanges are aborted and those not yet
+ * started fail without being sent.</p>
+ */
+public final class Batch {
+
+    private final Exchange[] exchanges;
+    private final Throwable[] errors;
+    private final boolean[] done;
+    private final Scheduler scheduler;
+
+    private Listener listener;
+    private int maxContentLength;
+    private int concurrency;
+    private long deadline = 0;
+    private Scheduler.Task timer;
+    private int next = 0;
+    private int running = 0;
+    private int completed = 0;
+    private boolean started = false;
+
+    /**
+     * Notified when the batch completes.
+     */
+    public interface Listener {
+
+        /**
+         * Called once all exchanges of the batch have completed or failed.
+         * @param batch the batch
+         */
+        void completed(Batch batch);
+    }
+
+    Batch(Exchange[] exchanges, Scheduler scheduler) {
+        this.exchanges = exchanges;
+        this.errors = new Throwable[exchanges.length];
+        this.done = new boolean[exchanges.length];
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Send the exchanges of the batch, buffering their response bodies.
+     * @param concurrency the maximum number of exchanges in flight, or 0
+     *                    for no limit
+     * @param timeout the time in milliseconds until the deadline of the
+     *                batch, or 0 for none
+     * @param maxContentLength the maximum size of a response body
+     * @param listener the listener to notify once the batch completes
+     */
+    public void send(int concurrency, final long timeout, int maxContentLength,
+                     Listener listener) {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Batch has already been sent");
+            }
+            started = true;
+            this.listener = listener;
+            this.maxContentLength = maxContentLength;
+            this.concurrency = concurrency > 0 ? concurrency : exchanges.length;
+            if (timeout > 0) {
+                deadline = System.currentTimeMillis() + timeout;
+                timer = scheduler.schedule(new Runnable() {
+                    public void run() {
+                        cancel(new TimeoutException(
+                                "Batch deadline of " + timeout + " ms exceeded"));
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (exchanges.length == 0) {
+            finish();
+        } else {
+            sendNext();
+        }
+    }
+
+    /**
+     * Cancel the batch. Running exchanges are aborted, exchanges not yet
+     * started fail without being sent.
+     * @param reason the reason
+     * @return the number of exchanges cancelled
+     */
+    public int cancel(String reason) {
+        return cancel(new CancellationException(reason));
+    }
+
+    private int cancel(Throwable error) {
+        int count = 0;
+        for (int i = 0; i < exchanges.length; i++) {
+            boolean last = false;
+            boolean abort = false;
+            synchronized (this) {
+                if (done[i]) {
+                    continue;
+                }
+                if (i < next) {
+                    abort = true;
+                } else {
+                    // not started yet, fail it without sending
+                    done[i] = true;
+                    errors[i] = error;
+                    completed += 1;
+                    count += 1;
+                    last = completed == exchanges.length;
+                }
+            }
+            if (last) {
+                finish();
+            } else if (abort && exchanges[i].getRequest().abort(error)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private void sendNext() {
+        while (true) {
+            final int index;
+            synchronized (this) {
+                if (running >= concurrency || next >= exchanges.length) {
+                    return;
+                }
+                index = next++;
+                if (done[index]) {
+                    continue;
+                }
+                running += 1;
+            }
+            Exchange exchange = exchanges[index];
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    complete(index, new TimeoutException("Batch deadline exceeded"));
+                    continue;
+                }
+                long timeout = exchange.getRequest().getTimeout();
+                if (timeout <= 0 || timeout > remaining) {
+                    exchange.timeout(remaining);
+                }
+            }
+            try {
+                exchange.send(maxContentLength, new Exchange.Listener() {
+                    public void completed(Exchange exchange) {
+                        complete(index, null);
+                    }
+
+                    public void failed(Exchange exchange, Throwable error) {
+                        complete(index, error);
+                    }
+                });
+            } catch (RuntimeException x) {
+                complete(index, x);
+            }
+        }
+    }
+
+    private void complete(int index, Throwable error) {
+        boolean last;
+        synchronized (this) {
+            running -= 1;
+            if (done[index]) {
+                return;
+            }
+            done[index] = true;
+            errors[index] = error;
+            completed += 1;
+            last = completed == exchanges.length;
+        }
+        if (last) {
+            finish();
+        } else {
+            sendNext();
+        }
+    }
+
+    private void finish() {
+        Scheduler.Task task;
+        synchronized (this) {
+            task = timer;
+            timer = null;
+        }
+        if (task != null) {
+            task.cancel();
+        }
+        listener.completed(this);
+    }
+
+    /**
+     * Get the number of exchanges in the batch.
+     * @return the number of exchanges
+     */
+    public int size() {
+        return exchanges.length;
+    }
+
+    /**
+     * Get an exchange of the batch.
+     * @param index the index of the exchange
+     * @return the exchange
+     */
+    public Exchange getExchange(int index) {
+        return exchanges[index];
+    }
+
+    /**
+     * Get the error of a failed exchange.
+     * @param index the index of the exchange
+     * @return the error, or null if the exchange completed
+     */
+    public synchronized Throwable getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Get the number of exchanges that completed or failed so far.
+     * @return the number of finished exchanges
+     */
+    public synchronized int getCompleted() {
+        return completed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Batch[size=" + exchanges.length + ", completed=" + completed
+                + ", running=" + running + "]";
+    }
+}
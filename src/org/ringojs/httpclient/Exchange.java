@@ -0,0 +1,404 @@
+package org.ringojs.httpclient;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.AsyncRequestContent;
+import org.eclipse.jetty.client.util.BytesRequestContent;
+import org.eclipse.jetty.client.util.InputStreamRequestContent;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single request and response of an {@link AsyncHttpClient}. The request
+ * is configured on the calling thread, then sent without blocking. Once the
+ * response is complete, the listener passed to the send method is notified
+ * on one of the client's threads.
+ *
+ * <p>Response bodies are either buffered in memory, streamed with a
+ * {@link ResponseBody}, or written to a file. Request bodies are either
+ * passed as byte array, read from an input stream, or written in chunks
+ * with a {@link RequestBody}.</p>
+ */
+public final class Exchange {
+
+    /**
+     * The default maximum size of a buffered response body.
+     */
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+    private final Request request;
+    private volatile Response response;
+    private volatile ResponseBody body;
+    private byte[] content;
+    private int length = 0;
+    private long written = 0;
+
+    /**
+     * Notified when the exchange completes.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the response has been received completely.
+         * @param exchange the exchange
+         */
+        void completed(Exchange exchange);
+
+        /**
+         * Called if the request failed, timed out or was aborted.
+         * @param exchange the exchange
+         * @param error the error
+         */
+        void failed(Exchange exchange, Throwable error);
+    }
+
+    Exchange(Request request) {
+        this.request = request;
+    }
+
+    /**
+     * Add a request header.
+     * @param name the header name
+     * @param value the header value
+     * @return this exchange
+     */
+    public Exchange header(final String name, final String value) {
+        request.headers(headers -> headers.add(name, value));
+        return this;
+    }
+
+    /**
+     * Set the request body.
+     * @param bytes the body
+     * @param contentType the content type, or null
+     * @return this exchange
+     */
+    public Exchange body(byte[] bytes, String contentType) {
+        request.body(new BytesRequestContent(contentType, bytes));
+        return this;
+    }
+
+    /**
+     * Set the request body to the contents of an input stream. The stream
+     * is read while the request is sent and closed at the end.
+     * @param stream the input stream
+     * @param contentType the content type, or null
+     * @return this exchange
+     */
+    public Exchange body(InputStream stream, String contentType) {
+        request.body(new InputStreamRequestContent(contentType, stream));
+        return this;
+    }
+
+    /**
+     * Set up a request body that is written in chunks while the request
+     * is sent. The body must be closed after the last chunk.
+     * @param contentType the content type, or null
+     * @return the request body writer
+     */
+    public RequestBody bodyWriter(String contentType) {
+        AsyncRequestContent content = new AsyncRequestContent(contentType);
+        request.body(content);
+        return new RequestBody(this, content);
+    }
+
+    /**
+     * Set the total timeout of the exchange.
+     * @param timeout the timeout in milliseconds, or 0 for none
+     * @return this exchange
+     */
+    public Exchange timeout(long timeout) {
+        if (timeout > 0) {
+            request.timeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Set the maximum time the connection may be idle while waiting for
+     * the response.
+     * @param timeout the idle timeout in milliseconds, or 0 for none
+     * @return this exchange
+     */
+    public Exchange idleTimeout(long timeout) {
+        if (timeout > 0) {
+            request.idleTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Set whether redirects are followed for this exchange.
+     * @param follow true to follow redirects
+     * @return this exchange
+     */
+    public Exchange followRedirects(boolean follow) {
+        request.followRedirects(follow);
+        return this;
+    }
+
+    /**
+     * Send the request and buffer the response body in memory.
+     * @param maxContentLength the maximum size of the body, larger bodies
+     *                         fail the exchange
+     * @param listener the listener to notify once the exchange completes
+     */
+    public void send(final int maxContentLength, final Listener listener) {
+        request.send(new Response.Listener.Adapter() {
+            @Override
+            public void onHeaders(Response response) {
+                Exchange.this.response = response;
+                long contentLength = response.getHeaders()
+                        .getLongField(HttpHeader.CONTENT_LENGTH);
+                if (contentLength > maxContentLength) {
+                    response.abort(new IllegalStateException(
+                            "Response body exceeds " + maxContentLength + " bytes"));
+                } else if (contentLength > 0) {
+                    content = new byte[(int) contentLength];
+                }
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer buffer) {
+                int remaining = buffer.remaining();
+                if (length + remaining > maxContentLength) {
+                    response.abort(new IllegalStateException(
+                            "Response body exceeds " + maxContentLength + " bytes"));
+                    return;
+                }
+                if (content == null) {
+                    content = new byte[Math.max(remaining, 8192)];
+                } else if (length + remaining > content.length) {
+                    content = Arrays.copyOf(content, (int) Math.min(
+                            Math.max((long) content.length * 2, length + remaining),
+                            maxContentLength));
+                }
+                buffer.get(content, length, remaining);
+                length += remaining;
+            }
+
+            @Override
+            public void onComplete(Result result) {
+                response = result.getResponse();
+                if (result.isFailed()) {
+                    content = null;
+                    listener.failed(Exchange.this, result.getFailure());
+                } else {
+                    listener.completed(Exchange.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the request without buffering the response body. The listener
+     * is notified as soon as the response headers have been received, the
+     * body can then be read from {@link #getBody()}. Content is only
+     * received as fast as the body is read.
+     * @param listener the listener to notify once the headers have been
+     *                 received
+     */
+    public void sendStreaming(Listener listener) {
+        ResponseBody body = new ResponseBody(this, listener);
+        this.body = body;
+        request.send(body);
+    }
+
+    /**
+     * Send the request and write the response body to a file. The file is
+     * created or truncated once the headers have been received, and deleted
+     * if the exchange fails.
+     * @param path the path of the file
+     * @param listener the listener to notify once the exchange completes
+     */
+    public void sendToFile(final String path, final Listener listener) {
+        request.send(new Response.Listener.Adapter() {
+            private FileChannel channel;
+
+            @Override
+            public void onHeaders(Response response) {
+                Exchange.this.response = response;
+                try {
+                    RandomAccessFile file = new RandomAccessFile(path, "rw");
+                    file.setLength(0);
+                    channel = file.getChannel();
+                } catch (IOException x) {
+                    response.abort(x);
+                }
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer buffer) {
+                try {
+                    while (buffer.hasRemaining()) {
+                        written += channel.write(buffer);
+                    }
+                } catch (IOException x) {
+                    response.abort(x);
+                }
+            }
+
+            @Override
+            public void onComplete(Result result) {
+                response = result.getResponse();
+                boolean failed = result.isFailed();
+                Throwable failure = result.getFailure();
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException x) {
+                        if (!failed) {
+                            failed = true;
+                            failure = x;
+                        }
+                    }
+                    if (failed) {
+                        new File(path).delete();
+                    }
+                }
+                if (failed) {
+                    listener.failed(Exchange.this, failure);
+                } else {
+                    listener.completed(Exchange.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Abort the exchange. The listener is notified of the failure.
+     * @param reason the reason
+     * @return true if the exchange was aborted, false if it already
+     * completed
+     */
+    public boolean abort(String reason) {
+        return request.abort(new java.util.concurrent.CancellationException(reason));
+    }
+
+    /**
+     * Get the underlying Jetty request.
+     * @return the request
+     */
+    public Request getRequest() {
+        return request;
+    }
+
+    /**
+     * Get the URL of the request.
+     * @return the URL
+     */
+    public String getURL() {
+        return request.getURI().toString();
+    }
+
+    /**
+     * Get the response status.
+     * @return the status, or 0 if no response has been received
+     */
+    public int getStatus() {
+        Response response = this.response;
+        return response == null ? 0 : response.getStatus();
+    }
+
+    /**
+     * Get the response reason phrase.
+     * @return the reason phrase, or null
+     */
+    public String getReason() {
+        Response response = this.response;
+        return response == null ? null : response.getReason();
+    }
+
+    /**
+     * Get the protocol version of the response, such as HTTP/2.0.
+     * @return the version, or null
+     */
+    public String getVersion() {
+        Response response = this.response;
+        return response == null || response.getVersion() == null ?
+                null : response.getVersion().asString();
+    }
+
+    /**
+     * Get the first value of a response header.
+     * @param name the header name
+     * @return the header value, or null
+     */
+    public String getHeader(String name) {
+        Response response = this.response;
+        return response == null ? null : response.getHeaders().get(name);
+    }
+
+    /**
+     * Get the response headers as map of header names to lists of values.
+     * @return the response headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        Response response = this.response;
+        if (response != null) {
+            for (HttpField field : response.getHeaders()) {
+                List<String> values = headers.get(field.getName());
+                if (values == null) {
+                    values = new ArrayList<String>(1);
+                    headers.put(field.getName(), values);
+                }
+                values.add(field.getValue());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Get the response body. The array is owned by the caller.
+     * @return the response body, or null if the response has no body
+     */
+    public byte[] getContent() {
+        if (content == null || length == 0) {
+            return null;
+        }
+        return length == content.length ? content : Arrays.copyOf(content, length);
+    }
+
+    /**
+     * Get the response body of a streaming exchange.
+     * @return the response body, or null if the exchange was not sent with
+     * {@link #sendStreaming(Listener)}
+     */
+    public ResponseBody getBody() {
+        return body;
+    }
+
+    /**
+     * Get the size of the response body received so far. For exchanges
+     * sent with {@link #sendToFile(String, Listener)} this is the number
+     * of bytes written to the file.
+     * @return the number of bytes
+     */
+    public long getContentLength() {
+        return written > 0 ? written : length;
+    }
+
+    void setResponse(Response response) {
+        this.response = response;
+    }
+
+    @Override
+    public String toString() {
+        return "Exchange[" + request.getMethod() + " " + getURL() + "]";
+    }
+}
@@ -0,0 +1,79 @@
+package org.ringojs.httpclient;
+
+import org.eclipse.jetty.client.util.AsyncRequestContent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a request body in chunks while the request is being sent. Each
+ * chunk is passed to the connection as it is, and the callback is notified
+ * once it has been written, so the next chunk can be produced without
+ * buffering the whole body.
+ */
+public final class RequestBody {
+
+    private final Exchange exchange;
+    private final AsyncRequestContent content;
+
+    /**
+     * Notified once a chunk has been written.
+     */
+    public interface Callback {
+
+        /**
+         * Called once the chunk has been written to the connection.
+         */
+        void written();
+
+        /**
+         * Called if the chunk could not be written.
+         * @param error the error
+         */
+        void failed(Throwable error);
+    }
+
+    RequestBody(Exchange exchange, AsyncRequestContent content) {
+        this.exchange = exchange;
+        this.content = content;
+    }
+
+    /**
+     * Write a chunk of the request body. The array must not be modified
+     * until the callback has been notified.
+     * @param bytes the chunk
+     * @param callback the callback, or null
+     * @return false if the body has already been closed
+     */
+    public boolean write(byte[] bytes, final Callback callback) {
+        return content.offer(ByteBuffer.wrap(bytes), new org.eclipse.jetty.util.Callback() {
+            @Override
+            public void succeeded() {
+                if (callback != null) {
+                    callback.written();
+                }
+            }
+
+            @Override
+            public void failed(Throwable x) {
+                if (callback != null) {
+                    callback.failed(x);
+                }
+            }
+        });
+    }
+
+    /**
+     * Signal the end of the request body.
+     */
+    public void close() {
+        content.close();
+    }
+
+    /**
+     * Abort the exchange because the request body could not be produced.
+     * @param error the error
+     */
+    public void fail(Throwable error) {
+        exchange.getRequest().abort(error);
+    }
+}
@@ -0,0 +1,295 @@
+package org.ringojs.httpclient;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads a response body in chunks without buffering it. Each call to
+ * {@link #read(Callback)} delivers the next chunk to the callback as soon as
+ * it has been received. Content is only requested from the connection once
+ * a chunk is read, so a slow consumer slows down the server instead of
+ * filling up memory. The body can also be read as a blocking input stream.
+ */
+public final class ResponseBody extends Response.Listener.Adapter {
+
+    private final Exchange exchange;
+    private final Exchange.Listener listener;
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<byte[]>();
+
+    private LongConsumer demand;
+    private boolean demanding = false;
+    private boolean started = false;
+    private boolean finished = false;
+    private Throwable error;
+    private Callback pending;
+
+    /**
+     * Receives chunks of the response body.
+     */
+    public interface Callback {
+
+        /**
+         * Called with the next chunk of the response body.
+         * @param bytes the chunk
+         */
+        void data(byte[] bytes);
+
+        /**
+         * Called when the whole response body has been read.
+         */
+        void end();
+
+        /**
+         * Called if reading the response body failed.
+         * @param error the error
+         */
+        void error(Throwable error);
+    }
+
+    ResponseBody(Exchange exchange, Exchange.Listener listener) {
+        this.exchange = exchange;
+        this.listener = listener;
+    }
+
+    /**
+     * Read the next chunk. The callback is invoked immediately if a chunk
+     * is available, or later on one of the client's threads otherwise. Only
+     * one read may be pending at a time.
+     * @param callback the callback
+     */
+    public void read(Callback callback) {
+        byte[] data = null;
+        Throwable failure = null;
+        LongConsumer request = null;
+        boolean queued = false;
+        synchronized (this) {
+            if (pending != null) {
+                throw new IllegalStateException("Another read is pending");
+            }
+            if (!chunks.isEmpty()) {
+                data = chunks.poll();
+            } else if (error != null) {
+                failure = error;
+            } else if (!finished) {
+                pending = callback;
+                queued = true;
+                if (!demanding && demand != null) {
+                    demanding = true;
+                    request = demand;
+                }
+            }
+        }
+        if (queued) {
+            // delivered by onContent or onComplete
+            if (request != null) {
+                request.accept(1);
+            }
+        } else if (data != null) {
+            callback.data(data);
+        } else if (failure != null) {
+            callback.error(failure);
+        } else {
+            callback.end();
+        }
+    }
+
+    /**
+     * Get a blocking input stream over the remaining body. Closing the
+     * stream before the end of the body aborts the exchange.
+     * @return the input stream
+     */
+    public InputStream getInputStream() {
+        return new BodyInputStream();
+    }
+
+    @Override
+    public void onHeaders(Response response) {
+        exchange.setResponse(response);
+        synchronized (this) {
+            started = true;
+        }
+        listener.completed(exchange);
+    }
+
+    @Override
+    public void onBeforeContent(Response response, LongConsumer demand) {
+        boolean request;
+        synchronized (this) {
+            this.demand = demand;
+            request = pending != null && !demanding;
+            demanding = request;
+        }
+        if (request) {
+            demand.accept(1);
+        }
+    }
+
+    @Override
+    public void onContent(Response response, LongConsumer demand, ByteBuffer content,
+                          org.eclipse.jetty.util.Callback callback) {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        callback.succeeded();
+        Callback reader = null;
+        boolean request = false;
+        synchronized (this) {
+            this.demand = demand;
+            demanding = false;
+            if (bytes.length == 0) {
+                request = pending != null;
+                demanding = request;
+            } else if (pending != null) {
+                reader = pending;
+                pending = null;
+            } else {
+                chunks.add(bytes);
+            }
+        }
+        if (reader != null) {
+            reader.data(bytes);
+        } else if (request) {
+            demand.accept(1);
+        }
+    }
+
+    @Override
+    public void onComplete(Result result) {
+        Callback reader;
+        boolean notify;
+        synchronized (this) {
+            if (result.isFailed()) {
+                error = result.getFailure();
+            } else {
+                finished = true;
+            }
+            reader = pending;
+            pending = null;
+            notify = !started;
+            started = true;
+        }
+        if (notify) {
+            exchange.setResponse(result.getResponse());
+            if (result.isFailed()) {
+                listener.failed(exchange, result.getFailure());
+            } else {
+                listener.completed(exchange);
+            }
+        }
+        if (reader != null) {
+            if (result.isFailed()) {
+                reader.error(result.getFailure());
+            } else {
+                reader.end();
+            }
+        }
+    }
+
+    private synchronized boolean isDone() {
+        return finished || error != null;
+    }
+
+    final class BodyInputStream extends InputStream {
+        private byte[] chunk;
+        private int position = 0;
+        private boolean eof = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (chunk == null || position == chunk.length) {
+                chunk = next();
+                position = 0;
+                if (chunk == null) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : chunk.length - position;
+        }
+
+        @Override
+        public void close() {
+            eof = true;
+            chunk = null;
+            if (!isDone()) {
+                exchange.abort("Response body closed");
+            }
+        }
+
+        private byte[] next() throws IOException {
+            if (eof) {
+                return null;
+            }
+            final Object[] result = new Object[1];
+            final Object lock = new Object();
+            ResponseBody.this.read(new Callback() {
+                public void data(byte[] bytes) {
+                    set(bytes);
+                }
+
+                public void end() {
+                    set(this);
+                }
+
+                public void error(Throwable error) {
+                    set(error);
+                }
+
+                private void set(Object value) {
+                    synchronized (lock) {
+                        result[0] = value;
+                        lock.notifyAll();
+                    }
+                }
+            });
+            Object value;
+            synchronized (lock) {
+                try {
+                    while (result[0] == null) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException x) {
+                    exchange.abort("Interrupted");
+                    throw new InterruptedIOException();
+                }
+                value = result[0];
+            }
+            if (value instanceof byte[]) {
+                return (byte[]) value;
+            } else if (value instanceof Throwable) {
+                eof = true;
+                if (value instanceof CancellationException) {
+                    throw new IOException(((Throwable) value).getMessage(), (Throwable) value);
+                }
+                throw value instanceof IOException ?
+                        (IOException) value : new IOException((Throwable) value);
+            }
+            eof = true;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.ringojs.jsgi;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads a request body in chunks without blocking. Each call to
+ * {@link #read(Callback)} delivers the next chunk to the callback as soon
+ * as it is available, so the body is only read as fast as it is consumed.
+ * The request must be in async mode.
+ */
+public class AsyncInput implements ReadListener {
+
+    private final ServletInputStream input;
+    private final int chunkSize;
+
+    private Callback pending;
+    private boolean finished = false;
+    private Throwable error;
+
+    /**
+     * Receives chunks of the request body.
+     */
+    public interface Callback {
+
+        /**
+         * Called with the next chunk of the request body.
+         * @param bytes the chunk
+         */
+        void data(byte[] bytes);
+
+        /**
+         * Called when the whole request body has been read.
+         */
+        void end();
+
+        /**
+         * Called if reading the request body failed.
+         * @param error the error
+         */
+        void error(Throwable error);
+    }
+
+    /**
+     * Start reading the body of the given request.
+     * @param request a request in async mode
+     * @param chunkSize the maximum size of chunks
+     * @return the async input
+     * @throws IOException if the request input could not be obtained
+     */
+    public static AsyncInput start(ServletRequest request, int chunkSize)
+            throws IOException {
+        ServletInputStream input = request.getInputStream();
+        AsyncInput asyncInput = new AsyncInput(input, chunkSize);
+        input.setReadListener(asyncInput);
+        return asyncInput;
+    }
+
+    private AsyncInput(ServletInputStream input, int chunkSize) {
+        this.input = input;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Read the next chunk. The callback is invoked immediately if data is
+     * available, or later on a container thread otherwise. Only one read
+     * may be pending at a time.
+     * @param callback the callback
+     */
+    public void read(Callback callback) {
+        byte[] data;
+        synchronized (this) {
+            if (pending != null) {
+                throw new IllegalStateException("Another read is pending");
+            }
+            data = error == null && !finished ? readAvailable() : null;
+            if (data == null && error == null && !finished) {
+                pending = callback;
+                return;
+            }
+        }
+        deliver(callback, data);
+    }
+
+    @Override
+    public void onDataAvailable() {
+        Callback callback;
+        byte[] data;
+        synchronized (this) {
+            if (pending == null) {
+                // wait until the next chunk is requested
+                return;
+            }
+            data = readAvailable();
+            if (data == null && error == null && !finished) {
+                return;
+            }
+            callback = pending;
+            pending = null;
+        }
+        deliver(callback, data);
+    }
+
+    @Override
+    public void onAllDataRead() {
+        Callback callback;
+        synchronized (this) {
+            finished = true;
+            callback = pending;
+            pending = null;
+        }
+        if (callback != null) {
+            callback.end();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        Callback callback;
+        synchronized (this) {
+            error = t;
+            callback = pending;
+            pending = null;
+        }
+        if (callback != null) {
+            callback.error(t);
+        }
+    }
+
+    // must be called while holding the lock
+    private byte[] readAvailable() {
+        try {
+            while (input.isReady()) {
+                byte[] buffer = new byte[chunkSize];
+                int read = input.read(buffer);
+                if (read < 0) {
+                    finished = true;
+                    return null;
+                } else if (read > 0) {
+                    return read == buffer.length ?
+                            buffer : Arrays.copyOf(buffer, read);
+                }
+            }
+        } catch (IOException | RuntimeException x) {
+            error = x;
+        }
+        return null;
+    }
+
+    private void deliver(Callback callback, byte[] data) {
+        Throwable t;
+        boolean end;
+        synchronized (this) {
+            t = error;
+            end = finished;
+        }
+        if (data != null) {
+            callback.data(data);
+        } else if (t != null) {
+            callback.error(t);
+        } else if (end) {
+            callback.end();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package org.ringojs.jsgi;
+
+import org.ringojs.util.ByteBufferPool;
+import org.ringojs.wrappers.Binary;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes an asynchronous response using the non-blocking servlet output.
+ * This backs the <code>AsyncResponse</code> of the
+ * <code>ringo/jsgi/connector</code> module.
+ *
+ * <p>Data passed to the write methods is copied into pooled buffers, so
+ * many small writes issued while the client is not ready are gathered into
+ * a few buffers. ByteStrings of at least one buffer's size are queued
+ * without copying, as their content cannot change. Writes never block; instead the producer can check the
+ * return value of the write methods, which is false once more than the
+ * high watermark is queued, and register a {@link Listener} to be notified
+ * once the queue has drained below the low watermark. All buffers are
+ * returned to the pool when the response completes or the client
+ * disconnects.</p>
+ *
+ * <p>Instances are thread-safe, write methods may be called from any
+ * thread.</p>
+ */
+public class AsyncResponseWriter implements WriteListener, AsyncListener {
+
+    static final ByteBufferPool pool = new ByteBufferPool(8192, 1024);
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream output;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final OutputStream appender = new OutputStream() {
+        public void write(int b) {
+            append(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            append(b, off, len);
+        }
+    };
+
+    // the following fields are guarded by this
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+    private ByteBuffer current;
+    private ByteBuffer inFlight;
+    private long pending = 0;
+    private boolean flush = false;
+    private boolean closed = false;
+    private boolean finished = false;
+    private Throwable error;
+    private List<Listener> listeners;
+    private String charsetName;
+    private CharsetEncoder encoder;
+
+    private static final Logger log = Logger.getLogger(AsyncResponseWriter.class.getName());
+
+    /**
+     * Notified when the queued data drains below the low watermark.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the queued data has drained below the low watermark.
+         */
+        void drained();
+
+        /**
+         * Called if the response failed or completed before the queued data
+         * could be drained, e.g. because the client disconnected.
+         * @param error the error
+         */
+        void failed(Throwable error);
+    }
+
+    /**
+     * Start writing an asynchronous response.
+     * @param asyncContext the async context of the request
+     * @param highWatermark the number of queued bytes above which write
+     *                      methods return false
+     * @param lowWatermark the number of queued bytes below which drain
+     *                     listeners are notified
+     * @return the response writer
+     * @throws IOException if the servlet output could not be obtained
+     */
+    public static AsyncResponseWriter start(AsyncContext asyncContext,
+                                            int highWatermark,
+                                            int lowWatermark)
+            throws IOException {
+        AsyncResponseWriter writer = new AsyncResponseWriter(asyncContext,
+                asyncContext.getResponse().getOutputStream(),
+                highWatermark, lowWatermark);
+        asyncContext.addListener(writer);
+        writer.output.setWriteListener(writer);
+        return writer;
+    }
+
+    private AsyncResponseWriter(AsyncContext asyncContext,
+                                ServletOutputStream output,
+                                int highWatermark, int lowWatermark) {
+        this.asyncContext = asyncContext;
+        this.output = output;
+        this.highWatermark = Math.max(highWatermark, 1);
+        this.lowWatermark = Math.max(Math.min(lowWatermark, this.highWatermark), 0);
+    }
+
+    /**
+     * Queue a part of a byte array for writing.
+     * @param bytes the byte array
+     * @param offset the offset of the first byte to write
+     * @param length the number of bytes to write
+     * @return false if the queued data exceeds the high watermark
+     */
+    public boolean write(byte[] bytes, int offset, int length) {
+        synchronized (this) {
+            checkOpen();
+            append(bytes, offset, length);
+        }
+        writeOut();
+        return isWritable();
+    }
+
+    /**
+     * Queue the content of a Binary for writing.
+     * @param binary the binary
+     * @return false if the queued data exceeds the high watermark
+     * @throws IOException if the binary could not be copied
+     */
+    public boolean write(Binary binary) throws IOException {
+        synchronized (this) {
+            checkOpen();
+            if (!binary.isMutable() && binary.getLength() >= pool.getBufferSize()) {
+                seal();
+                ByteBuffer buffer = binary.asByteBuffer();
+                pending += buffer.remaining();
+                queue.add(buffer);
+            } else {
+                binary.writeTo(appender);
+            }
+        }
+        writeOut();
+        return isWritable();
+    }
+
+    /**
+     * Encode a string and queue it for writing. The string is encoded
+     * directly into the pooled buffers.
+     * @param str the string
+     * @param charset the charset name, or null for UTF-8
+     * @return false if the queued data exceeds the high watermark
+     */
+    public boolean write(String str, String charset) {
+        synchronized (this) {
+            checkOpen();
+            CharsetEncoder encoder = getEncoder(charset);
+            CharBuffer in = CharBuffer.wrap(str);
+            boolean flushed = false;
+            while (true) {
+                if (current == null || !current.hasRemaining()) {
+                    seal();
+                    current = pool.acquire();
+                }
+                int start = current.position();
+                CoderResult result = flushed ?
+                        encoder.flush(current) : encoder.encode(in, current, true);
+                pending += current.position() - start;
+                if (result.isOverflow()) {
+                    seal();
+                } else if (result.isUnderflow()) {
+                    if (flushed) {
+                        break;
+                    }
+                    flushed = true;
+                } else {
+                    throw new IllegalArgumentException(result.toString());
+                }
+            }
+        }
+        writeOut();
+        return isWritable();
+    }
+
+    /**
+     * Flush the queued data and the servlet output once the client is ready.
+     */
+    public void flush() {
+        synchronized (this) {
+            checkOpen();
+            seal();
+            flush = true;
+        }
+        writeOut();
+    }
+
+    /**
+     * Complete the response once all queued data has been written.
+     */
+    public void close() {
+        synchronized (this) {
+            checkOpen();
+            seal();
+            closed = true;
+        }
+        writeOut();
+    }
+
+    /**
+     * Returns true if the amount of queued data is below the high
+     * watermark and the response is still open.
+     * @return true if more data should be written
+     */
+    public synchronized boolean isWritable() {
+        return pending < highWatermark && !closed && error == null;
+    }
+
+    /**
+     * Returns true if the response has been closed, completed or failed.
+     * @return true if no more data can be written
+     */
+    public synchronized boolean isClosed() {
+        return closed || error != null;
+    }
+
+    /**
+     * Get the number of queued bytes not yet passed to the servlet output.
+     * @return the number of queued bytes
+     */
+    public synchronized long getPending() {
+        return pending;
+    }
+
+    /**
+     * Register a listener to be notified once the queued data drains below
+     * the low watermark. The listener is notified immediately if this is
+     * already the case.
+     * @param listener the listener
+     */
+    public void onDrain(Listener listener) {
+        Throwable failure;
+        synchronized (this) {
+            failure = error;
+            if (failure == null && pending > lowWatermark) {
+                if (listeners == null) {
+                    listeners = new ArrayList<Listener>();
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        if (failure != null) {
+            listener.failed(failure);
+        } else {
+            listener.drained();
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        writeOut();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        fail(t);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        fail(new IOException("Response completed"));
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        fail(new IOException("Async response timed out"));
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        fail(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        event.getAsyncContext().addListener(this);
+    }
+
+    // must be called while holding the lock
+    private void checkOpen() {
+        if (closed || error != null) {
+            throw new IllegalStateException("AsyncResponse already closed");
+        }
+    }
+
+    // must be called while holding the lock
+    private void append(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (current == null || !current.hasRemaining()) {
+                seal();
+                current = pool.acquire();
+            }
+            int n = Math.min(current.remaining(), length);
+            current.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+            pending += n;
+        }
+    }
+
+    // move the buffer being filled to the queue. Must be called
+    // while holding the lock
+    private void seal() {
+        if (current != null) {
+            if (current.position() > 0) {
+                current.flip();
+                queue.add(current);
+            } else {
+                pool.release(current);
+            }
+            current = null;
+        }
+    }
+
+    // must be called while holding the lock
+    private CharsetEncoder getEncoder(String name) {
+        if (name == null) {
+            name = "utf-8";
+        }
+        if (encoder == null || !name.equalsIgnoreCase(charsetName)) {
+            Charset charset = "utf-8".equalsIgnoreCase(name) ?
+                    StandardCharsets.UTF_8 : Charset.forName(name);
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            charsetName = name;
+        }
+        return encoder.reset();
+    }
+
+    /**
+     * Write queued data while the servlet output is ready. Only one thread
+     * writes at a time; calls while another thread is writing make that
+     * thread check the output again, so no readiness callback is lost.
+     */
+    private void writeOut() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            try {
+                drain();
+            } catch (IOException | RuntimeException x) {
+                fail(x);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() throws IOException {
+        while (output.isReady()) {
+            ByteBuffer buffer;
+            boolean doFlush = false;
+            List<Listener> drained = null;
+            synchronized (this) {
+                if (finished || error != null) {
+                    return;
+                }
+                // the previous write has completed once the output is ready
+                pool.release(inFlight);
+                inFlight = null;
+                buffer = queue.poll();
+                if (buffer == null && current != null && current.position() > 0) {
+                    seal();
+                    buffer = queue.poll();
+                }
+                if (buffer != null) {
+                    pending -= buffer.remaining();
+                    inFlight = buffer;
+                    if (listeners != null && pending <= lowWatermark) {
+                        drained = listeners;
+                        listeners = null;
+                    }
+                } else if (flush) {
+                    flush = false;
+                    doFlush = true;
+                } else if (closed) {
+                    finished = true;
+                } else {
+                    return;
+                }
+            }
+            if (drained != null) {
+                for (Listener listener : drained) {
+                    listener.drained();
+                }
+            }
+            if (buffer != null) {
+                write(buffer);
+            } else if (doFlush) {
+                output.flush();
+            } else {
+                asyncContext.complete();
+                return;
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        } else if (StaticContent.JETTY && StaticContent.Jetty.isHttpOutput(output)) {
+            StaticContent.Jetty.write(output, buffer);
+        } else {
+            // read-only or direct buffer of a ByteString
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Release all buffers not being written and notify pending drain
+     * listeners. This is called when the response completes or fails.
+     */
+    private void fail(Throwable t) {
+        List<Listener> failed;
+        boolean complete;
+        synchronized (this) {
+            if (error != null) {
+                return;
+            }
+            error = t == null ? new IOException("Async response failed") : t;
+            complete = !finished;
+            finished = true;
+            queue.forEach(pool::release);
+            queue.clear();
+            pool.release(current);
+            current = null;
+            // the container may still be writing the in-flight buffer, so
+            // leave it to the garbage collector instead of recycling it
+            inFlight = null;
+            pending = 0;
+            failed = listeners;
+            listeners = null;
+        }
+        if (complete && !(t instanceof IOException)) {
+            log.log(Level.WARNING, "Error writing async response", t);
+        }
+        if (failed != null) {
+            for (Listener listener : failed) {
+                listener.failed(error);
+            }
+        }
+        if (complete) {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException ignore) {
+                // already completed
+            }
+        }
+    }
+}
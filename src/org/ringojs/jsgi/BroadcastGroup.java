@@ -0,0 +1,367 @@
+package org.ringojs.jsgi;
+
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A group of WebSocket sessions that messages can be broadcast to. This
+ * backs the <code>BroadcastGroup</code> of the
+ * <code>ringo/httpserver/websocket</code> module.
+ *
+ * <p>A broadcast message is encoded once into a shared buffer, and each
+ * session is sent a read-only view of that buffer, so the cost per session
+ * is a frame header and a non-blocking write. Sends are asynchronous and
+ * may be batched by Jetty until the group is flushed.</p>
+ *
+ * <p>Sessions that don't keep up are evicted: if more than the maximum
+ * number of pending bytes is still queued for a session when a message is
+ * broadcast, the session is removed from the group and closed with status
+ * 1008 (policy violation). Closed sessions are removed on the next
+ * broadcast.</p>
+ *
+ * <p>Instances are thread-safe, messages may be broadcast from any
+ * thread.</p>
+ */
+public class BroadcastGroup {
+
+    /**
+     * The default maximum number of bytes queued for a single session.
+     */
+    public static final long DEFAULT_MAX_PENDING = 1024 * 1024;
+
+    private final long maxPending;
+    private final ConcurrentHashMap<Session, Member> members =
+            new ConcurrentHashMap<Session, Member>();
+    private volatile boolean batching = false;
+
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final Logger log = Logger.getLogger(BroadcastGroup.class.getName());
+
+    /**
+     * Create a new group with the default maximum of pending bytes.
+     */
+    public BroadcastGroup() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Create a new group.
+     * @param maxPending the maximum number of bytes queued for a session
+     *                   before it is evicted, or -1 for no limit
+     */
+    public BroadcastGroup(long maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Add a session to the group.
+     * @param session the session
+     * @return true if the session was added, false if it is already a
+     * member or not open
+     */
+    public boolean add(Session session) {
+        if (session == null || !session.isOpen()) {
+            return false;
+        }
+        return members.putIfAbsent(session, new Member(session)) == null;
+    }
+
+    /**
+     * Remove a session from the group.
+     * @param session the session
+     * @return true if the session was a member of the group
+     */
+    public boolean remove(Session session) {
+        return session != null && members.remove(session) != null;
+    }
+
+    /**
+     * Returns true if the session is a member of the group.
+     * @param session the session
+     * @return true if the session is a member
+     */
+    public boolean contains(Session session) {
+        return session != null && members.containsKey(session);
+    }
+
+    /**
+     * Get the number of sessions in the group.
+     * @return the number of members
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Enable or disable batching. If enabled, frames are collected by
+     * Jetty and written once its buffer is full or {@link #flush()} is
+     * called, so a burst of messages takes fewer network writes. The
+     * caller is responsible for flushing the group after a burst.
+     * @param batching true to batch frames
+     */
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
+    /**
+     * Returns true if frames are batched until the group is flushed.
+     * @return true if batching is enabled
+     */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Send a text message to all sessions of the group.
+     * @param message the message
+     * @return the number of sessions the message was sent to
+     */
+    public int broadcast(String message) {
+        ByteBuffer payload = StandardCharsets.UTF_8.encode(message);
+        return broadcast(OpCode.TEXT, payload.asReadOnlyBuffer(), message);
+    }
+
+    /**
+     * Send a binary message to all sessions of the group. The bytes are
+     * copied once, so the array may be modified after this returns.
+     * @param data the byte array
+     * @param offset the offset of the first byte to send
+     * @param length the number of bytes to send
+     * @return the number of sessions the message was sent to
+     */
+    public int broadcast(byte[] data, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        return broadcast(OpCode.BINARY, ByteBuffer.wrap(copy).asReadOnlyBuffer(), null);
+    }
+
+    /**
+     * Send a binary message to all sessions of the group without copying
+     * it. The remaining bytes of the buffer are sent, its content must not
+     * be modified until all sessions have sent the message.
+     * @param payload the message
+     * @return the number of sessions the message was sent to
+     */
+    public int broadcast(ByteBuffer payload) {
+        return broadcast(OpCode.BINARY, payload.asReadOnlyBuffer(), null);
+    }
+
+    /**
+     * Flush the batched frames of all sessions.
+     */
+    public void flush() {
+        for (Member member : members.values()) {
+            member.flush();
+        }
+    }
+
+    /**
+     * Close all sessions of the group and remove them.
+     * @param statusCode the close status code
+     * @param reason the close reason, or null
+     */
+    public void close(int statusCode, String reason) {
+        Collection<Member> all = members.values();
+        for (Member member : all) {
+            members.remove(member.session);
+            member.close(statusCode, reason);
+        }
+    }
+
+    private int broadcast(byte opcode, ByteBuffer payload, String text) {
+        messages.incrementAndGet();
+        boolean batch = batching;
+        int length = payload.remaining();
+        int count = 0;
+        for (Member member : members.values()) {
+            if (!member.session.isOpen()) {
+                members.remove(member.session);
+                continue;
+            }
+            if (maxPending > -1 && member.pending.get() > maxPending) {
+                evict(member);
+                continue;
+            }
+            member.pending.addAndGet(length);
+            member.send(opcode, payload.slice(), text, batch);
+            frames.incrementAndGet();
+            bytes.addAndGet(length);
+            count += 1;
+        }
+        return count;
+    }
+
+    private void evict(Member member) {
+        if (members.remove(member.session) != null) {
+            evictions.incrementAndGet();
+            member.close(StatusCode.POLICY_VIOLATION, "Slow consumer");
+        }
+    }
+
+    /**
+     * Get the number of messages broadcast to the group.
+     * @return the number of messages
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * Get the number of frames sent to sessions of the group.
+     * @return the number of frames
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * Get the total payload size of frames sent to sessions of the group.
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Get the number of frames that could not be sent. Sessions are
+     * removed from the group if sending fails.
+     * @return the number of failed frames
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Get the number of sessions evicted because they didn't keep up.
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of bytes queued for all sessions of the group.
+     * @return the number of pending bytes
+     */
+    public long getPending() {
+        long pending = 0;
+        for (Member member : members.values()) {
+            pending += member.pending.get();
+        }
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastGroup[size=" + size() + ", messages=" + getMessages()
+                + ", frames=" + getFrames() + ", bytes=" + getBytes()
+                + ", failures=" + getFailures() + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * A session of the group. Frames are passed to Jetty's core session if
+     * it is available, which takes the shared payload as it is. Otherwise
+     * the session's remote endpoint is used.
+     */
+    final class Member {
+        final Session session;
+        final CoreSession core;
+        final AtomicLong pending = new AtomicLong();
+
+        Member(Session session) {
+            this.session = session;
+            this.core = session instanceof WebSocketSession ?
+                    ((WebSocketSession) session).getCoreSession() : null;
+        }
+
+        void send(byte opcode, ByteBuffer payload, String text, boolean batch) {
+            final int length = payload.remaining();
+            if (core != null) {
+                core.sendFrame(new Frame(opcode, true, payload),
+                        new org.eclipse.jetty.util.Callback() {
+                    @Override
+                    public void succeeded() {
+                        pending.addAndGet(-length);
+                    }
+
+                    @Override
+                    public void failed(Throwable x) {
+                        pending.addAndGet(-length);
+                        fail(x);
+                    }
+                }, batch);
+                return;
+            }
+            RemoteEndpoint remote = session.getRemote();
+            WriteCallback callback = new WriteCallback() {
+                @Override
+                public void writeSuccess() {
+                    pending.addAndGet(-length);
+                }
+
+                @Override
+                public void writeFailed(Throwable x) {
+                    pending.addAndGet(-length);
+                    fail(x);
+                }
+            };
+            try {
+                remote.setBatchMode(batch ? BatchMode.ON : BatchMode.OFF);
+                if (text != null) {
+                    remote.sendString(text, callback);
+                } else {
+                    remote.sendBytes(payload, callback);
+                }
+            } catch (RuntimeException x) {
+                callback.writeFailed(x);
+            }
+        }
+
+        void flush() {
+            try {
+                if (core != null) {
+                    core.flush(org.eclipse.jetty.util.Callback.NOOP);
+                } else {
+                    session.getRemote().flush();
+                }
+            } catch (Exception x) {
+                fail(x);
+            }
+        }
+
+        void close(int statusCode, String reason) {
+            try {
+                session.close(statusCode, reason);
+            } catch (RuntimeException x) {
+                log.log(Level.FINE, "Error closing " + session, x);
+            }
+        }
+
+        private void fail(Throwable x) {
+            failures.incrementAndGet();
+            if (members.remove(session) != null) {
+                log.log(Level.FINE, "Error sending to " + session, x);
+            }
+        }
+    }
+}
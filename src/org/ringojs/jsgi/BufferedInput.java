@@ -0,0 +1,259 @@
+package org.ringojs.jsgi;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads a request body without blocking before the request is dispatched
+ * to the JSGI application. Up to a configurable number of bytes are kept
+ * in memory, larger bodies are written to a temporary file that is deleted
+ * once the request is completed.
+ *
+ * <p>Instances are registered as request attribute named {@link #ATTRIBUTE},
+ * where the JSGI connector picks them up to provide the request input.</p>
+ */
+public class BufferedInput implements ReadListener, AsyncListener {
+
+    /**
+     * The request attribute under which the buffered input is stored.
+     */
+    public static final String ATTRIBUTE = "org.ringojs.jsgi.BufferedInput";
+
+    private final ServletInputStream input;
+    private final int memorySize;
+    private final long maxSize;
+    private final Callback callback;
+
+    private byte[] buffer;
+    private int count = 0;
+    private long length = 0;
+    private File file;
+    private OutputStream fileOutput;
+    private boolean done = false;
+    private byte[] chunk;
+
+    private static final Logger log = Logger.getLogger(BufferedInput.class.getName());
+
+    /**
+     * Called when the request body has been read.
+     */
+    public interface Callback {
+
+        /**
+         * Called once the whole request body has been buffered.
+         * @param input the buffered input
+         */
+        void ready(BufferedInput input);
+
+        /**
+         * Called if the request body could not be read, or exceeded the
+         * maximum size. The input has already been disposed.
+         * @param input the buffered input
+         * @param error the error
+         * @param tooLarge true if the body exceeded the maximum size
+         */
+        void failed(BufferedInput input, Throwable error, boolean tooLarge);
+    }
+
+    /**
+     * Start buffering the body of the request associated with the given
+     * async context.
+     * @param asyncContext the async context of the request
+     * @param memorySize the maximum number of bytes to keep in memory
+     * @param maxSize the maximum body size, or a negative value for no limit
+     * @param callback the callback to invoke when the body has been read
+     * @return the buffered input
+     * @throws IOException if the request input could not be obtained
+     */
+    public static BufferedInput start(AsyncContext asyncContext, int memorySize,
+                                      long maxSize, Callback callback)
+            throws IOException {
+        ServletInputStream input = asyncContext.getRequest().getInputStream();
+        BufferedInput bufferedInput = new BufferedInput(
+                asyncContext.getRequest().getContentLengthLong(), input,
+                memorySize, maxSize, callback);
+        asyncContext.getRequest().setAttribute(ATTRIBUTE, bufferedInput);
+        asyncContext.addListener(bufferedInput);
+        input.setReadListener(bufferedInput);
+        return bufferedInput;
+    }
+
+    private BufferedInput(long contentLength, ServletInputStream input,
+                          int memorySize, long maxSize, Callback callback) {
+        this.input = input;
+        this.memorySize = Math.max(memorySize, 0);
+        this.maxSize = maxSize;
+        this.callback = callback;
+        int initialSize = contentLength > 0 && contentLength <= this.memorySize ?
+                (int) contentLength : Math.min(8192, this.memorySize);
+        this.buffer = new byte[Math.max(initialSize, 1)];
+    }
+
+    /**
+     * Get the number of bytes read so far.
+     * @return the body length
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if the body exceeded the in-memory buffer and was written
+     * to a temporary file.
+     * @return true if the body is stored in a file
+     */
+    public synchronized boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Get an input stream to read the buffered body.
+     * @return an input stream
+     * @throws IOException if the body could not be read
+     */
+    public synchronized InputStream getInputStream() throws IOException {
+        if (!done) {
+            throw new IOException("Request body has not been read completely");
+        }
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(buffer == null ? new byte[0] : buffer, 0, count);
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        if (chunk == null) {
+            chunk = new byte[8192];
+        }
+        while (input.isReady()) {
+            int read = input.read(chunk);
+            if (read < 0 || !append(chunk, read)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            chunk = null;
+            if (fileOutput != null) {
+                fileOutput.close();
+                fileOutput = null;
+            }
+        }
+        callback.ready(this);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        synchronized (this) {
+            if (done) {
+                // already failed or complete
+                return;
+            }
+        }
+        dispose();
+        callback.failed(this, error, false);
+    }
+
+    private boolean append(byte[] chunk, int read) throws IOException {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            length += read;
+            if (maxSize < 0 || length <= maxSize) {
+                if (file == null && count + read <= memorySize) {
+                    if (count + read > buffer.length) {
+                        buffer = Arrays.copyOf(buffer,
+                                Math.min(Math.max(buffer.length * 2, count + read),
+                                        memorySize));
+                    }
+                    System.arraycopy(chunk, 0, buffer, count, read);
+                    count += read;
+                } else {
+                    if (file == null) {
+                        spill();
+                    }
+                    fileOutput.write(chunk, 0, read);
+                }
+                return true;
+            }
+            done = true;
+        }
+        dispose();
+        callback.failed(this, new IOException("Request body exceeds "
+                + maxSize + " bytes"), true);
+        return false;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("ringo-upload-", ".tmp");
+        fileOutput = new FileOutputStream(file);
+        fileOutput.write(buffer, 0, count);
+        buffer = null;
+        count = 0;
+    }
+
+    /**
+     * Release the memory and delete the temporary file used by this input.
+     */
+    public synchronized void dispose() {
+        done = true;
+        buffer = null;
+        count = 0;
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+            fileOutput = null;
+        }
+        if (file != null) {
+            if (!file.delete() && file.exists()) {
+                log.log(Level.FINE, "Could not delete " + file);
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        dispose();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {}
+
+    @Override
+    public void onError(AsyncEvent event) {
+        dispose();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // keep listening if the application starts async processing again
+        event.getAsyncContext().addListener(this);
+    }
+}
@@ -0,0 +1,342 @@
+package org.ringojs.jsgi;
+
+import org.ringojs.repository.Repository;
+import org.ringojs.repository.Resource;
+import org.ringojs.util.ByteBufferPool;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression of JSGI response bodies. Bodies are compressed while
+ * they are written, using pooled Deflater instances. Compression is only
+ * applied if the client accepts gzip, the content type is compressible and
+ * the body exceeds a minimum size; smaller bodies are sent as they are.
+ *
+ * <p>Currently only gzip is supported. Content codings are negotiated by
+ * {@link #getEncoding(HttpServletRequest)}, which is where other codings
+ * such as brotli would be added.</p>
+ */
+public class Compression {
+
+    /**
+     * The default minimum body size for compression.
+     */
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    static final String GZIP = "gzip";
+
+    private static final int MAX_POOLED = 64;
+    private static final ByteBufferPool buffers = new ByteBufferPool(8192, 256);
+
+    private final int minSize;
+    private final int level;
+    private final ConcurrentLinkedQueue<Deflater> deflaters =
+            new ConcurrentLinkedQueue<Deflater>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Create a new compression stage.
+     * @param minSize the minimum size of bodies to compress
+     * @param level the compression level, or -1 for the default level
+     */
+    public Compression(int minSize, int level) {
+        this.minSize = Math.max(minSize, 0);
+        this.level = level;
+    }
+
+    /**
+     * Get the minimum size of bodies to compress.
+     * @return the minimum size in bytes
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Wrap the servlet output with a compressing stream if the response
+     * qualifies for compression. This must be called after the status and
+     * headers have been set.
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param contentType the content type of the response, or null
+     * @return a compressing output, or null if the response should not be
+     * compressed
+     */
+    public Output wrap(HttpServletRequest request, HttpServletResponse response,
+                       String contentType) {
+        int status = response.getStatus();
+        if (request == null || status < 200 || status == 204 || status == 206
+                || status == 304 || "HEAD".equals(request.getMethod())
+                || !isCompressible(contentType)
+                || response.containsHeader("Content-Encoding")
+                || response.containsHeader("Content-Range")) {
+            return null;
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+        if (!GZIP.equals(getEncoding(request))) {
+            return null;
+        }
+        return new Output(response);
+    }
+
+    /**
+     * Returns true if a content type is worth compressing.
+     * @param contentType the content type, or null
+     * @return true for text types and structured text formats
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon > -1 ? contentType.substring(0, semicolon) : contentType)
+                .trim().toLowerCase(Locale.ROOT);
+        return type.startsWith("text/")
+                || type.endsWith("+xml")
+                || type.endsWith("+json")
+                || type.equals("application/json")
+                || type.equals("application/javascript")
+                || type.equals("application/x-javascript")
+                || type.equals("application/xml")
+                || type.equals("application/wasm");
+    }
+
+    /**
+     * Select the content coding for a response from the request's
+     * Accept-Encoding headers.
+     * @param request the servlet request
+     * @return the content coding, or null if no supported coding is accepted
+     */
+    public static String getEncoding(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        if (headers == null) {
+            return null;
+        }
+        boolean wildcard = false;
+        while (headers.hasMoreElements()) {
+            String header = headers.nextElement();
+            for (String coding : header.split(",")) {
+                int semicolon = coding.indexOf(';');
+                String name = (semicolon > -1 ? coding.substring(0, semicolon) : coding).trim();
+                boolean accepted = semicolon < 0 || getQuality(coding.substring(semicolon + 1)) > 0;
+                if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                    // an explicit entry overrides the wildcard
+                    return accepted ? GZIP : null;
+                } else if ("*".equals(name)) {
+                    wildcard = accepted;
+                }
+            }
+        }
+        return wildcard ? GZIP : null;
+    }
+
+    private static float getQuality(String params) {
+        for (String param : params.split(";")) {
+            int eq = param.indexOf('=');
+            if (eq > -1 && "q".equalsIgnoreCase(param.substring(0, eq).trim())) {
+                try {
+                    return Float.parseFloat(param.substring(eq + 1).trim());
+                } catch (NumberFormatException x) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Get a fresh precompressed sibling of a resource, i.e. a resource with
+     * the same name plus <code>.gz</code> extension that was modified no
+     * earlier than the resource itself.
+     * @param resource the resource
+     * @return the precompressed resource, or null
+     */
+    static Resource getPrecompressed(Resource resource) {
+        Repository parent = resource.getParentRepository();
+        if (parent == null) {
+            return null;
+        }
+        try {
+            Resource gz = parent.getResource(resource.getName() + ".gz");
+            if (gz != null && gz.exists()
+                    && gz.lastModified() >= resource.lastModified()) {
+                return gz;
+            }
+        } catch (IOException x) {
+            // treat like missing
+        }
+        return null;
+    }
+
+    Deflater acquire() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        pooled.decrementAndGet();
+        return deflater;
+    }
+
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            deflaters.offer(deflater);
+        } else {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * An output stream that buffers the first bytes of a body up to the
+     * minimum size, then switches to gzip compression. If the body is
+     * smaller than the minimum size it is written uncompressed by
+     * {@link #finish()}.
+     */
+    public final class Output extends OutputStream {
+
+        private final HttpServletResponse response;
+        private final CRC32 crc = new CRC32();
+        private byte[] head;
+        private int count = 0;
+        private Deflater deflater;
+        private ByteBuffer buffer;
+        private OutputStream output;
+        private long size = 0;
+        private boolean finished = false;
+
+        Output(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Stream already finished");
+            }
+            if (deflater == null) {
+                if (count + len <= minSize) {
+                    if (head == null) {
+                        head = new byte[minSize];
+                    }
+                    System.arraycopy(b, off, head, count, len);
+                    count += len;
+                    return;
+                }
+                start();
+                if (count > 0) {
+                    deflate(head, 0, count);
+                    head = null;
+                }
+            }
+            deflate(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (deflater != null && !finished) {
+                byte[] buf = buffer.array();
+                int n;
+                while ((n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH)) > 0) {
+                    output.write(buf, 0, n);
+                }
+                output.flush();
+            }
+        }
+
+        /**
+         * Write the remaining data and gzip trailer, or the buffered body if
+         * it didn't reach the minimum size. The servlet output is not closed.
+         * @throws IOException if an I/O error occurred
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (deflater == null) {
+                if (!response.isCommitted()) {
+                    response.setContentLength(count);
+                }
+                if (count > 0) {
+                    response.getOutputStream().write(head, 0, count);
+                }
+                return;
+            }
+            deflater.finish();
+            byte[] buf = buffer.array();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf, 0, buf.length);
+                if (n > 0) {
+                    output.write(buf, 0, n);
+                }
+            }
+            long crcValue = crc.getValue();
+            byte[] trailer = new byte[] {
+                    (byte) crcValue, (byte) (crcValue >> 8),
+                    (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+                    (byte) size, (byte) (size >> 8),
+                    (byte) (size >> 16), (byte) (size >> 24)
+            };
+            output.write(trailer);
+        }
+
+        /**
+         * Return the deflater and buffer used by this stream to their pools.
+         * This must be called once the stream is no longer used, whether or
+         * not it was finished.
+         */
+        public void release() {
+            finished = true;
+            head = null;
+            if (deflater != null) {
+                Compression.this.release(deflater);
+                deflater = null;
+            }
+            if (buffer != null) {
+                buffers.release(buffer);
+                buffer = null;
+            }
+        }
+
+        private void start() throws IOException {
+            response.setHeader("Content-Length", null);
+            response.setHeader("Content-Encoding", GZIP);
+            output = response.getOutputStream();
+            deflater = acquire();
+            buffer = buffers.acquire();
+            // gzip header: magic, deflate method, no flags, no mtime, unknown OS
+            output.write(new byte[] {
+                    (byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff
+            });
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            size += len;
+            deflater.setInput(b, off, len);
+            byte[] buf = buffer.array();
+            while (!deflater.needsInput()) {
+                int n = deflater.deflate(buf, 0, buf.length);
+                if (n > 0) {
+                    output.write(buf, 0, n);
+                }
+            }
+        }
+    }
+}
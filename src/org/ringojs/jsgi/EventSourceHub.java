@@ -0,0 +1,540 @@
+package org.ringojs.jsgi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distributes server-sent events to the subscribers of named topics. This
+ * backs the <code>EventSourceHub</code> of the
+ * <code>ringo/jsgi/eventsource</code> module.
+ *
+ * <p>An event is serialized once and the resulting bytes are queued to the
+ * {@link AsyncResponseWriter} of each subscriber of the topic, without
+ * blocking. Each topic keeps the most recent events in a bounded ring
+ * buffer, so clients reconnecting with a <code>Last-Event-ID</code> header
+ * receive the events they missed. Event ids are assigned by the hub and
+ * increase per topic.</p>
+ *
+ * <p>A topic without subscribers is removed together with its retained
+ * events once its newest event is older than the retention time. Event
+ * ids are unique within the hub, so they keep increasing if the topic is
+ * used again later.</p>
+ *
+ * <p>Heartbeats for all subscribers of all hubs are driven by a single
+ * timer thread. The subscribers of a hub are distributed over the slots
+ * of a timer wheel, and each tick of the wheel sends a heartbeat to the
+ * subscribers of one slot that haven't received anything for a heartbeat
+ * interval. Subscribers with more than the maximum of pending bytes queued
+ * are evicted, and closed subscribers are removed on the next event or
+ * heartbeat.</p>
+ *
+ * <p>Instances are thread-safe, events may be published from any
+ * thread.</p>
+ */
+public class EventSourceHub {
+
+    /**
+     * The default heartbeat interval in milliseconds.
+     */
+    public static final long DEFAULT_HEARTBEAT = 15000;
+
+    /**
+     * The default number of events retained per topic.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 100;
+
+    /**
+     * The default maximum number of bytes queued for a single subscriber.
+     */
+    public static final long DEFAULT_MAX_PENDING = 1024 * 1024;
+
+    /**
+     * The default time in milliseconds topics without subscribers are
+     * retained after their last event.
+     */
+    public static final long DEFAULT_RETENTION = 5 * 60 * 1000;
+
+    static final int WHEEL_SIZE = 16;
+    static final byte[] HEARTBEAT = {'\r'};
+
+    private final long heartbeat;
+    private final int historySize;
+    private final long maxPending;
+    private final long retention;
+    private final ConcurrentHashMap<String, Topic> topics =
+            new ConcurrentHashMap<String, Topic>();
+    private final Set<Subscriber>[] wheel;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final ScheduledFuture<?> timer;
+    private int cursor = 0;
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private volatile boolean closed = false;
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static ScheduledExecutorService scheduler;
+    private static final Logger log = Logger.getLogger(EventSourceHub.class.getName());
+
+    /**
+     * Create a new hub with the default heartbeat interval, history size
+     * and maximum of pending bytes.
+     */
+    public EventSourceHub() {
+        this(DEFAULT_HEARTBEAT, DEFAULT_HISTORY_SIZE, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Create a new hub with the default retention time.
+     * @param heartbeat the heartbeat interval in milliseconds, or 0 to
+     *                  disable heartbeats
+     * @param historySize the number of events retained per topic for
+     *                    replay
+     * @param maxPending the maximum number of bytes queued for a
+     *                   subscriber before it is evicted, or -1 for no limit
+     */
+    public EventSourceHub(long heartbeat, int historySize, long maxPending) {
+        this(heartbeat, historySize, maxPending, DEFAULT_RETENTION);
+    }
+
+    /**
+     * Create a new hub.
+     * @param heartbeat the heartbeat interval in milliseconds, or 0 to
+     *                  disable heartbeats
+     * @param historySize the number of events retained per topic for
+     *                    replay
+     * @param maxPending the maximum number of bytes queued for a
+     *                   subscriber before it is evicted, or -1 for no limit
+     * @param retention the time in milliseconds a topic without subscribers
+     *                  is retained after its last event
+     */
+    @SuppressWarnings("unchecked")
+    public EventSourceHub(long heartbeat, int historySize, long maxPending,
+                          long retention) {
+        this.heartbeat = Math.max(heartbeat, 0);
+        this.historySize = Math.max(historySize, 0);
+        this.maxPending = maxPending;
+        this.retention = Math.max(retention, 0);
+        this.wheel = new Set[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        if (this.heartbeat > 0) {
+            long tick = Math.max(this.heartbeat / WHEEL_SIZE, 1);
+            timer = getScheduler().scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    tick();
+                }
+            }, tick, tick, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ringo-eventsource-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Subscribe an event stream response to a topic. The status and headers
+     * of the response must already have been set. If a last event id is
+     * passed, the retained events of the topic following that event are
+     * written to the response before any new event.
+     * @param topic the topic name
+     * @param writer the writer of the event stream response
+     * @param lastEventId the value of the client's Last-Event-ID header,
+     *                    or null
+     * @return the number of replayed events
+     */
+    public int subscribe(String topic, AsyncResponseWriter writer, String lastEventId) {
+        if (closed) {
+            throw new IllegalStateException("EventSourceHub closed");
+        }
+        int slot = Math.floorMod(nextSlot.getAndIncrement(), WHEEL_SIZE);
+        long id = parseId(lastEventId);
+        while (true) {
+            Subscriber subscriber = new Subscriber(getTopic(topic), writer, slot);
+            int count = subscriber.topic.subscribe(subscriber, id);
+            // retry if the topic was removed in the meantime
+            if (count > -1) {
+                wheel[slot].add(subscriber);
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Publish an event to all subscribers of a topic.
+     * @param topic the topic name
+     * @param name the event name, or null for unnamed events
+     * @param data the event data
+     * @return the id of the event
+     */
+    public long publish(String topic, String name, String data) {
+        if (closed) {
+            throw new IllegalStateException("EventSourceHub closed");
+        }
+        events.incrementAndGet();
+        while (true) {
+            long id = getTopic(topic).publish(name, data);
+            // retry if the topic was removed in the meantime
+            if (id > -1) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Get the number of subscribers of a topic.
+     * @param topic the topic name
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount(String topic) {
+        Topic t = topics.get(topic);
+        return t == null ? 0 : t.subscribers.size();
+    }
+
+    /**
+     * Get the number of topics, including topics without subscribers
+     * that have not been removed yet.
+     * @return the number of topics
+     */
+    public int getTopicCount() {
+        return topics.size();
+    }
+
+    /**
+     * Get the total number of subscribers of all topics.
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Set<Subscriber> slot : wheel) {
+            count += slot.size();
+        }
+        return count;
+    }
+
+    /**
+     * Stop the heartbeats and close the responses of all subscribers.
+     */
+    public void close() {
+        closed = true;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        for (Set<Subscriber> slot : wheel) {
+            for (Subscriber subscriber : slot) {
+                subscriber.remove();
+                subscriber.close();
+            }
+        }
+        topics.clear();
+    }
+
+    /**
+     * Returns true if the hub has been closed.
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of published events.
+     * @return the number of events
+     */
+    public long getEvents() {
+        return events.get();
+    }
+
+    /**
+     * Get the number of events queued to subscribers, including replayed
+     * events.
+     * @return the number of deliveries
+     */
+    public long getDeliveries() {
+        return deliveries.get();
+    }
+
+    /**
+     * Get the total size of events queued to subscribers.
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Get the number of events replayed to reconnecting subscribers.
+     * @return the number of replayed events
+     */
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    /**
+     * Get the number of heartbeats sent.
+     * @return the number of heartbeats
+     */
+    public long getHeartbeats() {
+        return heartbeats.get();
+    }
+
+    /**
+     * Get the number of subscribers evicted because they didn't keep up.
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EventSourceHub[topics=" + topics.size()
+                + ", subscribers=" + getSubscriberCount()
+                + ", events=" + getEvents() + ", deliveries=" + getDeliveries()
+                + ", evictions=" + getEvictions() + "]";
+    }
+
+    private Topic getTopic(String name) {
+        Topic topic = topics.get(name);
+        if (topic == null) {
+            // without heartbeats, expired topics are removed when new
+            // topics are created
+            sweep();
+            Topic created = new Topic();
+            topic = topics.putIfAbsent(name, created);
+            if (topic == null) {
+                topic = created;
+            }
+        }
+        return topic;
+    }
+
+    /**
+     * Send heartbeats to the subscribers of the next slot of the wheel.
+     * This is only called by the timer thread.
+     */
+    private void tick() {
+        Set<Subscriber> slot = wheel[cursor];
+        cursor = (cursor + 1) % WHEEL_SIZE;
+        if (cursor == 0) {
+            sweep();
+        }
+        long idle = System.currentTimeMillis() - heartbeat + heartbeat / WHEEL_SIZE;
+        for (Subscriber subscriber : slot) {
+            try {
+                if (subscriber.lastWrite <= idle && subscriber.write(HEARTBEAT)) {
+                    heartbeats.incrementAndGet();
+                }
+            } catch (RuntimeException x) {
+                log.log(Level.FINE, "Error sending heartbeat", x);
+                subscriber.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the topics without subscribers whose newest event is older
+     * than the retention time. This runs at most once per half the
+     * retention time.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        long next = nextSweep.get();
+        if (now < next || !nextSweep.compareAndSet(next, now + retention / 2)) {
+            return;
+        }
+        for (Map.Entry<String, Topic> entry : topics.entrySet()) {
+            Topic topic = entry.getValue();
+            if (topic.expire(now)) {
+                topics.remove(entry.getKey(), topic);
+            }
+        }
+    }
+
+    static long parseId(String id) {
+        if (id == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(id.trim());
+        } catch (NumberFormatException x) {
+            return -1;
+        }
+    }
+
+    /**
+     * Serialize an event in the event stream format. Data containing line
+     * breaks is sent as multiple data lines.
+     */
+    static byte[] serialize(long id, String name, String data) {
+        StringBuilder buffer = new StringBuilder(data.length() + 32);
+        buffer.append("id: ").append(id).append('\n');
+        if (name != null) {
+            buffer.append("event: ").append(name).append('\n');
+        }
+        int start = 0;
+        int length = data.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? data.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                buffer.append("data: ").append(data, start, i).append('\n');
+                if (c == '\r' && i + 1 < length && data.charAt(i + 1) == '\n') {
+                    i += 1;
+                }
+                start = i + 1;
+            }
+        }
+        buffer.append('\n');
+        return buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A topic with its subscribers and retained events. Publishing and
+     * subscribing is serialized per topic, so subscribers receive events
+     * in order and neither miss nor duplicate events while being replayed.
+     * Once a topic has expired, publishing and subscribing return -1.
+     */
+    final class Topic {
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        final long[] ids = new long[historySize];
+        final byte[][] history = new byte[historySize][];
+        int next = 0;
+        // the time of the newest event, or of the topic's creation
+        long lastEvent = System.currentTimeMillis();
+        boolean expired = false;
+
+        synchronized boolean expire(long now) {
+            if (!expired && subscribers.isEmpty() && now - lastEvent > retention) {
+                expired = true;
+            }
+            return expired;
+        }
+
+        synchronized long publish(String name, String data) {
+            if (expired) {
+                return -1;
+            }
+            long id = lastId.incrementAndGet();
+            lastEvent = System.currentTimeMillis();
+            byte[] event = serialize(id, name, data);
+            if (historySize > 0) {
+                ids[next] = id;
+                history[next] = event;
+                next = (next + 1) % historySize;
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.write(event)) {
+                    deliveries.incrementAndGet();
+                    bytes.addAndGet(event.length);
+                }
+            }
+            return id;
+        }
+
+        synchronized int subscribe(Subscriber subscriber, long lastEventId) {
+            if (expired) {
+                return -1;
+            }
+            int count = 0;
+            if (lastEventId > -1 && historySize > 0) {
+                for (int i = 0; i < historySize; i++) {
+                    int index = (next + i) % historySize;
+                    byte[] event = history[index];
+                    if (event != null && ids[index] > lastEventId
+                            && subscriber.write(event)) {
+                        bytes.addAndGet(event.length);
+                        count += 1;
+                    }
+                }
+                deliveries.addAndGet(count);
+                replayed.addAndGet(count);
+            }
+            subscribers.add(subscriber);
+            return count;
+        }
+    }
+
+    final class Subscriber {
+        final Topic topic;
+        final AsyncResponseWriter writer;
+        final int slot;
+        volatile long lastWrite = System.currentTimeMillis();
+
+        Subscriber(Topic topic, AsyncResponseWriter writer, int slot) {
+            this.topic = topic;
+            this.writer = writer;
+            this.slot = slot;
+        }
+
+        /**
+         * Queue data to the subscriber's response.
+         * @return false if the subscriber has been removed
+         */
+        boolean write(byte[] data) {
+            if (writer.isClosed()) {
+                remove();
+                return false;
+            }
+            if (maxPending > -1 && writer.getPending() > maxPending) {
+                remove();
+                evictions.incrementAndGet();
+                close();
+                return false;
+            }
+            try {
+                writer.write(data, 0, data.length);
+                writer.flush();
+            } catch (IllegalStateException x) {
+                // closed concurrently
+                remove();
+                return false;
+            }
+            lastWrite = System.currentTimeMillis();
+            return true;
+        }
+
+        void remove() {
+            topic.subscribers.remove(this);
+            wheel[slot].remove(this);
+        }
+
+        void close() {
+            try {
+                writer.close();
+            } catch (IllegalStateException ignore) {
+                // already closed
+            }
+        }
+    }
+}
@@ -20,7 +20,11 @@ import org.mozilla.javascript.*;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
 import java.lang.reflect.Method;
 
 public class JsgiRequest extends ScriptableObject {
@@ -30,6 +34,7 @@ public class JsgiRequest extends ScriptableObject {
     HttpServletResponse response;
     final int readonly = PERMANENT | READONLY;
     Object httpVersion;
+    Headers headers;
 
     /**
      * Prototype constructor
@@ -71,38 +76,9 @@ public class JsgiRequest extends ScriptableObject {
         Scriptable jsgi = newObject(scope);
         jsgi.setPrototype(prototype.jsgiObject);
         defineProperty(this, "jsgi", jsgi, PERMANENT);
-        Scriptable headers = newObject(scope);
+        headers = new Headers(request);
+        ScriptRuntime.setBuiltinProtoAndParent(headers, scope, TopLevel.Builtins.Object);
         defineProperty(this, "headers", headers, PERMANENT);
-
-        // the buffer to write header values in.  most header values (including user agents etc.)
-        // will fit into the builder's default capacity
-        StringBuilder sb = new StringBuilder(160);
-
-        for (Enumeration<String> headerNames = request.getHeaderNames(); headerNames.hasMoreElements(); ) {
-            sb.setLength(0);
-            boolean multipleHeaders = false;
-
-            String name = headerNames.nextElement();
-            Enumeration<String> headerValues = request.getHeaders(name);
-
-            while (headerValues.hasMoreElements()) {
-                // Following RFC 2616 and RFC 7230:
-                // A recipient MAY combine multiple header fields with the same field
-                // name into one "field-name: field-value" pair, without changing the
-                // semantics of the message, by appending each subsequent field value to
-                // the combined field value in order, separated by a comma.
-                // see: https://www.w3.org/Protocols/rfc2616/rfc2616-sec4.html#sec4.2
-                // see: https://tools.ietf.org/html/rfc7230
-                if (multipleHeaders) {
-                    sb.append(",");
-                }
-                sb.append(headerValues.nextElement());
-                multipleHeaders = true;
-            }
-
-            name = name.toLowerCase();
-            headers.put(name, headers, sb.toString());
-        }
         put("scriptName", this, checkString(request.getContextPath()
                 + request.getServletPath()));
         String pathInfo = request.getPathInfo();
@@ -111,18 +87,27 @@ public class JsgiRequest extends ScriptableObject {
         put("pathInfo", this, "/".equals(pathInfo) && !uri.endsWith("/") ?
                 "" : checkString(pathInfo));
         put("method", this, checkString(request.getMethod()));
-        Scriptable env = newObject(scope);
+        Env env = new Env(servlet, request, response);
+        ScriptRuntime.setBuiltinProtoAndParent(env, scope, TopLevel.Builtins.Object);
         defineProperty(this, "env", env, PERMANENT);
-        defineProperty(env, "servlet",
-                new NativeJavaObject(scope, servlet, null), PERMANENT);
-        defineProperty(env, "servletRequest",
-                new NativeJavaObject(scope, request, null), PERMANENT);
-        defineProperty(env, "servletResponse",
-                new NativeJavaObject(scope, response, null), PERMANENT);
         // JSGI spec and Jack's lint require env.constructor to be Object
         defineProperty("constructor", scope.get("Object", scope), DONTENUM);
     }
 
+    /**
+     * Copy all headers not read yet and stop reading headers from the
+     * servlet request, which the container recycles once the response is
+     * complete. This is called by the JSGI connector before the request is
+     * handed off to complete the response asynchronously, and after a
+     * synchronous response has been committed.
+     * @param request the JSGI request
+     */
+    public static void detach(Object request) {
+        if (request instanceof JsgiRequest) {
+            ((JsgiRequest) request).headers.detach();
+        }
+    }
+
     public String getServerName() {
         return checkString(request.getServerName());
     }
@@ -190,6 +175,110 @@ public class JsgiRequest extends ScriptableObject {
         return result;
     }
 
+    /**
+     * The request headers, resolved from the servlet request on first access
+     * until the request is detached. Header names are lower case, and multiple
+     * values of the same header are combined into a comma separated value.
+     */
+    static class Headers extends LazyObject {
+
+        final HttpServletRequest request;
+
+        Headers(HttpServletRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        protected Object resolve(String name) {
+            // only lower case names are exposed
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    return NOT_FOUND;
+                }
+            }
+            Enumeration<String> headerValues = request.getHeaders(name);
+            if (headerValues == null || !headerValues.hasMoreElements()) {
+                return NOT_FOUND;
+            }
+            String value = headerValues.nextElement();
+            if (!headerValues.hasMoreElements()) {
+                return value;
+            }
+            // Following RFC 2616 and RFC 7230:
+            // A recipient MAY combine multiple header fields with the same field
+            // name into one "field-name: field-value" pair, without changing the
+            // semantics of the message, by appending each subsequent field value to
+            // the combined field value in order, separated by a comma.
+            // see: https://www.w3.org/Protocols/rfc2616/rfc2616-sec4.html#sec4.2
+            // see: https://tools.ietf.org/html/rfc7230
+            StringBuilder sb = new StringBuilder(value);
+            while (headerValues.hasMoreElements()) {
+                sb.append(",").append(headerValues.nextElement());
+            }
+            return sb.toString();
+        }
+
+        @Override
+        protected Iterable<String> getLazyNames() {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<String> headerNames = request.getHeaderNames();
+                 headerNames.hasMoreElements(); ) {
+                names.add(headerNames.nextElement().toLowerCase(Locale.ROOT));
+            }
+            return names;
+        }
+    }
+
+    /**
+     * The env object, wrapping the servlet objects on first access.
+     */
+    static class Env extends LazyObject {
+
+        final JsgiServlet servlet;
+        final HttpServletRequest request;
+        final HttpServletResponse response;
+
+        static final List<String> NAMES =
+                Arrays.asList("servlet", "servletRequest", "servletResponse");
+
+        Env(JsgiServlet servlet, HttpServletRequest request,
+            HttpServletResponse response) {
+            this.servlet = servlet;
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        protected Object resolve(String name) {
+            Object object;
+            switch (name) {
+                case "servlet":
+                    object = servlet;
+                    break;
+                case "servletRequest":
+                    object = request;
+                    break;
+                case "servletResponse":
+                    object = response;
+                    break;
+                default:
+                    return NOT_FOUND;
+            }
+            return new NativeJavaObject(getParentScope(), object, null);
+        }
+
+        @Override
+        protected Iterable<String> getLazyNames() {
+            return NAMES;
+        }
+
+        @Override
+        protected int getLazyAttributes(String name) {
+            return PERMANENT;
+        }
+    }
+
     /**
      * Return the name of the class.
      */
@@ -26,18 +26,24 @@ import org.ringojs.repository.FileRepository;
 import org.ringojs.repository.WebappRepository;
 import org.ringojs.engine.RhinoEngine;
 import org.ringojs.util.StringUtils;
+import org.ringojs.util.VirtualThreads;
 import org.mozilla.javascript.Callable;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
 
 public class JsgiServlet extends HttpServlet {
 
@@ -45,6 +51,19 @@ public class JsgiServlet extends HttpServlet {
     Object function;
     RhinoEngine engine;
     JsgiRequest requestProto;
+    ExecutorService executor;
+    long asyncTimeout = 30000;
+    boolean bufferInput = false;
+    int inputMemorySize = 64 * 1024;
+    long maxInputSize = -1;
+    Compression compression;
+    StaticCache staticCache;
+
+    /**
+     * Request attribute set while a request is dispatched to a virtual thread
+     * and the servlet, not the application, owns the async context.
+     */
+    public static final String ASYNC_DISPATCH = "org.ringojs.jsgi.AsyncDispatch";
 
     public JsgiServlet() {}
 
@@ -71,11 +90,15 @@ public class JsgiServlet extends HttpServlet {
             String ringoHome = getStringParameter(config, "ringo-home", "/WEB-INF");
             String modulePath = getStringParameter(config, "module-path", "WEB-INF/app");
             String bootScripts = getStringParameter(config, "bootscript", null);
+            String classCache = getStringParameter(config, "class-cache", null);
             int optlevel = getIntParameter(config, "optlevel", 0);
+            int minWorkers = getIntParameter(config, "min-workers", 0);
+            int maxWorkers = getIntParameter(config, "max-workers", 0);
             boolean debug = getBooleanParameter(config, "debug", false);
             boolean production = getBooleanParameter(config, "production", false);
             boolean verbose = getBooleanParameter(config, "verbose", false);
             boolean legacyMode = getBooleanParameter(config, "legacy-mode", false);
+            boolean virtualThreads = getBooleanParameter(config, "virtual-threads", false);
 
             ServletContext context = config.getServletContext();
             Repository base = new WebappRepository(context, "/");
@@ -98,6 +121,18 @@ public class JsgiServlet extends HttpServlet {
                 ringoConfig.setStrictVars(!legacyMode && !production);
                 ringoConfig.setReloading(!production);
                 ringoConfig.setOptLevel(optlevel);
+                ringoConfig.setVirtualThreads(virtualThreads);
+                if (minWorkers > 0) {
+                    ringoConfig.setMinWorkers(minWorkers);
+                }
+                if (maxWorkers > 0) {
+                    ringoConfig.setMaxWorkers(maxWorkers);
+                }
+                ringoConfig.setWorkerTimeout(getIntParameter(config,
+                        "worker-timeout", (int) ringoConfig.getWorkerTimeout()));
+                if (classCache != null) {
+                    ringoConfig.setClassCacheDir(new File(classCache));
+                }
                 if (bootScripts != null) {
                     ringoConfig.setBootstrapScripts(Arrays.asList(
                             StringUtils.split(bootScripts, ",")));
@@ -108,15 +143,162 @@ public class JsgiServlet extends HttpServlet {
             }
         }
 
+        asyncTimeout = getIntParameter(config, "async-timeout", (int) asyncTimeout);
+        bufferInput = getBooleanParameter(config, "buffer-input", bufferInput);
+        inputMemorySize = getIntParameter(config, "input-memory-size", inputMemorySize);
+        maxInputSize = getIntParameter(config, "max-input-size", (int) maxInputSize);
+        int staticCacheSize = getIntParameter(config, "static-cache-size", 0);
+        if (staticCacheSize > 0) {
+            staticCache = new StaticCache(staticCacheSize, getIntParameter(config,
+                    "static-cache-max-file-size", StaticCache.DEFAULT_MAX_FILE_SIZE));
+        }
+        if (getBooleanParameter(config, "gzip", compression != null)) {
+            compression = new Compression(getIntParameter(config, "gzip-min-size",
+                    Compression.DEFAULT_MIN_SIZE), Deflater.DEFAULT_COMPRESSION);
+        }
         requestProto = new JsgiRequest(engine.getScope());
+        if (engine.getConfig().getMinWorkers() > 0) {
+            // warm up idle workers so the first requests don't have to
+            // evaluate all application modules
+            try {
+                if (module != null) {
+                    engine.getWorkerPool().prestart("ringo/jsgi/connector", module);
+                } else {
+                    engine.getWorkerPool().prestart("ringo/jsgi/connector");
+                }
+            } catch (Exception x) {
+                log("Error preloading modules in worker pool", x);
+            }
+        }
+        if (engine.getConfig().isVirtualThreads()) {
+            executor = VirtualThreads.newExecutor("ringo-request-");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        super.destroy();
     }
 
     @Override
-    protected void service(HttpServletRequest request, HttpServletResponse response)
+    protected void service(final HttpServletRequest request,
+                           final HttpServletResponse response)
+            throws ServletException {
+        if (bufferInput && request.isAsyncSupported() && hasBody(request)) {
+            bufferInput(request, response);
+            return;
+        }
+        if (executor == null || !request.isAsyncSupported()) {
+            handleRequest(request, response);
+            return;
+        }
+        // release the container thread and handle the request on a virtual
+        // thread. The async context is completed after the application
+        // returned unless it claimed the async context for itself.
+        final AsyncContext asyncContext = startAsyncDispatch(request);
+        executor.execute(new Runnable() {
+            public void run() {
+                dispatch(request, response, asyncContext);
+            }
+        });
+    }
+
+    /**
+     * Read the request body without blocking and handle the request once
+     * the body is available. The request is handled on a virtual thread if
+     * enabled, or else on the container thread that completed the body.
+     */
+    private void bufferInput(final HttpServletRequest request,
+                             final HttpServletResponse response)
+            throws ServletException {
+        final AsyncContext asyncContext = startAsyncDispatch(request);
+        try {
+            BufferedInput.start(asyncContext, inputMemorySize, maxInputSize,
+                    new BufferedInput.Callback() {
+                public void ready(BufferedInput input) {
+                    if (executor != null) {
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                dispatch(request, response, asyncContext);
+                            }
+                        });
+                    } else {
+                        dispatch(request, response, asyncContext);
+                    }
+                }
+
+                public void failed(BufferedInput input, Throwable error,
+                                   boolean tooLarge) {
+                    request.removeAttribute(ASYNC_DISPATCH);
+                    try {
+                        if (!response.isCommitted()) {
+                            response.sendError(tooLarge ?
+                                    HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE :
+                                    HttpServletResponse.SC_BAD_REQUEST);
+                        }
+                    } catch (IOException ignore) {
+                        // client is gone
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            });
+        } catch (IOException x) {
+            request.removeAttribute(ASYNC_DISPATCH);
+            asyncContext.complete();
+            throw new ServletException(x);
+        }
+    }
+
+    private AsyncContext startAsyncDispatch(HttpServletRequest request) {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        request.setAttribute(ASYNC_DISPATCH, Boolean.TRUE);
+        return asyncContext;
+    }
+
+    private void dispatch(HttpServletRequest request,
+                          HttpServletResponse response,
+                          AsyncContext asyncContext) {
+        try {
+            handleRequest(request, response);
+        } catch (ServletException x) {
+            log("Error handling request", x);
+            if (!response.isCommitted()) {
+                response.setStatus(500);
+            }
+        } finally {
+            if (request.getAttribute(ASYNC_DISPATCH) != null) {
+                request.removeAttribute(ASYNC_DISPATCH);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private static boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0
+                || request.getHeader("Transfer-Encoding") != null;
+    }
+
+    protected void handleRequest(HttpServletRequest request,
+                                 HttpServletResponse response)
             throws ServletException {
         JsgiRequest req = new JsgiRequest(request, response, requestProto,
                 engine.getScope(), this);
-        RingoWorker worker = engine.getWorker();
+        RingoWorker worker;
+        try {
+            worker = engine.getWorker();
+        } catch (RejectedExecutionException x) {
+            try {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } catch (IOException iox) {
+                throw new ServletException(x);
+            }
+            return;
+        }
         try {
             worker.invoke("ringo/jsgi/connector", "handleRequest", module,
                     function, req);
@@ -137,6 +319,98 @@ public class JsgiServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Get the time in milliseconds within which the promise returned by an
+     * asynchronous JSGI application must be settled. Zero or a negative value
+     * means no timeout. This can be set with the <code>async-timeout</code>
+     * init parameter and defaults to 30 seconds.
+     * @return the async timeout in milliseconds
+     */
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds within which the promise returned by an
+     * asynchronous JSGI application must be settled.
+     * @param asyncTimeout the async timeout in milliseconds
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Enable or disable reading request bodies without blocking before the
+     * application is invoked. This can be set with the
+     * <code>buffer-input</code> init parameter and is disabled by default.
+     * @param bufferInput true to buffer request bodies
+     */
+    public void setBufferInput(boolean bufferInput) {
+        this.bufferInput = bufferInput;
+    }
+
+    /**
+     * Set the number of bytes of a buffered request body kept in memory.
+     * Larger bodies are stored in a temporary file. This can be set with
+     * the <code>input-memory-size</code> init parameter and defaults to 64 KB.
+     * @param inputMemorySize the in-memory size in bytes
+     */
+    public void setInputMemorySize(int inputMemorySize) {
+        this.inputMemorySize = inputMemorySize;
+    }
+
+    /**
+     * Set the maximum size of buffered request bodies. Requests with larger
+     * bodies are answered with status 413. This can be set with the
+     * <code>max-input-size</code> init parameter. A negative value, which is
+     * the default, means no limit.
+     * @param maxInputSize the maximum body size in bytes
+     */
+    public void setMaxInputSize(long maxInputSize) {
+        this.maxInputSize = maxInputSize;
+    }
+
+    /**
+     * Get the compression stage applied to response bodies.
+     * @return the compression stage, or null if compression is disabled
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Enable or disable gzip compression of response bodies. This can be
+     * set with the <code>gzip</code> and <code>gzip-min-size</code> init
+     * parameters and is disabled by default.
+     * @param gzip true to compress response bodies
+     * @param minSize the minimum size of bodies to compress
+     */
+    public void setGzip(boolean gzip, int minSize) {
+        this.compression = gzip ?
+                new Compression(minSize, Deflater.DEFAULT_COMPRESSION) : null;
+    }
+
+    /**
+     * Get the cache for small static resources.
+     * @return the static cache, or null if caching is disabled
+     */
+    public StaticCache getStaticCache() {
+        return staticCache;
+    }
+
+    /**
+     * Set the maximum size of the cache for small static resources sent
+     * with the <code>static()</code> response helper. This can be set with
+     * the <code>static-cache-size</code> and
+     * <code>static-cache-max-file-size</code> init parameters. The cache is
+     * disabled by default.
+     * @param maxSize the maximum total size in bytes, 0 disables the cache
+     * @param maxFileSize the maximum size of a single cached resource
+     */
+    public void setStaticCache(long maxSize, int maxFileSize) {
+        this.staticCache = maxSize > 0 ? new StaticCache(maxSize, maxFileSize) : null;
+    }
+
     protected void renderError(Throwable t, HttpServletResponse response,
                                List<ScriptError> errors) throws IOException {
         response.reset();
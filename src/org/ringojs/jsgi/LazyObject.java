@@ -0,0 +1,138 @@
+package org.ringojs.jsgi;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A JavaScript object whose properties are resolved on first access.
+ * Properties that have been resolved, assigned or deleted by scripts behave
+ * like those of a plain object. All remaining properties are resolved before
+ * the object is enumerated.
+ */
+abstract class LazyObject extends ScriptableObject {
+
+    // true once all lazy properties have been resolved
+    private boolean complete = false;
+    // lazy properties deleted before they were resolved
+    private Set<String> deleted;
+
+    /**
+     * Get the value of a lazy property.
+     * @param name the property name
+     * @return the value, or NOT_FOUND if there is no such property
+     */
+    protected abstract Object resolve(String name);
+
+    /**
+     * Get the names of all lazy properties.
+     * @return the property names
+     */
+    protected abstract Iterable<String> getLazyNames();
+
+    /**
+     * Get the attributes to define a resolved property with.
+     * @param name the property name
+     * @return the property attributes
+     */
+    protected int getLazyAttributes(String name) {
+        return EMPTY;
+    }
+
+    private boolean lookup(String name) {
+        if (complete || (deleted != null && deleted.contains(name))) {
+            return false;
+        }
+        Object value = resolve(name);
+        if (value == NOT_FOUND) {
+            return false;
+        }
+        defineProperty(name, value, getLazyAttributes(name));
+        return true;
+    }
+
+    private void resolveAll() {
+        if (!complete) {
+            for (String name : getLazyNames()) {
+                if (!super.has(name, this)) {
+                    lookup(name);
+                }
+            }
+            complete = true;
+        }
+    }
+
+    /**
+     * Resolve all remaining properties and stop resolving them from the
+     * underlying source, for example because it is about to be recycled.
+     */
+    void detach() {
+        resolveAll();
+        complete = true;
+    }
+
+    @Override
+    public Object get(String name, Scriptable start) {
+        Object value = super.get(name, start);
+        if (value == NOT_FOUND && lookup(name)) {
+            value = super.get(name, start);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start) {
+        return super.has(name, start) || lookup(name);
+    }
+
+    @Override
+    public void put(String name, Scriptable start, Object value) {
+        if (deleted != null) {
+            deleted.remove(name);
+        }
+        super.put(name, start, value);
+    }
+
+    @Override
+    public void delete(String name) {
+        // resolve first so attributes such as PERMANENT are honored
+        if (!super.has(name, this)) {
+            lookup(name);
+        }
+        super.delete(name);
+        if (!complete && !super.has(name, this)) {
+            if (deleted == null) {
+                deleted = new HashSet<>();
+            }
+            deleted.add(name);
+        }
+    }
+
+    @Override
+    public Object[] getIds() {
+        resolveAll();
+        return super.getIds();
+    }
+
+    @Override
+    public Object[] getAllIds() {
+        resolveAll();
+        return super.getAllIds();
+    }
+
+    @Override
+    protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id) {
+        if (id instanceof String && !super.has((String) id, this)) {
+            lookup((String) id);
+        }
+        return super.getOwnPropertyDescriptor(cx, id);
+    }
+
+    @Override
+    public String getClassName() {
+        return "Object";
+    }
+}
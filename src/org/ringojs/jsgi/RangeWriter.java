@@ -0,0 +1,295 @@
+package org.ringojs.jsgi;
+
+import org.ringojs.repository.FileResource;
+import org.ringojs.repository.Resource;
+import org.ringojs.repository.ZipResource;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the body of a byte range response for a file or a memory-mapped
+ * zip entry. This is used by the <code>range()</code> response helper once
+ * the requested ranges have been validated.
+ *
+ * <p>Ranges of files are sent as memory-mapped slices, or transferred with
+ * <code>FileChannel.transferTo()</code> in servlet containers other than
+ * Jetty. For multiple ranges the multipart boundaries are written in
+ * between. In Jetty the body is sent asynchronously, so the worker that
+ * produced the response is released right away.</p>
+ */
+public final class RangeWriter implements Closeable {
+
+    /**
+     * The maximum size of a memory-mapped slice.
+     */
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer content;
+    private final List<Object> segments = new ArrayList<Object>();
+    private final long contentLength;
+    private int segment = 0;
+    private long offset = 0;
+
+    private static final Logger log = Logger.getLogger(RangeWriter.class.getName());
+
+    private RangeWriter(FileChannel channel, ByteBuffer content, long[] ranges,
+                        long size, String contentType, String boundary) {
+        this.channel = channel;
+        this.content = content;
+        long length = 0;
+        boolean multipart = ranges.length > 2;
+        for (int i = 0; i < ranges.length; i += 2) {
+            long start = ranges[i];
+            long end = ranges[i + 1];
+            if (start < 0 || end < start) {
+                throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+            }
+            if (multipart) {
+                length += addHeader((i > 0 ? "\r\n" : "") + "--" + boundary
+                        + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: bytes " + start + "-" + end + "/"
+                        + (size >= 0 ? Long.toString(size) : "*") + "\r\n\r\n");
+            }
+            segments.add(new long[] {start, end - start + 1});
+            length += end - start + 1;
+        }
+        if (multipart) {
+            length += addHeader("\r\n--" + boundary + "--");
+        }
+        this.contentLength = length;
+    }
+
+    private int addHeader(String header) {
+        byte[] bytes = header.getBytes(StandardCharsets.ISO_8859_1);
+        segments.add(ByteBuffer.wrap(bytes));
+        return bytes.length;
+    }
+
+    /**
+     * Write the given ranges of a resource as response body. The status and
+     * headers other than Content-Length must already have been set. If more
+     * than one range is passed, the parts are separated by multipart
+     * boundaries.
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param resource the resource
+     * @param ranges the canonical ranges as pairs of first and last byte
+     *               positions, inclusive
+     * @param size the size of the resource, or -1 if unknown
+     * @param contentType the content type of the parts
+     * @param boundary the multipart boundary
+     * @return false if the resource is neither a file nor a memory-mapped
+     * zip entry, in which case nothing has been written
+     * @throws IOException if an I/O error occurred
+     */
+    public static boolean send(HttpServletRequest request,
+                               HttpServletResponse response,
+                               Resource resource,
+                               long[] ranges,
+                               long size,
+                               String contentType,
+                               String boundary) throws IOException {
+        if (ranges.length == 0 || ranges.length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid ranges");
+        }
+        FileChannel channel = null;
+        ByteBuffer content = null;
+        if (resource instanceof FileResource) {
+            channel = FileChannel.open(((FileResource) resource).getFile().toPath(),
+                    StandardOpenOption.READ);
+        } else if (resource instanceof ZipResource) {
+            content = ((ZipResource) resource).getByteBuffer();
+        }
+        if (channel == null && content == null) {
+            return false;
+        }
+        long available = channel != null ? channel.size() : content.remaining();
+        for (int i = 1; i < ranges.length; i += 2) {
+            if (ranges[i] >= available) {
+                // the passed size doesn't match the content, don't map
+                // beyond its end
+                if (channel != null) {
+                    channel.close();
+                }
+                return false;
+            }
+        }
+        RangeWriter writer = new RangeWriter(channel, content, ranges, size,
+                contentType, boundary);
+        boolean async = false;
+        try {
+            response.setContentLengthLong(writer.contentLength);
+            ServletOutputStream output = response.getOutputStream();
+            if (StaticContent.JETTY && StaticContent.Jetty.isHttpOutput(output)) {
+                AsyncContext asyncContext = StaticContent.startAsync(request);
+                if (asyncContext != null) {
+                    Jetty.sendAsync(writer, output, asyncContext);
+                    async = true;
+                } else {
+                    Jetty.send(writer, output);
+                }
+            } else {
+                writer.writeTo(output);
+            }
+        } finally {
+            if (!async) {
+                writer.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the next buffer of the response body.
+     * @return the next buffer, or null if the body is complete
+     */
+    ByteBuffer next() throws IOException {
+        while (segment < segments.size()) {
+            Object seg = segments.get(segment);
+            if (seg instanceof ByteBuffer) {
+                segment += 1;
+                return ((ByteBuffer) seg).duplicate();
+            }
+            long[] range = (long[]) seg;
+            long remaining = range[1] - offset;
+            if (remaining <= 0) {
+                segment += 1;
+                offset = 0;
+                continue;
+            }
+            int length = (int) Math.min(remaining, CHUNK_SIZE);
+            long position = range[0] + offset;
+            offset += length;
+            return slice(position, length);
+        }
+        return null;
+    }
+
+    private ByteBuffer slice(long position, int length) throws IOException {
+        if (content != null) {
+            ByteBuffer buffer = content.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) position + length);
+            return buffer.slice();
+        }
+        if (length < StaticContent.LARGE_FILE) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Write the body to an output stream, transferring file ranges
+     * directly from the file channel.
+     */
+    void writeTo(OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        for (Object seg : segments) {
+            if (seg instanceof ByteBuffer) {
+                ByteBuffer buffer = ((ByteBuffer) seg).duplicate();
+                output.write(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+            } else if (channel != null) {
+                long[] range = (long[]) seg;
+                long position = range[0];
+                long end = range[0] + range[1];
+                while (position < end) {
+                    long transferred = channel.transferTo(position, end - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                    position += transferred;
+                }
+            } else {
+                long[] range = (long[]) seg;
+                ByteBuffer buffer = slice(range[0], (int) range[1]);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Jetty specific code, kept in its own class so it is only loaded if
+     * Jetty is available.
+     */
+    static final class Jetty {
+
+        static void send(RangeWriter writer, ServletOutputStream output)
+                throws IOException {
+            org.eclipse.jetty.server.HttpOutput out =
+                    (org.eclipse.jetty.server.HttpOutput) output;
+            for (ByteBuffer buffer = writer.next(); buffer != null;
+                 buffer = writer.next()) {
+                out.write(buffer);
+            }
+        }
+
+        static void sendAsync(final RangeWriter writer,
+                              final ServletOutputStream output,
+                              final AsyncContext asyncContext) {
+            final org.eclipse.jetty.server.HttpOutput out =
+                    (org.eclipse.jetty.server.HttpOutput) output;
+            // mapped slices are handed to Jetty without copying them; the
+            // non-blocking output only asks for the next one once the
+            // previous has been written
+            out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() throws IOException {
+                    while (out.isReady()) {
+                        ByteBuffer buffer = writer.next();
+                        if (buffer == null) {
+                            writer.close();
+                            asyncContext.complete();
+                            return;
+                        }
+                        out.write(buffer);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable x) {
+                    log.log(Level.FINE, "Error sending byte ranges", x);
+                    writer.close();
+                    asyncContext.complete();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package org.ringojs.jsgi;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+import org.ringojs.repository.Resource;
+import org.ringojs.wrappers.Binary;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the response object returned by a JSGI application to a servlet
+ * response. This is used by the <code>ringo/jsgi/connector</code> module.
+ *
+ * <p>Bodies may be strings, Binary instances, arrays, or objects implementing
+ * <code>forEach()</code>. Strings are encoded with one CharsetEncoder and
+ * buffer per response, which is reused for all parts of the body, and
+ * written to the servlet output from there.</p>
+ */
+public final class ResponseWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ResponseWriter() {}
+
+    /**
+     * Apply the return value of a JSGI application to a servlet response.
+     * Nothing is written if the response is already committed or the
+     * response contains a <code>X-JSGI-Skip-Response</code> header.
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param result the object returned by the JSGI application
+     * @throws IOException if an I/O error occurred
+     */
+    public static void commit(HttpServletRequest request,
+                              HttpServletResponse response,
+                              Scriptable result) throws IOException {
+        commit(request, response, result, null);
+    }
+
+    /**
+     * Apply the return value of a JSGI application to a servlet response
+     * using the compression and static cache settings of a JsgiServlet.
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param result the object returned by the JSGI application
+     * @param servlet the servlet handling the request, or null
+     * @throws IOException if an I/O error occurred
+     */
+    public static void commit(HttpServletRequest request,
+                              HttpServletResponse response,
+                              Scriptable result,
+                              JsgiServlet servlet) throws IOException {
+        Compression compression = servlet == null ? null : servlet.getCompression();
+        Object status = ScriptableObject.getProperty(result, "status");
+        Object headers = ScriptableObject.getProperty(result, "headers");
+        Object body = ScriptableObject.getProperty(result, "body");
+        if (!isTruthy(status) || !(headers instanceof Scriptable) || !isTruthy(body)) {
+            throw ScriptRuntime.constructError("Error",
+                    "No valid JSGI response: " + ScriptRuntime.toString(result));
+        }
+        Scriptable headerObject = (Scriptable) headers;
+        Object[] ids = headerObject.getIds();
+        String contentType = null;
+        for (Object id : ids) {
+            String name = String.valueOf(id);
+            if ("X-JSGI-Skip-Response".equalsIgnoreCase(name)) {
+                // application/middleware handles the request via servlet API
+                return;
+            } else if ("Content-Type".equalsIgnoreCase(name)) {
+                Object value = getProperty(headerObject, id);
+                if (value instanceof CharSequence) {
+                    contentType = value.toString();
+                }
+            }
+        }
+        if (response.isCommitted()) {
+            return;
+        }
+        response.setStatus(ScriptRuntime.toInt32(status));
+        writeHeaders(response, headerObject, ids);
+        if (body instanceof Scriptable) {
+            Object resource = ScriptableObject.getProperty((Scriptable) body, "resource");
+            if (resource instanceof Wrapper) {
+                resource = ((Wrapper) resource).unwrap();
+            }
+            if (resource instanceof Resource) {
+                // static file body, send it without copying it through JS
+                StaticContent.send(request, response, (Resource) resource,
+                        compression != null,
+                        servlet == null ? null : servlet.getStaticCache());
+                return;
+            }
+        }
+        Encoder encoder = new Encoder(getCharset(contentType));
+        Compression.Output compressed = compression == null ?
+                null : compression.wrap(request, response, contentType);
+        if (compressed == null) {
+            writeBody(response.getOutputStream(), body, encoder);
+            return;
+        }
+        try {
+            writeBody(compressed, body, encoder);
+            compressed.finish();
+        } finally {
+            compressed.release();
+        }
+    }
+
+    /**
+     * Add the headers in a JSGI headers object to a servlet response.
+     * String values containing newlines and array values are added as
+     * multiple headers.
+     * @param response the servlet response
+     * @param headers the headers object
+     */
+    public static void writeHeaders(HttpServletResponse response,
+                                    Scriptable headers) {
+        writeHeaders(response, headers, headers.getIds());
+    }
+
+    static void writeHeaders(HttpServletResponse response, Scriptable headers,
+                             Object[] ids) {
+        for (Object id : ids) {
+            String name = String.valueOf(id);
+            Object value = getProperty(headers, id);
+            if (value instanceof CharSequence) {
+                String str = value.toString();
+                int start = 0;
+                int end;
+                while ((end = str.indexOf('\n', start)) > -1) {
+                    response.addHeader(name, str.substring(start, end));
+                    start = end + 1;
+                }
+                response.addHeader(name, start == 0 ? str : str.substring(start));
+            } else if (value instanceof NativeArray) {
+                NativeArray array = (NativeArray) value;
+                long length = array.getLength();
+                for (int i = 0; i < length; i++) {
+                    Object item = array.get(i, array);
+                    // skip holes like Array.prototype.forEach
+                    if (item != Scriptable.NOT_FOUND) {
+                        response.addHeader(name, ScriptRuntime.toString(item));
+                    }
+                }
+            }
+        }
+    }
+
+    static void writeBody(OutputStream output, Object body,
+                          Encoder encoder) throws IOException {
+        if (body instanceof CharSequence || body instanceof Binary) {
+            writePart(output, body, encoder);
+        } else if (body instanceof NativeArray) {
+            NativeArray array = (NativeArray) body;
+            long length = array.getLength();
+            for (int i = 0; i < length; i++) {
+                Object part = array.get(i, array);
+                // skip holes like Array.prototype.forEach
+                if (part != Scriptable.NOT_FOUND) {
+                    writePart(output, part, encoder);
+                }
+            }
+        } else if (body instanceof Scriptable
+                && ScriptableObject.getProperty((Scriptable) body, "forEach") instanceof Function) {
+            Scriptable object = (Scriptable) body;
+            Context cx = Context.getCurrentContext();
+            PartWriter writer = new PartWriter(output, encoder);
+            ScriptRuntime.setFunctionProtoAndParent(writer,
+                    ScriptableObject.getTopLevelScope(object));
+            Object[] args = new Object[] {writer};
+            ScriptableObject.callMethod(cx, object, "forEach", args);
+            if (ScriptableObject.getProperty(object, "close") instanceof Function) {
+                ScriptableObject.callMethod(cx, object, "close", args);
+            }
+        } else {
+            throw ScriptRuntime.constructError("Error",
+                    "Response body doesn't implement forEach: "
+                            + ScriptRuntime.toString(body));
+        }
+    }
+
+    static void writePart(OutputStream output, Object part, Encoder encoder)
+            throws IOException {
+        if (part instanceof Binary) {
+            ((Binary) part).writeTo(output);
+        } else if (part instanceof CharSequence) {
+            encoder.write(output, part.toString());
+        } else {
+            throw ScriptRuntime.constructError("Error",
+                    "'str' must be a string or instance of Binary.");
+        }
+    }
+
+    /**
+     * Get the value of the charset parameter of a content type header.
+     * @param contentType the content type header value, or null
+     * @return the charset, or null
+     */
+    static String getCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int end = 0;
+        int start;
+        while ((start = contentType.indexOf(';', end)) > -1) {
+            end = contentType.indexOf(';', ++start);
+            if (end < 0) {
+                end = contentType.length();
+            }
+            int eq = contentType.indexOf('=', start);
+            if (eq > start && eq < end) {
+                String name = contentType.substring(start, eq).trim();
+                if (name.endsWith("*")) {
+                    name = name.substring(0, name.length() - 1);
+                }
+                if ("charset".equalsIgnoreCase(name)) {
+                    String value = contentType.substring(eq + 1, end).trim();
+                    if (value.length() > 1 && value.startsWith("\"")
+                            && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Object getProperty(Scriptable object, Object id) {
+        Object value = id instanceof Integer ?
+                ScriptableObject.getProperty(object, (Integer) id) :
+                ScriptableObject.getProperty(object, String.valueOf(id));
+        return value == Scriptable.NOT_FOUND ? Undefined.instance : value;
+    }
+
+    private static boolean isTruthy(Object value) {
+        return value != Scriptable.NOT_FOUND && ScriptRuntime.toBoolean(value);
+    }
+
+    /**
+     * The function passed to the <code>forEach()</code> method of bodies.
+     */
+    static class PartWriter extends BaseFunction {
+
+        final OutputStream output;
+        final Encoder encoder;
+
+        PartWriter(OutputStream output, Encoder encoder) {
+            this.output = output;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj,
+                           Object[] args) {
+            try {
+                writePart(output, args.length > 0 ? args[0] : Undefined.instance,
+                        encoder);
+            } catch (IOException iox) {
+                throw Context.throwAsScriptRuntimeEx(iox);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public int getArity() {
+            return 1;
+        }
+    }
+
+    /**
+     * The string encoder of a response. The encoder and its output buffer
+     * are created when the first string part is written, and the buffer
+     * grows with the parts up to its maximum size.
+     */
+    static final class Encoder {
+
+        final String charsetName;
+        CharsetEncoder encoder;
+        ByteBuffer buffer;
+
+        Encoder(String charsetName) {
+            this.charsetName = charsetName == null ? "utf-8" : charsetName;
+        }
+
+        private CharsetEncoder getEncoder() {
+            if (encoder == null) {
+                Charset charset = "utf-8".equalsIgnoreCase(charsetName) ?
+                        StandardCharsets.UTF_8 : Charset.forName(charsetName);
+                encoder = charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            return encoder.reset();
+        }
+
+        private ByteBuffer getBuffer(CharsetEncoder encoder, int length) {
+            int size = (int) Math.min(BUFFER_SIZE,
+                    (long) Math.ceil(length * (double) encoder.maxBytesPerChar()) + 16);
+            if (buffer == null || buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+            }
+            return buffer;
+        }
+
+        void write(OutputStream output, String str) throws IOException {
+            CharsetEncoder encoder = getEncoder();
+            CharBuffer in = CharBuffer.wrap(str);
+            ByteBuffer out = getBuffer(encoder, str.length());
+            out.clear();
+            try {
+                boolean flushed = false;
+                while (true) {
+                    CoderResult result = flushed ?
+                            encoder.flush(out) : encoder.encode(in, out, true);
+                    if (result.isOverflow()) {
+                        drain(output, out);
+                    } else if (result.isUnderflow()) {
+                        if (flushed) {
+                            break;
+                        }
+                        flushed = true;
+                    } else {
+                        result.throwException();
+                    }
+                }
+                drain(output, out);
+            } finally {
+                out.clear();
+            }
+        }
+
+        private static void drain(OutputStream output, ByteBuffer out)
+                throws IOException {
+            if (out.position() > 0) {
+                output.write(out.array(), 0, out.position());
+                out.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.ringojs.jsgi;
+
+import org.ringojs.repository.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache for the content of small, frequently requested
+ * static resources such as stylesheets, scripts and icons. Content is kept
+ * in direct byte buffers, so it can be written to the network without
+ * copying it to the heap first. Entries are keyed by resource path and
+ * validated against the resource's modification time and length.
+ */
+public class StaticCache {
+
+    /**
+     * The default maximum size of a single cached resource.
+     */
+    public static final int DEFAULT_MAX_FILE_SIZE = 64 * 1024;
+
+    private final long maxSize;
+    private final int maxFileSize;
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private long size = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     * @param maxSize the maximum total size of cached content in bytes
+     * @param maxFileSize the maximum size of a single cached resource
+     */
+    public StaticCache(long maxSize, int maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = (int) Math.min(maxFileSize, maxSize);
+    }
+
+    /**
+     * Get the content of a resource, loading it into the cache if it is
+     * not cached or has been modified.
+     * @param resource the resource
+     * @return a read-only buffer with the resource content, or null if the
+     * resource is too large to be cached
+     * @throws IOException if the resource could not be read
+     */
+    public ByteBuffer get(Resource resource) throws IOException {
+        long length = resource.getLength();
+        if (length > maxFileSize || length < 0) {
+            return null;
+        }
+        long lastModified = resource.lastModified();
+        String key = resource.getPath();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified
+                    && entry.buffer.capacity() == length) {
+                hits.incrementAndGet();
+                return entry.buffer.duplicate();
+            }
+        }
+        misses.incrementAndGet();
+        ByteBuffer buffer = load(resource, (int) length);
+        if (buffer == null) {
+            // resource changed while reading it
+            return null;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(lastModified, buffer));
+            if (previous != null) {
+                size -= previous.buffer.capacity();
+            }
+            size += length;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (size > maxSize && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                size -= eldest.buffer.capacity();
+                evictions.incrementAndGet();
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    private static ByteBuffer load(Resource resource, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        try (InputStream input = resource.getInputStream();
+             ReadableByteChannel channel = Channels.newChannel(input)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return null;
+                }
+            }
+            if (input.read() > -1) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the maximum size of a single cached resource.
+     * @return the maximum file size in bytes
+     */
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Get the maximum total size of cached content.
+     * @return the maximum size in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the total size of cached content.
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of cached resources.
+     * @return the number of entries
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of requests served from the cache.
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests that had to load the resource.
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries removed to make room for others.
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StaticCache[entries=" + getCount() + ", size=" + getSize()
+                + ", hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + "]";
+    }
+
+    static final class Entry {
+        final long lastModified;
+        final ByteBuffer buffer;
+
+        Entry(long lastModified, ByteBuffer buffer) {
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.ringojs.jsgi;
+
+import org.ringojs.repository.FileResource;
+import org.ringojs.repository.Resource;
+import org.ringojs.repository.ZipResource;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the content of a resource as response body without passing it
+ * through JavaScript. This is used by the JSGI connector for bodies created
+ * by the <code>static()</code> response helper.
+ *
+ * <p>When running in Jetty, file content is handed to Jetty's output as a
+ * memory-mapped buffer or file channel. Large files are sent asynchronously,
+ * so the worker that produced the response is released before the content
+ * has been written. In other servlet containers, the content is copied to
+ * the servlet output stream.</p>
+ */
+public final class StaticContent {
+
+    /**
+     * Files of this size or larger are memory-mapped and sent asynchronously,
+     * smaller files are read into a heap buffer and sent right away.
+     */
+    public static final long LARGE_FILE = 64 * 1024;
+
+    static final boolean JETTY = isJettyAvailable();
+
+    private static final Logger log = Logger.getLogger(StaticContent.class.getName());
+
+    private StaticContent() {}
+
+    /**
+     * Write the content of the resource as response body. The status and
+     * headers must already have been set. A Content-Length header is added
+     * if none has been set.
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param resource the resource to send
+     * @return true if the content is sent asynchronously, in which case the
+     * async context is completed once the content has been written
+     * @throws IOException if an I/O error occurred
+     */
+    public static boolean send(HttpServletRequest request,
+                               HttpServletResponse response,
+                               Resource resource) throws IOException {
+        return send(request, response, resource, false, null);
+    }
+
+    /**
+     * Write the content of the resource as response body. Unless the
+     * response already has them, ETag and Last-Modified headers are added,
+     * and conditional GET requests for unchanged resources are answered
+     * with status 304.
+     *
+     * <p>If gzip is enabled and the client accepts it, a fresh sibling with
+     * <code>.gz</code> extension is sent instead of the resource along with
+     * a <code>Content-Encoding: gzip</code> header. Small resources are
+     * served from the cache, if one is passed.</p>
+     * @param request the servlet request
+     * @param response the servlet response
+     * @param resource the resource to send
+     * @param gzip true to look for a precompressed sibling
+     * @param cache the cache for small resources, or null
+     * @return true if the content is sent asynchronously
+     * @throws IOException if an I/O error occurred
+     */
+    public static boolean send(HttpServletRequest request,
+                               HttpServletResponse response,
+                               Resource resource,
+                               boolean gzip,
+                               StaticCache cache) throws IOException {
+        Resource original = resource;
+        boolean precompressed = false;
+        if (gzip && request != null && !response.containsHeader("Content-Encoding")) {
+            Resource gz = Compression.getPrecompressed(resource);
+            if (gz != null) {
+                response.addHeader("Vary", "Accept-Encoding");
+                if (Compression.GZIP.equals(Compression.getEncoding(request))) {
+                    response.setHeader("Content-Encoding", Compression.GZIP);
+                    resource = gz;
+                    precompressed = true;
+                }
+            }
+        }
+        if (request != null && response.getStatus() == 200
+                && checkNotModified(request, response, original, precompressed)) {
+            return false;
+        }
+        long length = resource.getLength();
+        if (precompressed || !response.containsHeader("Content-Length")) {
+            response.setContentLengthLong(length);
+        }
+        ServletOutputStream output = response.getOutputStream();
+        ByteBuffer cached = cache == null ? null : cache.get(resource);
+        if (cached != null) {
+            if (JETTY && Jetty.isHttpOutput(output)) {
+                Jetty.send(output, cached);
+            } else {
+                byte[] buffer = new byte[(int) Math.min(8192, cached.remaining())];
+                while (cached.hasRemaining()) {
+                    int n = Math.min(buffer.length, cached.remaining());
+                    cached.get(buffer, 0, n);
+                    output.write(buffer, 0, n);
+                }
+            }
+            return false;
+        }
+        if (JETTY && Jetty.isHttpOutput(output)) {
+            return Jetty.send(request, output, resource, length);
+        }
+        try (InputStream input = resource.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int r = input.read(buffer); r > -1; r = input.read(buffer)) {
+                output.write(buffer, 0, r);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add validator headers for a resource and check the request's
+     * conditional headers against them. If the resource is unchanged the
+     * response status is set to 304.
+     * @return true if the resource has not been modified
+     */
+    static boolean checkNotModified(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    Resource resource,
+                                    boolean precompressed) throws IOException {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        long lastModified = resource.lastModified();
+        String etag = response.getHeader("ETag");
+        if (etag == null) {
+            etag = getETag(resource, lastModified, precompressed);
+            response.setHeader("ETag", etag);
+        }
+        if (lastModified > 0 && !response.containsHeader("Last-Modified")) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        boolean notModified;
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException x) {
+                ifModifiedSince = -1;
+            }
+            notModified = ifModifiedSince > -1 && lastModified > 0
+                    && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * Get the entity tag of a resource, matching the <code>digest()</code>
+     * of bodies created by the <code>static()</code> response helper.
+     */
+    static String getETag(Resource resource, long lastModified,
+                          boolean precompressed) {
+        return "\"" + Long.toString(lastModified, 36)
+                + Long.toString(resource.getLength(), 36)
+                + (precompressed ? "-gzip\"" : "\"");
+    }
+
+    /**
+     * Weak comparison of an If-None-Match header value with an entity tag.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        String opaque = stripWeak(etag);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || opaque.equals(stripWeak(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Get the content of a resource as buffer if this can be done without
+     * copying it, or if the resource is small.
+     * @return the buffer, or null if the content should be read as stream
+     */
+    static ByteBuffer getBuffer(Resource resource, long length) throws IOException {
+        if (resource instanceof ZipResource) {
+            return ((ZipResource) resource).getByteBuffer();
+        } else if (resource instanceof FileResource
+                && length <= Integer.MAX_VALUE) {
+            FileResource file = (FileResource) resource;
+            if (length < LARGE_FILE) {
+                return ByteBuffer.wrap(Files.readAllBytes(file.getFile().toPath()));
+            }
+            try (FileChannel channel = FileChannel.open(file.getFile().toPath(),
+                    StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+        }
+        return null;
+    }
+
+    static ReadableByteChannel getChannel(Resource resource) throws IOException {
+        if (resource instanceof FileResource) {
+            return FileChannel.open(((FileResource) resource).getFile().toPath(),
+                    StandardOpenOption.READ);
+        }
+        return Channels.newChannel(resource.getInputStream());
+    }
+
+    /**
+     * Claim the async context for the request, taking it over from the
+     * servlet if the request has been dispatched to a virtual thread.
+     * @return the async context, or null if the request doesn't support
+     * async processing
+     */
+    static AsyncContext startAsync(HttpServletRequest request) {
+        if (request.getAttribute(JsgiServlet.ASYNC_DISPATCH) != null) {
+            request.removeAttribute(JsgiServlet.ASYNC_DISPATCH);
+            return request.getAsyncContext();
+        } else if (request.isAsyncSupported() && !request.isAsyncStarted()) {
+            AsyncContext asyncContext = request.startAsync();
+            // rely on the connector's idle timeout for stalled clients
+            asyncContext.setTimeout(0);
+            return asyncContext;
+        }
+        return null;
+    }
+
+    static void close(ReadableByteChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+        }
+    }
+
+    private static boolean isJettyAvailable() {
+        try {
+            Class.forName("org.eclipse.jetty.server.HttpOutput", false,
+                    StaticContent.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError x) {
+            return false;
+        }
+    }
+
+    /**
+     * Jetty specific code, kept in its own class so it is only loaded if
+     * Jetty is available.
+     */
+    static final class Jetty {
+
+        static boolean isHttpOutput(ServletOutputStream output) {
+            return output instanceof org.eclipse.jetty.server.HttpOutput;
+        }
+
+        static void send(ServletOutputStream output, ByteBuffer buffer)
+                throws IOException {
+            ((org.eclipse.jetty.server.HttpOutput) output).sendContent(buffer);
+        }
+
+        // unlike sendContent, this honours non-blocking mode
+        static void write(ServletOutputStream output, ByteBuffer buffer)
+                throws IOException {
+            ((org.eclipse.jetty.server.HttpOutput) output).write(buffer);
+        }
+
+        static boolean send(HttpServletRequest request,
+                            ServletOutputStream output,
+                            Resource resource,
+                            long length) throws IOException {
+            org.eclipse.jetty.server.HttpOutput out =
+                    (org.eclipse.jetty.server.HttpOutput) output;
+            ByteBuffer buffer = getBuffer(resource, length);
+            ReadableByteChannel channel = buffer == null ?
+                    getChannel(resource) : null;
+            AsyncContext asyncContext = length < LARGE_FILE ?
+                    null : startAsync(request);
+            if (asyncContext == null) {
+                try {
+                    if (buffer != null) {
+                        out.sendContent(buffer);
+                    } else {
+                        out.sendContent(channel);
+                    }
+                } finally {
+                    close(channel);
+                }
+                return false;
+            }
+            org.eclipse.jetty.util.Callback callback =
+                    new org.eclipse.jetty.util.Callback() {
+                @Override
+                public void succeeded() {
+                    close(channel);
+                    asyncContext.complete();
+                }
+
+                @Override
+                public void failed(Throwable x) {
+                    log.log(Level.FINE, "Error sending " + resource, x);
+                    close(channel);
+                    asyncContext.complete();
+                }
+            };
+            if (buffer != null) {
+                out.sendContent(buffer, callback);
+            } else {
+                out.sendContent(channel, callback);
+            }
+            return true;
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.ringojs.util.StringUtils;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Provides common methods and fields for the default implementations of the
@@ -37,15 +39,14 @@ public abstract class AbstractRepository implements Repository {
     /**
      * Cache for direct child repositories
      */
-    final Map<String, SoftReference<AbstractRepository>> repositories =
-            Collections.synchronizedMap(
-                new HashMap<>());
+    final ConcurrentMap<String, SoftReference<AbstractRepository>> repositories =
+            new ConcurrentHashMap<>();
 
     /**
      * Cache for direct resources
      */
-    final Map<String, AbstractResource> resources =
-            Collections.synchronizedMap(new HashMap<>());
+    final ConcurrentMap<String, AbstractResource> resources =
+            new ConcurrentHashMap<>();
 
     /**
      * Cached name for faster access
@@ -194,7 +195,7 @@ public abstract class AbstractRepository implements Repository {
      * If the name can't be resolved to a resource, a resource object is returned
      * for which {@link Resource exists()} returns <code>false</code>.
      */
-    public synchronized Resource getResource(String subpath) throws IOException {
+    public Resource getResource(String subpath) throws IOException {
         String[] list = resolve(subpath, false);
         AbstractRepository repo = this;
         if (list.length == 0) {
@@ -235,13 +236,64 @@ public abstract class AbstractRepository implements Repository {
         } else if ("..".equals(name)) {
             return getParentRepository();
         }
-        SoftReference<AbstractRepository> ref = repositories.get(name);
-        AbstractRepository repo = ref == null ? null : ref.get();
-        if (repo == null) {
-            repo = createChildRepository(name);
-            repositories.put(name, new SoftReference<>(repo));
+        return cachedRepository(name, this::createChildRepository);
+    }
+
+    /**
+     * Get a softly cached child repository, creating it if it isn't cached
+     * or has been garbage collected. If several threads create the same
+     * repository concurrently, all of them get the instance that was
+     * cached first.
+     * @param name the name of the child repository
+     * @param factory the function to create the repository
+     * @return the child repository
+     * @throws IOException an I/O error occurred
+     */
+    protected AbstractRepository cachedRepository(String name, RepositoryFactory factory)
+            throws IOException {
+        while (true) {
+            SoftReference<AbstractRepository> ref = repositories.get(name);
+            AbstractRepository repo = ref == null ? null : ref.get();
+            if (repo != null) {
+                return repo;
+            }
+            repo = factory.create(name);
+            SoftReference<AbstractRepository> newRef = new SoftReference<>(repo);
+            if (ref == null ? repositories.putIfAbsent(name, newRef) == null
+                    : repositories.replace(name, ref, newRef)) {
+                return repo;
+            }
         }
-        return repo;
+    }
+
+    /**
+     * Get a cached child resource, creating it if it isn't cached yet.
+     * If several threads create the same resource concurrently, all of them
+     * get the instance that was cached first.
+     * @param name the name of the child resource
+     * @param factory the function to create the resource
+     * @return the child resource
+     * @throws IOException an I/O error occurred
+     */
+    protected AbstractResource cachedResource(String name, ResourceFactory factory)
+            throws IOException {
+        AbstractResource res = resources.get(name);
+        if (res == null) {
+            res = factory.create(name);
+            AbstractResource existing = resources.putIfAbsent(name, res);
+            if (existing != null) {
+                res = existing;
+            }
+        }
+        return res;
+    }
+
+    protected interface RepositoryFactory {
+        AbstractRepository create(String name) throws IOException;
+    }
+
+    protected interface ResourceFactory {
+        AbstractResource create(String name) throws IOException;
     }
 
     /**
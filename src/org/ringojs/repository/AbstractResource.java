@@ -39,7 +39,9 @@ public abstract class AbstractResource implements Resource {
 
     protected InputStream stripShebang(InputStream stream) throws IOException {
         if (stripShebang) {
-            stream = new BufferedInputStream(stream);
+            if (!stream.markSupported()) {
+                stream = new BufferedInputStream(stream);
+            }
             stream.mark(2);
             if (stream.read() == '#' && stream.read() == '!') {
                 // skip a line: a line is terminated by \n or \r or \r\n (just as
@@ -0,0 +1,17 @@
+package org.ringojs.repository;
+
+/**
+ * A listener that is notified when a watched resource may have changed.
+ * See {@link FileResource#addChangeListener(ChangeListener)}.
+ */
+public interface ChangeListener {
+
+    /**
+     * Called when the resource may have changed. This is also called
+     * when the resource stops being watched, in which case consumers
+     * need to fall back to checking the resource's checksum themselves.
+     * @param source the resource
+     */
+    void changed(Trackable source);
+
+}
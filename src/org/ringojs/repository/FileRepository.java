@@ -18,11 +18,13 @@ package org.ringojs.repository;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Repository implementation for directories providing file resources
@@ -41,6 +43,14 @@ public class FileRepository extends AbstractRepository {
      */
     final long cacheTime = 1000L;
 
+    // true while changes in the directory are reported by the file watcher
+    volatile boolean watched = false;
+    private boolean watchFailed = false;
+
+    // resources with change listeners, notified by the file watcher
+    final Map<String, CopyOnWriteArrayList<FileResource>> watchedResources =
+            new ConcurrentHashMap<>();
+
     /**
      * Constructs a FileRepository using the given argument
      * @param path absolute path to the directory
@@ -108,14 +118,11 @@ public class FileRepository extends AbstractRepository {
         if (parent == null) {
             // allow to escape file repository root
             try {
-                SoftReference<AbstractRepository> ref = repositories.get("..");
-                AbstractRepository repo = ref == null ? null : ref.get();
-                if (repo == null) {
-                    repo = new FileRepository(directory.getParentFile());
+                return cachedRepository("..", n -> {
+                    AbstractRepository repo = new FileRepository(directory.getParentFile());
                     repo.setAbsolute(true);
-                    repositories.put("..", new SoftReference<>(repo));
-                }
-                return repo;
+                    return repo;
+                });
             } catch (IOException iox) {
                 // fall through
             }
@@ -140,8 +147,10 @@ public class FileRepository extends AbstractRepository {
      * @return checksum
      */
     public synchronized long getChecksum() throws IOException {
-        // delay checksum check if already checked recently
-        if (System.currentTimeMillis() > lastChecksumTime + cacheTime) {
+        // delay checksum check if already checked recently, or until
+        // the file watcher reports a change if the directory is watched
+        if (watched ? lastChecksumTime == 0 :
+                System.currentTimeMillis() > lastChecksumTime + cacheTime) {
             // FIXME
             long checksum = lastModified;
 
@@ -156,17 +165,96 @@ public class FileRepository extends AbstractRepository {
         return lastChecksum;
     }
 
+    /**
+     * Returns true if changes in this repository's directory are reported
+     * by the file watcher.
+     * @return true if the directory is being watched
+     */
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * Start watching this repository's directory for changes, if this
+     * hasn't been done yet. The directory is watched as long as this
+     * repository is referenced.
+     * @return true if the directory is being watched
+     */
+    public synchronized boolean watch() {
+        if (!watched && !watchFailed) {
+            FileWatcher watcher = FileWatcher.getInstance();
+            watched = watcher != null && watcher.watch(this);
+            watchFailed = !watched;
+            lastChecksumTime = 0;
+        }
+        return watched;
+    }
+
+    /**
+     * Register a resource to be notified by the file watcher.
+     * @param resource the resource
+     * @return true if the directory is being watched
+     */
+    boolean watch(FileResource resource) {
+        watchedResources.compute(resource.getName(), (name, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+            }
+            list.addIfAbsent(resource);
+            return list;
+        });
+        return watch();
+    }
+
+    /**
+     * Stop notifying a resource of changes. The directory remains watched
+     * until the repository is garbage collected.
+     * @param resource the resource
+     */
+    void unwatch(FileResource resource) {
+        watchedResources.computeIfPresent(resource.getName(), (name, list) -> {
+            list.remove(resource);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Called by the file watcher when a file in this directory changed.
+     * @param name the name of the changed file, or null if any file
+     *             may have changed
+     * @param cancelled true if the directory is no longer watched
+     */
+    void changed(String name, boolean cancelled) {
+        synchronized (this) {
+            if (cancelled) {
+                watched = false;
+                watchFailed = false;
+            }
+            lastChecksumTime = 0;
+        }
+        if (name == null) {
+            for (List<FileResource> list : watchedResources.values()) {
+                for (FileResource resource : list) {
+                    resource.changed();
+                }
+            }
+        } else {
+            List<FileResource> list = watchedResources.get(name);
+            if (list != null) {
+                for (FileResource resource : list) {
+                    resource.changed();
+                }
+            }
+        }
+    }
+
     /**
      * Called to create a child resource for this repository
      */
     @Override
     protected Resource lookupResource(String name) throws IOException {
-        AbstractResource res = resources.get(name);
-        if (res == null) {
-            res = new FileResource(new File(directory, name), this);
-            resources.put(name, res);
-        }
-        return res;
+        return cachedResource(name,
+                n -> new FileResource(new File(directory, n), this));
     }
 
     protected void getResources(List<Resource> list, boolean recursive)
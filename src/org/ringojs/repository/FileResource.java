@@ -19,11 +19,20 @@ package org.ringojs.repository;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class FileResource extends AbstractResource {
 
     File file;
 
+    // last modified time cached while the repository is watched
+    private volatile long cachedLastModified = UNKNOWN;
+    private int changeCount = 0;
+    private List<ChangeListener> listeners;
+
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
     public FileResource(String path) throws IOException {
         this(new File(path), null);
     }
@@ -55,12 +64,91 @@ public class FileResource extends AbstractResource {
         return stripShebang(new FileInputStream(file));
     }
 
+    /**
+     * Returns the file backing this resource.
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
     public URL getUrl() throws MalformedURLException {
         return new URL("file:" + file.getAbsolutePath());
     }
 
     public long lastModified() {
-        return file.lastModified();
+        if (!((FileRepository) repository).watched) {
+            return file.lastModified();
+        }
+        long lastModified = cachedLastModified;
+        if (lastModified == UNKNOWN) {
+            int count;
+            synchronized (this) {
+                count = changeCount;
+            }
+            lastModified = file.lastModified();
+            synchronized (this) {
+                // don't cache if a change was reported in the meantime
+                if (count == changeCount) {
+                    cachedLastModified = lastModified;
+                }
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Returns true if changes to this resource are reported by the file watcher.
+     * @return true if the resource is being watched
+     */
+    public boolean isWatched() {
+        return ((FileRepository) repository).watched;
+    }
+
+    /**
+     * Register a listener to be notified when this resource changes. This
+     * starts watching the resource's directory for changes.
+     * @param listener the listener
+     * @return true if changes to the resource will be reported to the
+     * listener, false if the resource can't be watched
+     */
+    public synchronized boolean addChangeListener(ChangeListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
+        return ((FileRepository) repository).watch(this);
+    }
+
+    /**
+     * Unregister a listener registered with
+     * {@link #addChangeListener(ChangeListener)}. The repository stops
+     * notifying this resource once its last listener is removed.
+     * @param listener the listener
+     */
+    public synchronized void removeChangeListener(ChangeListener listener) {
+        if (listeners != null && listeners.remove(listener)
+                && listeners.isEmpty()) {
+            listeners = null;
+            ((FileRepository) repository).unwatch(this);
+        }
+    }
+
+    /**
+     * Called by the repository when the file watcher reported a change.
+     */
+    void changed() {
+        List<ChangeListener> list;
+        synchronized (this) {
+            changeCount++;
+            cachedLastModified = UNKNOWN;
+            list = listeners;
+        }
+        if (list != null) {
+            for (ChangeListener listener : list) {
+                listener.changed(this);
+            }
+        }
     }
 
     public long getLength() {
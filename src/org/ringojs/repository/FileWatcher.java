@@ -0,0 +1,176 @@
+package org.ringojs.repository;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the directories of {@link FileRepository} instances using a
+ * {@link WatchService} and notifies the repositories of changed files,
+ * so file resources don't have to be polled for modifications.
+ *
+ * <p>Watching can be disabled by setting the <code>ringo.watchfiles</code>
+ * system property to false.</p>
+ */
+public class FileWatcher implements Runnable {
+
+    private final WatchService service;
+    private final Map<WatchKey, List<WeakReference<FileRepository>>> keys;
+
+    // incremented for every change reported by the watch service
+    private static final AtomicLong changeCount = new AtomicLong();
+    // incremented when a file or directory may have been created
+    private static final AtomicLong createCount = new AtomicLong();
+
+    private static FileWatcher instance;
+    private static boolean initialized = false;
+
+    private static final Logger log = Logger.getLogger(FileWatcher.class.getName());
+
+    private FileWatcher(WatchService service) {
+        this.service = service;
+        this.keys = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the shared file watcher instance, starting it on first invocation.
+     * @return the file watcher, or null if watching is disabled or not
+     * supported by the platform
+     */
+    public static synchronized FileWatcher getInstance() {
+        if (!initialized) {
+            initialized = true;
+            if (!"false".equals(System.getProperty("ringo.watchfiles"))) {
+                try {
+                    instance = new FileWatcher(
+                            FileSystems.getDefault().newWatchService());
+                    Thread thread = new Thread(instance, "ringo-file-watcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException | UnsupportedOperationException x) {
+                    log.log(Level.FINE, "File watching not available", x);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Get the number of changes reported for any watched directory so far.
+     * Consumers can use this to check whether any watched file may have
+     * been created, modified or deleted since they last looked.
+     * @return the change count
+     */
+    public static long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Get the number of create events reported for any watched directory
+     * so far, including lost events. A newly created file or directory may
+     * shadow a previously resolved module, so consumers caching resolved
+     * resources can use this to check whether they need to resolve again.
+     * @return the create count
+     */
+    public static long getCreateCount() {
+        return createCount.get();
+    }
+
+    /**
+     * Start watching the directory of the given repository.
+     * @param repository the repository
+     * @return true if the directory is being watched
+     */
+    synchronized boolean watch(FileRepository repository) {
+        WatchKey key;
+        try {
+            key = repository.directory.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException x) {
+            log.log(Level.FINE, "Could not watch " + repository, x);
+            return false;
+        }
+        // registering the same directory again returns the same key, and
+        // there may be several repository instances for the same directory
+        keys.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>())
+                .add(new WeakReference<>(repository));
+        return true;
+    }
+
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException x) {
+                return;
+            }
+            changeCount.incrementAndGet();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                // null name means events may have been lost, so the whole
+                // directory has to be considered changed
+                String name = null;
+                if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                    name = ((Path) event.context()).toString();
+                }
+                if (name == null || event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    createCount.incrementAndGet();
+                }
+                dispatch(key, name, false);
+            }
+            if (!key.reset()) {
+                // directory was deleted or is no longer accessible
+                dispatch(key, null, true);
+                keys.remove(key);
+            }
+        }
+    }
+
+    private void dispatch(WatchKey key, String name, boolean cancelled) {
+        List<WeakReference<FileRepository>> list = keys.get(key);
+        if (list == null) {
+            return;
+        }
+        boolean empty = true;
+        for (WeakReference<FileRepository> ref : list) {
+            FileRepository repository = ref.get();
+            if (repository == null) {
+                list.remove(ref);
+                continue;
+            }
+            empty = false;
+            try {
+                repository.changed(name, cancelled);
+            } catch (RuntimeException x) {
+                log.log(Level.WARNING, "Error notifying " + repository, x);
+            }
+        }
+        if (empty && !cancelled) {
+            cancelIfUnused(key, list);
+        }
+    }
+
+    private synchronized void cancelIfUnused(WatchKey key,
+                                             List<WeakReference<FileRepository>> list) {
+        // check again in case a repository was registered in the meantime
+        if (list.isEmpty()) {
+            key.cancel();
+            keys.remove(key);
+        }
+    }
+}
@@ -74,13 +74,9 @@ public class WebappRepository extends AbstractRepository {
     }
 
     @Override
-    protected Resource lookupResource(String name) {
-        AbstractResource res = resources.get(name);
-        if (res == null) {
-            res = new WebappResource(context, this, name);
-            resources.put(name, res);
-        }
-        return res;
+    protected Resource lookupResource(String name) throws IOException {
+        return cachedResource(name,
+                n -> new WebappResource(context, this, n));
     }
 
     protected AbstractRepository createChildRepository(String name) {
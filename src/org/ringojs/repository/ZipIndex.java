@@ -0,0 +1,330 @@
+package org.ringojs.repository;
+
+import org.ringojs.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the entries of a zip archive, built once per modification
+ * time of the archive and owned by the archive's root {@link ZipRepository}.
+ * Entries are organized as a tree of path nodes so listing and looking up
+ * entries never has to scan the archive's central directory again.
+ *
+ * <p>Uncompressed (STORED) entries are memory-mapped individually the
+ * first time their content is requested, and served from the mapping
+ * without copying. The rest of the archive is never mapped.</p>
+ */
+final class ZipIndex {
+
+    final File file;
+    final long lastModified;
+    final long length;
+
+    private final ZipFile zipFile;
+    private final Node root;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+
+    private static final Logger log = Logger.getLogger(ZipIndex.class.getName());
+
+    /**
+     * Build the index for the given archive.
+     * @param file the zip file
+     * @throws IOException if the archive could not be read
+     */
+    ZipIndex(File file) throws IOException {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.zipFile = new ZipFile(file);
+        this.root = new Node("");
+        root.directory = true;
+        try {
+            Enumeration<? extends ZipEntry> en = zipFile.entries();
+            boolean stored = false;
+            while (en.hasMoreElements()) {
+                ZipEntry entry = en.nextElement();
+                Node node = root.add(entry.getName());
+                if (node != root) {
+                    node.set(entry);
+                    stored |= node.method == ZipEntry.STORED && node.size > 0;
+                }
+            }
+            if (stored) {
+                readHeaderOffsets();
+            }
+        } catch (RuntimeException x) {
+            zipFile.close();
+            throw x;
+        }
+    }
+
+    /**
+     * Check whether the archive is unchanged since this index was built.
+     * @return true if the index is up to date
+     */
+    boolean isCurrent() {
+        return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    /**
+     * Get the zip file for reading compressed entries.
+     * @return the zip file
+     */
+    ZipFile getZipFile() {
+        return zipFile;
+    }
+
+    /**
+     * Look up the node for an entry path. Directories are found both
+     * with and without trailing slash.
+     * @param entryName the entry path
+     * @return the node, or null if no such entry or directory exists
+     */
+    Node getNode(String entryName) {
+        Node node = root;
+        for (String name : StringUtils.split(entryName, "/")) {
+            node = node.getChild(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Get a buffer with the content of an uncompressed entry. The entry is
+     * memory-mapped on first access, and the mapping is kept for the life
+     * of this index. The returned buffer is read-only and not shared, so
+     * callers may freely change its position and limit.
+     * @param node the entry node
+     * @return the buffer, or null if the entry isn't available as mapped buffer
+     */
+    ByteBuffer getBuffer(Node node) {
+        if (node.headerOffset < 0) {
+            return null;
+        }
+        ByteBuffer buffer = node.buffer;
+        if (buffer == null) {
+            synchronized (node) {
+                buffer = node.buffer;
+                if (buffer == null) {
+                    buffer = map(node);
+                    if (buffer == null) {
+                        // don't try again for this entry
+                        node.headerOffset = -1;
+                        return null;
+                    }
+                    node.buffer = buffer;
+                }
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * Close the zip file of this index. Entries that have already been
+     * mapped stay readable until their buffers are garbage collected.
+     */
+    void close() {
+        try {
+            zipFile.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    /**
+     * Map the data of an uncompressed entry, skipping its local header.
+     */
+    private ByteBuffer map(Node node) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = read(channel, node.headerOffset, 30);
+            if (header == null || header.getInt(0) != LOCAL_HEADER) {
+                return null;
+            }
+            long data = node.headerOffset + 30
+                    + (header.getShort(26) & 0xffff)
+                    + (header.getShort(28) & 0xffff);
+            if (data + node.size > channel.size()) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, data, node.size);
+        } catch (IOException x) {
+            log.log(Level.FINE, "Could not map " + node.name + " in " + file, x);
+            return null;
+        }
+    }
+
+    /**
+     * Resolve the local header offsets of all uncompressed entries from the
+     * central directory. The offsets are not exposed by {@link ZipEntry}, so
+     * the central directory is read from the archive. Archives using zip64
+     * extensions are always read through {@link ZipFile}.
+     */
+    private void readHeaderOffsets() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // the end of central directory record is 22 bytes plus a comment
+            // of up to 64k at the end of the archive
+            long tailOffset = Math.max(0, length - 22 - 0xffff);
+            ByteBuffer tail = read(channel, tailOffset, (int) (length - tailOffset));
+            int end = tail == null ? -1 : findEndHeader(tail);
+            if (end < 0) {
+                return;
+            }
+            int entries = tail.getShort(end + 10) & 0xffff;
+            long size = tail.getInt(end + 12) & 0xffffffffL;
+            long offset = tail.getInt(end + 16) & 0xffffffffL;
+            if (entries == 0xffff || offset + size > length
+                    || size > Integer.MAX_VALUE) {
+                // zip64 archive or leading data before the archive
+                return;
+            }
+            ByteBuffer dir = read(channel, offset, (int) size);
+            if (dir == null) {
+                return;
+            }
+            int pos = 0;
+            for (int i = 0; i < entries; i++) {
+                if (dir.getInt(pos) != CENTRAL_HEADER) {
+                    return;
+                }
+                int flags = dir.getShort(pos + 8) & 0xffff;
+                int method = dir.getShort(pos + 10) & 0xffff;
+                int nameLength = dir.getShort(pos + 28) & 0xffff;
+                int extraLength = dir.getShort(pos + 30) & 0xffff;
+                int commentLength = dir.getShort(pos + 32) & 0xffff;
+                long header = dir.getInt(pos + 42) & 0xffffffffL;
+                // only plain, unencrypted stored entries can be mapped
+                if (method == ZipEntry.STORED && (flags & 1) == 0
+                        && header < length - 30) {
+                    byte[] bytes = new byte[nameLength];
+                    ByteBuffer name = dir.duplicate();
+                    name.position(pos + 46);
+                    name.get(bytes);
+                    Node node = getNode(new String(bytes, StandardCharsets.UTF_8));
+                    if (node != null && !node.directory && node.size > 0) {
+                        node.headerOffset = header;
+                    }
+                }
+                pos += 46 + nameLength + extraLength + commentLength;
+            }
+        } catch (IOException | IndexOutOfBoundsException x) {
+            log.log(Level.FINE, "Could not read central directory of " + file, x);
+        }
+    }
+
+    /**
+     * Read a region of the archive into a little-endian heap buffer.
+     * @return the buffer, or null if the archive ends before the region
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int size)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int findEndHeader(ByteBuffer tail) {
+        for (int pos = tail.limit() - 22; pos >= 0; pos--) {
+            if (tail.getInt(pos) == END_HEADER) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A file or directory in the archive.
+     */
+    static final class Node {
+
+        final String name;
+        // child nodes in name order, null for plain files
+        private Map<String, Node> children;
+        boolean directory;
+        long size = 0;
+        long compressedSize = 0;
+        long time = -1;
+        long crc = -1;
+        int method = -1;
+        // offset of a stored entry's local header in the archive, or -1
+        volatile long headerOffset = -1;
+        // mapping of a stored entry's data, created on first access
+        volatile ByteBuffer buffer;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the child nodes of this directory node.
+         * @return the child nodes in name order
+         */
+        Map<String, Node> getChildren() {
+            return children == null ?
+                    Collections.<String, Node>emptyMap() : children;
+        }
+
+        Node getChild(String name) {
+            return children == null ? null : children.get(name);
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        private Node add(String entryName) {
+            Node node = this;
+            for (String part : StringUtils.split(entryName, "/")) {
+                if (node.children == null) {
+                    node.children = new TreeMap<>();
+                }
+                // intermediate directories don't need their own entries
+                node.directory = true;
+                Node child = node.children.get(part);
+                if (child == null) {
+                    child = new Node(part);
+                    node.children.put(part, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        private void set(ZipEntry entry) {
+            if (entry.isDirectory()) {
+                directory = true;
+            } else {
+                size = entry.getSize();
+                compressedSize = entry.getCompressedSize();
+                time = entry.getTime();
+                crc = entry.getCrc();
+                method = entry.getMethod();
+            }
+        }
+    }
+}
@@ -21,29 +21,27 @@ import org.ringojs.util.StringUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipException;
 import java.net.URL;
 import java.net.MalformedURLException;
-import java.lang.ref.WeakReference;
 
 public final class ZipRepository extends AbstractRepository {
 
     // zip file serving sub-repositories and zip file resources
     private final File file;
 
-    // weak reference to the zip file
-    private WeakReference<ZipFile> zipFile;
-
     // the relative path of this repository within the zip file
     private final String entryPath;
 
     // the nested directory depth of this repository within the zip file
     private final int depth;
 
-    private long lastModified = -1;
-    private boolean exists;
+    // the top-level repository owning the entry index
+    private final ZipRepository root;
+
+    // the entry index, only set on the top-level repository
+    private volatile ZipIndex index;
 
     /**
      * Constructs a ZipRespository using the given zip file.
@@ -75,6 +73,7 @@ public final class ZipRepository extends AbstractRepository {
         path = file.getPath() + '/';
         depth = 0;
         entryPath = "";
+        root = this;
     }
 
     /**
@@ -95,6 +94,7 @@ public final class ZipRepository extends AbstractRepository {
         }
         this.file = file;
         this.parent = parent;
+        this.root = parent.root;
         // Make sure entryPath ends with slash. This is the only way we
         // can be sure the zip entry isn't actually a file.
         this.entryPath = entryPath.endsWith("/") ? entryPath : entryPath + "/";
@@ -105,26 +105,41 @@ public final class ZipRepository extends AbstractRepository {
     }
 
     /**
-     * Returns a java.util.zip.ZipFile for this repository.
-     * @return a ZipFile for reading
+     * Returns the entry index of the zip file, which is rebuilt if the
+     * zip file has been modified. The index is shared by all repositories
+     * and resources of the top-level repository and lives as long as it.
+     * @return the zip file index
      * @throws IOException an I/O related error occurred
      */
-    protected synchronized ZipFile getZipFile() throws IOException {
-        if (parent instanceof ZipRepository) {
-            return ((ZipRepository) parent).getZipFile();
+    ZipIndex getIndex() throws IOException {
+        if (root != this) {
+            return root.getIndex();
+        }
+        ZipIndex current = index;
+        if (current != null && current.isCurrent()) {
+            return current;
         }
-        ZipFile zip = zipFile == null ? null : zipFile.get();
-        if (zip == null || lastModified != file.lastModified()) {
-            if (zip != null) {
-                try {
-                    zip.close();
-                } catch (Exception ignore) {}
+        synchronized (this) {
+            current = index;
+            if (current == null || !current.isCurrent()) {
+                ZipIndex previous = current;
+                current = new ZipIndex(file);
+                index = current;
+                if (previous != null) {
+                    previous.close();
+                }
             }
-            zip = new ZipFile(file);
-            zipFile = new WeakReference<>(zip);
-            lastModified = file.lastModified();
+            return current;
         }
-        return zip;
+    }
+
+    /**
+     * Returns a java.util.zip.ZipFile for this repository.
+     * @return a ZipFile for reading
+     * @throws IOException an I/O related error occurred
+     */
+    protected ZipFile getZipFile() throws IOException {
+        return getIndex().getZipFile();
     }
 
 
@@ -133,23 +148,10 @@ public final class ZipRepository extends AbstractRepository {
      */
     @Override
     protected Resource lookupResource(String name) throws IOException {
-        AbstractResource res = resources.get(name);
-        if (res == null) {
-            String childName = entryPath + name;
-            ZipFile zip = getZipFile();
-            // getEntry() will return a directory entry without trailing slash,
-            // but it will not return a file entry with trailing slash.
-            // Thus, the only way to make sure an entry is not a directory is
-            // to explicitly try to fetch the entry as directory before fetching
-            // it as file.
-            ZipEntry entry = zip.getEntry(childName + "/");
-            if (entry == null) {
-                entry = zip.getEntry(childName);
-            }
-            res = new ZipResource(childName, this, entry);
-            resources.put(name, res);
-        }
-        return res;
+        return cachedResource(name, n -> {
+            String childName = entryPath + n;
+            return new ZipResource(childName, this, getIndex().getNode(childName));
+        });
     }
 
     /**
@@ -157,16 +159,12 @@ public final class ZipRepository extends AbstractRepository {
      * @return true if the resource exists
      */
     public boolean exists() throws IOException {
-        if (lastModified != file.lastModified()) {
-            try {
-                ZipFile zip = getZipFile();
-                exists = entryPath.length() == 0 ?
-                        zip != null : zip.getEntry(entryPath) != null;
-            } catch (IOException ex) {
-                exists = false;
-            }
+        try {
+            ZipIndex.Node node = getIndex().getNode(entryPath);
+            return node != null && node.isDirectory();
+        } catch (IOException ex) {
+            return false;
         }
-        return exists;
     }
 
     protected AbstractRepository createChildRepository(String name)
@@ -176,31 +174,21 @@ public final class ZipRepository extends AbstractRepository {
 
     protected void getResources(List<Resource> list, boolean recursive)
             throws IOException {
-        Map<String,ZipEntry> entries = getChildEntries();
-
-        for (Map.Entry<String, ZipEntry> entry : entries.entrySet()) {
-            String entryName = entry.getKey();
-            if (!entry.getValue().isDirectory()) {
-                AbstractResource res = resources.get(entryName);
-                if (res == null) {
-                    ZipEntry zipEntry = entry.getValue();
-                    res = new ZipResource(zipEntry.getName(), this, zipEntry);
-                    resources.put(entryName, res);
-                }
-                list.add(res);
+        for (ZipIndex.Node node : getChildNodes()) {
+            if (!node.isDirectory()) {
+                list.add(resources.computeIfAbsent(node.name,
+                        n -> new ZipResource(entryPath + n, this, node)));
             } else if (recursive) {
-                lookupRepository(entryName).getResources(list, true);
+                lookupRepository(node.name).getResources(list, true);
             }
         }
     }
 
     public Repository[] getRepositories() throws IOException {
         List<Repository> list = new ArrayList<>();
-        Map<String,ZipEntry> entries = getChildEntries();
-
-        for (Map.Entry<String, ZipEntry> entry : entries.entrySet()) {
-            if (entry.getValue().isDirectory()) {
-                list.add(lookupRepository(entry.getKey()));
+        for (ZipIndex.Node node : getChildNodes()) {
+            if (node.isDirectory()) {
+                list.add(lookupRepository(node.name));
             }
         }
         return list.toArray(new Repository[list.size()]);
@@ -246,29 +234,12 @@ public final class ZipRepository extends AbstractRepository {
         return "ZipRepository[" + path + "]";
     }
 
-    private Map<String, ZipEntry> getChildEntries() throws IOException {
-        ZipFile zipfile = getZipFile();
-        Map<String, ZipEntry> map = new TreeMap<>();
-        Enumeration<? extends ZipEntry> en = zipfile.entries();
-
-        while (en.hasMoreElements()) {
-            ZipEntry entry = en.nextElement();
-            String entryName = entry.getName();
-
-            if (!entryName.regionMatches(0, entryPath, 0, entryPath.length())) {
-                // names don't match - not a child of ours
-                continue;
-            }
-            String[] entrypath = StringUtils.split(entryName, SEPARATOR);
-            if (depth > 0 && !name.equals(entrypath[depth-1])) {
-                // catch case where our name is Foo and other's is FooBar
-                continue;
-            }
-            if (entrypath.length == depth + 1) {
-                map.put(entrypath[depth], entry);
-            }
+    private Collection<ZipIndex.Node> getChildNodes() throws IOException {
+        ZipIndex.Node node = getIndex().getNode(entryPath);
+        if (node == null) {
+            return Collections.emptyList();
         }
-        return map;
+        return node.getChildren().values();
     }
 
 }
@@ -16,9 +16,12 @@
 
 package org.ringojs.repository;
 
+import org.ringojs.util.ByteBufferInputStream;
+
 import java.io.*;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -27,13 +30,15 @@ public final class ZipResource extends AbstractResource {
     private final String entryName;
     private boolean exists;
     long length;
+    long crc;
     long lastModified;
 
-    protected ZipResource(String childName, ZipRepository repository, ZipEntry entry) {
+    ZipResource(String childName, ZipRepository repository, ZipIndex.Node node) {
         this.repository = repository;
         this.entryName = childName;
-        exists = entry != null && !entry.isDirectory();
-        length = exists ? entry.getSize() : 0;
+        exists = node != null && !node.isDirectory();
+        length = exists ? node.size : 0;
+        crc = exists ? node.crc : -1;
         lastModified = repository.lastModified();
 
         int slash = entryName.lastIndexOf('/');
@@ -51,7 +56,16 @@ public final class ZipResource extends AbstractResource {
     }
 
     public InputStream getInputStream() throws IOException {
-        ZipFile zipfile = getZipFile();
+        ZipIndex index = getIndex();
+        ZipIndex.Node node = index.getNode(entryName);
+        if (node == null || node.isDirectory()) {
+            throw new IOException("Zip resource " + this + " does not exist");
+        }
+        ByteBuffer buffer = index.getBuffer(node);
+        if (buffer != null) {
+            return stripShebang(new ByteBufferInputStream(buffer));
+        }
+        ZipFile zipfile = index.getZipFile();
         ZipEntry entry = zipfile.getEntry(entryName);
         if (entry == null) {
             throw new IOException("Zip resource " + this + " does not exist");
@@ -59,11 +73,37 @@ public final class ZipResource extends AbstractResource {
         return stripShebang(zipfile.getInputStream(entry));
     }
 
+    /**
+     * Returns the content of this resource as read-only buffer backed by
+     * a memory mapping of the entry, which is created on first access.
+     * This is only available for uncompressed entries that could be mapped.
+     * @return a buffer with the resource's content, or null
+     * @throws IOException an I/O related error occurred
+     */
+    public ByteBuffer getByteBuffer() throws IOException {
+        ZipIndex index = getIndex();
+        ZipIndex.Node node = index.getNode(entryName);
+        return node == null || node.isDirectory() ? null : index.getBuffer(node);
+    }
+
+    /**
+     * Returns the CRC-32 checksum of this resource's content as recorded
+     * in the zip file.
+     * @return the CRC-32 checksum, or -1 if not known
+     */
+    public long getCrc() {
+        if (lastModified != repository.lastModified()) {
+            update();
+        }
+        return crc;
+    }
+
     private void update() {
         try {
-            ZipEntry entry = getZipFile().getEntry(entryName);
-            exists = entry != null && !entry.isDirectory();
-            length = exists ? entry.getSize() : 0;
+            ZipIndex.Node node = getIndex().getNode(entryName);
+            exists = node != null && !node.isDirectory();
+            length = exists ? node.size : 0;
+            crc = exists ? node.crc : -1;
             lastModified = repository.lastModified();
         } catch (IOException ex) {
             exists = false;
@@ -107,10 +147,10 @@ public final class ZipResource extends AbstractResource {
         return getPath();
     }
 
-    private ZipFile getZipFile() throws IOException {
+    private ZipIndex getIndex() throws IOException {
         if (!(repository instanceof ZipRepository)) {
             throw new IOException("Parent is not a ZipRepository: " + repository);
         }
-        return ((ZipRepository) repository).getZipFile();
+        return ((ZipRepository) repository).getIndex();
     }
 }
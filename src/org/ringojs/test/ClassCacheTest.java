@@ -0,0 +1,106 @@
+package org.ringojs.test;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.ringojs.engine.ClassCache;
+import org.ringojs.repository.FileResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ClassCacheTest extends TestCase {
+
+    private static final long MODIFIED = 1500000000000L;
+
+    private File directory;
+    private File script;
+    private ClassCache cache;
+    private Context cx;
+    private Scriptable scope;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ringo-classcache").toFile();
+        script = new File(directory, "module.js");
+        cache = new ClassCache(new File(directory, "cache"));
+        cx = Context.enter();
+        cx.setOptimizationLevel(0);
+        scope = cx.initStandardObjects();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Context.exit();
+        cache.clear();
+        new File(directory, "cache").delete();
+        script.delete();
+        directory.delete();
+    }
+
+    private void writeScript(String value, long lastModified) throws IOException {
+        Files.write(script.toPath(),
+                ("var x = '" + value + "'; x").getBytes(StandardCharsets.UTF_8));
+        assertTrue(script.setLastModified(lastModified));
+    }
+
+    private Object runScript() throws IOException {
+        Script compiled = cache.load(cx, new FileResource(script), "UTF-8", null);
+        return compiled.exec(cx, scope);
+    }
+
+    private int countCacheFiles() {
+        String[] names = cache.getDirectory().list((dir, name) -> name.endsWith(".classes"));
+        return names == null ? 0 : names.length;
+    }
+
+    public void testRoundTrip() throws IOException {
+        writeScript("a", MODIFIED);
+        assertEquals("a", runScript());
+        assertEquals(1, countCacheFiles());
+        // same checksum and length: the cached classes are used
+        writeScript("b", MODIFIED);
+        assertEquals("a", runScript());
+        assertEquals(1, countCacheFiles());
+    }
+
+    public void testChecksumMismatch() throws IOException {
+        writeScript("a", MODIFIED);
+        assertEquals("a", runScript());
+        writeScript("b", MODIFIED + 1000);
+        assertEquals("b", runScript());
+        assertEquals(1, countCacheFiles());
+    }
+
+    public void testLengthMismatch() throws IOException {
+        writeScript("a", MODIFIED);
+        assertEquals("a", runScript());
+        writeScript("bb", MODIFIED);
+        assertEquals("bb", runScript());
+        assertEquals(1, countCacheFiles());
+    }
+
+    public void testCompilerSettings() throws IOException {
+        writeScript("a", MODIFIED);
+        cx.setGeneratingDebug(false);
+        assertEquals("a", runScript());
+        writeScript("b", MODIFIED);
+        cx.setGeneratingDebug(true);
+        // debug info is part of the key, so this does not reuse the classes
+        assertEquals("b", runScript());
+        assertEquals(2, countCacheFiles());
+        cx.setOptimizationLevel(9);
+        assertEquals("b", runScript());
+        assertEquals(3, countCacheFiles());
+    }
+
+    public void testClear() throws IOException {
+        writeScript("a", MODIFIED);
+        runScript();
+        cache.clear();
+        assertEquals(0, countCacheFiles());
+    }
+}
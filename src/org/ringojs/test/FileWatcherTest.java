@@ -0,0 +1,129 @@
+package org.ringojs.test;
+
+import junit.framework.TestCase;
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.repository.ChangeListener;
+import org.ringojs.repository.FileRepository;
+import org.ringojs.repository.FileResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FileWatcherTest extends TestCase {
+
+    // polling watch services may take several seconds to report changes
+    static final long TIMEOUT = 30000;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ringo-watcher");
+        Files.createDirectory(directory.resolve("dep"));
+        write("dep/index.js", "exports.value = 'index';\n");
+        Files.createDirectories(directory.resolve("sub/dep"));
+        write("sub/dep/index.js", "exports.value = 'index';\n");
+        write("main.js", "exports.value = () => 'one';\n"
+                + "exports.dependency = () => require('./dep').value;\n"
+                + "exports.nested = () => require('./sub/dep').value;\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(directory.resolve("dep.js"));
+        Files.delete(directory.resolve("dep/index.js"));
+        Files.delete(directory.resolve("dep"));
+        Files.deleteIfExists(directory.resolve("sub/dep.js"));
+        Files.delete(directory.resolve("sub/dep/index.js"));
+        Files.delete(directory.resolve("sub/dep"));
+        Files.delete(directory.resolve("sub"));
+        Files.delete(directory.resolve("main.js"));
+        Files.delete(directory);
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(directory.resolve(name),
+                content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RhinoEngine createEngine() throws Exception {
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home),
+                new String[] {directory.toString()}, new String[] {"modules"});
+        config.setReloading(true);
+        return new RhinoEngine(config, null);
+    }
+
+    // invoke the function until it returns the expected value
+    private void awaitResult(RhinoEngine engine, String function,
+                             Object expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        Object result;
+        do {
+            RingoWorker worker = engine.getWorker();
+            try {
+                result = worker.invoke("main", function);
+            } finally {
+                worker.release();
+            }
+            if (expected.equals(result)) {
+                return;
+            }
+            Thread.sleep(50);
+        } while (System.currentTimeMillis() < deadline);
+        assertEquals(expected, result);
+    }
+
+    public void testChangeListener() throws Exception {
+        FileRepository repository = new FileRepository(directory.toFile());
+        FileResource resource = (FileResource) repository.getResource("main.js");
+        final CountDownLatch first = new CountDownLatch(1);
+        final AtomicInteger removedCount = new AtomicInteger();
+        ChangeListener removed = source -> removedCount.incrementAndGet();
+        if (!resource.addChangeListener(source -> first.countDown())) {
+            // watching is disabled or not supported
+            return;
+        }
+        resource.addChangeListener(removed);
+        resource.removeChangeListener(removed);
+        write("main.js", "exports.value = () => 'two';\n");
+        assertTrue(first.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // listeners are notified in order, so once the second listener
+        // has seen a change the removed one would have seen it too
+        final CountDownLatch second = new CountDownLatch(1);
+        resource.addChangeListener(source -> second.countDown());
+        write("main.js", "exports.value = () => 'three';\n");
+        assertTrue(second.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, removedCount.get());
+    }
+
+    public void testReload() throws Exception {
+        RhinoEngine engine = createEngine();
+        awaitResult(engine, "value", "one");
+        write("main.js", "exports.value = () => 'two';\n");
+        awaitResult(engine, "value", "two");
+    }
+
+    public void testResolveCreated() throws Exception {
+        RhinoEngine engine = createEngine();
+        awaitResult(engine, "dependency", "index");
+        // dep.js takes precedence over dep/index.js once it exists
+        write("dep.js", "exports.value = 'file';\n");
+        awaitResult(engine, "dependency", "file");
+    }
+
+    public void testResolveCreatedInUnloadedDirectory() throws Exception {
+        RhinoEngine engine = createEngine();
+        awaitResult(engine, "nested", "index");
+        // no module is loaded from the sub directory itself
+        write("sub/dep.js", "exports.value = 'file';\n");
+        awaitResult(engine, "nested", "file");
+    }
+}
@@ -0,0 +1,126 @@
+package org.ringojs.test;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.RhinoException;
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.repository.FileRepository;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ModuleSharingTest extends TestCase {
+
+    static final String[][] MODULES = {
+        {"shared.js",
+            "const token = {};\n"
+            + "let counter = 0;\n"
+            + "exports.token = () => token;\n"
+            + "exports.increment = () => ++counter;\n"},
+        {"unshared.js",
+            "module.shared = false;\n"
+            + "const token = {};\n"
+            + "let counter = 0;\n"
+            + "exports.token = () => token;\n"
+            + "exports.increment = () => ++counter;\n"},
+        {"optin.js",
+            "module.shared = true;\n"
+            + "const token = {};\n"
+            + "exports.token = () => token;\n"},
+        {"dependent.js",
+            "const unshared = require('./unshared');\n"
+            + "const token = {};\n"
+            + "exports.token = () => token;\n"},
+    };
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ringo-sharing");
+        for (String[] module : MODULES) {
+            try (Writer writer = Files.newBufferedWriter(
+                    directory.resolve(module[0]), StandardCharsets.UTF_8)) {
+                writer.write(module[1]);
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (String[] module : MODULES) {
+            Files.delete(directory.resolve(module[0]));
+        }
+        Files.delete(directory);
+    }
+
+    private RhinoEngine createEngine(boolean reloading) throws Exception {
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home),
+                new String[] {directory.toString()}, new String[] {"modules"});
+        config.setReloading(reloading);
+        return new RhinoEngine(config, null);
+    }
+
+    // invoke the function in two different workers
+    private Object[] invokeTwice(RhinoEngine engine, String module, String function)
+            throws IOException, NoSuchMethodException {
+        RingoWorker first = engine.getWorker();
+        RingoWorker second = engine.getWorker();
+        try {
+            assertNotSame(first, second);
+            return new Object[] {
+                first.invoke(module, function),
+                second.invoke(module, function)
+            };
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    public void testSharedByDefault() throws Exception {
+        Object[] tokens = invokeTwice(createEngine(false), "shared", "token");
+        assertSame(tokens[0], tokens[1]);
+    }
+
+    public void testOptOut() throws Exception {
+        RhinoEngine engine = createEngine(false);
+        Object[] tokens = invokeTwice(engine, "unshared", "token");
+        assertNotSame(tokens[0], tokens[1]);
+        // each worker has its own top level bindings
+        Object[] counters = invokeTwice(engine, "unshared", "increment");
+        assertEquals(1, ((Number) counters[0]).intValue());
+        assertEquals(1, ((Number) counters[1]).intValue());
+    }
+
+    public void testReloading() throws Exception {
+        RhinoEngine engine = createEngine(true);
+        Object[] tokens = invokeTwice(engine, "shared", "token");
+        assertNotSame(tokens[0], tokens[1]);
+        tokens = invokeTwice(engine, "optin", "token");
+        assertSame(tokens[0], tokens[1]);
+    }
+
+    public void testUnsharedDependency() throws Exception {
+        // sharing would leak the first worker's copy of the dependency
+        Object[] tokens = invokeTwice(createEngine(false), "dependent", "token");
+        assertNotSame(tokens[0], tokens[1]);
+    }
+
+    public void testReassignment() throws Exception {
+        RingoWorker worker = createEngine(false).getWorker();
+        try {
+            worker.invoke("shared", "increment");
+            fail("Expected reassigning a binding of a shared module to fail");
+        } catch (RhinoException expected) {
+            // the shared module scope is sealed
+        } finally {
+            worker.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.ringojs.test;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Scriptable;
+import org.ringojs.jsgi.ResponseWriter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResponseWriterTest extends TestCase {
+
+    private Context cx;
+    private Scriptable scope;
+    private ByteArrayOutputStream body;
+    private List<String> headers;
+    private HttpServletResponse response;
+
+    @Override
+    protected void setUp() throws Exception {
+        cx = Context.enter();
+        scope = cx.initStandardObjects();
+        body = new ByteArrayOutputStream();
+        headers = new ArrayList<>();
+        final ServletOutputStream output = new ServletOutputStream() {
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener listener) {
+            }
+
+            public void write(int b) {
+                body.write(b);
+            }
+        };
+        response = (HttpServletResponse) Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getOutputStream":
+                    return output;
+                case "addHeader":
+                    headers.add(args[0] + ": " + args[1]);
+                    return null;
+                case "isCommitted":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Context.exit();
+    }
+
+    private void commit(String result) throws Exception {
+        Scriptable object = (Scriptable) cx.evaluateString(
+                scope, "(" + result + ")", "result", 1, null);
+        HttpServletRequest request = WorkerPoolTest.stub(HttpServletRequest.class, null);
+        ResponseWriter.commit(request, response, object);
+    }
+
+    public void testArrayBody() throws Exception {
+        commit("{status: 200, headers: {}, body: ['a', 'b', 'c']}");
+        assertEquals("abc", body.toString("UTF-8"));
+    }
+
+    public void testArrayBodyWithHoles() throws Exception {
+        commit("{status: 200, headers: {}, body: ['a', , 'b', , 'c', ,]}");
+        assertEquals("abc", body.toString("UTF-8"));
+    }
+
+    public void testUndefinedPart() throws Exception {
+        try {
+            commit("{status: 200, headers: {}, body: ['a', undefined, 'c']}");
+            fail("Expected undefined body part to fail");
+        } catch (RhinoException expected) {
+            // neither a string nor a Binary
+        }
+    }
+
+    public void testGrowingParts() throws Exception {
+        // parts larger than the buffer of the previous parts
+        commit("{status: 200, headers: {}, body: ['a', (function() {"
+                + "var s = ''; for (var i = 0; i < 10000; i++) s += '\u00e4'; return s; })(),"
+                + " 'b']}");
+        String expected = "a" + new String(new char[10000]).replace('\0', '\u00e4') + "b";
+        assertEquals(expected, body.toString("UTF-8"));
+    }
+
+    public void testSparseArrayBody() throws Exception {
+        commit("{status: 200, headers: {}, body: (function() {"
+                + "var body = []; body[2] = 'c'; body[0] = 'a'; return body; })()}");
+        assertEquals("ac", body.toString("UTF-8"));
+    }
+
+    public void testHeaderArrayWithHoles() throws Exception {
+        commit("{status: 200, headers: {'X-Test': ['a', , 'b']}, body: []}");
+        assertEquals(2, headers.size());
+        assertEquals("X-Test: a", headers.get(0));
+        assertEquals("X-Test: b", headers.get(1));
+    }
+
+    public void testCharset() throws Exception {
+        commit("{status: 200, headers: {'Content-Type': 'text/plain; charset=ISO-8859-1'},"
+                + " body: ['\u00e4']}");
+        assertEquals("\u00e4", new String(body.toByteArray(), StandardCharsets.ISO_8859_1));
+        assertEquals(1, body.size());
+    }
+}
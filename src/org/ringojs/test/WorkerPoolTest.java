@@ -0,0 +1,182 @@
+package org.ringojs.test;
+
+import junit.framework.TestCase;
+import org.mozilla.javascript.Callable;
+import org.ringojs.engine.RhinoEngine;
+import org.ringojs.engine.RingoConfig;
+import org.ringojs.engine.RingoWorker;
+import org.ringojs.engine.WorkerPool;
+import org.ringojs.jsgi.JsgiServlet;
+import org.ringojs.repository.FileRepository;
+
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.RejectedExecutionException;
+
+public class WorkerPoolTest extends TestCase {
+
+    static final String MODULE =
+            "const engine = require('ringo/engine');\n"
+            + "exports.nested = () => {\n"
+            + "    const worker = engine.getWorker();\n"
+            + "    worker.release();\n"
+            + "    return true;\n"
+            + "};\n";
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("ringo-workerpool");
+        try (Writer writer = Files.newBufferedWriter(
+                directory.resolve("nested.js"), StandardCharsets.UTF_8)) {
+            writer.write(MODULE);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.delete(directory.resolve("nested.js"));
+        Files.delete(directory);
+    }
+
+    private RhinoEngine createEngine(int maxWorkers, long timeout,
+                                     long idleTimeout) throws Exception {
+        String home = System.getProperty("ringo.home", ".");
+        RingoConfig config = new RingoConfig(new FileRepository(home),
+                new String[] {directory.toString()}, new String[] {"modules"});
+        config.setMinWorkers(0);
+        config.setMaxWorkers(maxWorkers);
+        config.setWorkerTimeout(timeout);
+        config.setWorkerIdleTimeout(idleTimeout);
+        return new RhinoEngine(config, null);
+    }
+
+    public void testRejection() throws Exception {
+        WorkerPool pool = createEngine(1, 50, -1).getWorkerPool();
+        RingoWorker worker = pool.acquire();
+        try {
+            pool.acquire();
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            // pool exhausted
+        }
+        assertEquals(1, pool.getRejectedCount());
+        pool.release(worker);
+        pool.release(pool.acquire());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    public void testServiceUnavailable() throws Exception {
+        RhinoEngine engine = createEngine(1, 50, -1);
+        RingoWorker worker = engine.getWorker();
+        try {
+            Callable app = (cx, scope, thisObj, args) -> null;
+            JsgiServlet servlet = new JsgiServlet(engine, app);
+            servlet.init(stub(ServletConfig.class, null));
+            int[] status = new int[1];
+            // the public service method delegates to the protected one
+            servlet.service((ServletRequest) stub(HttpServletRequest.class, null),
+                    (ServletResponse) stub(HttpServletResponse.class, status));
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, status[0]);
+            assertEquals(1, engine.getWorkerPool().getRejectedCount());
+        } finally {
+            worker.release();
+        }
+    }
+
+    public void testNestedAcquire() throws Exception {
+        RhinoEngine engine = createEngine(1, 50, -1);
+        WorkerPool pool = engine.getWorkerPool();
+        RingoWorker worker = pool.acquire();
+        // the nested getWorker() must not wait for the worker it runs in
+        assertEquals(Boolean.TRUE, worker.invoke("nested", "nested"));
+        assertEquals(0, pool.getRejectedCount());
+        assertEquals(1, pool.getBusyCount());
+        pool.release(worker);
+        assertEquals(0, pool.getBusyCount());
+        // releasing the nested worker must not have added a permit
+        worker = pool.acquire();
+        try {
+            pool.acquire();
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            // pool still bounded to one worker
+        } finally {
+            pool.release(worker);
+        }
+    }
+
+    public void testIdleEviction() throws Exception {
+        WorkerPool pool = createEngine(2, 50, 0).getWorkerPool();
+        RingoWorker first = pool.acquire();
+        RingoWorker second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(2, pool.getEvictedCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testEvictIdleWorkers() throws Exception {
+        WorkerPool pool = createEngine(2, 50, -1).getWorkerPool();
+        RingoWorker first = pool.acquire();
+        RingoWorker second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        assertEquals(0, pool.getEvictedCount());
+        assertEquals(2, pool.getIdleCount());
+        pool.evictIdleWorkers();
+        assertEquals(2, pool.getEvictedCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testAsyncTaskPreventsEviction() throws Exception {
+        WorkerPool pool = createEngine(1, 50, -1).getWorkerPool();
+        RingoWorker worker = pool.acquire();
+        worker.enterAsyncTask();
+        pool.release(worker);
+        // the pending task will submit work to the released worker
+        pool.evictIdleWorkers();
+        assertEquals(0, pool.getEvictedCount());
+        worker.exitAsyncTask();
+        pool.evictIdleWorkers();
+        assertEquals(1, pool.getEvictedCount());
+    }
+
+    // a stub returning empty values and no init parameters, recording
+    // the status passed to sendError
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, final int[] status) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[] {type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if ("sendError".equals(method.getName()) && status != null) {
+                status[0] = (Integer) args[0];
+                return null;
+            } else if ("getInitParameter".equals(method.getName())) {
+                return null;
+            } else if (returnType == String.class) {
+                return "";
+            } else if (returnType == Boolean.TYPE) {
+                return false;
+            } else if (returnType == Integer.TYPE) {
+                return 0;
+            } else if (returnType == Long.TYPE) {
+                return 0L;
+            } else if (returnType == Enumeration.class) {
+                return Collections.emptyEnumeration();
+            }
+            return null;
+        });
+    }
+}
@@ -55,18 +55,22 @@ public class RingoRunner {
     String expr = null;
     Path history = null;
     String charset;
+    String classCache = null;
     boolean runShell = false;
     boolean debug = false;
     boolean verbose = false;
     boolean silent = false;
     boolean legacyMode = false;
     boolean productionMode = false;
+    boolean virtualThreads = false;
+    int maxWorkers = 0;
     List<String> bootScripts;
     final List<String> userModules = new ArrayList<>();
 
     static final String[][] options = {
         {"b", "bootscript", "Run additional bootstrap script", "FILE"},
         {"c", "charset", "Set character encoding for scripts (default: utf-8)", "CHARSET"},
+        {"", "class-cache", "Cache compiled module classes in directory", "DIR"},
         {"D", "java-property", "Set Java system property K to value V", "K=V"},
         {"d", "debug", "Run with debugger GUI", ""},
         {"e", "expression", "Run the given expression as script", "EXPR"},
@@ -75,11 +79,13 @@ public class RingoRunner {
         {"i", "interactive", "Start shell after script file has run", ""},
         {"l", "legacy-mode", "Enable __parent__ and __proto__ and suppress warnings", ""},
         {"m", "modules", "Add a directory to the module search path", "DIR"},
+        {"", "max-workers", "Limit the number of concurrently used workers", "NUM"},
         {"o", "optlevel", "Set Rhino optimization level (-1 to 9)", "OPT"},
         {"p", "production", "Disable module reloading and warnings", ""},
         {"s", "silent", "Disable shell prompt and echo for piped stdin/stdout", ""},
         {"V", "verbose", "Print java stack traces on errors", ""},
         {"v", "version", "Print version number and exit", ""},
+        {"", "virtual-threads", "Run workers and requests on virtual threads", ""},
     };
 
     public RingoRunner() {
@@ -132,9 +138,18 @@ public class RingoRunner {
         config.setParentProtoProperties(legacyMode);
         config.setStrictVars(!legacyMode && !productionMode);
         config.setReloading(!productionMode);
+        if (virtualThreads) {
+            config.setVirtualThreads(true);
+        }
+        if (maxWorkers > 0) {
+            config.setMaxWorkers(maxWorkers);
+        }
         if (charset != null) {
             config.setCharset(charset);
         }
+        if (classCache != null) {
+            config.setClassCacheDir(new File(classCache));
+        }
         engine = new RhinoEngine(config, null);
     }
 
@@ -354,6 +369,8 @@ public class RingoRunner {
             bootScripts.add(arg);
         } else if ("charset".equals(option)) {
             charset = arg;
+        } else if ("class-cache".equals(option)) {
+            classCache = arg;
         } else if ("expression".equals(option)) {
             expr = arg;
         } else if ("silent".equals(option)) {
@@ -364,6 +381,17 @@ public class RingoRunner {
             verbose = true;
         } else if ("legacy-mode".equals(option)) {
             legacyMode = true;
+        } else if ("virtual-threads".equals(option)) {
+            virtualThreads = true;
+        } else if ("max-workers".equals(option)) {
+            try {
+                maxWorkers = Integer.parseInt(arg);
+            } catch (NumberFormatException x) {
+                maxWorkers = -1;
+            }
+            if (maxWorkers < 1) {
+                exitWithError(option + " value must be a positive number.", -1);
+            }
         } else if ("version".equals(option)) {
             printVersion();
             System.exit(0);
@@ -0,0 +1,80 @@
+package org.ringojs.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A simple thread-safe pool of heap byte buffers of a fixed size. Buffers
+ * are created on demand, and at most a configurable number of released
+ * buffers is retained for reuse.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Create a new buffer pool.
+     * @param bufferSize the size of the buffers
+     * @param maxPooled the maximum number of idle buffers to retain
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Get the size of the buffers in this pool.
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get the number of idle buffers currently held by this pool.
+     * @return the number of pooled buffers
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+    /**
+     * Get a cleared buffer from the pool, or allocate a new one if the
+     * pool is empty.
+     * @return a buffer ready for writing
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers that were not acquired from
+     * this pool are ignored, as are buffers released while the pool is full.
+     * @param buffer the buffer, may be null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize
+                || !buffer.hasArray() || buffer.isReadOnly()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.ringojs.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Utility class to create virtual threads on Java runtimes that support them.
+ * Since RingoJS is compiled for older Java versions, virtual threads are
+ * created through reflection. On runtimes without virtual thread support
+ * the methods in this class fall back to platform daemon threads.
+ */
+public class VirtualThreads {
+
+    private static final Method ofVirtual;
+    private static final Method name;
+    private static final Method factory;
+    private static final Method perTaskExecutor;
+
+    static {
+        Method m1 = null, m2 = null, m3 = null, m4 = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            m1 = Thread.class.getMethod("ofVirtual");
+            m2 = builder.getMethod("name", String.class, long.class);
+            m3 = builder.getMethod("factory");
+            m4 = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            // check that virtual threads are actually enabled on this runtime,
+            // they are a preview feature on Java 19 and 20
+            m3.invoke(m1.invoke(null));
+        } catch (Exception | LinkageError x) {
+            m1 = m2 = m3 = m4 = null;
+        }
+        ofVirtual = m1;
+        name = m2;
+        factory = m3;
+        perTaskExecutor = m4;
+    }
+
+    /**
+     * Returns true if the current Java runtime supports virtual threads.
+     * @return true if virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Create a thread factory for virtual threads named with the given prefix
+     * followed by a sequence number. If virtual threads are not supported
+     * a factory for platform daemon threads is returned.
+     * @param prefix the thread name prefix
+     * @return a thread factory
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        if (ofVirtual != null) {
+            try {
+                Object builder = ofVirtual.invoke(null);
+                builder = name.invoke(builder, prefix, 1L);
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (Exception x) {
+                getLogger().warning("Could not create virtual thread factory: " + x);
+            }
+        }
+        return new ThreadFactory() {
+            int counter = 1;
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + counter++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Create an executor service that runs each task in a new virtual thread.
+     * If virtual threads are not supported a cached thread pool of platform
+     * daemon threads is returned.
+     * @param prefix the thread name prefix
+     * @return an executor service
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        ThreadFactory threadFactory = newThreadFactory(prefix);
+        if (perTaskExecutor != null) {
+            try {
+                return (ExecutorService) perTaskExecutor.invoke(null, threadFactory);
+            } catch (Exception x) {
+                getLogger().warning("Could not create virtual thread executor: " + x);
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(VirtualThreads.class.getName());
+    }
+}
@@ -7,7 +7,12 @@ import org.mozilla.javascript.annotations.JSSetter;
 import org.mozilla.javascript.annotations.JSConstructor;
 import org.ringojs.util.ScriptUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,13 +35,43 @@ import java.lang.reflect.Method;
  *
  * When passed to a Java method that expects a byte array, instances of thes class
  * are automatically unwrapped.
+ *
+ * <p>The bytes are stored in a {@link ByteBuffer}, either a heap buffer backed
+ * by a byte array or a direct buffer allocated outside of the Java heap. Slices,
+ * ByteString views of a ByteArray and ByteArray copies of a ByteString share
+ * the storage of their source instead of copying it. A ByteArray copies shared
+ * storage the first time it is modified, so sharing is never visible to
+ * scripts. {@link #asByteBuffer()} hands the storage to NIO and Jetty code
+ * without copying. Since the storage of a ByteArray may then be written
+ * through the buffer, slices and ByteStrings taken from it afterwards get
+ * a copy of their content.</p>
+ *
+ * <p>A ByteString is never modified once constructed, so it can be shared
+ * between threads without locking. A ByteArray is not thread-safe; one
+ * that is modified by more than one thread must be guarded by the caller,
+ * e.g. with the <code>sync()</code> global.</p>
  */
 public class Binary extends ScriptableObject implements Wrapper {
 
+    // the storage, bytes are read and written at absolute indexes
+    private ByteBuffer buffer;
+    // the array backing a writable heap buffer, or null
     private byte[] bytes;
+    // the index of the first byte in the buffer
+    private int offset;
+    // the index of the first byte in the backing array
+    private int base;
     private int length;
+    // true if the storage may be shared with other instances
+    private boolean shared;
+    // true if the writable storage has been handed out by asByteBuffer()
+    private boolean exposed;
     private final Type type;
 
+    // below this many candidate positions a plain scan beats building
+    // the skip table of the Horspool search
+    private static final int SEARCH_THRESHOLD = 256;
+
     enum Type {
         Binary, ByteArray, ByteString
     }
@@ -50,10 +85,13 @@ public class Binary extends ScriptableObject implements Wrapper {
     }
 
     public Binary(Scriptable scope, Type type, int length) {
+        this(scope, type, length, false);
+    }
+
+    public Binary(Scriptable scope, Type type, int length, boolean direct) {
         super(scope, ScriptUtils.getClassOrObjectProto(scope, type.toString()));
         this.type = type;
-        this.bytes = new byte[Math.max(length, 8)];
-        this.length = length;
+        setStorage(allocate(Math.max(length, 8), direct), 0, length);
     }
 
     public Binary(Scriptable scope, Type type, byte[] bytes) {
@@ -62,10 +100,50 @@ public class Binary extends ScriptableObject implements Wrapper {
 
     public Binary(Scriptable scope, Type type, byte[] bytes, int offset, int length) {
         super(scope, ScriptUtils.getClassOrObjectProto(scope, type.toString()));
-        this.bytes = new byte[length];
-        this.length = length;
         this.type = type;
-        System.arraycopy(bytes, offset, this.bytes, 0, length);
+        byte[] b = new byte[length];
+        System.arraycopy(bytes, offset, b, 0, length);
+        setStorage(ByteBuffer.wrap(b), 0, length);
+    }
+
+    /**
+     * Create a view sharing the storage of another binary.
+     */
+    private Binary(Scriptable scope, Type type, Binary source, int index, int length) {
+        super(scope, ScriptUtils.getClassOrObjectProto(scope, type.toString()));
+        this.type = type;
+        if (source.exposed) {
+            // the storage may be written through a byte buffer, copy it
+            ByteBuffer b = allocate(Math.max(length, 8), source.buffer.isDirect());
+            b.put(source.view(index, length));
+            setStorage(b, 0, length);
+            return;
+        }
+        setStorage(source.buffer, source.offset + index, length);
+        shared = true;
+        if (source.type == Type.ByteArray) {
+            source.shared = true;
+        }
+    }
+
+    /**
+     * Create a binary wrapping a region of a byte array without copying it.
+     * The array must not be modified afterwards unless the binary is a
+     * ByteArray owning it.
+     * @param scope the scope
+     * @param type the binary type
+     * @param bytes the byte array
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return the binary
+     */
+    public static Binary wrap(Scriptable scope, Type type, byte[] bytes,
+                              int offset, int length) {
+        Binary wrapper = new Binary(type);
+        wrapper.setStorage(ByteBuffer.wrap(bytes), offset, length);
+        wrapper.setParentScope(scope);
+        wrapper.setPrototype(ScriptUtils.getClassOrObjectProto(scope, type.toString()));
+        return wrapper;
     }
 
     @JSConstructor
@@ -80,7 +158,11 @@ public class Binary extends ScriptableObject implements Wrapper {
             return new Binary(scope, type, 0);
         }
         Object arg = args[0];
-        if (arg instanceof Wrapper) {
+        if (arg instanceof Binary && args.length == 1) {
+            // share the storage, the new instance copies it when modified
+            Binary source = (Binary) arg;
+            return new Binary(scope, type, source, 0, source.length);
+        } else if (arg instanceof Wrapper) {
             arg = ((Wrapper) arg).unwrap();
         }
         if (args.length == 2) {
@@ -112,8 +194,6 @@ public class Binary extends ScriptableObject implements Wrapper {
             return bytes;
         } else if (arg instanceof byte[]) {
             return new Binary(scope, type, (byte[]) arg);
-        } else if (arg instanceof Binary) {
-            return new Binary(scope, type, ((Binary) arg).getBytes());
         } else if (arg == Undefined.instance) {
             return new Binary(scope, type, 0);
         } else {
@@ -137,6 +217,11 @@ public class Binary extends ScriptableObject implements Wrapper {
         constructor.addAsConstructor(scope, prototype);
         constructor.defineProperty("wrap", new Wrap(scope, prototype, type),
                 DONTENUM | READONLY | PERMANENT);
+        if (type == Type.ByteArray) {
+            constructor.defineProperty("allocateDirect",
+                    new AllocateDirect(scope, prototype),
+                    DONTENUM | READONLY | PERMANENT);
+        }
     }
 
     public Type getType() {
@@ -148,7 +233,7 @@ public class Binary extends ScriptableObject implements Wrapper {
         if (index < 0 || index >= length) {
             return Undefined.instance;
         }
-        return Integer.valueOf(0xff & bytes[index]);
+        return Integer.valueOf(0xff & at(index));
     }
 
     @Override
@@ -173,9 +258,11 @@ public class Binary extends ScriptableObject implements Wrapper {
         }
         if (index >= length) {
             setLength(index + 1);
+        } else {
+            ensureWritable();
         }
         int n = ((Number) value).intValue();
-        bytes[index] = (byte) (0xff & n);
+        put(index, (byte) (0xff & n));
     }
 
     @JSGetter
@@ -184,7 +271,7 @@ public class Binary extends ScriptableObject implements Wrapper {
     }
 
     @JSSetter
-    public synchronized void setLength(Object length) {
+    public void setLength(Object length) {
         int l = ScriptUtils.toInt(length, -1);
         if (l < 0) {
             throw ScriptRuntime.constructError("Error", "Inappropriate ByteArray length");
@@ -192,19 +279,26 @@ public class Binary extends ScriptableObject implements Wrapper {
         setLength(l);
     }
 
-    protected synchronized void setLength(int newLength) {
+    protected void setLength(int newLength) {
         if (type != Type.ByteArray) {
             return;
         }
-        if (newLength < length) {
+        if (shared || buffer.isReadOnly()) {
+            // copy the shared part that is kept into new storage
+            reallocate(Math.max(newLength, 8), Math.min(length, newLength));
+        } else if (newLength < length) {
             // if shrinking clear the old buffer
-            Arrays.fill(bytes, newLength, length, (byte) 0);
-        } else if (newLength > bytes.length) {
+            if (bytes != null) {
+                Arrays.fill(bytes, base + newLength, base + length, (byte) 0);
+            } else {
+                for (int i = newLength; i < length; i++) {
+                    buffer.put(offset + i, (byte) 0);
+                }
+            }
+        } else if (offset + newLength > buffer.limit()) {
             // if growing make sure the buffer is large enough
-            int newSize = Math.max(newLength, bytes.length * 2);
-            byte[] b = new byte[newSize];
-            System.arraycopy(bytes, 0, b, 0, length);
-            bytes = b;
+            int newSize = Math.max(newLength, (buffer.limit() - offset) * 2);
+            reallocate(newSize, length);
         }
         length = newLength;
     }
@@ -215,7 +309,7 @@ public class Binary extends ScriptableObject implements Wrapper {
         if (i < 0 || i >= length) {
             return Undefined.instance;
         }
-        return Integer.valueOf(0xff & bytes[i]);
+        return Integer.valueOf(0xff & at(i));
     }
 
     @JSFunction
@@ -229,7 +323,7 @@ public class Binary extends ScriptableObject implements Wrapper {
         if (i < 0 || i >= length) {
             return new Binary(getParentScope(), type, 0);
         }
-        return new Binary(getParentScope(), type, new byte[] {bytes[i]});
+        return new Binary(getParentScope(), type, new byte[] {at(i)});
     }
 
     @JSFunction
@@ -246,8 +340,10 @@ public class Binary extends ScriptableObject implements Wrapper {
         if (i > -1) {
             if (i >= length) {
                 setLength(i + 1);
+            } else {
+                ensureWritable();
             }
-            bytes[i] = (byte) (0xff & value);
+            put(i, (byte) (0xff & value));
         }
     }
 
@@ -269,19 +365,20 @@ public class Binary extends ScriptableObject implements Wrapper {
         return makeCopy(Type.ByteString, sourceCharset, targetCharset);
     }
 
-    private synchronized Binary makeCopy(Type targetType, Object sourceCharset,
-                                         Object targetCharset)
+    private Binary makeCopy(Type targetType, Object sourceCharset,
+                            Object targetCharset)
             throws UnsupportedEncodingException {
         String source = toCharset(sourceCharset);
         String target = toCharset(targetCharset);
         if (source != null && target != null) {
-            String str = new String(bytes, 0, length, source);
+            String str = decode(source);
             return new Binary(getParentScope(), targetType, str.getBytes(target));
         }
         if (this.type == Type.ByteString && this.type == targetType) {
             return this;
         }
-        return new Binary(getParentScope(), targetType, bytes, 0, length);
+        // share the storage, a ByteArray copies it when modified
+        return new Binary(getParentScope(), targetType, this, 0, length);
     }
 
     @JSFunction
@@ -298,22 +395,23 @@ public class Binary extends ScriptableObject implements Wrapper {
             throw ScriptRuntime.constructError("Error", "Invalid target index: " + targetIndex);
         }
         int size = srcEndIndex - srcStartIndex;
-        target.copyFrom(bytes, srcStartIndex, size, targetIdx);
+        target.copyFrom(this, srcStartIndex, size, targetIdx);
 
     }
 
-    private synchronized void copyFrom(byte[] source, int srcIndex, int length, int targetIndex) {
+    private void copyFrom(Binary source, int srcIndex, int length, int targetIndex) {
         ensureLength(targetIndex + length);
-        System.arraycopy(source, srcIndex, bytes, targetIndex,  length);
+        ensureWritable();
+        transfer(source, srcIndex, targetIndex, length);
     }
 
     @JSFunction
-    public synchronized Object toArray(Object charset)
+    public Object toArray(Object charset)
             throws UnsupportedEncodingException {
         Object[] elements;
         String cs = toCharset(charset);
         if (cs != null) {
-            String str = new String(bytes, 0, length, cs);
+            String str = decode(cs);
             elements = new Object[str.length()];
             for (int i = 0; i < elements.length; i++) {
                 elements[i] = Integer.valueOf(str.charAt(i));
@@ -321,7 +419,7 @@ public class Binary extends ScriptableObject implements Wrapper {
         } else {
             elements = new Object[length];
             for (int i = 0; i < length; i++) {
-                elements[i] = Integer.valueOf(0xff & bytes[i]);
+                elements[i] = Integer.valueOf(0xff & at(i));
             }
         }
         return Context.getCurrentContext().newArray(getParentScope(), elements);
@@ -330,7 +428,7 @@ public class Binary extends ScriptableObject implements Wrapper {
     @Override
     @JSFunction
     public String toString() {
-        if (bytes != null) {
+        if (buffer != null) {
             return "[" + type.toString() + " " + length + "]";
         }
         return "[object " + type.toString() + "]";
@@ -345,7 +443,7 @@ public class Binary extends ScriptableObject implements Wrapper {
     @JSFunction
     public Object slice(Object begin, Object end) {
         if (begin == Undefined.instance && end == Undefined.instance) {
-            return new Binary(getParentScope(), type, bytes, 0, length);
+            return new Binary(getParentScope(), type, this, 0, length);
         }
         int from = ScriptUtils.toInt(begin, 0);
         if (from < 0) {
@@ -357,19 +455,20 @@ public class Binary extends ScriptableObject implements Wrapper {
             to += length;
         }
         int len = Math.max(0, Math.min(length - from,  to - from));
-        return new Binary(getParentScope(), type, bytes, from, len);
+        return new Binary(getParentScope(), type, this, from, len);
     }
 
     @JSFunction
     public static Object concat(Context cx, Scriptable thisObj,
                                       Object[] args, Function func) {
         int arglength = 0;
-        List<byte[]> arglist = new ArrayList<byte[]>(args.length);
+        List<Binary> arglist = new ArrayList<Binary>(args.length);
+        Scriptable scope = thisObj.getParentScope();
         for (Object arg : args) {
             if (arg instanceof Binary) {
-                byte[] bytes = ((Binary) arg).getBytes();
-                arglength += bytes.length;
-                arglist.add(bytes);
+                Binary binary = (Binary) arg;
+                arglength += binary.length;
+                arglist.add(binary);
             } else if (ScriptRuntime.isArrayObject(arg)) {
                 Scriptable object = (Scriptable) arg;
                 long longLength =  ScriptRuntime.toUint32(
@@ -388,31 +487,29 @@ public class Binary extends ScriptableObject implements Wrapper {
                     bytes[i] = (byte) (0xff & n);
                 }
                 arglength += bytes.length;
-                arglist.add(bytes);
+                arglist.add(wrap(scope, Type.ByteString, bytes, 0, bytes.length));
             } else {
                 throw ScriptRuntime.constructError("Error", "Unsupported argument: " + arg);
             }
         }
         Binary thisByteArray = (Binary) thisObj;
-        synchronized (thisByteArray) {
-            byte[] newBytes = new byte[thisByteArray.length + arglength];
-            System.arraycopy(thisByteArray.bytes, 0, newBytes, 0, thisByteArray.length);
-            int index = thisByteArray.length;
-            for (byte[] b : arglist) {
-                System.arraycopy(b, 0, newBytes, index, b.length);
-                index += b.length;
-            }
-            return new Binary(thisObj.getParentScope(), thisByteArray.type, newBytes);
+        int total = thisByteArray.length + arglength;
+        Binary result = new Binary(scope, thisByteArray.type, total,
+                thisByteArray.buffer.isDirect());
+        result.transfer(thisByteArray, 0, 0, thisByteArray.length);
+        int index = thisByteArray.length;
+        for (Binary b : arglist) {
+            result.transfer(b, 0, index, b.length);
+            index += b.length;
         }
+        return result;
     }
 
     @JSFunction
     public String decodeToString(Object charset) {
         String cs = toCharset(charset);
         try {
-            return cs == null ?
-                    new String(bytes, 0, length) :
-                    new String(bytes, 0, length, cs);
+            return decode(cs);
         } catch (UnsupportedEncodingException uee) {
             throw ScriptRuntime.constructError("Error", "Unsupported encoding: " + charset);
         }
@@ -423,16 +520,7 @@ public class Binary extends ScriptableObject implements Wrapper {
         byte[] b = getBytesArgument(arg);
         int start = Math.max(0, Math.min(length - 1, ScriptUtils.toInt(from, 0)));
         int end = Math.max(0, Math.min(length - b.length + 1, ScriptUtils.toInt(to, length)));
-        outer:
-        for (int i = start; i < end; i++) {
-            for (int j = 0; j < b.length; j++) {
-                if (bytes[i + j] != b[j]) {
-                    continue outer;
-                }
-            }
-            return i;
-        }
-        return -1;
+        return find(b, start, end);
     }
 
     @JSFunction
@@ -440,20 +528,11 @@ public class Binary extends ScriptableObject implements Wrapper {
         byte[] b = getBytesArgument(arg);
         int start = Math.max(0, Math.min(length - 1, ScriptUtils.toInt(from, 0)));
         int end = Math.max(0, Math.min(length - b.length + 1, ScriptUtils.toInt(to, length)));
-        outer:
-        for (int i = end - 1; i >= start; i--) {
-            for (int j = 0; j < b.length; j++) {
-                if (bytes[i + j] != b[j]) {
-                    continue outer;
-                }
-            }
-            return i;
-        }
-        return -1;
+        return findLast(b, start, end);
     }
 
     @JSFunction
-    public synchronized Object split(Object delim, Object options) {
+    public Object split(Object delim, Object options) {
         byte[][] delimiters = getSplitDelimiters(delim);
         boolean includeDelimiter = false;
         int count = Integer.MAX_VALUE;
@@ -466,50 +545,63 @@ public class Binary extends ScriptableObject implements Wrapper {
         }
         List<Binary> list = new ArrayList<Binary>();
         Scriptable scope = getParentScope();
+        // the next match of each delimiter at or after index, -1 if none
+        int[] next = new int[delimiters.length];
+        Arrays.fill(next, -2);
         int index = 0;
         int found = 0;
-        outer:
-        for (int i = 0; i < length && found < count - 1; i++) {
-            inner:
-            for (byte[] delimiter : delimiters) {
-                if (i + delimiter.length > length) {
+        while (index < length && found < count - 1) {
+            int pos = -1;
+            byte[] delimiter = null;
+            for (int k = 0; k < delimiters.length; k++) {
+                byte[] d = delimiters[k];
+                if (d.length == 0) {
                     continue;
                 }
-                for (int j = 0; j < delimiter.length; j++) {
-                    if (bytes[i + j] != delimiter[j]) {
-                        continue inner;
-                    }
+                if (next[k] == -2 || (next[k] > -1 && next[k] < index)) {
+                    next[k] = find(d, index, length - d.length + 1);
                 }
-                list.add(new Binary(scope, type, bytes, index, i - index));
-                if (includeDelimiter) {
-                    list.add(new Binary(scope, type, delimiter));
+                // at equal positions the first delimiter given wins
+                if (next[k] > -1 && (pos < 0 || next[k] < pos)) {
+                    pos = next[k];
+                    delimiter = d;
                 }
-                index = i + delimiter.length;
-                i = index - 1;
-                found++;
-                continue outer;
             }
+            if (pos < 0) {
+                break;
+            }
+            list.add(new Binary(scope, type, this, index, pos - index));
+            if (includeDelimiter) {
+                list.add(new Binary(scope, type, delimiter));
+            }
+            index = pos + delimiter.length;
+            found++;
         }
         if (index == 0) {
             list.add(this);
         } else {
-            list.add(new Binary(scope, type, bytes, index, length - index));
+            list.add(new Binary(scope, type, this, index, length - index));
         }
         return Context.getCurrentContext().newArray(scope, list.toArray());
     }
 
     protected static Binary wrap(Type type, byte[] bytes, Scriptable scope,
                                  Scriptable prototype) {
+        return wrap(type, ByteBuffer.wrap(bytes), scope, prototype);
+    }
+
+    protected static Binary wrap(Type type, ByteBuffer buffer, Scriptable scope,
+                                 Scriptable prototype) {
         Binary wrapper = new Binary(type);
-        wrapper.bytes = bytes;
-        wrapper.length = bytes.length;
+        wrapper.setStorage(buffer, buffer.position(), buffer.remaining());
         wrapper.setParentScope(scope);
         wrapper.setPrototype(prototype);
         return wrapper;
     }
 
     /**
-     * Static method that wraps a java byte array without copying.
+     * Static method that wraps a java byte array or the remaining bytes of
+     * a byte buffer without copying.
      */
     static class Wrap extends BaseFunction {
         final Type type;
@@ -527,14 +619,43 @@ public class Binary extends ScriptableObject implements Wrapper {
             if (arg instanceof Wrapper) {
                 arg = ((Wrapper) arg).unwrap();
             }
+            if (arg instanceof ByteBuffer) {
+                return wrap(type, (ByteBuffer) arg, getTopLevelScope(scope), prototype);
+            }
             if (!(arg instanceof byte[])) {
-                throw ScriptRuntime.constructError("Error", "wrap() requires an argument of type byte[]");
+                throw ScriptRuntime.constructError("Error",
+                        "wrap() requires an argument of type byte[] or java.nio.ByteBuffer");
             }
             byte[] bytes = (byte[]) arg;
             return wrap(type, bytes, getTopLevelScope(scope), prototype);
         }
     }
 
+    /**
+     * Static method that creates a ByteArray stored in a direct buffer.
+     */
+    static class AllocateDirect extends BaseFunction {
+        final Scriptable prototype;
+
+        AllocateDirect(Scriptable scope, Scriptable prototype) {
+            super(scope, ScriptableObject.getFunctionPrototype(scope));
+            this.prototype = prototype;
+        }
+
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+            int length = ScriptUtils.toInt(args.length > 0 ? args[0] : Undefined.instance, -1);
+            if (length < 0) {
+                throw ScriptRuntime.constructError("Error", "Inappropriate ByteArray length");
+            }
+            Binary binary = new Binary(Type.ByteArray);
+            binary.setStorage(allocate(Math.max(length, 8), true), 0, length);
+            binary.setParentScope(getTopLevelScope(scope));
+            binary.setPrototype(prototype);
+            return binary;
+        }
+    }
+
     @JSFunction("unwrap")
     public Object jsunwrap() {
         return NativeJavaArray.wrap(getParentScope(), getBytes());
@@ -549,27 +670,366 @@ public class Binary extends ScriptableObject implements Wrapper {
         return getBytes();
     }
 
+    /**
+     * Get the content as byte array. If the content of a heap binary
+     * fills its backing array, that array is returned. Otherwise a ByteArray
+     * moves its content to a new array it owns, and a ByteString, which is
+     * never modified, returns a copy. Changes to the array of a ByteArray
+     * stored in a direct buffer are not reflected in the ByteArray.
+     * @return the byte array
+     */
     public byte[] getBytes() {
+        if (bytes == null) {
+            byte[] b = new byte[length];
+            view(0, length).get(b);
+            return b;
+        }
+        if (type != Type.ByteArray) {
+            return base == 0 && length == bytes.length ?
+                    bytes : Arrays.copyOfRange(bytes, base, base + length);
+        }
         normalize();
         return bytes;
     }
 
+    @JSFunction("asByteBuffer")
+    public Object jsasByteBuffer() {
+        return Context.javaToJS(asByteBuffer(), getParentScope());
+    }
+
+    /**
+     * Get a byte buffer over the content without copying it. The buffer's
+     * position is 0 and its limit the length of the binary. The buffer of
+     * a ByteString is read-only. The buffer of a ByteArray is a live view
+     * of its content until the ByteArray is resized. Slices and ByteStrings
+     * created from the ByteArray after this call copy its content instead
+     * of sharing the storage.
+     * @return the byte buffer
+     */
+    public ByteBuffer asByteBuffer() {
+        if (type == Type.ByteArray) {
+            ensureWritable();
+            exposed = true;
+            return view(0, length).slice();
+        }
+        return view(0, length).slice().asReadOnlyBuffer();
+    }
+
+    @JSGetter("direct")
+    public boolean isDirect() {
+        return buffer != null && buffer.isDirect();
+    }
+
+    /**
+     * Returns true if this is a ByteArray, false for an immutable
+     * ByteString.
+     * @return true if the content can be modified
+     */
+    public boolean isMutable() {
+        return type == Type.ByteArray;
+    }
+
+    /**
+     * Write the content of this binary to an output stream without copying
+     * it to a new array first.
+     * @param out the output stream
+     * @throws IOException if an I/O error occurred
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, 0, length);
+    }
+
+    /**
+     * Write a part of this binary to an output stream. Heap storage is
+     * written without copying, direct storage in chunks.
+     * @param out the output stream
+     * @param from the index of the first byte to write
+     * @param count the number of bytes to write
+     * @throws IOException if an I/O error occurred
+     */
+    public void writeTo(OutputStream out, int from, int count)
+            throws IOException {
+        if (from < 0 || count < 0 || from + count > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (count == 0) {
+            return;
+        }
+        if (bytes != null) {
+            out.write(bytes, base + from, count);
+        } else {
+            ByteBuffer view = view(from, count);
+            byte[] chunk = new byte[Math.min(count, 8192)];
+            while (view.hasRemaining()) {
+                int n = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Read bytes from an input stream into this ByteArray without changing
+     * its length.
+     * @param in the input stream
+     * @param index the index of the first byte to read into
+     * @param count the maximum number of bytes to read
+     * @return the number of bytes read, or -1 at the end of the stream
+     * @throws IOException if an I/O error occurred
+     */
+    public int readFrom(InputStream in, int index, int count)
+            throws IOException {
+        if (index < 0 || count < 0 || index + count > length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureWritable();
+        if (bytes != null) {
+            return in.read(bytes, base + index, count);
+        }
+        byte[] chunk = new byte[count];
+        int read = in.read(chunk, 0, count);
+        if (read > 0) {
+            view(index, read).put(chunk, 0, read);
+        }
+        return read;
+    }
+
     public String getClassName() {
         return type.toString();
     }
 
-    protected synchronized void ensureLength(int minLength) {
+    protected void ensureLength(int minLength) {
         if (minLength > length) {
             setLength(minLength);
         }
     }
 
-    private synchronized void normalize() {
-        if (length != bytes.length) {
+    private void normalize() {
+        if (base != 0 || length != bytes.length || shared) {
             byte[] b = new byte[length];
-            System.arraycopy(bytes, 0, b, 0, length);
-            bytes = b;
+            System.arraycopy(bytes, base, b, 0, length);
+            setStorage(ByteBuffer.wrap(b), 0, length);
+            shared = false;
+        }
+    }
+
+    private void setStorage(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        exposed = false;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            base = buffer.arrayOffset() + offset;
+        } else {
+            bytes = null;
+            base = 0;
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Move the first bytes of the content to new private storage of the
+     * given capacity, keeping the storage heap or direct.
+     */
+    private void reallocate(int capacity, int count) {
+        ByteBuffer b = allocate(capacity, buffer.isDirect());
+        if (count > 0) {
+            b.put(view(0, count));
+        }
+        setStorage(b, 0, count);
+        shared = false;
+    }
+
+    /**
+     * Make sure the storage is private and writable before modifying it.
+     */
+    private void ensureWritable() {
+        if (shared || buffer.isReadOnly()) {
+            reallocate(Math.max(length, 8), length);
+        }
+    }
+
+    // a duplicate of the storage limited to a part of the content
+    private ByteBuffer view(int index, int count) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + index + count);
+        view.position(offset + index);
+        return view;
+    }
+
+    private byte at(int index) {
+        return bytes != null ? bytes[base + index] : buffer.get(offset + index);
+    }
+
+    private void put(int index, byte b) {
+        if (bytes != null) {
+            bytes[base + index] = b;
+        } else {
+            buffer.put(offset + index, b);
+        }
+    }
+
+    // copy content from another binary, the storage must be writable
+    private void transfer(Binary source, int srcIndex, int targetIndex, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (bytes != null && source.bytes != null) {
+            System.arraycopy(source.bytes, source.base + srcIndex,
+                    bytes, base + targetIndex, count);
+        } else if (source.buffer == buffer) {
+            // the regions may overlap
+            byte[] b = new byte[count];
+            source.view(srcIndex, count).get(b);
+            view(targetIndex, count).put(b);
+        } else {
+            view(targetIndex, count).put(source.view(srcIndex, count));
+        }
+    }
+
+    /**
+     * Find the first match of a pattern starting at an index in
+     * [start, end). Heap storage is searched with Boyer-Moore-Horspool,
+     * which skips up to the pattern's length at each mismatch.
+     */
+    private int find(byte[] pattern, int start, int end) {
+        int m = pattern.length;
+        if (start >= end) {
+            return -1;
+        } else if (m == 0) {
+            return start;
+        }
+        byte[] a = bytes;
+        if (a == null) {
+            outer:
+            for (int i = start; i < end; i++) {
+                for (int j = 0; j < m; j++) {
+                    if (at(i + j) != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+        int b = base;
+        byte first = pattern[0];
+        if (m == 1 || end - start < SEARCH_THRESHOLD) {
+            outer:
+            for (int i = b + start, e = b + end; i < e; i++) {
+                if (a[i] != first) {
+                    continue;
+                }
+                for (int j = 1; j < m; j++) {
+                    if (a[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i - b;
+            }
+            return -1;
+        }
+        int[] skip = new int[256];
+        Arrays.fill(skip, m);
+        for (int j = 0; j < m - 1; j++) {
+            skip[pattern[j] & 0xff] = m - 1 - j;
+        }
+        byte last = pattern[m - 1];
+        for (int i = b + start, e = b + end; i < e; ) {
+            byte c = a[i + m - 1];
+            if (c == last) {
+                int j = m - 2;
+                while (j >= 0 && a[i + j] == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i - b;
+                }
+            }
+            i += skip[c & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Find the last match of a pattern starting at an index in
+     * [start, end), searching backwards with the mirrored skip table.
+     */
+    private int findLast(byte[] pattern, int start, int end) {
+        int m = pattern.length;
+        if (start >= end) {
+            return -1;
+        } else if (m == 0) {
+            return end - 1;
+        }
+        byte[] a = bytes;
+        if (a == null) {
+            outer:
+            for (int i = end - 1; i >= start; i--) {
+                for (int j = 0; j < m; j++) {
+                    if (at(i + j) != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+        int b = base;
+        byte first = pattern[0];
+        if (m == 1 || end - start < SEARCH_THRESHOLD) {
+            outer:
+            for (int i = b + end - 1, s = b + start; i >= s; i--) {
+                if (a[i] != first) {
+                    continue;
+                }
+                for (int j = 1; j < m; j++) {
+                    if (a[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i - b;
+            }
+            return -1;
+        }
+        int[] skip = new int[256];
+        Arrays.fill(skip, m);
+        for (int j = m - 1; j > 0; j--) {
+            skip[pattern[j] & 0xff] = j;
+        }
+        for (int i = b + end - 1, s = b + start; i >= s; ) {
+            byte c = a[i];
+            if (c == first) {
+                int j = 1;
+                while (j < m && a[i + j] == pattern[j]) {
+                    j++;
+                }
+                if (j == m) {
+                    return i - b;
+                }
+            }
+            i -= skip[c & 0xff];
+        }
+        return -1;
+    }
+
+    private String decode(String charset) throws UnsupportedEncodingException {
+        if (bytes != null) {
+            return charset == null ?
+                    new String(bytes, base, length) :
+                    new String(bytes, base, length, charset);
+        }
+        Charset cs;
+        try {
+            cs = charset == null ? Charset.defaultCharset() : Charset.forName(charset);
+        } catch (IllegalArgumentException x) {
+            throw new UnsupportedEncodingException(charset);
         }
+        return cs.decode(view(0, length)).toString();
     }
 
     private byte[] getBytesArgument(Object arg) {
@@ -90,7 +90,7 @@ public class Stream extends ScriptableObject implements Wrapper {
                 byte[] bytes = new byte[max];
                 int read = input.read(bytes);
                 return read > -1 ?
-                        new Binary(scope, Binary.Type.ByteString, bytes, 0, read) :
+                        toByteString(scope, bytes, read) :
                         new Binary(scope, Binary.Type.ByteString, 0);
             } catch (IOException iox) {
                 throw new WrappedException(iox);
@@ -107,9 +107,7 @@ public class Stream extends ScriptableObject implements Wrapper {
                         buffer = b;
                     }
                 }
-                return count > -1 ?
-                        new Binary(scope, Binary.Type.ByteString, buffer, 0, count) :
-                        new Binary(scope, Binary.Type.ByteString, 0);
+                return toByteString(scope, buffer, count);
             } catch (IOException iox) {
                 throw ScriptRuntime.constructError("Error", "Error reading from input stream: " + iox);
             }
@@ -128,8 +126,7 @@ public class Stream extends ScriptableObject implements Wrapper {
         int from = ScriptUtils.toInt(start, 0);
         int to = ScriptUtils.toInt(end, bytes.getLength());
         try {
-            byte[] b = bytes.getBytes();
-            return input.read(b, from, to - from);
+            return bytes.readFrom(input, from, to - from);
         } catch (IOException iox) {
             throw new WrappedException(iox);
         }
@@ -137,13 +134,27 @@ public class Stream extends ScriptableObject implements Wrapper {
 
     @JSFunction
     public void write(Object arg, Object start, Object end) {
+        if (arg instanceof Binary) {
+            // write from the binary's storage without copying it
+            Binary binary = (Binary) arg;
+            if (output == null) {
+                throw ScriptRuntime.constructError("Error", "no output stream");
+            }
+            int from = start == Undefined.instance ? 0 : ScriptRuntime.toInt32(start);
+            int to = end == Undefined.instance ?
+                    binary.getLength() : ScriptRuntime.toInt32(end);
+            try {
+                binary.writeTo(output, from, to - from);
+            } catch (IOException iox) {
+                throw Context.throwAsScriptRuntimeEx(iox);
+            }
+            return;
+        }
         if (arg instanceof Wrapper) {
             arg = ((Wrapper) arg).unwrap();
         }
         byte[] bytes;
-        if (arg instanceof Binary) {
-            bytes = ((Binary) arg).getBytes();
-        } else if (arg instanceof byte[]) {
+        if (arg instanceof byte[]) {
             bytes = (byte[]) arg;
         } else if (arg instanceof String) {
             // TODO this is for narwhal compatibility only
@@ -164,6 +175,17 @@ public class Stream extends ScriptableObject implements Wrapper {
         }
     }
 
+    /**
+     * Create a ByteString from the first bytes of a read buffer, wrapping
+     * the buffer if most of it is used and copying the bytes otherwise.
+     */
+    private static Binary toByteString(Scriptable scope, byte[] buffer, int count) {
+        if (count >= buffer.length / 2) {
+            return Binary.wrap(scope, Binary.Type.ByteString, buffer, 0, count);
+        }
+        return new Binary(scope, Binary.Type.ByteString, buffer, 0, count);
+    }
+
     @JSFunction
     public void flush() {
         if (output == null) {
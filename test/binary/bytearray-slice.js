@@ -65,6 +65,31 @@ exports.testByteArraySlice = function() {
     assert.deepEqual(a.slice("foo", "bar"), s.toArray());
 };
 
+exports.testSliceCopyOnWrite = function() {
+    var b = new ByteArray([1, 2, 3, 4, 5]);
+    var s = b.slice(1, 4);
+    var bs = b.toByteString();
+    b[1] = 20;
+    assert.deepEqual([2, 3, 4], s.toArray());
+    assert.deepEqual([1, 2, 3, 4, 5], bs.toArray());
+    s[0] = 30;
+    s.length = 5;
+    assert.deepEqual([30, 3, 4, 0, 0], s.toArray());
+    assert.deepEqual([1, 20, 3, 4, 5], b.toArray());
+
+    var c = new ByteArray(bs);
+    c[0] = 10;
+    assert.deepEqual([1, 2, 3, 4, 5], bs.toArray());
+    assert.deepEqual([2, 3], bs.slice(1, 3).toArray());
+
+    var parts = b.split(3);
+    parts[0][0] = 0;
+    assert.deepEqual([1, 20], b.slice(0, 2).toArray());
+    b.copy(0, 2, parts[1], 0);
+    assert.deepEqual([1, 20], parts[1].toArray());
+    assert.deepEqual([1, 20, 3, 4, 5], b.toArray());
+};
+
 if (require.main === module) {
     require('system').exit(require('test').run(module.id));
 }
@@ -353,6 +353,59 @@ exports.testStringToByteArray = function() {
     assert.throws(() => { toByteString(null); });
 }
 
+exports.testDirectByteArray = function() {
+    const b = ByteArray.allocateDirect(4);
+    assert.isTrue(b instanceof ByteArray);
+    assert.isTrue(b.direct);
+    assert.isFalse(new ByteArray(4).direct);
+    assert.deepEqual([0, 0, 0, 0], b.toArray());
+    b[0] = 104;
+    b[1] = 105;
+    b.length = 2;
+    assert.strictEqual("hi", b.decodeToString("ascii"));
+    b.length = 6;
+    assert.isTrue(b.direct);
+    assert.deepEqual([104, 105, 0, 0, 0, 0], b.toArray());
+    const s = b.slice(0, 2);
+    assert.isTrue(s.direct);
+    b[0] = 72;
+    assert.strictEqual("hi", s.decodeToString("ascii"));
+    assert.deepEqual([72, 105, 104, 105], b.slice(0, 2).concat(s).toArray());
+    assert.strictEqual(1, b.indexOf(105));
+};
+
+exports.testWrapByteBuffer = function() {
+    const buffer = java.nio.ByteBuffer.wrap(new ByteArray([1, 2, 3, 4]));
+    buffer.position(1);
+    const b = ByteArray.wrap(buffer);
+    assert.deepEqual([2, 3, 4], b.toArray());
+    b[0] = 20;
+    assert.strictEqual(20, buffer.get(1));
+    assert.isTrue(ByteArray.wrap(java.nio.ByteBuffer.allocateDirect(2)).direct);
+};
+
+exports.testAsByteBuffer = function() {
+    const b = new ByteArray([1, 2, 3, 4]);
+    const buffer = b.slice(1).asByteBuffer();
+    assert.strictEqual(3, buffer.remaining());
+    assert.isFalse(buffer.isReadOnly());
+    const live = b.asByteBuffer();
+    live.put(0, 10);
+    assert.strictEqual(10, b[0]);
+    const bs = b.toByteString();
+    const slice = b.slice(2);
+    const readOnly = bs.asByteBuffer();
+    assert.isTrue(readOnly.isReadOnly());
+    assert.strictEqual(4, readOnly.remaining());
+    b[1] = 20;
+    assert.strictEqual(2, readOnly.get(1));
+    // snapshots taken after exposing the storage are not written through it
+    live.put(2, 30);
+    assert.strictEqual(30, b[2]);
+    assert.strictEqual(3, bs.get(2));
+    assert.strictEqual(3, slice[0]);
+};
+
 if (require.main === module) {
     require('system').exit(require('test').run(module.id));
 }
@@ -220,6 +220,29 @@ exports.testSplit = function() {
     assert.strictEqual(5, a1[1].get(1));
 };
 
+exports.testSearchLarge = function() {
+    var line = "abcdefghij".repeat(100);
+    var text = [line, line, "--boundary", line, "--bound", line, "--boundary"].join("\r\n");
+    var b1 = new ByteString(text, "ascii");
+    var boundary = new ByteString("--boundary", "ascii");
+
+    assert.strictEqual(text.indexOf("--boundary"), b1.indexOf(boundary));
+    assert.strictEqual(text.lastIndexOf("--boundary"), b1.lastIndexOf(boundary));
+    assert.strictEqual(text.indexOf("--boundary", 2100), b1.indexOf(boundary, 2100));
+    assert.strictEqual(-1, b1.indexOf(boundary, 2100, 4000));
+    assert.strictEqual(text.indexOf("--boundary"), b1.lastIndexOf(boundary, 0, 4000));
+    assert.strictEqual(-1, b1.indexOf(new ByteString("--boundarz", "ascii")));
+
+    var a1 = b1.split([new ByteString("\r\n", "ascii"), new ByteString("--", "ascii")]);
+    assert.deepEqual(text.split(/\r\n|--/), a1.map(function(b) {
+        return b.decodeToString("ascii");
+    }));
+    a1 = b1.slice(1000).split(boundary, {count: 2});
+    assert.strictEqual(2, a1.length);
+    assert.strictEqual(text.slice(1000).split("--boundary").slice(1).join("--boundary"),
+            a1[1].decodeToString("ascii"));
+};
+
 exports.testSlice = function() {
     var b1 = new ByteString([0,1,2,3,4,5]), b2;
 
@@ -5,7 +5,8 @@ const objects = require("ringo/utils/objects");
 const system = require("system");
 const {HttpServer} = require("ringo/httpserver");
 const response = require("ringo/jsgi/response");
-const {request, post, get, put, del, TextPart, BinaryPart} = require("ringo/httpclient");
+const {request, requestAll, getDefaultClient, post, get, put, del, TextPart, BinaryPart} = require("ringo/httpclient");
+const {WorkerPromise} = require("ringo/worker");
 const {parseParameters, parseFileUpload, setCookie, Headers} = require("ringo/utils/http");
 const {MemoryStream, TextStream} = require("io");
 const fs = require("fs");
@@ -738,6 +739,207 @@ exports.testTextPart = () => {
     }
 };
 
+const requestInWorker = (options) => {
+    return new WorkerPromise(module.resolve("./httpclient_worker"), {
+        options: options
+    }, true).wait(5000);
+};
+
+exports.testRequestAsync = () => {
+    getResponse = (req) => {
+        return response.text(req.method + " " + req.queryString + " " +
+                req.headers["user-agent"]).addHeaders({"X-Test": "async"});
+    };
+
+    let result = requestInWorker({
+        url: baseUri,
+        data: {foo: "bar"}
+    });
+    assert.strictEqual(result.status, 200);
+    assert.strictEqual(result.content, "GET foo=bar RingoJS HttpClient " +
+            require("ringo/engine").version.join("."));
+    assert.strictEqual(String(result.headers["X-Test"][0]), "async");
+    assert.isTrue(result.sameWorker);
+
+    getResponse = (req) => {
+        return response.text(req.method + " " + req.input.read().decodeToString("utf-8"));
+    };
+    result = requestInWorker({
+        url: baseUri,
+        method: "POST",
+        data: {foo: "b\u00e4r"}
+    });
+    assert.strictEqual(result.content, "POST foo=b%C3%A4r");
+
+    getResponse = () => response.notFound();
+    result = requestInWorker({url: baseUri});
+    assert.strictEqual(result.status, 404);
+};
+
+exports.testDefaultClient = () => {
+    // all workers share one Java client, restarted after it was stopped
+    const client = getDefaultClient().client;
+    assert.isTrue(client.isRunning());
+    assert.strictEqual(getDefaultClient().client, client);
+    assert.strictEqual(new WorkerPromise(module.resolve("./httpclient_worker"), {
+        defaultClient: true
+    }, true).wait(5000), client);
+    client.stop();
+    const restarted = getDefaultClient().client;
+    assert.notStrictEqual(restarted, client);
+    assert.isTrue(restarted.isRunning());
+};
+
+/**
+ * Returns an iterator over the chunks, used as streamed request body
+ */
+const chunkIterator = (chunks) => {
+    let index = 0;
+    return {
+        next: () => index < chunks.length ?
+                {value: chunks[index++], done: false} :
+                {value: undefined, done: true}
+    };
+};
+
+exports.testStreamingExchange = () => {
+    const text = "0123456789".repeat(10000);
+    getResponse = (req) => {
+        if (req.method === "POST") {
+            return response.text(req.headers["transfer-encoding"] + " " +
+                    req.input.read().decodeToString("utf-8"));
+        }
+        return response.text(text);
+    };
+
+    // response body as stream
+    let exchange = request({url: baseUri, stream: true});
+    assert.strictEqual(exchange.status, 200);
+    assert.isNull(exchange.contentBytes);
+    assert.strictEqual(exchange.stream.read().decodeToString("utf-8"), text);
+    exchange.stream.close();
+
+    // response body written to a file
+    const file = java.io.File.createTempFile("ringo-httpclient", ".txt");
+    try {
+        exchange = request({url: baseUri, pipeTo: file.getPath()});
+        assert.strictEqual(exchange.status, 200);
+        assert.isNull(exchange.content);
+        assert.strictEqual(fs.read(file.getPath()), text);
+    } finally {
+        file["delete"]();
+    }
+
+    // request body produced by a generator
+    exchange = request({
+        url: baseUri,
+        method: "POST",
+        contentType: "text/plain",
+        data: chunkIterator(["foo", new binary.ByteString("bar", "utf-8"), "b\u00e4z"])
+    });
+    assert.strictEqual(exchange.content, "chunked foobarb\u00e4z");
+};
+
+exports.testStreamingExchangeAsync = () => {
+    const text = "0123456789".repeat(10000);
+    getResponse = (req) => {
+        if (req.method === "POST") {
+            return response.text(req.headers["transfer-encoding"] + " " +
+                    req.input.read().decodeToString("utf-8"));
+        }
+        return response.text(text);
+    };
+
+    // response body read with the async iterator
+    let result = requestInWorker({url: baseUri, stream: true});
+    assert.strictEqual(result.status, 200);
+    assert.strictEqual(result.content, text);
+
+    // response body written to a file
+    const file = java.io.File.createTempFile("ringo-httpclient", ".txt");
+    try {
+        result = requestInWorker({url: baseUri, pipeTo: file.getPath()});
+        assert.strictEqual(result.status, 200);
+        assert.isNull(result.content);
+        assert.strictEqual(fs.read(file.getPath()), text);
+    } finally {
+        file["delete"]();
+    }
+
+    // request body produced by a generator on the worker
+    result = new WorkerPromise(module.resolve("./httpclient_worker"), {
+        options: {url: baseUri, method: "POST", contentType: "text/plain"},
+        chunks: ["foo", "bar", "b\u00e4z"]
+    }, true).wait(5000);
+    assert.strictEqual(result.content, "chunked foobarb\u00e4z");
+};
+
+const requestAllInWorker = (requests, options) => {
+    return new WorkerPromise(module.resolve("./httpclient_worker"), {
+        requests: requests,
+        batch: options
+    }, true).wait(5000);
+};
+
+exports.testRequestAll = () => {
+    const running = new java.util.concurrent.atomic.AtomicInteger();
+    const maxRunning = new java.util.concurrent.atomic.AtomicInteger();
+    getResponse = (req) => {
+        const count = running.incrementAndGet();
+        maxRunning.accumulateAndGet(count, java.lang.Math.max);
+        try {
+            java.lang.Thread.sleep(req.pathInfo === "/slow" ? 3000 : 50);
+        } finally {
+            running.decrementAndGet();
+        }
+        return response.text(req.pathInfo);
+    };
+
+    let result = requestAllInWorker(["a", "b", "c", "d", "e", "f"].map(path => baseUri + path),
+            {concurrency: 2});
+    assert.isTrue(result.sameWorker);
+    assert.strictEqual(result.results.length, 6);
+    result.results.forEach((result, index) => {
+        assert.isUndefined(result.error);
+        assert.strictEqual(result.status, 200);
+        assert.strictEqual(result.content, "/" + "abcdef".charAt(index));
+    });
+    assert.isTrue(maxRunning.get() <= 2, "concurrency is bounded");
+
+    // the slow request is cancelled once the deadline passes
+    const start = Date.now();
+    result = requestAllInWorker([
+        {url: baseUri + "slow"},
+        {url: baseUri + "fast", data: {foo: "bar"}},
+        "not a url"
+    ], {concurrency: 2, timeout: 500});
+    assert.isTrue(Date.now() - start < 2500, "deadline is enforced");
+    const results = result.results;
+    assert.isNotUndefined(results[0].error);
+    assert.isTrue(results[0].error instanceof java.util.concurrent.TimeoutException);
+    assert.strictEqual(results[1].content, "/fast");
+    assert.isNotUndefined(results[2].error);
+};
+
+exports.testRequestAllCancel = () => {
+    getResponse = (req) => {
+        java.lang.Thread.sleep(3000);
+        return response.text(req.pathInfo);
+    };
+    const start = Date.now();
+    const result = new WorkerPromise(module.resolve("./httpclient_worker"), {
+        requests: [baseUri + "a", baseUri + "b", baseUri + "c"],
+        batch: {concurrency: 1},
+        cancel: true
+    }, true).wait(5000);
+    assert.isTrue(Date.now() - start < 2500, "batch is aborted");
+    assert.isTrue(result.sameWorker);
+    assert.strictEqual(result.results.length, 3);
+    result.results.forEach(result => {
+        assert.isTrue(result.error instanceof java.util.concurrent.CancellationException);
+    });
+};
+
 // start the test runner if we're called directly from command line
 if (require.main == module.id) {
     system.exit(require("test").run.apply(null,
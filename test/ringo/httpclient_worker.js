@@ -0,0 +1,78 @@
+/**
+ * The worker module needed by the asynchronous httpclient tests
+ */
+const {requestAsync, requestAll, getDefaultClient} = require("ringo/httpclient");
+const binary = require("binary");
+
+/**
+ * Returns an iterator over the chunks, used as streamed request body
+ */
+const chunkIterator = (chunks) => {
+    let index = 0;
+    return {
+        next: () => index < chunks.length ?
+                {value: chunks[index++], done: false} :
+                {value: undefined, done: true}
+    };
+};
+
+/**
+ * Reads a streamed response body with its asynchronous iterator
+ */
+const readChunks = (exchange) => {
+    const iterator = exchange.iterator();
+    const chunks = [];
+    const next = () => iterator.next().then(result => {
+        if (result.done) {
+            return chunks.reduce((bytes, chunk) => bytes.concat(chunk),
+                    new binary.ByteString()).decodeToString(exchange.encoding);
+        }
+        chunks.push(result.value);
+        return next();
+    });
+    return next();
+};
+
+function onmessage(e) {
+    const {source, data} = e;
+    if (data.defaultClient) {
+        source.postMessage(getDefaultClient().client);
+        return;
+    }
+    const worker = require("ringo/engine").getRhinoEngine().getCurrentWorker(null);
+    if (data.requests) {
+        const promise = requestAll(data.requests, data.batch);
+        if (data.cancel) {
+            promise.cancel();
+        }
+        promise.then(results => {
+            const current = require("ringo/engine").getRhinoEngine().getCurrentWorker(null);
+            source.postMessage({
+                results: results.map(result => result.error ? result : {
+                    status: result.value.status,
+                    content: result.value.content
+                }),
+                sameWorker: worker !== null && worker.equals(current)
+            });
+        });
+        return;
+    }
+    const options = data.options;
+    if (data.chunks) {
+        options.data = chunkIterator(data.chunks);
+    }
+    requestAsync(options).then(exchange => {
+        const content = options.stream ? readChunks(exchange) : exchange.content;
+        return Promise.resolve(content).then(content => {
+            const current = require("ringo/engine").getRhinoEngine().getCurrentWorker(null);
+            source.postMessage({
+                status: exchange.status,
+                content: content,
+                headers: exchange.headers,
+                sameWorker: worker !== null && worker.equals(current)
+            });
+        });
+    }).catch(error => {
+        source.postError(String(error));
+    });
+}
@@ -3,7 +3,10 @@ const assert = require("assert");
 const {Worker} = require("ringo/worker");
 const {Semaphore} = require("ringo/concurrent");
 const {Arrays} = java.util;
+const {StandardCharsets} = java.nio.charset;
 const binary = require("binary");
+const {BroadcastGroup} = require("ringo/httpserver/websocket");
+const {Session, RemoteEndpoint, StatusCode} = org.eclipse.jetty.websocket.api;
 
 const TIMEOUT = 60000;
 
@@ -73,6 +76,141 @@ exports.testBinaryMessage = function() {
     });
 };
 
+exports.testBroadcast = function() {
+    let received = null;
+    let error = null;
+    worker.onmessage = function(event) {
+        received = event.data;
+    };
+    worker.onerror = function(event) {
+        error = event.data;
+    };
+    ["hello world!", binary.toByteArray("hello world!")].forEach(message => {
+        const semaphore = new Semaphore();
+        received = null;
+        worker.postMessage({
+            message: (typeof message === "string") ? message : message.slice(),
+            semaphore: semaphore,
+            isAsync: true,
+            isBroadcast: true
+        }, true);
+
+        if (!semaphore.tryWait(TIMEOUT)) {
+            assert.fail("web socket broadcast timed out");
+        }
+        assert.isNull(error);
+        if (typeof message === "string") {
+            assert.equal(received, message);
+        } else {
+            assert.isTrue(Arrays.equals(received, message));
+        }
+    });
+};
+
+/**
+ * Returns a stand-in for a WebSocket whose session records the messages
+ * sent to it. Writes of a slow socket never complete, so its sent bytes
+ * stay pending.
+ */
+const mockSocket = (isSlow) => {
+    const socket = {
+        open: true,
+        received: [],
+        closeStatus: null,
+        isOpen: () => socket.open
+    };
+    const complete = (callback) => {
+        if (!isSlow && callback) {
+            callback.writeSuccess();
+        }
+    };
+    const remote = new RemoteEndpoint({
+        setBatchMode: () => {},
+        sendString: (text, callback) => {
+            socket.received.push(String(text));
+            complete(callback);
+        },
+        sendBytes: (buffer, callback) => {
+            socket.received.push(StandardCharsets.UTF_8.decode(buffer).toString());
+            complete(callback);
+        }
+    });
+    socket.session = new Session({
+        isOpen: () => socket.open,
+        getRemote: () => remote,
+        close: (statusCode) => {
+            socket.open = false;
+            socket.closeStatus = statusCode;
+        }
+    });
+    return socket;
+};
+
+exports.testBroadcastFanOut = function() {
+    const group = new BroadcastGroup();
+    const sockets = [mockSocket(), mockSocket(), mockSocket()];
+    sockets.forEach(socket => assert.isTrue(group.add(socket)));
+    assert.isFalse(group.add(sockets[0]));
+    assert.equal(group.size, 3);
+
+    assert.equal(group.broadcast("hello"), 3);
+    assert.equal(group.broadcast(binary.toByteArray("hello world"), 6, 5), 3);
+    sockets.forEach(socket => {
+        assert.equal(socket.received.length, 2);
+        assert.equal(socket.received[0], "hello");
+        assert.equal(socket.received[1], "world");
+    });
+
+    // closed sockets are removed on the next broadcast
+    sockets[2].open = false;
+    assert.equal(group.broadcast("again"), 2);
+    assert.equal(group.size, 2);
+    assert.isFalse(group.contains(sockets[2]));
+
+    assert.deepEqual(group.metrics, {
+        "messages": 3,
+        "frames": 8,
+        "bytes": 40,
+        "failures": 0,
+        "evictions": 0,
+        "pending": 0
+    });
+};
+
+exports.testBroadcastEviction = function() {
+    const group = new BroadcastGroup({maxPending: 10});
+    const fast = mockSocket();
+    const slow = mockSocket(true);
+    group.add(fast);
+    group.add(slow);
+
+    assert.equal(group.broadcast("12345678"), 2);
+    assert.equal(group.metrics.pending, 8);
+    // still within the limit when the message is sent
+    assert.equal(group.broadcast("12345678"), 2);
+    assert.equal(group.metrics.pending, 16);
+    assert.isTrue(slow.open);
+
+    // the slow socket is over the limit and gets evicted
+    assert.equal(group.broadcast("12345678"), 1);
+    assert.equal(group.size, 1);
+    assert.isTrue(group.contains(fast));
+    assert.isFalse(group.contains(slow));
+    assert.isFalse(slow.open);
+    assert.equal(slow.closeStatus, StatusCode.POLICY_VIOLATION);
+    assert.equal(fast.received.length, 3);
+    assert.equal(slow.received.length, 2);
+
+    assert.deepEqual(group.metrics, {
+        "messages": 3,
+        "frames": 5,
+        "bytes": 40,
+        "failures": 0,
+        "evictions": 1,
+        "pending": 0
+    });
+};
+
 if (require.main === module) {
     require('system').exit(require("test").run(module.id));
 }
@@ -6,6 +6,7 @@ const {WebSocketListener} = org.eclipse.jetty.websocket.api;
 const {ByteBuffer} = java.nio;
 const {JavaEventEmitter} = require("../../../modules/ringo/events");
 const {HttpServer} = require("../../../modules/ringo/httpserver");
+const {BroadcastGroup} = require("../../../modules/ringo/httpserver/websocket");
 const {AbstractLifeCycleListener} = org.eclipse.jetty.util.component.AbstractLifeCycle;
 
 const newListener = () => {
@@ -20,11 +21,12 @@ const newListener = () => {
 
 const onmessage = (event) => {
     const {source} = event;
-    const {message, semaphore, isAsync} = event.data;
+    const {message, semaphore, isAsync, isBroadcast} = event.data;
     const isBinary = (typeof message === "string");
 
     const host = "127.0.0.1";
-    const port = String(4400 + (isAsync ? 0 : 1) + (isBinary ? 0 : 10));
+    const port = String(4400 + (isAsync ? 0 : 1) + (isBinary ? 0 : 10) +
+            (isBroadcast ? 20 : 0));
     const path = "/websocket";
     const uri = "ws://" + host + ":" + port + path;
 
@@ -120,7 +122,20 @@ const onmessage = (event) => {
 
     const appContext = server.serveApplication("/", () => {});
 
+    const group = new BroadcastGroup();
     appContext.addWebSocket(path, (socket) => {
+        if (isBroadcast) {
+            group.add(socket);
+            socket.on("text", (message) => {
+                if (group.broadcast(message) !== 1) {
+                    source.postError("Broadcast to " + group.size + " sockets");
+                }
+            });
+            socket.on("binary", (bytes, offset, length) => {
+                group.broadcast(bytes, offset, length);
+            });
+            return;
+        }
         socket.on("text", (message) => {
             socket[isAsync ? "sendString" : "sendStringAsync"](message);
         });
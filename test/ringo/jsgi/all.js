@@ -1,6 +1,9 @@
 exports.testAsyncResponse = require('./asyncresponse_test');
+exports.testCompression = require('./compression_test');
+exports.testEventSource = require('./eventsource_test');
 exports.testResponse = require('./response_test');
 exports.testResponseRange = require('./response_range_test');
+exports.testResponseStatic = require('./response_static_test');
 
 if (require.main === module) {
     require("system").exit(require("test").run(exports));
@@ -1,7 +1,7 @@
 require('ringo/logging').setConfig(getResource('../../log4j2.properties'));
 
 const assert = require("assert");
-const {AsyncResponse} = require("ringo/jsgi/connector");
+const {AsyncResponse, inputIterator} = require("ringo/jsgi/connector");
 const {HttpServer} = require("ringo/httpserver");
 const httpClient = require("ringo/httpclient");
 const strings = require("ringo/utils/strings");
@@ -45,3 +45,244 @@ exports.testAsync = () => {
     assert.strictEqual(exchange.status, 200);
     assert.strictEqual(exchange.content, strings.repeat(line, 5));
 };
+
+exports.testPromise = () => {
+    const {Deferred} = require("ringo/promise");
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        const deferred = new Deferred();
+        setTimeout(() => {
+            deferred.resolve({
+                status: 200,
+                headers: {"Content-Type": "text/plain"},
+                body: ["resolved"]
+            });
+        }, 100);
+        return deferred.promise;
+    });
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const exchange = httpClient.get("http://localhost:8282");
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content, "resolved");
+};
+
+exports.testPromiseTimeout = () => {
+    const {Deferred} = require("ringo/promise");
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        return new Deferred().promise;
+    }, {asyncTimeout: 200});
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const exchange = httpClient.get("http://localhost:8282");
+    assert.strictEqual(exchange.status, 503);
+};
+
+exports.testHeadersAfterPromise = () => {
+    const {Deferred} = require("ringo/promise");
+    const requests = [];
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        requests.push(request);
+        const deferred = new Deferred();
+        setTimeout(() => {
+            deferred.resolve({
+                status: 200,
+                headers: {"Content-Type": "text/plain"},
+                body: [request.headers["x-request"]]
+            });
+        }, 100);
+        return deferred.promise;
+    });
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    ["first", "second"].forEach((value) => {
+        const exchange = httpClient.request({
+            url: "http://localhost:8282",
+            headers: {"X-Request": value}
+        });
+        assert.strictEqual(exchange.status, 200);
+        assert.strictEqual(exchange.content, value);
+    });
+    // read after the servlet requests have been completed and recycled
+    assert.deepEqual(requests.map((request) => request.headers["x-request"]),
+            ["first", "second"]);
+};
+
+exports.testHeadersAfterAsyncResponse = () => {
+    const requests = [];
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        requests.push(request);
+        const response = new AsyncResponse(request, 2000);
+        response.start(200, {"Content-Type": "text/plain"});
+        response.write(request.headers["x-request"]);
+        response.close();
+        return response;
+    });
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    ["first", "second"].forEach((value) => {
+        const exchange = httpClient.request({
+            url: "http://localhost:8282",
+            headers: {"X-Request": value}
+        });
+        assert.strictEqual(exchange.content, value);
+    });
+    assert.deepEqual(requests.map((request) => request.headers["x-request"]),
+            ["first", "second"]);
+    // all headers were copied before the response completed
+    assert.isTrue(Object.keys(requests[0].headers).indexOf("host") > -1);
+};
+
+exports.testHeadersAfterResponse = () => {
+    const requests = [];
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        // don't read any header while handling the request
+        requests.push(request);
+        return {
+            status: 200,
+            headers: {"Content-Type": "text/plain"},
+            body: ["ok"]
+        };
+    });
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    ["first", "second"].forEach((value) => {
+        const exchange = httpClient.request({
+            url: "http://localhost:8282",
+            headers: {"X-Request": value}
+        });
+        assert.strictEqual(exchange.content, "ok");
+    });
+    assert.deepEqual(requests.map((request) => request.headers["x-request"]),
+            ["first", "second"]);
+};
+
+const countInput = (request) => {
+    const iterator = inputIterator(request, 1024);
+    let length = 0;
+    const consume = () => iterator.next().then((result) => {
+        if (result.done) {
+            return {
+                status: 200,
+                headers: {"Content-Type": "text/plain"},
+                body: [String(length)]
+            };
+        }
+        length += result.value.length;
+        return consume();
+    });
+    return consume();
+};
+
+exports.testInputIterator = () => {
+    server = new HttpServer();
+    server.serveApplication("/", countInput);
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const exchange = httpClient.post("http://localhost:8282", strings.repeat("x", 5000));
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content, "5000");
+};
+
+exports.testBufferedInput = () => {
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        const content = request.input.read().decodeToString();
+        return {
+            status: 200,
+            headers: {"Content-Type": "text/plain"},
+            body: [content]
+        };
+    }, {bufferInput: true, inputMemorySize: 1024, maxInputSize: 10000});
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const body = strings.repeat("x", 5000);
+    let exchange = httpClient.post("http://localhost:8282", body);
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content, body);
+    exchange = httpClient.post("http://localhost:8282", strings.repeat("x", 20000));
+    assert.strictEqual(exchange.status, 413);
+};
+
+exports.testBufferedInputIterator = () => {
+    server = new HttpServer();
+    server.serveApplication("/", countInput, {bufferInput: true});
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const exchange = httpClient.post("http://localhost:8282", strings.repeat("x", 5000));
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content, "5000");
+};
+
+exports.testAsyncBackpressure = () => {
+    const line = strings.repeat("x", 99) + "\n";
+    const total = 5000;
+
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        const response = new AsyncResponse(request, 10000, {
+            highWatermark: 4096,
+            lowWatermark: 1024
+        });
+        response.start(200, {"Content-Type": "text/plain"});
+        let written = 0;
+        const produce = () => {
+            while (written < total && response.isWritable()) {
+                response.write(line);
+                written += 1;
+            }
+            if (written < total) {
+                response.drain().then(produce);
+            } else {
+                response.close();
+            }
+        };
+        produce();
+        return response;
+    });
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+
+    const exchange = httpClient.get("http://localhost:8282");
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content.length, line.length * total);
+};
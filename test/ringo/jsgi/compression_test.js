@@ -0,0 +1,91 @@
+require('ringo/logging').setConfig(getResource('../../log4j2.properties'));
+
+const assert = require("assert");
+const fs = require("fs");
+const {HttpServer} = require("ringo/httpserver");
+const httpClient = require("ringo/httpclient");
+const response = require("ringo/jsgi/response");
+const strings = require("ringo/utils/strings");
+
+let server = null;
+
+const getContentEncoding = (exchange) => {
+    return exchange.connection.getHeaderField("Content-Encoding");
+};
+
+exports.tearDown = function() {
+    server.stop();
+    server.destroy();
+    server = null;
+};
+
+const startServer = (app, options) => {
+    server = new HttpServer();
+    server.serveApplication("/", app, options);
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+};
+
+exports.testGzip = () => {
+    const text = strings.repeat("compress me\n", 1000);
+    startServer((request) => {
+        return response.text(request.pathInfo === "/small" ? "small" : text);
+    }, {gzip: true});
+
+    let exchange = httpClient.get("http://localhost:8282/");
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(getContentEncoding(exchange), "gzip");
+    assert.strictEqual(exchange.content, text);
+
+    // bodies below the minimum size are sent uncompressed
+    exchange = httpClient.get("http://localhost:8282/small");
+    assert.strictEqual(exchange.status, 200);
+    assert.isNull(getContentEncoding(exchange));
+    assert.strictEqual(exchange.content, "small");
+
+    // no compression if the client doesn't accept it
+    exchange = httpClient.request({
+        url: "http://localhost:8282/",
+        headers: {"Accept-Encoding": "identity"}
+    });
+    assert.isNull(getContentEncoding(exchange));
+    assert.strictEqual(exchange.content, text);
+};
+
+exports.testGzipDisabled = () => {
+    const text = strings.repeat("compress me\n", 1000);
+    startServer(() => response.text(text));
+    const exchange = httpClient.get("http://localhost:8282/");
+    assert.isNull(getContentEncoding(exchange));
+    assert.strictEqual(exchange.content, text);
+};
+
+exports.testPrecompressedStatic = () => {
+    const dir = fs.absolute(java.nio.file.Files.createTempDirectory("ringo-gzip").toString());
+    const file = fs.join(dir, "test.txt");
+    const text = strings.repeat("static content\n", 500);
+    fs.write(file, text);
+    const output = new java.util.zip.GZIPOutputStream(
+            new java.io.FileOutputStream(file + ".gz"));
+    try {
+        output.write(new java.lang.String(text).getBytes("UTF-8"));
+    } finally {
+        output.close();
+    }
+    try {
+        startServer(() => response.static(file, "text/plain"), {gzip: true});
+        const exchange = httpClient.get("http://localhost:8282/");
+        assert.strictEqual(exchange.status, 200);
+        assert.strictEqual(getContentEncoding(exchange), "gzip");
+        assert.strictEqual(exchange.content, text);
+    } finally {
+        fs.removeTree(dir);
+    }
+};
+
+if (require.main === module) {
+    require("system").exit(require("test").run(exports));
+}
@@ -0,0 +1,109 @@
+require('ringo/logging').setConfig(getResource('../../log4j2.properties'));
+
+const assert = require("assert");
+const {EventSourceHub} = require("ringo/jsgi/eventsource");
+const {HttpServer} = require("ringo/httpserver");
+const httpClient = require("ringo/httpclient");
+
+let server = null;
+let hub = null;
+
+exports.tearDown = function() {
+    hub.close();
+    hub = null;
+    server.stop();
+    server.destroy();
+    server = null;
+};
+
+const serve = (app) => {
+    server = new HttpServer();
+    server.serveApplication("/", app);
+    server.createHttpListener({
+        host: "localhost",
+        port: 8686
+    });
+    server.start();
+};
+
+exports.testPublish = function() {
+    hub = new EventSourceHub({heartbeat: 0});
+    serve(function(request) {
+        const response = hub.connect(request, "news");
+        assert.strictEqual(hub.subscriberCount("news"), 1);
+        assert.strictEqual(hub.subscriberCount("other"), 0);
+        hub.publish("news", "hello");
+        hub.publish("news", {"answer": 42}, "update");
+        hub.publish("other", "ignored");
+        hub.close();
+        return response;
+    });
+
+    const exchange = httpClient.get("http://localhost:8686");
+    assert.strictEqual(exchange.status, 200);
+    assert.isTrue(exchange.contentType.indexOf("text/event-stream") === 0);
+    assert.strictEqual(exchange.content, "id: 1\ndata: hello\n\n" +
+            "id: 2\nevent: update\ndata: {\"answer\":42}\n\n");
+    assert.strictEqual(hub.metrics.events, 3);
+    assert.strictEqual(hub.metrics.deliveries, 2);
+};
+
+exports.testReplay = function() {
+    hub = new EventSourceHub({heartbeat: 0, history: 3});
+    for (let i = 1; i <= 5; i += 1) {
+        hub.publish("news", "event " + i);
+    }
+    serve(function(request) {
+        const response = hub.connect(request, "news");
+        hub.publish("news", "live");
+        hub.close();
+        return response;
+    });
+
+    let exchange = httpClient.request({
+        url: "http://localhost:8686",
+        headers: {"Last-Event-ID": "3"}
+    });
+    assert.strictEqual(exchange.content, "id: 4\ndata: event 4\n\n" +
+            "id: 5\ndata: event 5\n\n" + "id: 6\ndata: live\n\n");
+    assert.strictEqual(hub.metrics.replayed, 2);
+};
+
+exports.testTopicRetention = function() {
+    hub = new EventSourceHub({heartbeat: 0, retention: 0});
+    let topics;
+    serve(function(request) {
+        const response = hub.connect(request, "news");
+        hub.publish("other", "event");
+        java.lang.Thread.sleep(10);
+        // creating a topic removes expired topics without subscribers
+        hub.publish("latest", "event");
+        topics = hub.metrics.topics;
+        setTimeout(() => hub.close(), 0);
+        return response;
+    });
+
+    const exchange = httpClient.get("http://localhost:8686");
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(topics, 2);
+    assert.strictEqual(hub.subscriberCount("other"), 0);
+};
+
+exports.testHeartbeat = function() {
+    hub = new EventSourceHub({heartbeat: 0.1});
+    serve(function(request) {
+        const response = hub.connect(request, "news");
+        setTimeout(() => hub.close(), 500);
+        return response;
+    });
+
+    const exchange = httpClient.get("http://localhost:8686");
+    assert.strictEqual(exchange.status, 200);
+    assert.isTrue(exchange.content.length > 0);
+    assert.isTrue(/^\r+$/.test(exchange.content));
+    assert.isTrue(hub.metrics.heartbeats > 0);
+};
+
+if (require.main === module) {
+    require("system").exit(require("test").run(module.id));
+}
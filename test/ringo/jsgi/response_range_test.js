@@ -173,6 +173,59 @@ exports.testInvalidRanges = function() {
     assert.strictEqual(exchange.status, 416);
 };
 
+exports.testFileRanges = function() {
+    const file = java.io.File.createTempFile("ringo-range", ".txt");
+    file.deleteOnExit();
+    require("fs").write(file.getPath(), DATA);
+    server = new HttpServer();
+    server.serveApplication("/", function(request) {
+        return response.range(request, file.getPath(), undefined, "text/plain");
+    });
+    server.createHttpListener({
+        "host": "localhost",
+        "port": 8484,
+    });
+    server.start();
+
+    try {
+        let exchange = httpClient.request({
+            method: "GET",
+            url: "http://localhost:8484",
+            headers: {
+                "Range": "bytes=6-10"
+            }
+        });
+        assert.strictEqual(exchange.status, 206);
+        assert.strictEqual(exchange.content, "World");
+        assert.deepEqual(exchange.headers["Content-Range"], ["bytes 6-10/42"]);
+
+        exchange = httpClient.request({
+            method: "GET",
+            url: "http://localhost:8484",
+            headers: {
+                "Range": "bytes=0-4,6-10,-1"
+            }
+        });
+        const boundary = "--" + exchange.contentType.substr(exchange.contentType.indexOf("boundary=") + 9);
+        assert.strictEqual(exchange.status, 206);
+        assert.strictEqual(exchange.content, boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-4/42" +
+            "\r\n\r\nHello\r\n" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 6-10/42\r\n\r\nWorld\r\n" +
+            "" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 41-41/42\r\n\r\n.\r\n" + boundary + "--");
+        assert.deepEqual(exchange.headers["Content-Length"], [String(exchange.content.length)]);
+
+        exchange = httpClient.request({
+            method: "GET",
+            url: "http://localhost:8484",
+            headers: {
+                "Range": "bytes=100-200"
+            }
+        });
+        assert.strictEqual(exchange.status, 416);
+    } finally {
+        file["delete"]();
+    }
+};
+
 if (require.main === module) {
     require("system").exit(require("test").run(exports));
 }
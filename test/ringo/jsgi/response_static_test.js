@@ -0,0 +1,92 @@
+require('ringo/logging').setConfig(getResource('../../log4j2.properties'));
+
+const assert = require("assert");
+const fs = require("fs");
+const {HttpServer} = require("ringo/httpserver");
+const httpClient = require("ringo/httpclient");
+const response = require("ringo/jsgi/response");
+const strings = require("ringo/utils/strings");
+
+let server = null;
+let dir = null;
+
+exports.setUp = function() {
+    dir = fs.absolute(java.nio.file.Files.createTempDirectory("ringo-static").toString());
+};
+
+exports.tearDown = function() {
+    server.stop();
+    server.destroy();
+    server = null;
+    fs.removeTree(dir);
+};
+
+const startServer = (app, options) => {
+    server = new HttpServer();
+    server.serveApplication("/", app, options);
+    server.createHttpListener({
+        host: "localhost",
+        port: 8282
+    });
+    server.start();
+};
+
+const getHeader = (exchange, name) => {
+    return exchange.connection.getHeaderField(name);
+};
+
+exports.testConditionalGet = () => {
+    const file = fs.join(dir, "test.css");
+    fs.write(file, "body {color: red}");
+    startServer(() => response.static(file, "text/css"));
+
+    let exchange = httpClient.get("http://localhost:8282/");
+    assert.strictEqual(exchange.status, 200);
+    const etag = getHeader(exchange, "ETag");
+    const lastModified = getHeader(exchange, "Last-Modified");
+    assert.isNotNull(etag);
+    assert.isNotNull(lastModified);
+
+    exchange = httpClient.request({
+        url: "http://localhost:8282/",
+        headers: {"If-None-Match": etag}
+    });
+    assert.strictEqual(exchange.status, 304);
+
+    exchange = httpClient.request({
+        url: "http://localhost:8282/",
+        headers: {"If-None-Match": "\"other\""}
+    });
+    assert.strictEqual(exchange.status, 200);
+    assert.strictEqual(exchange.content, "body {color: red}");
+
+    exchange = httpClient.request({
+        url: "http://localhost:8282/",
+        headers: {"If-Modified-Since": lastModified}
+    });
+    assert.strictEqual(exchange.status, 304);
+};
+
+exports.testStaticCache = () => {
+    const file = fs.join(dir, "test.js");
+    const content = strings.repeat("console.log('cached');\n", 100);
+    fs.write(file, content);
+    let cache = null;
+    startServer((request) => {
+        cache = request.env.servlet.getStaticCache();
+        return response.static(file, "application/javascript");
+    }, {staticCacheSize: 1024 * 1024});
+
+    for (let i = 0; i < 3; i += 1) {
+        const exchange = httpClient.get("http://localhost:8282/");
+        assert.strictEqual(exchange.status, 200);
+        assert.strictEqual(exchange.content, content);
+    }
+    assert.strictEqual(cache.getMisses(), 1);
+    assert.strictEqual(cache.getHits(), 2);
+    assert.strictEqual(cache.getCount(), 1);
+};
+
+if (require.main === module) {
+    require("system").exit(require("test").run(exports));
+}